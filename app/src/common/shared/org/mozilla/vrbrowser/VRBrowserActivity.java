@@ -50,9 +50,11 @@ import org.mozilla.vrbrowser.browser.PermissionDelegate;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
+import org.mozilla.vrbrowser.browser.engine.SessionUtils;
 import org.mozilla.vrbrowser.crashreporting.CrashReporterService;
 import org.mozilla.vrbrowser.crashreporting.GlobalExceptionHandler;
 import org.mozilla.vrbrowser.geolocation.GeolocationWrapper;
+import org.mozilla.vrbrowser.input.InputEventQueue;
 import org.mozilla.vrbrowser.input.MotionEventGenerator;
 import org.mozilla.vrbrowser.search.SearchEngineWrapper;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
@@ -60,11 +62,13 @@ import org.mozilla.vrbrowser.telemetry.TelemetryWrapper;
 import org.mozilla.vrbrowser.ui.OffscreenDisplay;
 import org.mozilla.vrbrowser.ui.widgets.KeyboardWidget;
 import org.mozilla.vrbrowser.ui.widgets.NavigationBarWidget;
+import org.mozilla.vrbrowser.ui.widgets.PlacementDeltaEncoder;
 import org.mozilla.vrbrowser.ui.widgets.RootWidget;
 import org.mozilla.vrbrowser.ui.widgets.TrayWidget;
 import org.mozilla.vrbrowser.ui.widgets.UISurfaceTextureRenderer;
 import org.mozilla.vrbrowser.ui.widgets.UIWidget;
 import org.mozilla.vrbrowser.ui.widgets.Widget;
+import org.mozilla.vrbrowser.ui.widgets.WidgetFrameScheduler;
 import org.mozilla.vrbrowser.ui.widgets.WidgetManagerDelegate;
 import org.mozilla.vrbrowser.ui.widgets.WidgetPlacement;
 import org.mozilla.vrbrowser.ui.widgets.WindowWidget;
@@ -78,9 +82,13 @@ import org.mozilla.vrbrowser.utils.ConnectivityReceiver;
 import org.mozilla.vrbrowser.utils.ConnectivityReceiver.Delegate;
 import org.mozilla.vrbrowser.utils.DeviceType;
 import org.mozilla.vrbrowser.utils.LocaleUtils;
+import org.mozilla.vrbrowser.utils.RenderCommandQueue;
 import org.mozilla.vrbrowser.utils.ServoUtils;
+import org.mozilla.vrbrowser.utils.StartupGraph;
+import org.mozilla.vrbrowser.utils.StartupGraph.Affinity;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -91,7 +99,7 @@ import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 
-public class VRBrowserActivity extends PlatformActivity implements WidgetManagerDelegate, ComponentCallbacks2, LifecycleOwner, ViewModelStoreOwner {
+public class VRBrowserActivity extends PlatformActivity implements WidgetManagerDelegate, InputEventQueue.Delegate, WidgetFrameScheduler.Delegate, ComponentCallbacks2, LifecycleOwner, ViewModelStoreOwner {
 
     private BroadcastReceiver mCrashReceiver = new BroadcastReceiver() {
         @Override
@@ -149,6 +157,8 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     static final String LOGTAG = SystemUtils.createLogtag(VRBrowserActivity.class);
     HashMap<Integer, Widget> mWidgets;
+    // Created with the activity, native input may arrive before onCreate() finishes.
+    final InputEventQueue mInputEventQueue = new InputEventQueue(this);
     private int mWidgetHandleIndex = 1;
     AudioEngine mAudioEngine;
     OffscreenDisplay mOffscreenDisplay;
@@ -156,6 +166,30 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     int mLastGesture;
     SwipeRunnable mLastRunnable;
     Handler mHandler = new Handler();
+    // Created with the activity, the render thread may report frames before onCreate() finishes.
+    final WidgetFrameScheduler mFrameScheduler = new WidgetFrameScheduler(this, mHandler);
+    // Commands for the render thread, which is woken up through the platform queue once per batch.
+    final RenderCommandQueue mRenderQueue = new RenderCommandQueue(this::queueRunnable);
+    // Kept so queueing them doesn't allocate.
+    private final RenderCommandQueue.IntCommand mSetCPULevel = this::setCPULevelNative;
+    private final RenderCommandQueue.IntCommand mRemoveWidget = this::removeWidgetNative;
+    private final RenderCommandQueue.IntCommand mFinishWidgetResize = this::finishWidgetResizeNative;
+    private final RenderCommandQueue.IntCommand mUpdateFoveatedLevel = this::updateFoveatedLevelNative;
+    private final RenderCommandQueue.LongCommand mRunCallback = this::runCallbackNative;
+    private final RenderCommandQueue.FloatCommand mSetWorldBrightness = this::setWorldBrightnessNative;
+    private final RenderCommandQueue.FloatCommand mSetCylinderDensity = this::setCylinderDensityNative;
+    private final RenderCommandQueue.BooleanCommand mSetControllersVisible = this::setControllersVisibleNative;
+    private final RenderCommandQueue.BooleanCommand mSetIsServo = this::setIsServo;
+    private final RenderCommandQueue.ObjectCommand<PlacementDeltaEncoder.Packet> mUpdateWidgets = this::updateWidgets;
+    private final Runnable mUpdateVisibleWidgets = this::updateVisibleWidgetsNative;
+    // Only accessed from the render thread.
+    private boolean mPlacementsRejected;
+    private final Runnable mExitImmersive = this::exitImmersiveNative;
+    private final Runnable mFinishWidgetMove = this::finishWidgetMoveNative;
+    private final Runnable mUpdateEnvironment = this::updateEnvironmentNative;
+    private final Runnable mUpdatePointerColor = this::updatePointerColorNative;
+    private final Runnable mHideVRVideo = this::hideVRVideoNative;
+    private final Runnable mResetUIYaw = this::resetUIYawNative;
     Runnable mAudioUpdateRunnable;
     Windows mWindows;
     RootWidget mRootWidget;
@@ -175,6 +209,9 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     private LinkedList<Pair<Object, Float>> mBrightnessQueue;
     private Pair<Object, Float> mCurrentBrightness;
     private SearchEngineWrapper mSearchEngineWrapper;
+    private StartupGraph mStartupGraph;
+    // Only accessed from the render thread.
+    private boolean mFirstFrameRendered;
     private SettingsStore mSettings;
     private ConnectivityReceiver mConnectivityReceiver;
     private boolean mConnectionAvailable = true;
@@ -237,13 +274,31 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         }
         mUiThread = Thread.currentThread();
 
-        BitmapCache.getInstance(this).onCreate();
-
         Bundle extras = getIntent() != null ? getIntent().getExtras() : null;
-        SessionStore.get().setContext(this, extras);
-        SessionStore.get().initializeServices();
-        SessionStore.get().initializeStores(this);
-        SessionStore.get().setLocales(LocaleUtils.getPreferredLocales(this));
+        // Each instance has its own graph, the activity may be created again in the same process.
+        mStartupGraph = new StartupGraph(((VRBrowserApplication)getApplication()).getExecutors().mainThread());
+        mStartupGraph
+                .add("bitmap-cache-storage", Affinity.MAIN, () -> BitmapCache.getInstance(this).onCreate())
+                // FIXME: Once GeckoView has a prefs API
+                .add("gecko-prefs", Affinity.BACKGROUND, () -> SessionUtils.vrPrefsWorkAround(this, extras))
+                .add("session-store", Affinity.MAIN, () -> {
+                    SessionStore.get().setContext(this);
+                    SessionStore.get().initializeServices();
+                    SessionStore.get().initializeStores(this);
+                    SessionStore.get().setLocales(LocaleUtils.getPreferredLocales(this));
+                }, "gecko-prefs")
+                .addDeferred("search-engine", Affinity.MAIN, () -> {
+                    if (!isDestroyed()) {
+                        mSearchEngineWrapper = SearchEngineWrapper.get(this);
+                        mSearchEngineWrapper.registerForUpdates();
+                    }
+                })
+                .addDeferred("geolocation", Affinity.MAIN, () -> {
+                    if (!isDestroyed()) {
+                        GeolocationWrapper.update(this);
+                    }
+                });
+        mStartupGraph.run();
 
         // Create broadcast receiver for getting crash messages from crash process
         IntentFilter intentFilter = new IntentFilter();
@@ -277,24 +332,18 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
         mSettings = SettingsStore.getInstance(this);
 
-        queueRunnable(() -> {
+        mRenderQueue.queue(() -> {
             createOffscreenDisplay();
             createCaptureSurface();
         });
         final String tempPath = getCacheDir().getAbsolutePath();
-        queueRunnable(() -> setTemporaryFilePath(tempPath));
+        mRenderQueue.queue(() -> setTemporaryFilePath(tempPath));
         updateFoveatedLevel();
 
         initializeWidgets();
 
         loadFromIntent(getIntent());
 
-        // Setup the search engine
-        mSearchEngineWrapper = SearchEngineWrapper.get(this);
-        mSearchEngineWrapper.registerForUpdates();
-
-        GeolocationWrapper.update(this);
-
         mConnectivityReceiver = new ConnectivityReceiver();
         mPoorPerformanceWhiteList = new HashSet<>();
         checkForCrash();
@@ -336,7 +385,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
                 @CPULevelFlags int cpuLevel = mWindows.isVideoAvailable() ? WidgetManagerDelegate.CPU_LEVEL_HIGH :
                         WidgetManagerDelegate.CPU_LEVEL_NORMAL;
 
-                queueRunnable(() -> setCPULevelNative(cpuLevel));
+                mRenderQueue.queue(mSetCPULevel, cpuLevel);
             }
         });
 
@@ -416,6 +465,11 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         mAudioEngine.pauseEngine();
 
         mWindows.onPause();
+        // Don't lose the queued history visits if the process is killed while paused.
+        SessionStore.get().getHistoryStore().flush();
+        if (mSearchEngineWrapper != null) {
+            mSearchEngineWrapper.saveSuggestionsCache();
+        }
 
         for (Widget widget: mWidgets.values()) {
             widget.onPause();
@@ -455,6 +509,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         ((VRBrowserApplication)getApplicationContext()).getAccounts().pollForEventsAsync();
 
         super.onResume();
+        mRenderQueue.onResume();
         mLifeCycle.setCurrentState(Lifecycle.State.RESUMED);
     }
 
@@ -463,7 +518,9 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         SettingsStore.getInstance(getBaseContext()).setPid(0);
         // Unregister the crash service broadcast receiver
         unregisterReceiver(mCrashReceiver);
-        mSearchEngineWrapper.unregisterForUpdates();
+        if (mSearchEngineWrapper != null) {
+            mSearchEngineWrapper.unregisterForUpdates();
+        }
 
         for (Widget widget: mWidgets.values()) {
             widget.releaseWidget();
@@ -659,9 +716,9 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             case ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE:
             case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
             case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
-                // It looks like these come in all at the same time so just always suspend inactive Sessions.
-                Log.d(LOGTAG, "Memory pressure, suspending inactive sessions.");
-                SessionStore.get().suspendAllInactiveSessions();
+                // The eviction policy lowers the GeckoSession limit depending on the trim level.
+                Log.d(LOGTAG, "Memory pressure, limiting inactive sessions.");
+                SessionStore.get().onTrimMemory(level);
                 break;
             default:
                 Log.e(LOGTAG, "onTrimMemory unknown level: " + level);
@@ -673,7 +730,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     @Override
     public void onBackPressed() {
         if (mIsPresentingImmersive) {
-            queueRunnable(() -> exitImmersiveNative());
+            mRenderQueue.queue(mExitImmersive);
             return;
         }
         if (mBackHandlers.size() > 0) {
@@ -743,6 +800,8 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             }
         };
         synchronized (exitImmersive) {
+            // Posted directly, like the platform lifecycle events: a drain dropped while pausing
+            // wouldn't be recovered before the render thread resumes.
             queueRunnable(exitImmersive);
             try {
                 exitImmersive.wait();
@@ -792,7 +851,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
             Runnable aFirstDrawCallback = () -> {
                 if (aNativeCallback != 0) {
-                    queueRunnable(() -> runCallbackNative(aNativeCallback));
+                    mRenderQueue.queue(mRunCallback, aNativeCallback);
                 }
                 if (aSurface != null && !widget.isFirstPaintReady()) {
                     widget.setFirstPaintReady(true);
@@ -817,42 +876,82 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     @Keep
     @SuppressWarnings("unused")
     void handleMotionEvent(final int aHandle, final int aDevice, final boolean aPressed, final float aX, final float aY) {
-        runOnUiThread(() -> {
-            Widget widget = mWidgets.get(aHandle);
-            if (!isWidgetInputEnabled(widget)) {
-                widget = null; // Fallback to mRootWidget in order to allow world clicks to dismiss UI.
-            }
-
-            float scale = widget != null ? widget.getPlacement().textureScale : 1.0f;
-            final float x = aX / scale;
-            final float y = aY / scale;
-
-            if (widget == null) {
-                MotionEventGenerator.dispatch(mRootWidget, aDevice, aPressed, x, y);
-            } else if (widget.getBorderWidth() > 0) {
-                final int border = widget.getBorderWidth();
-                MotionEventGenerator.dispatch(widget, aDevice, aPressed, x - border, y - border);
-            } else {
-                MotionEventGenerator.dispatch(widget, aDevice, aPressed, x, y);
-            }
-        });
+        mInputEventQueue.pushMotionEvent(aHandle, aDevice, aPressed, aX, aY);
     }
 
     @Keep
     @SuppressWarnings("unused")
     void handleScrollEvent(final int aHandle, final int aDevice, final float aX, final float aY) {
-        runOnUiThread(() -> {
-            Widget widget = mWidgets.get(aHandle);
-            if (!isWidgetInputEnabled(widget)) {
-                return;
-            }
-            if (widget != null) {
-                float scrollDirection = mSettings.getScrollDirection() == 0 ? 1.0f : -1.0f;
-                MotionEventGenerator.dispatchScroll(widget, aDevice, aX * scrollDirection, aY * scrollDirection);
-            } else {
-                Log.e(LOGTAG, "Failed to find widget for scroll event: " + aHandle);
-            }
-        });
+        mInputEventQueue.pushScrollEvent(aHandle, aDevice, aX, aY);
+    }
+
+    @Override
+    public void onMotionEvent(int aHandle, int aDevice, boolean aPressed, float aX, float aY) {
+        Widget widget = mWidgets.get(aHandle);
+        if (!isWidgetInputEnabled(widget)) {
+            widget = null; // Fallback to mRootWidget in order to allow world clicks to dismiss UI.
+        }
+
+        float scale = widget != null ? widget.getPlacement().textureScale : 1.0f;
+        final float x = aX / scale;
+        final float y = aY / scale;
+
+        if (widget == null) {
+            MotionEventGenerator.dispatch(mRootWidget, aDevice, aPressed, x, y);
+        } else if (widget.getBorderWidth() > 0) {
+            final int border = widget.getBorderWidth();
+            MotionEventGenerator.dispatch(widget, aDevice, aPressed, x - border, y - border);
+        } else {
+            MotionEventGenerator.dispatch(widget, aDevice, aPressed, x, y);
+        }
+    }
+
+    @Override
+    public void onScrollEvent(int aHandle, int aDevice, float aX, float aY) {
+        Widget widget = mWidgets.get(aHandle);
+        if (!isWidgetInputEnabled(widget)) {
+            return;
+        }
+        if (widget != null) {
+            float scrollDirection = mSettings.getScrollDirection() == 0 ? 1.0f : -1.0f;
+            MotionEventGenerator.dispatchScroll(widget, aDevice, aX * scrollDirection, aY * scrollDirection);
+        } else {
+            Log.e(LOGTAG, "Failed to find widget for scroll event: " + aHandle);
+        }
+    }
+
+    @Override
+    public void onUpdatePlacements(@Nullable PlacementDeltaEncoder.Packet aPacket, boolean aUpdateVisibleWidgets) {
+        if (aPacket != null) {
+            mRenderQueue.queue(mUpdateWidgets, aPacket);
+        }
+        if (aUpdateVisibleWidgets) {
+            mRenderQueue.queue(mUpdateVisibleWidgets);
+        }
+    }
+
+    // Called on the render thread.
+    private void updateWidgets(@NonNull PlacementDeltaEncoder.Packet aPacket) {
+        if (mPlacementsRejected && !aPacket.isResync()) {
+            // Encoded against the rejected placements, the resync packet contains its changes.
+            aPacket.recycle();
+            return;
+        }
+        boolean applied = updateWidgetsNative(aPacket.getBuffer(), aPacket.getLength());
+        aPacket.recycle();
+        mPlacementsRejected = !applied;
+        if (!applied) {
+            // None of the packet was applied, but the encoder already counts it as sent.
+            mFrameScheduler.onPlacementsRejected();
+        }
+    }
+
+    @Override
+    public void onResendPlacements() {
+        Log.e(LOGTAG, "Placement update rejected, sending all the widget placements again");
+        for (Widget widget: mWidgets.values()) {
+            mFrameScheduler.scheduleUpdate(widget.getHandle(), widget.getPlacement());
+        }
     }
 
     @Keep
@@ -902,7 +1001,17 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     @Keep
     @SuppressWarnings({"UnusedDeclaration"})
     void handleAudioPose(float qx, float qy, float qz, float qw, float px, float py, float pz) {
+        // Called at the end of every frame, the first call means the first frame has been rendered.
+        if (!mFirstFrameRendered) {
+            mFirstFrameRendered = true;
+            runOnUiThread(() -> {
+                ((VRBrowserApplication)getApplication()).getStartupGraph().startDeferred();
+                mStartupGraph.startDeferred();
+            });
+        }
         mAudioEngine.setPose(qx, qy, qz, qw, px, py, pz);
+        mFrameScheduler.onFrame();
+        mRenderQueue.onFrame();
 
         // https://developers.google.com/vr/reference/android/com/google/vr/sdk/audio/GvrAudioEngine.html#resume()
         // The initialize method must be called from the main thread at a regular rate.
@@ -1019,7 +1128,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
                 ex.printStackTrace();
             }
             if (aNativeCallback != 0) {
-                queueRunnable(() -> runCallbackNative(aNativeCallback));
+                mRenderQueue.queue(mRunCallback, aNativeCallback);
             }
         });
     }
@@ -1173,15 +1282,14 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         ((View)aWidget).setVisibility(aWidget.getPlacement().visible ? View.VISIBLE : View.GONE);
         final int handle = aWidget.getHandle();
         final WidgetPlacement clone = aWidget.getPlacement().clone();
-        queueRunnable(() -> addWidgetNative(handle, clone));
+        mFrameScheduler.resetWidget(handle);
+        mRenderQueue.queue(() -> addWidgetNative(handle, clone));
         updateActiveDialog(aWidget);
     }
 
     @Override
     public void updateWidget(final Widget aWidget) {
-        final int handle = aWidget.getHandle();
-        final WidgetPlacement clone = aWidget.getPlacement().clone();
-        queueRunnable(() -> updateWidgetNative(handle, clone));
+        mFrameScheduler.scheduleUpdate(aWidget.getHandle(), aWidget.getPlacement());
 
         final int textureWidth = aWidget.getPlacement().textureWidth();
         final int textureHeight = aWidget.getPlacement().textureHeight();
@@ -1219,12 +1327,18 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         updateActiveDialog(aWidget);
     }
 
+    @Override
+    public WidgetFrameScheduler getFrameScheduler() {
+        return mFrameScheduler;
+    }
+
     @Override
     public void removeWidget(final Widget aWidget) {
         mWidgets.remove(aWidget.getHandle());
         mWidgetContainer.removeView((View) aWidget);
         aWidget.setFirstPaintReady(false);
-        queueRunnable(() -> removeWidgetNative(aWidget.getHandle()));
+        mFrameScheduler.resetWidget(aWidget.getHandle());
+        mRenderQueue.queue(mRemoveWidget, aWidget.getHandle());
         if (aWidget == mActiveDialog) {
             mActiveDialog = null;
         }
@@ -1232,29 +1346,33 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     public void updateVisibleWidgets() {
-        queueRunnable(this::updateVisibleWidgetsNative);
+        mFrameScheduler.scheduleVisibleWidgetsUpdate();
     }
 
     @Override
     public void startWidgetResize(final Widget aWidget, float aMaxWidth, float aMaxHeight, float minWidth, float minHeight) {
         mWindows.enterResizeMode();
-        queueRunnable(() -> startWidgetResizeNative(aWidget.getHandle(), aMaxWidth, aMaxHeight, minWidth, minHeight));
+        mFrameScheduler.flushUpdates();
+        mRenderQueue.queue(() -> startWidgetResizeNative(aWidget.getHandle(), aMaxWidth, aMaxHeight, minWidth, minHeight));
     }
 
     @Override
     public void finishWidgetResize(final Widget aWidget) {
         mWindows.exitResizeMode();
-        queueRunnable(() -> finishWidgetResizeNative(aWidget.getHandle()));
+        mFrameScheduler.flushUpdates();
+        mRenderQueue.queue(mFinishWidgetResize, aWidget.getHandle());
     }
 
     @Override
     public void startWidgetMove(final Widget aWidget, @WidgetMoveBehaviourFlags int aMoveBehaviour) {
-        queueRunnable(() -> startWidgetMoveNative(aWidget.getHandle(), aMoveBehaviour));
+        mFrameScheduler.flushUpdates();
+        mRenderQueue.queue(() -> startWidgetMoveNative(aWidget.getHandle(), aMoveBehaviour));
     }
 
     @Override
     public void finishWidgetMove() {
-        queueRunnable(() -> finishWidgetMoveNative());
+        mFrameScheduler.flushUpdates();
+        mRenderQueue.queue(mFinishWidgetMove);
     }
 
     @Override
@@ -1330,13 +1448,13 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     public void setIsServoSession(boolean aIsServo) {
-      queueRunnable(() -> setIsServo(aIsServo));
+      mRenderQueue.queue(mSetIsServo, aIsServo);
     }
 
     @Override
     public void pushWorldBrightness(Object aKey, float aBrightness) {
         if (mCurrentBrightness.second != aBrightness) {
-            queueRunnable(() -> setWorldBrightnessNative(aBrightness));
+            mRenderQueue.queue(mSetWorldBrightness, aBrightness);
         }
         mBrightnessQueue.add(mCurrentBrightness);
         mCurrentBrightness = Pair.create(aKey, aBrightness);
@@ -1347,7 +1465,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         if (mCurrentBrightness.first == aKey) {
             if (mCurrentBrightness.second != aBrightness) {
                 mCurrentBrightness = Pair.create(aKey, aBrightness);
-                queueRunnable(() -> setWorldBrightnessNative(aBrightness));
+                mRenderQueue.queue(mSetWorldBrightness, aBrightness);
             }
         } else {
             for (int i = mBrightnessQueue.size() - 1; i >= 0; --i) {
@@ -1368,7 +1486,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             float brightness = mCurrentBrightness.second;
             mCurrentBrightness = mBrightnessQueue.removeLast();
             if (mCurrentBrightness.second != brightness) {
-                queueRunnable(() -> setWorldBrightnessNative(mCurrentBrightness.second));
+                mRenderQueue.queue(mSetWorldBrightness, mCurrentBrightness.second);
             }
 
             return;
@@ -1390,7 +1508,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     public void setControllersVisible(final boolean aVisible) {
-        queueRunnable(() -> setControllersVisibleNative(aVisible));
+        mRenderQueue.queue(mSetControllersVisible, aVisible);
     }
 
     @Override
@@ -1405,18 +1523,18 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     public void updateEnvironment() {
-        queueRunnable(() -> updateEnvironmentNative());
+        mRenderQueue.queue(mUpdateEnvironment);
     }
 
     @Override
     public void updateFoveatedLevel() {
         final int appLevel = SettingsStore.getInstance(this).getFoveatedLevelApp();
-        queueRunnable(() -> updateFoveatedLevelNative(appLevel));
+        mRenderQueue.queue(mUpdateFoveatedLevel, appLevel);
     }
 
     @Override
     public void updatePointerColor() {
-        queueRunnable(() -> updatePointerColorNative());
+        mRenderQueue.queue(mUpdatePointerColor);
     }
 
     @Override
@@ -1447,17 +1565,17 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     public void showVRVideo(final int aWindowHandle, final @VideoProjectionMenuWidget.VideoProjectionFlags int aVideoProjection) {
-        queueRunnable(() -> showVRVideoNative(aWindowHandle, aVideoProjection));
+        mRenderQueue.queue(() -> showVRVideoNative(aWindowHandle, aVideoProjection));
     }
 
     @Override
     public void hideVRVideo() {
-        queueRunnable(this::hideVRVideoNative);
+        mRenderQueue.queue(mHideVRVideo);
     }
 
     @Override
     public void resetUIYaw() {
-        queueRunnable(this::resetUIYawNative);
+        mRenderQueue.queue(mResetUIYaw);
     }
 
     @Override
@@ -1466,7 +1584,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             return;
         }
         mCurrentCylinderDensity = aDensity;
-        queueRunnable(() -> setCylinderDensityNative(aDensity));
+        mRenderQueue.queue(mSetCylinderDensity, aDensity);
         if (mWindows != null) {
             mWindows.updateCurvedMode(false);
         }
@@ -1522,7 +1640,8 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     public void saveState() {
-        mWindows.saveState();
+        // Only used before restarting the app, the state must be on disk before the process ends.
+        mWindows.saveStateAndFlush();
     }
 
     @Override
@@ -1533,7 +1652,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     }
 
     private native void addWidgetNative(int aHandle, WidgetPlacement aPlacement);
-    private native void updateWidgetNative(int aHandle, WidgetPlacement aPlacement);
+    private native boolean updateWidgetsNative(ByteBuffer aPlacements, int aLength);
     private native void updateVisibleWidgetsNative();
     private native void removeWidgetNative(int aHandle);
     private native void startWidgetResizeNative(int aHandle, float maxWidth, float maxHeight, float minWidth, float minHeight);
@@ -8,37 +8,54 @@ package org.mozilla.vrbrowser;
 import android.app.Application;
 import android.content.Context;
 import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
 
 import org.mozilla.vrbrowser.browser.Accounts;
 import org.mozilla.vrbrowser.browser.Places;
 import org.mozilla.vrbrowser.browser.Services;
+import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.db.AppDatabase;
 import org.mozilla.vrbrowser.db.DataRepository;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
 import org.mozilla.vrbrowser.telemetry.TelemetryWrapper;
 import org.mozilla.vrbrowser.utils.BitmapCache;
 import org.mozilla.vrbrowser.utils.LocaleUtils;
+import org.mozilla.vrbrowser.utils.StartupGraph;
+import org.mozilla.vrbrowser.utils.StartupGraph.Affinity;
 
 public class VRBrowserApplication extends Application {
 
+    // Deferred startup components run at the latest after this delay, even if no frame is rendered.
+    private static final long DEFERRED_STARTUP_TIMEOUT = 5000;
+
     private AppExecutors mAppExecutors;
     private BitmapCache mBitmapCache;
     private Services mServices;
     private Places mPlaces;
     private Accounts mAccounts;
+    private StartupGraph mStartupGraph;
 
     @Override
     public void onCreate() {
         super.onCreate();
 
         mAppExecutors = new AppExecutors();
-        mPlaces = new Places(this);
-        mBitmapCache = new BitmapCache(this, mAppExecutors.diskIO(), mAppExecutors.mainThread());
-        mServices = new Services(this, mPlaces);
-        mAccounts = new Accounts(this);
-
-        TelemetryWrapper.init(this);
-        GleanMetricsService.init(this);
+        mStartupGraph = new StartupGraph(mAppExecutors.mainThread());
+        mStartupGraph
+                // Created first so the background components don't race to create the singleton.
+                .add("settings", Affinity.MAIN, () -> SettingsStore.getInstance(this))
+                .add("places", Affinity.BACKGROUND, () -> mPlaces = new Places(this))
+                .add("telemetry", Affinity.BACKGROUND, () -> TelemetryWrapper.init(this), "settings")
+                .add("bitmap-cache", Affinity.MAIN, () -> mBitmapCache = new BitmapCache(this, mAppExecutors.diskIO(), mAppExecutors.mainThread()))
+                .add("services", Affinity.MAIN, () -> mServices = new Services(this, mPlaces), "places")
+                .add("accounts", Affinity.MAIN, () -> mAccounts = new Accounts(this), "services")
+                .addDeferred("glean", Affinity.MAIN, () -> GleanMetricsService.init(this), "settings")
+                .addDeferred("sync", Affinity.MAIN, () -> mServices.initAccountManager(), "accounts");
+        mStartupGraph.run();
+
+        // The process may have been started without the activity, e.g. by a sync worker.
+        new Handler(Looper.getMainLooper()).postDelayed(mStartupGraph::startDeferred, DEFERRED_STARTUP_TIMEOUT);
     }
 
     @Override
@@ -81,4 +98,8 @@ public class VRBrowserApplication extends Application {
     public Accounts getAccounts() {
         return mAccounts;
     }
+
+    public StartupGraph getStartupGraph() {
+        return mStartupGraph;
+    }
 }
@@ -0,0 +1,130 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.browser
+
+import mozilla.components.concept.storage.BookmarkNode
+import mozilla.components.concept.storage.BookmarkNodeType
+
+/**
+ * In-memory index of the bookmarks loaded so far. Folder contents are only added when a folder
+ * is loaded, and bookmark urls only when they have been looked up, so every answer of the index
+ * is complete for what it knows. Nodes are stored without their children, the folders contents
+ * are kept in the parent to children map.
+ */
+class BookmarkIndex {
+
+    companion object {
+        private const val MAX_URL_ENTRIES = 1000
+    }
+
+    private val nodes = HashMap<String, BookmarkNode>()
+    private val children = HashMap<String, MutableList<String>>()
+    // url -> guids of the bookmarks with that url, an empty set means the url is not bookmarked.
+    private val urls = object : LinkedHashMap<String, MutableSet<String>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, MutableSet<String>>?): Boolean {
+            return size > MAX_URL_ENTRIES
+        }
+    }
+
+    /**
+     * Incremented on every change, so results fetched from storage before a change are not cached.
+     */
+    @Volatile
+    var version = 0
+        private set
+
+    /**
+     * @return the children of the folder, or null if the folder has not been loaded.
+     */
+    @Synchronized
+    fun getChildren(parentGuid: String): List<BookmarkNode>? {
+        return children[parentGuid]?.mapNotNull { nodes[it] }
+    }
+
+    @Synchronized
+    fun putChildren(parentGuid: String, folderChildren: List<BookmarkNode>, fetchVersion: Int) {
+        if (fetchVersion != version) {
+            return
+        }
+        val previous = children[parentGuid]
+        val current = folderChildren.mapTo(ArrayList()) {
+            nodes[it.guid] = it.copy(children = null)
+            it.guid
+        }
+        children[parentGuid] = current
+        previous?.filterNot { current.contains(it) }?.forEach { forget(it) }
+    }
+
+    /**
+     * @return whether the url is bookmarked, or null if it is unknown.
+     */
+    @Synchronized
+    fun isBookmarked(url: String): Boolean? {
+        return urls[url]?.isNotEmpty()
+    }
+
+    @Synchronized
+    fun putUrl(url: String, guids: Collection<String>, fetchVersion: Int) {
+        if (fetchVersion == version) {
+            urls[url] = HashSet(guids)
+        }
+    }
+
+    @Synchronized
+    fun add(node: BookmarkNode) {
+        version++
+        val parentGuid = node.parentGuid
+        if (parentGuid != null) {
+            children[parentGuid]?.let { siblings ->
+                nodes[node.guid] = node.copy(children = null)
+                val position = node.position
+                if (position != null && position < siblings.size) {
+                    siblings.add(position, node.guid)
+                } else {
+                    siblings.add(node.guid)
+                }
+            }
+        }
+        // Unknown urls stay unknown, a partial entry would answer false once this bookmark is removed
+        // even if the url is bookmarked somewhere else.
+        node.url?.let { urls[it]?.add(node.guid) }
+    }
+
+    @Synchronized
+    fun remove(guid: String) {
+        version++
+        val node = nodes[guid]
+        val parentGuid = node?.parentGuid
+        if (parentGuid != null) {
+            children[parentGuid]?.remove(guid)
+        } else {
+            // The node was not loaded, look for it in all the loaded folders.
+            children.values.forEach { it.remove(guid) }
+        }
+        val url = node?.url
+        if (node?.type == BookmarkNodeType.ITEM && url != null) {
+            urls[url]?.remove(guid)
+        } else {
+            // Folders may contain bookmarks that were never loaded, their urls need to be looked up again.
+            urls.clear()
+        }
+        forget(guid)
+    }
+
+    // Drops the node and the loaded contents below it.
+    private fun forget(guid: String) {
+        nodes.remove(guid)
+        children.remove(guid)?.forEach { forget(it) }
+    }
+
+    @Synchronized
+    fun clear() {
+        version++
+        nodes.clear()
+        children.clear()
+        urls.clear()
+    }
+}
@@ -60,6 +60,7 @@ class BookmarksStore constructor(val context: Context) {
 
     private val listeners = ArrayList<BookmarkListener>()
     private var storage = (context.applicationContext as VRBrowserApplication).places.bookmarks
+    private val index = BookmarkIndex()
     private val titles = rootTitles(context)
     private val accountManager = (context.applicationContext as VRBrowserApplication).services.accountManager
 
@@ -69,6 +70,7 @@ class BookmarksStore constructor(val context: Context) {
 
         override fun onIdle() {
             Logger(LOGTAG).debug("Detected that sync is finished, notifying listeners")
+            index.clear()
             notifyListeners()
         }
 
@@ -102,6 +104,7 @@ class BookmarksStore constructor(val context: Context) {
 
     internal fun updateStorage() {
         storage = (context.applicationContext as VRBrowserApplication).places.bookmarks
+        index.clear()
         notifyListeners()
     }
 
@@ -139,7 +142,16 @@ class BookmarksStore constructor(val context: Context) {
     }
 
     fun addBookmark(aURL: String, aTitle: String) = GlobalScope.future {
-        storage.addItem(BookmarkRoot.Mobile.id, aURL, aTitle, null)
+        val guid = storage.addItem(BookmarkRoot.Mobile.id, aURL, aTitle, null)
+        index.add(BookmarkNode(
+                BookmarkNodeType.ITEM,
+                guid,
+                BookmarkRoot.Mobile.id,
+                title = aTitle,
+                children = null,
+                position = null,
+                url = aURL
+        ))
         notifyAddedListeners()
     }
 
@@ -147,17 +159,29 @@ class BookmarksStore constructor(val context: Context) {
         val bookmark = getBookmarkByUrl(aURL)
         if (bookmark != null) {
             storage.deleteNode(bookmark.guid)
+            index.remove(bookmark.guid)
         }
         notifyListeners()
     }
 
     fun deleteBookmarkById(aId: String) = GlobalScope.future {
         storage.deleteNode(aId)
+        index.remove(aId)
         notifyListeners()
     }
 
+    /**
+     * Answered from the bookmarks index when the url has been looked up before.
+     */
     fun isBookmarked(aURL: String): CompletableFuture<Boolean> = GlobalScope.future {
-        getBookmarkByUrl(aURL) != null
+        index.isBookmarked(aURL) ?: run {
+            val version = index.version
+            val guids = storage.getBookmarksWithUrl(aURL)
+                    ?.filter { it.url.equals(aURL) }
+                    ?.map { it.guid } ?: emptyList()
+            index.putUrl(aURL, guids, version)
+            guids.isNotEmpty()
+        }
     }
 
     fun getTree(guid: String, recursive: Boolean): CompletableFuture<List<BookmarkNode>?> = GlobalScope.future {
@@ -165,6 +189,33 @@ class BookmarksStore constructor(val context: Context) {
                 ?.map { it.copy(title = titles[it.guid]) }
     }
 
+    /**
+     * Returns the children of the folder. Only the folders in openFolders have their children
+     * set, so only those folders are loaded. Loaded folders are served from the bookmarks index.
+     */
+    fun getTree(guid: String, openFolders: Collection<String>): CompletableFuture<List<BookmarkNode>?> = GlobalScope.future {
+        loadTree(guid, openFolders)?.map { it.copy(title = titles[it.guid]) }
+    }
+
+    private suspend fun loadTree(guid: String, openFolders: Collection<String>): List<BookmarkNode>? {
+        return loadChildren(guid)?.map {
+            if (it.type == BookmarkNodeType.FOLDER && openFolders.contains(it.guid)) {
+                it.copy(children = loadTree(it.guid, openFolders) ?: emptyList())
+            } else {
+                it
+            }
+        }
+    }
+
+    private suspend fun loadChildren(guid: String): List<BookmarkNode>? {
+        index.getChildren(guid)?.let { return it }
+
+        val version = index.version
+        val children = storage.getTree(guid, false)?.children?.map { it.copy(children = null) } ?: return null
+        index.putChildren(guid, children, version)
+        return children
+    }
+
     fun searchBookmarks(query: String, limit: Int): CompletableFuture<List<BookmarkNode>> = GlobalScope.future {
         storage.searchBookmarks(query, limit)
     }
@@ -8,9 +8,14 @@ package org.mozilla.vrbrowser.browser
 import android.content.Context
 import android.os.Handler
 import android.os.Looper
+import android.os.SystemClock
 import androidx.lifecycle.ProcessLifecycleOwner
 import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.future.future
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import mozilla.components.concept.storage.*
 import mozilla.components.service.fxa.sync.SyncStatusObserver
 import mozilla.components.support.base.log.logger.Logger
@@ -22,9 +27,42 @@ class HistoryStore constructor(val context: Context) {
 
     private val LOGTAG = SystemUtils.createLogtag(HistoryStore::class.java)
 
+    companion object {
+        // Visits and observations are written in batches at most this often.
+        private const val FLUSH_INTERVAL_MS = 1000L
+        // Flush right away when this many writes are queued.
+        private const val MAX_PENDING_WRITES = 50
+    }
+
     private var listeners = ArrayList<HistoryListener>()
     private var storage = (context.applicationContext as VRBrowserApplication).places.history
 
+    // Write-behind queue, guarded by itself.
+    private val pendingVisits = ArrayList<Pair<String, PageVisit>>()
+    private val pendingObservations = LinkedHashMap<String, PageObservation>()
+    private var pendingResult = CompletableFuture<Unit>()
+    private var flushScheduled = false
+    private val flushMutex = Mutex()
+
+    // Listener notifications posted to the main thread, guarded by itself.
+    private val changedUrls = HashSet<String>()
+    private var fullUpdate = false
+    private var notificationPosted = false
+    private val mainHandler = Handler(Looper.getMainLooper())
+
+    /**
+     * Number of visits and observations waiting to be written.
+     */
+    val queueDepth: Int
+        get() = synchronized(pendingVisits) { pendingVisits.size + pendingObservations.size }
+
+    /**
+     * Time spent writing the last batch, in milliseconds.
+     */
+    @Volatile
+    var lastFlushLatencyMs: Long = 0
+        private set
+
     // Bookmarks might have changed during sync, so notify our listeners.
     private val syncStatusObserver = object : SyncStatusObserver {
         override fun onStarted() {}
@@ -44,7 +82,11 @@ class HistoryStore constructor(val context: Context) {
     }
 
     interface HistoryListener {
-        fun onHistoryUpdated()
+        /**
+         * @param changedUrls urls whose visits changed since the last notification,
+         * or null if the whole history may have changed.
+         */
+        fun onHistoryUpdated(changedUrls: Set<String>?)
     }
 
     fun addListener(aListener: HistoryListener) {
@@ -70,8 +112,13 @@ class HistoryStore constructor(val context: Context) {
         storage.getVisited()
     }
 
-    fun getDetailedHistory(): CompletableFuture<List<VisitInfo>?> = GlobalScope.future {
-        storage.getDetailedVisits(0, excludeTypes = listOf(
+    fun getDetailedHistory(): CompletableFuture<List<VisitInfo>?> = getDetailedHistorySince(0)
+
+    /**
+     * @param since visits older than this timestamp, in milliseconds, are not returned.
+     */
+    fun getDetailedHistorySince(since: Long): CompletableFuture<List<VisitInfo>?> = GlobalScope.future {
+        storage.getDetailedVisits(since, excludeTypes = listOf(
                 VisitType.NOT_A_VISIT,
                 VisitType.DOWNLOAD,
                 VisitType.REDIRECT_TEMPORARY,
@@ -92,37 +139,111 @@ class HistoryStore constructor(val context: Context) {
                 VisitType.REDIRECT_PERMANENT))
     }
 
-    fun recordVisit(aURL: String, pageVisit: PageVisit) = GlobalScope.future {
-        storage.recordVisit(aURL, pageVisit)
-        notifyListeners()
+    /**
+     * Queues a visit. The returned future completes once the batch containing it is written.
+     */
+    fun recordVisit(aURL: String, pageVisit: PageVisit): CompletableFuture<Unit> = enqueue {
+        pendingVisits.add(Pair(aURL, pageVisit))
     }
 
-    fun recordObservation(aURL: String, observation: PageObservation) = GlobalScope.future {
-        storage.recordObservation(aURL, observation)
-        notifyListeners()
+    /**
+     * Queues an observation. Only the latest pending observation of each url is written.
+     */
+    fun recordObservation(aURL: String, observation: PageObservation): CompletableFuture<Unit> = enqueue {
+        pendingObservations[aURL] = observation
+    }
+
+    private fun enqueue(write: () -> Unit): CompletableFuture<Unit> {
+        synchronized(pendingVisits) {
+            write()
+            val result = pendingResult
+            if (pendingVisits.size + pendingObservations.size >= MAX_PENDING_WRITES) {
+                GlobalScope.launch { flushPendingWrites() }
+
+            } else if (!flushScheduled) {
+                flushScheduled = true
+                GlobalScope.launch {
+                    delay(FLUSH_INTERVAL_MS)
+                    flushPendingWrites()
+                }
+            }
+            return result
+        }
+    }
+
+    private suspend fun flushPendingWrites() = flushMutex.withLock {
+        val visits: List<Pair<String, PageVisit>>
+        val observations: Map<String, PageObservation>
+        val result: CompletableFuture<Unit>
+        synchronized(pendingVisits) {
+            flushScheduled = false
+            if (pendingVisits.isEmpty() && pendingObservations.isEmpty()) {
+                return@withLock
+            }
+            visits = ArrayList(pendingVisits)
+            observations = LinkedHashMap(pendingObservations)
+            result = pendingResult
+            pendingVisits.clear()
+            pendingObservations.clear()
+            pendingResult = CompletableFuture()
+        }
+
+        val start = SystemClock.elapsedRealtime()
+        val urls = HashSet<String>()
+        try {
+            // Visits go first so the observed places already exist.
+            for ((url, visit) in visits) {
+                storage.recordVisit(url, visit)
+                urls.add(url)
+            }
+            for ((url, observation) in observations) {
+                storage.recordObservation(url, observation)
+                urls.add(url)
+            }
+            result.complete(Unit)
+
+        } catch (e: Exception) {
+            Logger(LOGTAG).error("Error writing history batch", e)
+            result.completeExceptionally(e)
+        }
+        lastFlushLatencyMs = SystemClock.elapsedRealtime() - start
+        Logger(LOGTAG).debug("Wrote ${visits.size} visits and ${observations.size} observations in ${lastFlushLatencyMs}ms")
+        notifyListeners(urls)
+    }
+
+    /**
+     * Writes the queued visits and observations now.
+     */
+    fun flush(): CompletableFuture<Unit> = GlobalScope.future {
+        flushPendingWrites()
     }
 
     fun deleteHistory(aUrl: String, timestamp: Long) = GlobalScope.future {
+        flushPendingWrites()
         storage.deleteVisit(aUrl, timestamp)
-        notifyListeners()
+        notifyListeners(setOf(aUrl))
     }
 
     fun deleteVisitsFor(aUrl: String) = GlobalScope.future {
+        flushPendingWrites()
         storage.deleteVisitsFor(aUrl)
-        notifyListeners()
+        notifyListeners(setOf(aUrl))
     }
 
     fun deleteEverything() = GlobalScope.future {
+        flushPendingWrites()
         storage.deleteEverything()
         notifyListeners()
     }
 
     fun deleteVisitsSince(since: Long) = GlobalScope.future {
+        flushPendingWrites()
         storage.deleteVisitsSince(since)
         notifyListeners()
     }
 
     fun deleteVisitsBetween(startTime: Long, endTime: Long) = GlobalScope.future {
+        flushPendingWrites()
         storage.deleteVisitsBetween(startTime, endTime)
         notifyListeners()
     }
@@ -140,13 +261,33 @@ class HistoryStore constructor(val context: Context) {
         storage.getSuggestions(query, limit)
     }
 
-    private fun notifyListeners() {
-        if (listeners.size > 0) {
-            val listenersCopy = ArrayList(listeners)
-            Handler(Looper.getMainLooper()).post {
-                for (listener in listenersCopy) {
-                    listener.onHistoryUpdated()
-                }
+    /**
+     * Notifications are coalesced until the main thread handles them.
+     * @param urls the changed urls, or null if the whole history may have changed.
+     */
+    private fun notifyListeners(urls: Set<String>? = null) {
+        synchronized(changedUrls) {
+            if (urls == null) {
+                fullUpdate = true
+            } else {
+                changedUrls.addAll(urls)
+            }
+            if (notificationPosted) {
+                return
+            }
+            notificationPosted = true
+        }
+
+        mainHandler.post {
+            val update: Set<String>?
+            synchronized(changedUrls) {
+                update = if (fullUpdate) null else HashSet(changedUrls)
+                changedUrls.clear()
+                fullUpdate = false
+                notificationPosted = false
+            }
+            for (listener in ArrayList(listeners)) {
+                listener.onHistoryUpdated(update)
             }
         }
     }
@@ -114,7 +114,8 @@ class Services(val context: Context, places: Places): GeckoSession.NavigationDel
         it.registerForDeviceEvents(deviceEventObserver, ProcessLifecycleOwner.get(), true)
     }
 
-    init {
+    // Restores the account and starts syncing, it's deferred until the first frame is rendered.
+    fun initAccountManager() {
         CoroutineScope(Dispatchers.Main).launch {
             accountManager.initAsync().await()
         }
@@ -136,6 +137,7 @@ class Services(val context: Context, places: Places): GeckoSession.NavigationDel
             return GeckoResult.DENY
         }
 
-        return GeckoResult.ALLOW
+        // Not interested in other loads.
+        return null
     }
 }
\ No newline at end of file
@@ -1,37 +1,57 @@
 package org.mozilla.vrbrowser.browser;
 
-import android.app.Activity;
-import android.text.TextUtils;
-import android.util.ArrayMap;
+import android.content.Context;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 
 public class UserAgentOverride {
     private final static String LOGTAG = SystemUtils.createLogtag(UserAgentOverride.class);
-    private static final String NO_OVERRIDE_FOUND = "NO OVERRIDE USER AGENT FOUND";
-    private ArrayMap<String, String> mOverrideMap;
-    private ArrayMap<String, String> mOverrideCache;
+    private static final String HASH_ALGORITHM = "SHA-512";
+    private static final int HASH_LENGTH = 64;
+    private static final int MAX_HOST_LENGTH = 253;
+    // Must be a power of two.
+    private static final int CACHE_SIZE = 256;
+
+    // Open addressing hash table of the SHA-512 domain hashes, indexed by the first bytes of each hash.
+    private byte[][] mHashes;
+    private String[] mOverrides;
+    private int mTableMask;
+    // Direct mapped cache of the lowercased hosts looked up and their override, if any. Hits are
+    // compared against the host bytes so they don't allocate.
+    private final byte[][] mCachedHosts = new byte[CACHE_SIZE][];
+    private final String[] mCachedOverrides = new String[CACHE_SIZE];
+    private MessageDigest mDigest;
+    private final byte[] mDigestBuffer = new byte[HASH_LENGTH];
+    private final byte[] mHostBuffer = new byte[MAX_HOST_LENGTH];
+
     public UserAgentOverride() {
-        mOverrideMap = new ArrayMap<>();
-        mOverrideCache = new ArrayMap<>();
+        buildTable(new ArrayList<>(), new ArrayList<>());
+        try {
+            mDigest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(LOGTAG, "Error while trying to create the domain digest: " + e.getMessage());
+        }
     }
 
-    public void loadOverridesFromAssets(Activity aActivity, String aFileName) {
+    public void loadOverridesFromAssets(Context aContext, String aFileName) {
         String json = null;
-        try (InputStream is = aActivity.getAssets().open(aFileName)) {
+        try (InputStream is = aContext.getAssets().open(aFileName)) {
             int size = is.available();
             byte[] buffer = new byte[size];
             is.read(buffer);
@@ -43,100 +63,217 @@ public class UserAgentOverride {
         }
     }
 
-    public String lookupOverride(final String aUri) {
-        if (aUri == null) {
+    public synchronized String lookupOverride(final String aUri) {
+        if (aUri == null || mDigest == null) {
             return null;
         }
-        Log.d(LOGTAG, "lookupOverride for: " + aUri);
-        URI uri;
-        try {
-            uri = new URI(aUri);
-        } catch (URISyntaxException e) {
-            Log.d(LOGTAG, "Error parsing URL: " + aUri + " " + e.getMessage());
+
+        int hostStart = findHostStart(aUri);
+        if (hostStart < 0) {
             return null;
         }
-        String fullDomain = uri.getHost();
-        if (fullDomain == null) {
+        int hostEnd = findHostEnd(aUri, hostStart);
+        int hostLength = hostEnd - hostStart;
+        if (hostLength <= 0 || hostLength > MAX_HOST_LENGTH) {
             return null;
         }
 
-        fullDomain = fullDomain.toLowerCase();
+        // Lowercase the host into the reusable buffer. Non ASCII hosts are not in the override list.
+        int hostHash = 0;
+        for (int i = 0; i < hostLength; ++i) {
+            char c = aUri.charAt(hostStart + i);
+            if (c > 0x7f) {
+                return null;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            mHostBuffer[i] = (byte) c;
+            hostHash = 31 * hostHash + c;
+        }
 
-        String override = mOverrideCache.get(fullDomain);
+        int cacheSlot = (hostHash ^ (hostHash >>> 16)) & (CACHE_SIZE - 1);
+        if (isCachedHost(mCachedHosts[cacheSlot], hostLength)) {
+            return mCachedOverrides[cacheSlot];
+        }
 
-        if (override != null) {
-            Log.d(LOGTAG, "Found override: " + override);
-            return override.equals(NO_OVERRIDE_FOUND) ? null : override;
+        String override = null;
+        // Check the host and every parent domain: www.example.com, example.com, com
+        int suffixStart = 0;
+        while (suffixStart < hostLength) {
+            String found = lookupHash(suffixStart, hostLength - suffixStart);
+            if (found != null) {
+                override = found;
+                break;
+            }
+            while (suffixStart < hostLength && mHostBuffer[suffixStart] != '.') {
+                suffixStart++;
+            }
+            suffixStart++;
         }
 
-        List<String> domains = Arrays.asList(fullDomain.split("\\."));
-        final int domainCount = domains.size();
-        String[] checkedDomains = new String[domainCount];
+        mCachedHosts[cacheSlot] = Arrays.copyOf(mHostBuffer, hostLength);
+        mCachedOverrides[cacheSlot] = override;
+        return override;
+    }
 
-        for (int ix = 0; ix < domainCount; ix++) {
-            String domain = TextUtils.join(".", domains.subList(ix, domainCount));
-            checkedDomains[ix] = domain;
-            override = mOverrideCache.get(domain);
-            if (override != null) {
-                Log.d(LOGTAG, "found cached override: " + override);
-                addToCache(checkedDomains, override);
-                return override.equals(NO_OVERRIDE_FOUND) ? null : override;
+    private boolean isCachedHost(@Nullable byte[] aCachedHost, int aHostLength) {
+        if (aCachedHost == null || aCachedHost.length != aHostLength) {
+            return false;
+        }
+        for (int i = 0; i < aHostLength; ++i) {
+            if (aCachedHost[i] != mHostBuffer[i]) {
+                return false;
             }
-            String domainHash = hashDomain(domain);
-            if (domainHash == null) {
-                Log.d(LOGTAG, "Failed to hash domain: " + domain);
-                return null;
+        }
+        return true;
+    }
+
+    // Returns the index after "scheme://" or -1 if the URI has no authority.
+    private static int findHostStart(@NonNull String aUri) {
+        int length = aUri.length();
+        int index = 0;
+        while (index < length) {
+            char c = aUri.charAt(index);
+            if (c == ':') {
+                break;
             }
-            Log.d(LOGTAG, "hash: " + domainHash);
-            override = mOverrideMap.get(domainHash);
-            if (override != null) {
-                Log.d(LOGTAG, "found override from hash: " + override);
-                addToCache(checkedDomains, override);
-                return override;
+            if (c == '/' || c == '?' || c == '#') {
+                return -1;
             }
+            index++;
         }
-        addToCache(checkedDomains, NO_OVERRIDE_FOUND);
-        return null;
+        if (index + 2 >= length || aUri.charAt(index + 1) != '/' || aUri.charAt(index + 2) != '/') {
+            return -1;
+        }
+        int authorityStart = index + 3;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < length) {
+            char c = aUri.charAt(authorityEnd);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            authorityEnd++;
+        }
+        // Skip the user info.
+        int hostStart = authorityStart;
+        for (int i = authorityStart; i < authorityEnd; ++i) {
+            if (aUri.charAt(i) == '@') {
+                hostStart = i + 1;
+            }
+        }
+        return hostStart;
     }
 
-    private void addToCache(String[] aDomains, String aOverride) {
-        for (String domain: aDomains) {
-            if (domain == null) {
-                Log.d(LOGTAG, "Found null domain in checked list");
-                continue;
-            } else {
-                Log.d(LOGTAG, domain + " override: " + aOverride);
+    private static int findHostEnd(@NonNull String aUri, int aHostStart) {
+        int length = aUri.length();
+        int index = aHostStart;
+        if (index < length && aUri.charAt(index) == '[') {
+            // IPv6 literal
+            while (index < length && aUri.charAt(index) != ']') {
+                index++;
+            }
+            return Math.min(index + 1, length);
+        }
+        while (index < length) {
+            char c = aUri.charAt(index);
+            if (c == ':' || c == '/' || c == '?' || c == '#') {
+                break;
             }
-            mOverrideCache.put(domain, aOverride);
+            index++;
         }
+        return index;
     }
 
-    private String hashDomain(String aDomain) {
+    @Nullable
+    private String lookupHash(int aOffset, int aLength) {
+        mDigest.update(mHostBuffer, aOffset, aLength);
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-512");
-            byte[] digest = md.digest(aDomain.getBytes());
-            StringBuilder sb = new StringBuilder();
-            for (int value: digest) {
-                sb.append(Integer.toString((value & 0xff) + 0x100, 16).substring(1));
-            }
+            mDigest.digest(mDigestBuffer, 0, HASH_LENGTH);
+        } catch (DigestException e) {
+            Log.e(LOGTAG, "Failed to hash domain: " + e.getMessage());
+            return null;
+        }
 
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            Log.e(LOGTAG, "Error while trying to hash domain: " + e.getMessage());
+        int slot = tableIndex(mDigestBuffer);
+        while (mHashes[slot] != null) {
+            if (hashEquals(mHashes[slot], mDigestBuffer)) {
+                return mOverrides[slot];
+            }
+            slot = (slot + 1) & mTableMask;
         }
         return null;
     }
 
-    private void importJSONData(final String aData) {
+    private int tableIndex(@NonNull byte[] aHash) {
+        // SHA-512 output is uniformly distributed so the first bytes are a good table index.
+        int value = ((aHash[0] & 0xff) << 24) | ((aHash[1] & 0xff) << 16) | ((aHash[2] & 0xff) << 8) | (aHash[3] & 0xff);
+        return value & mTableMask;
+    }
+
+    private static boolean hashEquals(@NonNull byte[] aFirst, @NonNull byte[] aSecond) {
+        for (int i = 0; i < HASH_LENGTH; ++i) {
+            if (aFirst[i] != aSecond[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private static byte[] decodeHash(@NonNull String aHex) {
+        if (aHex.length() != HASH_LENGTH * 2) {
+            return null;
+        }
+        byte[] result = new byte[HASH_LENGTH];
+        for (int i = 0; i < HASH_LENGTH; ++i) {
+            int high = Character.digit(aHex.charAt(i * 2), 16);
+            int low = Character.digit(aHex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            result[i] = (byte) ((high << 4) | low);
+        }
+        return result;
+    }
+
+    private synchronized void buildTable(@NonNull ArrayList<byte[]> aHashes, @NonNull ArrayList<String> aOverrides) {
+        // Keep the load factor under 0.5 so probe sequences stay short.
+        int capacity = Integer.highestOneBit(Math.max(aHashes.size(), 1) * 4 - 1);
+        capacity = Math.max(capacity, 16);
+        mHashes = new byte[capacity][];
+        mOverrides = new String[capacity];
+        mTableMask = capacity - 1;
+        for (int i = 0; i < aHashes.size(); ++i) {
+            byte[] hash = aHashes.get(i);
+            int slot = tableIndex(hash);
+            while (mHashes[slot] != null && !hashEquals(mHashes[slot], hash)) {
+                slot = (slot + 1) & mTableMask;
+            }
+            mHashes[slot] = hash;
+            mOverrides[slot] = aOverrides.get(i);
+        }
+        Arrays.fill(mCachedHosts, null);
+        Arrays.fill(mCachedOverrides, null);
+    }
+
+    @VisibleForTesting
+    void importJSONData(final String aData) {
+        ArrayList<byte[]> hashes = new ArrayList<>();
+        ArrayList<String> overrides = new ArrayList<>();
         try {
             JSONObject json = new JSONObject(aData);
             Iterator<String> iter = json.keys();
             while (iter.hasNext()) {
                 String key = iter.next();
                 try {
-                    String value = json.getString(key);
-                    Log.d(LOGTAG, "User agent override: " + key + " -> " + value);
-                    mOverrideMap.put(key, value);
+                    byte[] hash = decodeHash(key);
+                    if (hash == null) {
+                        Log.e(LOGTAG, "Invalid UA Override hash: " + key);
+                        continue;
+                    }
+                    hashes.add(hash);
+                    overrides.add(json.getString(key));
                 } catch (JSONException e) {
                     Log.e(LOGTAG, "Failed to find UA Override while parsing file for key: " + key);
                 }
@@ -145,5 +282,7 @@ public class UserAgentOverride {
         } catch (JSONException e) {
             Log.e(LOGTAG, "Failed to import user agent override JSON data: " + e.getMessage());
         }
+        buildTable(hashes, overrides);
+        Log.d(LOGTAG, "Loaded " + hashes.size() + " user agent overrides");
     }
 }
@@ -0,0 +1,114 @@
+package org.mozilla.vrbrowser.browser.engine;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Evicts the least recently used inactive sessions first. Sessions playing media and private
+ * sessions (whose state can't be restored from disk) are given extra time before being evicted.
+ * The session limit is derived from the device RAM and reduced while the system reports memory pressure.
+ */
+public class LruSessionEvictionPolicy implements SessionEvictionPolicy {
+    private static final String LOGTAG = SystemUtils.createLogtag(LruSessionEvictionPolicy.class);
+
+    private static final int MIN_GECKO_SESSIONS = 2;
+    private static final int MAX_GECKO_SESSIONS = 10;
+    private static final long BYTES_PER_GB = 1024L * 1024L * 1024L;
+    private static final long MEDIA_PLAYING_WEIGHT_MS = 10 * 60 * 1000; // 10 minutes.
+    private static final long PRIVATE_MODE_WEIGHT_MS = 5 * 60 * 1000; // 5 minutes.
+    private static final long MEMORY_PRESSURE_DURATION_MS = 60 * 1000; // 1 minute.
+
+    private final int mMaxGeckoSessions;
+    private int mTrimLevel;
+    private long mTrimTimestamp;
+
+    public LruSessionEvictionPolicy(@NonNull Context aContext) {
+        mMaxGeckoSessions = computeMaxGeckoSessions(aContext);
+        Log.d(LOGTAG, "Max GeckoSessions: " + mMaxGeckoSessions);
+    }
+
+    private static int computeMaxGeckoSessions(@NonNull Context aContext) {
+        ActivityManager activityManager = (ActivityManager) aContext.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            return MIN_GECKO_SESSIONS;
+        }
+        ActivityManager.MemoryInfo info = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(info);
+        // A 4GB device allows 5 sessions, one more session for each additional GB.
+        int gigabytes = (int) Math.ceil((double) info.totalMem / BYTES_PER_GB);
+        int result = gigabytes + 1;
+        if (activityManager.isLowRamDevice()) {
+            result /= 2;
+        }
+        return Math.max(MIN_GECKO_SESSIONS, Math.min(MAX_GECKO_SESSIONS, result));
+    }
+
+    @Override
+    public int getMaxGeckoSessions() {
+        if (SystemClock.uptimeMillis() - mTrimTimestamp > MEMORY_PRESSURE_DURATION_MS) {
+            mTrimLevel = 0;
+        }
+        switch (mTrimLevel) {
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
+                // Only keep the active sessions alive.
+                return 0;
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
+                return Math.max(1, mMaxGeckoSessions / 2);
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE:
+                return Math.max(1, mMaxGeckoSessions - 1);
+            default:
+                return mMaxGeckoSessions;
+        }
+    }
+
+    @NonNull
+    @Override
+    public List<Session> selectSessionsToEvict(@NonNull List<Session> aCandidates, int aCount) {
+        ArrayList<Session> result = new ArrayList<>(aCandidates);
+        result.sort(Comparator.comparingLong(this::getEvictionScore));
+        if (result.size() > aCount) {
+            return result.subList(0, Math.max(0, aCount));
+        }
+        return result;
+    }
+
+    @Override
+    public void onTrimMemory(int aLevel) {
+        switch (aLevel) {
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE:
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
+                // These levels can be received in any order, keep the most severe one.
+                if (SystemClock.uptimeMillis() - mTrimTimestamp > MEMORY_PRESSURE_DURATION_MS || aLevel > mTrimLevel) {
+                    mTrimLevel = aLevel;
+                }
+                mTrimTimestamp = SystemClock.uptimeMillis();
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Lower scores are evicted first.
+    private long getEvictionScore(@NonNull Session aSession) {
+        long score = aSession.getLastUse();
+        if (aSession.isMediaPlaying()) {
+            score += MEDIA_PLAYING_WEIGHT_MS;
+        }
+        if (aSession.isPrivateMode()) {
+            score += PRIVATE_MODE_WEIGHT_MS;
+        }
+        return score;
+    }
+}
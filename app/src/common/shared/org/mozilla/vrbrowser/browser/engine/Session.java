@@ -9,6 +9,7 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.Surface;
@@ -47,10 +48,10 @@ import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Objects.requireNonNull;
 import static org.mozilla.vrbrowser.utils.ServoUtils.createServoSession;
@@ -65,6 +66,9 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     private static final String LOGTAG = SystemUtils.createLogtag(Session.class);
     private static UserAgentOverride sUserAgentOverride;
     private static final long KEEP_ALIVE_DURATION_MS = 1000; // 1 second.
+    private static final long SLOW_LOAD_REQUEST_NS = 50 * 1000000; // 50 milliseconds.
+    // Only accessed from the UI thread, where GeckoView calls the navigation delegates.
+    private static final HashMap<String, Long> sMaxLoadRequestLatency = new HashMap<>();
 
     private transient CopyOnWriteArrayList<GeckoSession.NavigationDelegate> mNavigationListeners;
     private transient CopyOnWriteArrayList<GeckoSession.ProgressDelegate> mProgressListeners;
@@ -86,6 +90,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     private transient byte[] mPrivatePage;
     private transient boolean mFirstContentfulPaint;
     private transient long mKeepAlive;
+    private transient boolean mEvicted;
 
     public interface BitmapChangedListener {
         void onBitmapChanged(Session aSession, Bitmap aBitmap);
@@ -128,9 +133,6 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
 
         mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
 
-        InternalPages.PageResources pageResources = InternalPages.PageResources.create(R.raw.private_mode, R.raw.private_style);
-        mPrivatePage = InternalPages.createAboutPage(mContext, pageResources);
-
         if (sUserAgentOverride == null) {
             sUserAgentOverride = new UserAgentOverride();
             sUserAgentOverride.loadOverridesFromAssets((Activity)mContext, mContext.getString(R.string.user_agent_override_file));
@@ -365,6 +367,12 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     private void restore() {
+        if (mEvicted) {
+            mEvicted = false;
+            SessionStore.get().onEvictedSessionRestored(this);
+        }
+        mState.loadPendingSessionState();
+
         SessionSettings settings = mState.mSettings;
         if (settings == null) {
             settings = new SessionSettings.Builder()
@@ -475,10 +483,11 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         try {
             mState.mDisplay.screenshot().aspectPreservingSize(500).capture().then(bitmap -> {
                 if (bitmap != null) {
-                    BitmapCache.getInstance(mContext).addBitmap(getId(), bitmap);
-                    for (BitmapChangedListener listener: mBitmapChangedListeners) {
-                        listener.onBitmapChanged(Session.this, bitmap);
-                    }
+                    BitmapCache.getInstance(mContext).addBitmap(getId(), bitmap).thenAccept(thumbnail -> {
+                        for (BitmapChangedListener listener: mBitmapChangedListeners) {
+                            listener.onBitmapChanged(Session.this, thumbnail);
+                        }
+                    });
                 }
                 return null;
             }).exceptionally(throwable -> {
@@ -515,10 +524,11 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         try {
             display.screenshot().aspectPreservingSize(500).capture().then(bitmap -> {
                 if (bitmap != null) {
-                    BitmapCache.getInstance(mContext).addBitmap(getId(), bitmap);
-                    for (BitmapChangedListener listener : mBitmapChangedListeners) {
-                        listener.onBitmapChanged(Session.this, bitmap);
-                    }
+                    BitmapCache.getInstance(mContext).addBitmap(getId(), bitmap).thenAccept(thumbnail -> {
+                        for (BitmapChangedListener listener : mBitmapChangedListeners) {
+                            listener.onBitmapChanged(Session.this, thumbnail);
+                        }
+                    });
                 }
                 cleanResources.run();
                 result.complete(null);
@@ -594,6 +604,18 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         return mState.mMediaElements != null && mState.mMediaElements.size() > 0;
     }
 
+    public boolean isMediaPlaying() {
+        if (mState.mMediaElements == null) {
+            return false;
+        }
+        for (Media media: mState.mMediaElements) {
+            if (media.isPlaying()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public boolean isFirstContentfulPaint() {
         return mFirstContentfulPaint;
     }
@@ -697,6 +719,11 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
 
     public void loadPrivateBrowsingPage() {
         if (mState.mSession != null) {
+            if (mPrivatePage == null) {
+                // Created on demand, restored sessions may never need it.
+                InternalPages.PageResources pageResources = InternalPages.PageResources.create(R.raw.private_mode, R.raw.private_style);
+                mPrivatePage = InternalPages.createAboutPage(mContext, pageResources);
+            }
             mState.mSession.loadData(mPrivatePage, "text/html");
         }
     }
@@ -766,6 +793,10 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         return mState.isActive();
     }
 
+    /* package */ void setEvicted(boolean aEvicted) {
+        mEvicted = aEvicted;
+    }
+
     private static final String M_PREFIX = "m.";
     private static final String MOBILE_PREFIX = "mobile.";
 
@@ -889,6 +920,12 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         }
     }
 
+    /**
+     * Navigation listeners are expected to return null when they are not interested in the
+     * request and {@link GeckoResult#ALLOW} or {@link GeckoResult#DENY} when they decide
+     * synchronously. Only the remaining results are waited for. The load is allowed when no
+     * listener has an opinion or at least one of them allows it.
+     */
     @Override
     public @Nullable GeckoResult<AllowOrDeny> onLoadRequest(@NonNull GeckoSession aSession, @NonNull LoadRequest aRequest) {
         String uri = aRequest.uri;
@@ -896,8 +933,6 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         Log.d(LOGTAG, "onLoadRequest: " + uri);
 
         if (aSession == mState.mSession) {
-            Log.d(LOGTAG, "Testing for UA override");
-
             final String userAgentOverride = sUserAgentOverride.lookupOverride(uri);
             aSession.getSettings().setUserAgentOverride(userAgentOverride);
             if (mState.mSettings != null) {
@@ -909,40 +944,93 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
             return GeckoResult.DENY;
         }
 
-        if (mNavigationListeners.size() == 0) {
+        if (mNavigationListeners.isEmpty()) {
             return GeckoResult.ALLOW;
         }
 
-        final GeckoResult<AllowOrDeny> result = new GeckoResult<>();
-        AtomicInteger count = new AtomicInteger(0);
-        AtomicBoolean allowed = new AtomicBoolean(false);
+        // About pages are always denied, listeners are only notified so they can show the matching panels.
+        final boolean aboutPage = UrlUtils.isAboutPage(uri);
+        boolean allowed = false;
+        boolean denied = false;
+        PendingLoadDecision pending = null;
         for (GeckoSession.NavigationDelegate listener: mNavigationListeners) {
+            long start = SystemClock.elapsedRealtimeNanos();
             GeckoResult<AllowOrDeny> listenerResult = listener.onLoadRequest(aSession, aRequest);
-            if (listenerResult != null) {
-                listenerResult.then(value -> {
-                    if (AllowOrDeny.ALLOW.equals(value)) {
-                        allowed.set(true);
-                    }
-                    if (count.getAndIncrement() == mNavigationListeners.size() - 1) {
-                        result.complete(allowed.get() ? AllowOrDeny.ALLOW : AllowOrDeny.DENY);
-                    }
+            recordLoadRequestLatency(listener, start);
+            if (listenerResult == null || aboutPage) {
+                continue;
+            }
+            if (listenerResult == GeckoResult.ALLOW) {
+                allowed = true;
 
-                    return null;
-                });
+            } else if (listenerResult == GeckoResult.DENY) {
+                denied = true;
 
-            } else {
-                allowed.set(true);
-                if (count.getAndIncrement() == mNavigationListeners.size() - 1) {
-                    result.complete(allowed.get() ? AllowOrDeny.ALLOW : AllowOrDeny.DENY);
+            } else if (!allowed) {
+                if (pending == null) {
+                    pending = new PendingLoadDecision();
                 }
+                pending.add(listener, listenerResult, start);
             }
         }
 
-        if (UrlUtils.isAboutPage(aRequest.uri)) {
+        if (aboutPage) {
+            return GeckoResult.DENY;
+        }
+        if (allowed || (pending == null && !denied)) {
+            // Pending listeners can't change the outcome anymore.
+            return GeckoResult.ALLOW;
+        }
+        if (pending == null) {
             return GeckoResult.DENY;
         }
+        return pending.result;
+    }
 
-        return result;
+    private static class PendingLoadDecision {
+        final GeckoResult<AllowOrDeny> result = new GeckoResult<>();
+        int count;
+        boolean completed;
+
+        void add(@NonNull GeckoSession.NavigationDelegate aListener, @NonNull GeckoResult<AllowOrDeny> aResult, long aStart) {
+            count++;
+            aResult.then(value -> {
+                recordLoadRequestLatency(aListener, aStart);
+                count--;
+                if (completed) {
+                    return null;
+                }
+                if (AllowOrDeny.ALLOW.equals(value)) {
+                    completed = true;
+                    result.complete(AllowOrDeny.ALLOW);
+
+                } else if (count == 0) {
+                    completed = true;
+                    result.complete(AllowOrDeny.DENY);
+                }
+                return null;
+            });
+        }
+    }
+
+    private static void recordLoadRequestLatency(@NonNull GeckoSession.NavigationDelegate aListener, long aStart) {
+        long latency = SystemClock.elapsedRealtimeNanos() - aStart;
+        String name = aListener.getClass().getSimpleName();
+        Long max = sMaxLoadRequestLatency.get(name);
+        if (max == null || latency > max) {
+            sMaxLoadRequestLatency.put(name, latency);
+        }
+        if (latency > SLOW_LOAD_REQUEST_NS) {
+            Log.w(LOGTAG, "Slow onLoadRequest decision from " + name + ": " + (latency / 1000000) + "ms");
+        }
+    }
+
+    /**
+     * @return the maximum onLoadRequest decision latency in nanoseconds of each navigation listener class.
+     */
+    @NonNull
+    public static Map<String, Long> getLoadRequestLatencies() {
+        return new HashMap<>(sMaxLoadRequestLatency);
     }
 
     @Override
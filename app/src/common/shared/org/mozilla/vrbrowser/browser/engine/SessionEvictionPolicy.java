@@ -0,0 +1,31 @@
+package org.mozilla.vrbrowser.browser.engine;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * Decides how many GeckoSessions can be kept alive and which inactive sessions
+ * should be suspended when that limit is exceeded.
+ */
+public interface SessionEvictionPolicy {
+
+    /**
+     * @return the maximum number of live GeckoSessions (active and inactive) allowed at this time.
+     */
+    int getMaxGeckoSessions();
+
+    /**
+     * Selects the sessions to suspend.
+     * @param aCandidates inactive sessions with a live GeckoSession.
+     * @param aCount number of sessions that need to be suspended to get back under the limit.
+     * @return the sessions to suspend, in eviction order. May contain less than aCount sessions.
+     */
+    @NonNull
+    List<Session> selectSessionsToEvict(@NonNull List<Session> aCandidates, int aCount);
+
+    /**
+     * Called from {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    void onTrimMemory(int aLevel);
+}
@@ -27,6 +27,16 @@ class SessionSettings {
         this.userAgentOverride = builder.userAgentOverride;
     }
 
+    /* package */ SessionSettings(@NonNull SessionSettings aOther) {
+        this.isPrivateBrowsingEnabled = aOther.isPrivateBrowsingEnabled;
+        this.isTrackingProtectionEnabled = aOther.isTrackingProtectionEnabled;
+        this.isSuspendMediaWhenInactiveEnabled = aOther.isSuspendMediaWhenInactiveEnabled;
+        this.userAgentMode = aOther.userAgentMode;
+        this.viewportMode = aOther.viewportMode;
+        this.isServoEnabled = aOther.isServoEnabled;
+        this.userAgentOverride = aOther.userAgentOverride;
+    }
+
     public boolean isPrivateBrowsingEnabled() { return isPrivateBrowsingEnabled; }
     public void setPrivateBrowsingEnabled(boolean enabled) {
         isPrivateBrowsingEnabled = enabled;
@@ -1,5 +1,7 @@
 package org.mozilla.vrbrowser.browser.engine;
 
+import androidx.annotation.Nullable;
+
 import com.google.gson.Gson;
 import com.google.gson.JsonParser;
 import com.google.gson.TypeAdapter;
@@ -17,6 +19,7 @@ import org.mozilla.vrbrowser.browser.Media;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 @JsonAdapter(SessionState.SessionStateAdapterFactory.class)
 public class SessionState {
@@ -40,6 +43,8 @@ public class SessionState {
     public String mRegion;
     public String mId = UUID.randomUUID().toString();
     public String mParentId; // Parent session stack Id.
+    // Loads the GeckoSession history of restored sessions the first time they are activated.
+    private transient Supplier<GeckoSession.SessionState> mPendingSessionState;
 
     public SessionState recreate() {
         SessionState result = new SessionState();
@@ -52,10 +57,50 @@ public class SessionState {
         result.mRegion = mRegion;
         result.mId = mId;
         result.mParentId = mParentId;
+        result.mPendingSessionState = mPendingSessionState;
 
         return result;
     }
 
+    public void setPendingSessionState(@Nullable Supplier<GeckoSession.SessionState> aLoader) {
+        mPendingSessionState = aLoader;
+    }
+
+    public boolean hasPendingSessionState() {
+        return mPendingSessionState != null;
+    }
+
+    void loadPendingSessionState() {
+        if (mPendingSessionState == null) {
+            return;
+        }
+        if (mSessionState == null) {
+            mSessionState = mPendingSessionState.get();
+        }
+        mPendingSessionState = null;
+    }
+
+    /**
+     * Copies the persisted fields except the GeckoSession history, which is stored separately.
+     * The copy doesn't share mutable objects with this state so it can be serialized off the UI thread.
+     */
+    public SessionState createPersistenceSnapshot() {
+        SessionState result = recreate();
+        result.mSessionState = null;
+        result.mPendingSessionState = null;
+        result.mCanGoBack = mCanGoBack;
+        result.mCanGoForward = mCanGoForward;
+        if (mSettings != null) {
+            result.mSettings = new SessionSettings(mSettings);
+        }
+
+        return result;
+    }
+
+    public boolean isPrivateMode() {
+        return mSettings != null && mSettings.isPrivateBrowsingEnabled();
+    }
+
     public static class GeckoSessionStateAdapter extends TypeAdapter<GeckoSession.SessionState> {
         @Override
         public void write(JsonWriter out, GeckoSession.SessionState session) throws IOException {
@@ -0,0 +1,302 @@
+package org.mozilla.vrbrowser.browser.engine;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.json.JSONException;
+import org.mozilla.geckoview.GeckoSession;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Persists the windows/tabs state on a dedicated I/O thread.
+ *
+ * The state is split in a small index file, rewritten on every save, and one file per session
+ * containing the GeckoSession history. History files are only written when the session history
+ * changed since the last save. Consecutive save requests are coalesced so only the most recent
+ * snapshot is written, and all files are written atomically in a compact format.
+ */
+public class SessionStatePersister {
+    private static final String LOGTAG = SystemUtils.createLogtag(SessionStatePersister.class);
+    private static final String SESSION_STATES_DIR = "session_states";
+
+    private final File mIndexFile;
+    private final File mStatesDir;
+    private final Gson mGson;
+    private final ScheduledExecutorService mExecutor;
+    private final AtomicReference<Snapshot> mPendingSnapshot = new AtomicReference<>();
+    // GeckoSession.SessionState instances are replaced on every history change, so the last
+    // written instance is enough to know if a session history is dirty.
+    private final Map<String, GeckoSession.SessionState> mWrittenStates = new ConcurrentHashMap<>();
+    private Future<?> mScheduledWrite;
+    private boolean mStatesDirCleaned;
+
+    private volatile long mLastSaveLatencyMs;
+    private volatile long mLastSaveBytes;
+    private volatile long mTotalBytesWritten;
+    private volatile int mSaveCount;
+    private volatile int mSessionStatesWritten;
+
+    private static class Snapshot {
+        Object index;
+        ArrayList<String> ids = new ArrayList<>();
+        ArrayList<GeckoSession.SessionState> states = new ArrayList<>();
+        // Restored sessions whose history has not been loaded yet, their files are kept untouched.
+        HashSet<String> pendingIds = new HashSet<>();
+    }
+
+    public SessionStatePersister(@NonNull Context aContext, @NonNull String aIndexFileName) {
+        mIndexFile = new File(aContext.getFilesDir(), aIndexFileName);
+        mStatesDir = new File(aContext.getFilesDir(), SESSION_STATES_DIR);
+        mGson = new GsonBuilder().create();
+        mExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SessionStatePersister");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedules a save of the provided state.
+     * @param aIndex snapshot of the index object. It must not be modified after this call.
+     * @param aSessions session states to persist. Only their GeckoSession history is captured here,
+     *                  the rest of the session fields must be part of the index snapshot.
+     * @param aDelayMs time to wait before writing. Saves requested in the meantime are coalesced.
+     */
+    @UiThread
+    public void save(@NonNull Object aIndex, @NonNull List<SessionState> aSessions, long aDelayMs) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.index = aIndex;
+        for (SessionState state: aSessions) {
+            snapshot.ids.add(state.mId);
+            if (state.hasPendingSessionState()) {
+                snapshot.pendingIds.add(state.mId);
+            }
+            // Private sessions history is never written to disk.
+            snapshot.states.add(state.isPrivateMode() ? null : state.mSessionState);
+        }
+        mPendingSnapshot.set(snapshot);
+
+        synchronized (this) {
+            if (mScheduledWrite != null && !mScheduledWrite.isDone()) {
+                if (mScheduledWrite.getDelay(TimeUnit.MILLISECONDS) <= aDelayMs) {
+                    // The scheduled write hasn't started yet and will pick up the latest snapshot.
+                    return;
+                }
+                mScheduledWrite.cancel(false);
+            }
+            mScheduledWrite = mExecutor.schedule(this::writePendingSnapshot, aDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Blocks until the pending snapshot, if any, has been written.
+     */
+    public void flush(long aTimeoutMs) {
+        try {
+            mExecutor.submit(this::writePendingSnapshot).get(aTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Log.e(LOGTAG, "Error flushing session state: " + e.getLocalizedMessage());
+        }
+    }
+
+    @WorkerThread
+    private void writePendingSnapshot() {
+        synchronized (this) {
+            // Saves requested from now on need a new write.
+            mScheduledWrite = null;
+        }
+        Snapshot snapshot = mPendingSnapshot.getAndSet(null);
+        if (snapshot == null) {
+            return;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        long bytes = 0;
+        try {
+            bytes += writeSessionStates(snapshot);
+            bytes += writeFile(mIndexFile, mGson.toJson(snapshot.index));
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Error saving windows state: " + e.getLocalizedMessage());
+            mIndexFile.delete();
+            return;
+        }
+
+        mLastSaveLatencyMs = SystemClock.elapsedRealtime() - start;
+        mLastSaveBytes = bytes;
+        mTotalBytesWritten += bytes;
+        mSaveCount++;
+        Log.d(LOGTAG, "Windows state saved in " + mLastSaveLatencyMs + "ms. Bytes written: " + bytes);
+    }
+
+    @WorkerThread
+    private long writeSessionStates(@NonNull Snapshot aSnapshot) throws IOException {
+        if (!mStatesDir.exists() && !mStatesDir.mkdirs()) {
+            throw new IOException("Unable to create " + mStatesDir);
+        }
+
+        long bytes = 0;
+        HashSet<String> persistedIds = new HashSet<>();
+        for (int i = 0; i < aSnapshot.ids.size(); ++i) {
+            String id = aSnapshot.ids.get(i);
+            GeckoSession.SessionState state = aSnapshot.states.get(i);
+            if (aSnapshot.pendingIds.contains(id)) {
+                persistedIds.add(id);
+                continue;
+            }
+            if (state == null) {
+                if (mWrittenStates.remove(id) != null) {
+                    new AtomicFile(getStateFile(id)).delete();
+                }
+                continue;
+            }
+            persistedIds.add(id);
+            if (mWrittenStates.get(id) == state) {
+                continue;
+            }
+            bytes += writeFile(getStateFile(id), state.toString());
+            mWrittenStates.put(id, state);
+            mSessionStatesWritten++;
+        }
+
+        // Remove the history of closed sessions.
+        mWrittenStates.keySet().removeIf(id -> {
+            if (!persistedIds.contains(id)) {
+                new AtomicFile(getStateFile(id)).delete();
+                return true;
+            }
+            return false;
+        });
+        if (!mStatesDirCleaned) {
+            File[] files = mStatesDir.listFiles();
+            if (files != null) {
+                for (File file: files) {
+                    // Also matches the backup files created by AtomicFile.
+                    String id = file.getName().replaceFirst("\\.(bak|new)$", "");
+                    if (!persistedIds.contains(id)) {
+                        file.delete();
+                    }
+                }
+            }
+            mStatesDirCleaned = true;
+        }
+
+        return bytes;
+    }
+
+    @WorkerThread
+    private long writeFile(@NonNull File aFile, @NonNull String aContent) throws IOException {
+        AtomicFile file = new AtomicFile(aFile);
+        byte[] data = aContent.getBytes(StandardCharsets.UTF_8);
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            stream.write(data);
+            file.finishWrite(stream);
+
+        } catch (IOException e) {
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+            throw e;
+        }
+        return data.length;
+    }
+
+    private File getStateFile(@NonNull String aId) {
+        return new File(mStatesDir, aId);
+    }
+
+    /**
+     * Reads the index file. The index is deleted after being read so a corrupted state
+     * doesn't prevent the next startups.
+     */
+    @Nullable
+    public <T> T restoreIndex(@NonNull Type aType) {
+        T restored = null;
+        AtomicFile file = new AtomicFile(mIndexFile);
+        try (Reader reader = new InputStreamReader(file.openRead(), StandardCharsets.UTF_8)) {
+            restored = mGson.fromJson(reader, aType);
+
+        } catch (Exception e) {
+            Log.w(LOGTAG, "Error restoring windows state: " + e.getLocalizedMessage());
+
+        } finally {
+            file.delete();
+        }
+
+        return restored;
+    }
+
+    /**
+     * Reads the GeckoSession history stored for the provided session id.
+     */
+    @Nullable
+    public GeckoSession.SessionState restoreSessionState(@NonNull String aId) {
+        AtomicFile file = new AtomicFile(getStateFile(aId));
+        if (!file.getBaseFile().exists()) {
+            return null;
+        }
+        try {
+            String content = new String(file.readFully(), StandardCharsets.UTF_8);
+            GeckoSession.SessionState state = GeckoSession.SessionState.fromString(content);
+            if (state != null) {
+                // The file is up to date, there is no need to write it again until it changes.
+                mWrittenStates.put(aId, state);
+            }
+            return state;
+
+        } catch (IOException | JSONException e) {
+            Log.w(LOGTAG, "Error restoring session state " + aId + ": " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    public long getLastSaveLatencyMs() {
+        return mLastSaveLatencyMs;
+    }
+
+    public long getLastSaveBytes() {
+        return mLastSaveBytes;
+    }
+
+    public long getTotalBytesWritten() {
+        return mTotalBytesWritten;
+    }
+
+    public int getSaveCount() {
+        return mSaveCount;
+    }
+
+    public int getSessionStatesWritten() {
+        return mSessionStatesWritten;
+    }
+}
@@ -2,7 +2,6 @@ package org.mozilla.vrbrowser.browser.engine;
 
 import android.content.Context;
 import android.content.res.Configuration;
-import android.os.Bundle;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -16,6 +15,7 @@ import org.mozilla.vrbrowser.browser.BookmarksStore;
 import org.mozilla.vrbrowser.browser.HistoryStore;
 import org.mozilla.vrbrowser.browser.PermissionDelegate;
 import org.mozilla.vrbrowser.browser.Services;
+import org.mozilla.vrbrowser.search.suggestions.AutocompleteIndex;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
 import java.util.ArrayList;
@@ -24,7 +24,6 @@ import java.util.List;
 
 public class SessionStore implements GeckoSession.PermissionDelegate {
     private static final String LOGTAG = SystemUtils.createLogtag(SessionStore.class);
-    private static final int MAX_GECKO_SESSIONS = 5;
 
     private static SessionStore mInstance;
 
@@ -42,20 +41,31 @@ public class SessionStore implements GeckoSession.PermissionDelegate {
     private PermissionDelegate mPermissionDelegate;
     private BookmarksStore mBookmarksStore;
     private HistoryStore mHistoryStore;
+    private AutocompleteIndex mAutocompleteIndex;
     private Services mServices;
     private boolean mSuspendPending;
+    private SessionEvictionPolicy mEvictionPolicy;
+    private int mEvictionCount;
+    private int mRestoreAfterEvictionCount;
 
     private SessionStore() {
         mSessions = new ArrayList<>();
     }
 
-    public void setContext(Context context, Bundle aExtras) {
+    // The Gecko prefs must have been written with SessionUtils.vrPrefsWorkAround() before.
+    public void setContext(Context context) {
         mContext = context;
 
-        // FIXME: Once GeckoView has a prefs API
-        SessionUtils.vrPrefsWorkAround(context, aExtras);
-
         mRuntime = EngineProvider.INSTANCE.getOrCreateRuntime(context);
+
+        if (mEvictionPolicy == null) {
+            mEvictionPolicy = new LruSessionEvictionPolicy(context);
+        }
+    }
+
+    public void setEvictionPolicy(@NonNull SessionEvictionPolicy aPolicy) {
+        mEvictionPolicy = aPolicy;
+        sessionActiveStateChanged();
     }
 
     public void initializeServices() {
@@ -65,6 +75,8 @@ public class SessionStore implements GeckoSession.PermissionDelegate {
     public void initializeStores(Context context) {
         mBookmarksStore = new BookmarksStore(context);
         mHistoryStore = new HistoryStore(context);
+        mAutocompleteIndex = new AutocompleteIndex(mHistoryStore, mBookmarksStore);
+        mAutocompleteIndex.initialize(context);
     }
 
     @NonNull
@@ -145,13 +157,35 @@ public class SessionStore implements GeckoSession.PermissionDelegate {
 
 
     private void limitInactiveSessions() {
-        Log.d(LOGTAG, "Limiting Inactive Sessions");
-        suspendAllInactiveSessions();
         mSuspendPending = false;
+        ArrayList<Session> candidates = new ArrayList<>();
+        int count = 0;
+        for (Session session: mSessions) {
+            if (session.getGeckoSession() != null) {
+                count++;
+                if (!session.isActive()) {
+                    candidates.add(session);
+                }
+            }
+        }
+        int excess = count - mEvictionPolicy.getMaxGeckoSessions();
+        if (excess <= 0 || candidates.isEmpty()) {
+            return;
+        }
+
+        Log.d(LOGTAG, "Limiting Inactive Sessions. Live: " + count + " Inactive: " + candidates.size() + " Excess: " + excess);
+        for (Session session: mEvictionPolicy.selectSessionsToEvict(candidates, excess)) {
+            session.suspend();
+            if (session.getGeckoSession() == null) {
+                session.setEvicted(true);
+                mEvictionCount++;
+            }
+        }
+        Log.d(LOGTAG, "Session evictions: " + mEvictionCount + " Restored after eviction: " + mRestoreAfterEvictionCount);
     }
 
     void sessionActiveStateChanged() {
-        if (mSuspendPending) {
+        if (mSuspendPending || mEvictionPolicy == null) {
             return;
         }
         int count = 0;
@@ -170,13 +204,36 @@ public class SessionStore implements GeckoSession.PermissionDelegate {
                 suspendedCount++;
             }
         }
-        if (count > MAX_GECKO_SESSIONS) {
+        if (count > mEvictionPolicy.getMaxGeckoSessions() && inactiveCount > 0) {
             Log.d(LOGTAG, "Too many GeckoSessions. Active: " + activeCount + " Inactive: " + inactiveCount + " Suspended: " + suspendedCount);
             mSuspendPending = true;
             ThreadUtils.postToUiThread(this::limitInactiveSessions);
         }
     }
 
+    void onEvictedSessionRestored(@NonNull Session aSession) {
+        mRestoreAfterEvictionCount++;
+        Log.d(LOGTAG, "Evicted session restored: " + aSession.getId() + " (" + mRestoreAfterEvictionCount + "/" + mEvictionCount + ")");
+    }
+
+    public int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    public int getRestoreAfterEvictionCount() {
+        return mRestoreAfterEvictionCount;
+    }
+
+    public void onTrimMemory(int aLevel) {
+        if (mEvictionPolicy == null) {
+            return;
+        }
+        mEvictionPolicy.onTrimMemory(aLevel);
+        if (!mSuspendPending) {
+            limitInactiveSessions();
+        }
+    }
+
     public Session getActiveSession() {
         return mActiveSession;
     }
@@ -205,6 +262,10 @@ public class SessionStore implements GeckoSession.PermissionDelegate {
         return mHistoryStore;
     }
 
+    public AutocompleteIndex getAutocompleteIndex() {
+        return mAutocompleteIndex;
+    }
+
     public void purgeSessionHistory() {
         for (Session session: mSessions) {
             session.purgeHistory();
@@ -16,7 +16,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
-class SessionUtils {
+public class SessionUtils {
 
     private static final String LOGTAG = SystemUtils.createLogtag(SessionUtils.class);
 
@@ -22,6 +22,20 @@ public class CustomKeyboard extends Keyboard {
     private Key mModeChangeKey;
     private int mMaxColumns;
     private int[] mDisabledKeysIndexes;
+    // Hit testing grid, the keys of each cell are mCellKeys[mCellStart[cell]..mCellStart[cell + 1]).
+    private int mGridKeyCount = -1;
+    private int mGridColumns;
+    private int mGridRows;
+    private int mCellWidth;
+    private int mCellHeight;
+    private int[] mCellStart;
+    private int[] mCellKeys;
+    private int[][] mKeyIndices;
+
+    private static final int[] NO_KEYS = new int[0];
+    private static final int MAX_GRID_COLUMNS = 64;
+    private static final int MAX_GRID_ROWS = 32;
+    public static final int NOT_A_KEY = -1;
 
     public static final int KEYCODE_SYMBOLS_CHANGE = -10;
     public static final int KEYCODE_VOICE_INPUT = -11;
@@ -188,15 +202,111 @@ public class CustomKeyboard extends Keyboard {
     // Override to fix the bug of not all the touch area covered in wide buttons (e.g. space)
     @Override
     public int[] getNearestKeys(int x, int y) {
+        int index = getKeyIndexAt(x, y);
+        return index != NOT_A_KEY ? mKeyIndices[index] : NO_KEYS;
+    }
+
+    /**
+     * Returns the index of the key that contains the point, the first one in layout order if
+     * several keys overlap. Keys on the keyboard edges extend their hit area outwards.
+     * @return the key index or {@link #NOT_A_KEY}.
+     */
+    public int getKeyIndexAt(int x, int y) {
         List<Key> keys = getKeys();
-        Key[] mKeys = keys.toArray(new Key[keys.size()]);
-        int i = 0;
-        for (Key key : mKeys) {
-            if(key.isInside(x, y))
-                return new int[]{i};
-            i++;
+        if (mGridKeyCount != keys.size()) {
+            computeGrid(keys);
+        }
+        if (mGridColumns == 0) {
+            return NOT_A_KEY;
+        }
+        int column = Math.min(Math.max(x, 0) / mCellWidth, mGridColumns - 1);
+        int row = Math.min(Math.max(y, 0) / mCellHeight, mGridRows - 1);
+        int cell = row * mGridColumns + column;
+        for (int i = mCellStart[cell]; i < mCellStart[cell + 1]; i++) {
+            int index = mCellKeys[i];
+            if (keys.get(index).isInside(x, y)) {
+                return index;
+            }
+        }
+        return NOT_A_KEY;
+    }
+
+    // Buckets the keys in a grid with cells of the size of the smallest key, so a point only
+    // has to be tested against the few keys that overlap its cell. The grid is rebuilt when
+    // keys are added, the layout of a keyboard is not modified otherwise.
+    private void computeGrid(List<Key> aKeys) {
+        mGridKeyCount = aKeys.size();
+        mGridColumns = 0;
+        mKeyIndices = new int[mGridKeyCount][];
+        int width = 0;
+        int height = 0;
+        int cellWidth = Integer.MAX_VALUE;
+        int cellHeight = Integer.MAX_VALUE;
+        for (int i = 0; i < mGridKeyCount; i++) {
+            Key key = aKeys.get(i);
+            mKeyIndices[i] = new int[]{i};
+            width = Math.max(width, key.x + key.width);
+            height = Math.max(height, key.y + key.height);
+            if (key.width > 0 && key.height > 0) {
+                cellWidth = Math.min(cellWidth, key.width);
+                cellHeight = Math.min(cellHeight, key.height);
+            }
         }
-        return new int[0];
+        if (mGridKeyCount == 0) {
+            return;
+        }
+        width = Math.max(width, 1);
+        height = Math.max(height, 1);
+        cellWidth = Math.min(cellWidth, width);
+        cellHeight = Math.min(cellHeight, height);
+        mGridColumns = Math.min(MAX_GRID_COLUMNS, (width + cellWidth - 1) / cellWidth);
+        mGridRows = Math.min(MAX_GRID_ROWS, (height + cellHeight - 1) / cellHeight);
+        mCellWidth = (width + mGridColumns - 1) / mGridColumns;
+        mCellHeight = (height + mGridRows - 1) / mGridRows;
+
+        // Two passes, the first one counts the keys of each cell and the second one fills them.
+        int cells = mGridColumns * mGridRows;
+        mCellStart = new int[cells + 1];
+        int[] bounds = new int[4];
+        for (int pass = 0; pass < 2; pass++) {
+            int[] next = pass == 0 ? null : mCellStart.clone();
+            for (int i = 0; i < mGridKeyCount; i++) {
+                getCellBounds(aKeys.get(i), bounds);
+                for (int row = bounds[1]; row <= bounds[3]; row++) {
+                    for (int column = bounds[0]; column <= bounds[2]; column++) {
+                        int cell = row * mGridColumns + column;
+                        if (pass == 0) {
+                            mCellStart[cell + 1]++;
+                        } else {
+                            mCellKeys[next[cell]++] = i;
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int cell = 0; cell < cells; cell++) {
+                    mCellStart[cell + 1] += mCellStart[cell];
+                }
+                mCellKeys = new int[mCellStart[cells]];
+            }
+        }
+    }
+
+    // Range of cells covered by the hit area of the key, see Key.isInside(). Points outside of
+    // the grid are tested against its border cells, so the range is clamped instead of dropped.
+    private void getCellBounds(Key aKey, int[] aBounds) {
+        boolean leftEdge = (aKey.edgeFlags & EDGE_LEFT) != 0;
+        boolean rightEdge = (aKey.edgeFlags & EDGE_RIGHT) != 0;
+        boolean topEdge = (aKey.edgeFlags & EDGE_TOP) != 0;
+        boolean bottomEdge = (aKey.edgeFlags & EDGE_BOTTOM) != 0;
+        int left = leftEdge ? Math.min(aKey.x, 0) : aKey.x;
+        int right = rightEdge ? Integer.MAX_VALUE : aKey.x + aKey.width - 1;
+        int top = topEdge ? Math.min(aKey.y, 0) : aKey.y;
+        int bottom = bottomEdge ? Integer.MAX_VALUE : aKey.y + aKey.height - 1;
+        aBounds[0] = Math.min(Math.max(left, 0) / mCellWidth, mGridColumns - 1);
+        aBounds[1] = Math.min(Math.max(top, 0) / mCellHeight, mGridRows - 1);
+        aBounds[2] = Math.max(Math.min(Math.max(right, 0) / mCellWidth, mGridColumns - 1), aBounds[0]);
+        aBounds[3] = Math.max(Math.min(Math.max(bottom, 0) / mCellHeight, mGridRows - 1), aBounds[1]);
     }
 
     public boolean setEnterKeyLabel(String aText) {
@@ -0,0 +1,233 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.input;
+
+import android.os.Debug;
+import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
+import android.view.Choreographer;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+
+/**
+ * Collects the controller samples coming from the native thread and delivers them to the UI
+ * thread once per frame. The samples are stored in preallocated buffers, so the input path
+ * doesn't create garbage for every sample, and consecutive hover or move samples of a device
+ * are coalesced into the last one since only the latest position matters.
+ *
+ * The native thread writes into the back buffer while the UI thread drains the front one, the
+ * buffers are swapped at the beginning of each drain.
+ */
+public class InputEventQueue {
+
+    public interface Delegate {
+        @UiThread
+        void onMotionEvent(int aHandle, int aDevice, boolean aPressed, float aX, float aY);
+        @UiThread
+        void onScrollEvent(int aHandle, int aDevice, float aX, float aY);
+    }
+
+    private static final int TYPE_MOTION = 0;
+    private static final int TYPE_SCROLL = 1;
+    private static final int INITIAL_CAPACITY = 32;
+
+    private static class Batch {
+        int mCount;
+        int[] mTypes = new int[INITIAL_CAPACITY];
+        int[] mHandles = new int[INITIAL_CAPACITY];
+        int[] mDevices = new int[INITIAL_CAPACITY];
+        boolean[] mPressed = new boolean[INITIAL_CAPACITY];
+        // Only samples that don't change the pressed state can absorb the following ones.
+        boolean[] mCoalescable = new boolean[INITIAL_CAPACITY];
+        float[] mX = new float[INITIAL_CAPACITY];
+        float[] mY = new float[INITIAL_CAPACITY];
+
+        void grow() {
+            int capacity = mTypes.length * 2;
+            mTypes = Arrays.copyOf(mTypes, capacity);
+            mHandles = Arrays.copyOf(mHandles, capacity);
+            mDevices = Arrays.copyOf(mDevices, capacity);
+            mPressed = Arrays.copyOf(mPressed, capacity);
+            mCoalescable = Arrays.copyOf(mCoalescable, capacity);
+            mX = Arrays.copyOf(mX, capacity);
+            mY = Arrays.copyOf(mY, capacity);
+        }
+    }
+
+    private final Object mLock = new Object();
+    private final Delegate mDelegate;
+    private final Runnable mScheduleDrain;
+    private Batch mBack = new Batch();
+    private Batch mFront = new Batch();
+    // Only accessed with mLock held.
+    private boolean mDrainScheduled;
+    private final SparseIntArray mLastSample = new SparseIntArray();
+    private final SparseBooleanArray mLastPressed = new SparseBooleanArray();
+    private long mReceivedSamples;
+    private long mCoalescedSamples;
+    private long mDrainedFrames;
+    private long mAllocations;
+
+    @UiThread
+    public InputEventQueue(@NonNull Delegate aDelegate) {
+        mDelegate = aDelegate;
+        final Choreographer choreographer = Choreographer.getInstance();
+        final Choreographer.FrameCallback drainCallback = frameTimeNanos -> drain();
+        mScheduleDrain = () -> choreographer.postFrameCallback(drainCallback);
+    }
+
+    @VisibleForTesting
+    InputEventQueue(@NonNull Delegate aDelegate, @NonNull Runnable aScheduleDrain) {
+        mDelegate = aDelegate;
+        mScheduleDrain = aScheduleDrain;
+    }
+
+    @AnyThread
+    public void pushMotionEvent(int aHandle, int aDevice, boolean aPressed, float aX, float aY) {
+        boolean schedule;
+        synchronized (mLock) {
+            mReceivedSamples++;
+            boolean transition = mLastPressed.get(aDevice, false) != aPressed;
+            mLastPressed.put(aDevice, aPressed);
+            Batch batch = mBack;
+            int last = mLastSample.get(aDevice, -1);
+            if (!transition && last >= 0 && batch.mCoalescable[last] && batch.mTypes[last] == TYPE_MOTION &&
+                    batch.mHandles[last] == aHandle) {
+                batch.mX[last] = aX;
+                batch.mY[last] = aY;
+                mCoalescedSamples++;
+                return;
+            }
+            int index = add(batch, TYPE_MOTION, aHandle, aDevice, aX, aY);
+            batch.mPressed[index] = aPressed;
+            batch.mCoalescable[index] = !transition;
+            schedule = scheduleDrain();
+        }
+        if (schedule) {
+            mScheduleDrain.run();
+        }
+    }
+
+    @AnyThread
+    public void pushScrollEvent(int aHandle, int aDevice, float aX, float aY) {
+        boolean schedule;
+        synchronized (mLock) {
+            mReceivedSamples++;
+            int index = add(mBack, TYPE_SCROLL, aHandle, aDevice, aX, aY);
+            mBack.mCoalescable[index] = false;
+            schedule = scheduleDrain();
+        }
+        if (schedule) {
+            mScheduleDrain.run();
+        }
+    }
+
+    private int add(Batch aBatch, int aType, int aHandle, int aDevice, float aX, float aY) {
+        if (aBatch.mCount == aBatch.mTypes.length) {
+            aBatch.grow();
+            mAllocations++;
+        }
+        int index = aBatch.mCount++;
+        aBatch.mTypes[index] = aType;
+        aBatch.mHandles[index] = aHandle;
+        aBatch.mDevices[index] = aDevice;
+        aBatch.mX[index] = aX;
+        aBatch.mY[index] = aY;
+        mLastSample.put(aDevice, index);
+        return index;
+    }
+
+    private boolean scheduleDrain() {
+        if (mDrainScheduled) {
+            return false;
+        }
+        mDrainScheduled = true;
+        return true;
+    }
+
+    /**
+     * Delivers the samples queued since the last frame in the order they were received.
+     */
+    @UiThread
+    @VisibleForTesting
+    void drain() {
+        Batch batch;
+        synchronized (mLock) {
+            batch = mBack;
+            mBack = mFront;
+            mFront = batch;
+            mLastSample.clear();
+            mDrainScheduled = false;
+            mDrainedFrames++;
+        }
+        for (int i = 0; i < batch.mCount; i++) {
+            if (batch.mTypes[i] == TYPE_MOTION) {
+                mDelegate.onMotionEvent(batch.mHandles[i], batch.mDevices[i], batch.mPressed[i], batch.mX[i], batch.mY[i]);
+            } else {
+                mDelegate.onScrollEvent(batch.mHandles[i], batch.mDevices[i], batch.mX[i], batch.mY[i]);
+            }
+        }
+        batch.mCount = 0;
+    }
+
+    /**
+     * @return the number of samples pushed from the native thread.
+     */
+    @AnyThread
+    public long getReceivedSamples() {
+        synchronized (mLock) {
+            return mReceivedSamples;
+        }
+    }
+
+    /**
+     * @return the number of samples that were merged into a previous one of the same frame.
+     */
+    @AnyThread
+    public long getCoalescedSamples() {
+        synchronized (mLock) {
+            return mCoalescedSamples;
+        }
+    }
+
+    @AnyThread
+    public long getDrainedFrames() {
+        synchronized (mLock) {
+            return mDrainedFrames;
+        }
+    }
+
+    /**
+     * @return the number of times the buffers had to grow, the only allocations of the queue.
+     */
+    @AnyThread
+    public long getAllocations() {
+        synchronized (mLock) {
+            return mAllocations;
+        }
+    }
+
+    /**
+     * @return the number of garbage collections run by the process, or -1 if not available.
+     */
+    @AnyThread
+    public static long getGcCount() {
+        String count = Debug.getRuntimeStat("art.gc.gc-count");
+        if (count == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(count);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -10,13 +10,16 @@ import android.preference.PreferenceManager;
 
 import androidx.annotation.NonNull;
 
+import org.mozilla.vrbrowser.AppExecutors;
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.geolocation.GeolocationData;
+import org.mozilla.vrbrowser.search.suggestions.SuggestionsCache;
 import org.mozilla.vrbrowser.search.suggestions.SuggestionsClient;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -50,6 +53,7 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
     }};
 
     private static String EMPTY = "";
+    private static final String SUGGESTIONS_CACHE_FILE = "search_suggestions.json";
 
     private static SearchEngineWrapper mSearchEngineWrapperInstance;
 
@@ -73,11 +77,15 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
     private SearchSuggestionClient mSuggestionsClient;
     private SharedPreferences mPrefs;
     private Executor mUIThreadExecutor;
+    private SuggestionsCache mSuggestionsCache;
 
     private SearchEngineWrapper(@NonNull Context aContext) {
         mContext = aContext;
         mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
-        mUIThreadExecutor = ((VRBrowserApplication)aContext.getApplicationContext()).getExecutors().mainThread();
+        AppExecutors executors = ((VRBrowserApplication)aContext.getApplicationContext()).getExecutors();
+        mUIThreadExecutor = executors.mainThread();
+        mSuggestionsCache = new SuggestionsCache(new File(aContext.getCacheDir(), SUGGESTIONS_CACHE_FILE), executors.diskIO());
+        mSuggestionsCache.load();
 
         setupSearchEngine(aContext, EMPTY);
     }
@@ -105,6 +113,18 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
         }
     }
 
+    /**
+     * Persists the most recently used search suggestions so they are available after a restart.
+     */
+    public void saveSuggestionsCache() {
+        mSuggestionsCache.save();
+    }
+
+    @NonNull
+    public SuggestionsCache getSuggestionsCache() {
+        return mSuggestionsCache;
+    }
+
     public String getSearchURL(String aQuery) {
         return mSearchEngine.buildSearchUrl(aQuery);
     }
@@ -117,8 +137,25 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
         CompletableFuture<List<String>> future = new CompletableFuture<>();
         // TODO: Use mSuggestionsClient.getSuggestions when fixed in browser-search.
         String query = getSuggestionURL(aQuery);
-        mUIThreadExecutor.execute(() ->
-                SuggestionsClient.getSuggestions(mSearchEngine, query).thenAcceptAsync(future::complete));
+        mUIThreadExecutor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            CompletableFuture<List<String>> request = SuggestionsClient.getSuggestions(mSuggestionsCache, mSearchEngine, aQuery, query);
+            request.whenComplete((suggestions, throwable) -> {
+                if (throwable != null) {
+                    future.completeExceptionally(throwable);
+
+                } else {
+                    future.complete(suggestions);
+                }
+            });
+            future.whenComplete((suggestions, throwable) -> {
+                if (future.isCancelled()) {
+                    request.cancel(true);
+                }
+            });
+        });
 
         return future;
     }
@@ -0,0 +1,524 @@
+package org.mozilla.vrbrowser.search.suggestions;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import org.mozilla.vrbrowser.browser.BookmarksStore;
+import org.mozilla.vrbrowser.browser.HistoryStore;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import mozilla.appservices.places.BookmarkRoot;
+import mozilla.components.browser.domains.Domains;
+import mozilla.components.concept.storage.BookmarkNode;
+import mozilla.components.concept.storage.BookmarkNodeType;
+import mozilla.components.concept.storage.VisitInfo;
+import mozilla.components.concept.storage.VisitType;
+
+/**
+ * In memory autocomplete index for the URL bar. Answers both the inline domain completion and
+ * the history and bookmarks suggestions from two prefix tries:
+ *  - Hosts: the shipped domains list plus the hosts of the history and bookmarks.
+ *  - Pages: history and bookmarks, by host and by title words.
+ *
+ * Pages are ranked by frecency, the sum of their visits weighted by age and type, and
+ * bookmarks get a fixed bonus. The index is built in the background and kept up to date from
+ * the history and bookmarks notifications. Queries take a lock that updates only hold for a
+ * few trie operations, full rebuilds are done aside and swapped in.
+ */
+public class AutocompleteIndex implements HistoryStore.HistoryListener, BookmarksStore.BookmarkListener {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(AutocompleteIndex.class);
+
+    public static final int MAX_RESULTS = PrefixTrie.TOP_SIZE;
+
+    static final int BOOKMARK_BONUS = 1000;
+    // The most popular shipped domain weights like a few recent visits, the least popular like none.
+    static final int MAX_SHIPPED_SCORE = 50;
+    private static final int MAX_TITLE_WORDS = 8;
+    private static final int MAX_WORD_LENGTH = 24;
+    private static final String WWW = "www.";
+
+    public static class Entry implements PrefixTrie.Item {
+        private final String mUrl;
+        private final String mHost;
+        private String mTitle;
+        private int mFrecency;
+        private boolean mBookmarked;
+
+        Entry(@NonNull String aUrl, @NonNull String aHost) {
+            mUrl = aUrl;
+            mHost = aHost;
+            mTitle = "";
+        }
+
+        @NonNull
+        public String getUrl() {
+            return mUrl;
+        }
+
+        @NonNull
+        public String getTitle() {
+            return mTitle;
+        }
+
+        public boolean isBookmarked() {
+            return mBookmarked;
+        }
+
+        public int getFrecency() {
+            return mFrecency;
+        }
+
+        @Override
+        public int getScore() {
+            return mFrecency + (mBookmarked ? BOOKMARK_BONUS : 0);
+        }
+    }
+
+    private static class HostEntry implements PrefixTrie.Item {
+        final String mHost;
+        int mShippedScore;
+        int mPageScore;
+
+        HostEntry(@NonNull String aHost) {
+            mHost = aHost;
+        }
+
+        @Override
+        public int getScore() {
+            return mShippedScore + mPageScore;
+        }
+    }
+
+    private final HistoryStore mHistoryStore;
+    private final BookmarksStore mBookmarksStore;
+    private final Executor mExecutor;
+    // Only accessed from the executor.
+    private List<String> mDomains = new ArrayList<>();
+    private long mLastVisitTime;
+    private boolean mReloadPending;
+    // Swapped on rebuilds, guarded by this.
+    private State mState = new State();
+    private volatile boolean mReady;
+
+    public AutocompleteIndex(@NonNull HistoryStore aHistoryStore, @NonNull BookmarksStore aBookmarksStore) {
+        this(aHistoryStore, aBookmarksStore, Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "AutocompleteIndex");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }));
+    }
+
+    @VisibleForTesting
+    AutocompleteIndex(@Nullable HistoryStore aHistoryStore, @Nullable BookmarksStore aBookmarksStore, @NonNull Executor aExecutor) {
+        mHistoryStore = aHistoryStore;
+        mBookmarksStore = aBookmarksStore;
+        mExecutor = aExecutor;
+    }
+
+    /**
+     * Loads the shipped domains, the history and the bookmarks in the background and starts
+     * listening for their changes.
+     */
+    public void initialize(@NonNull Context aContext) {
+        final Context context = aContext.getApplicationContext();
+        mExecutor.execute(() -> mDomains = Domains.INSTANCE.load(context));
+        mHistoryStore.addListener(this);
+        mBookmarksStore.addListener(this);
+        reload();
+    }
+
+    /**
+     * @return whether the index has been built and can answer queries.
+     */
+    public boolean isReady() {
+        return mReady;
+    }
+
+    /**
+     * @return the best domain starting with the text, with the text case preserved, or null.
+     */
+    @Nullable
+    public String getInlineCompletion(@NonNull String aText) {
+        String text = aText.toLowerCase(Locale.ROOT);
+        if (text.startsWith(WWW)) {
+            text = text.substring(WWW.length());
+        }
+        if (text.isEmpty()) {
+            return null;
+        }
+        String host;
+        synchronized (this) {
+            host = mState.mHostTrie.queryBestKey(text);
+        }
+        if (host == null) {
+            return null;
+        }
+        return aText + host.substring(text.length());
+    }
+
+    /**
+     * @return whether the text is a single word or host prefix, the only queries the index answers.
+     */
+    public static boolean isSupportedQuery(@NonNull String aText) {
+        String text = aText.trim();
+        if (text.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || c == '/' || c == ':' || c == '?') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the best pages whose host or a title word starts with the text, best first.
+     */
+    @NonNull
+    public List<Entry> query(@NonNull String aText, int aLimit) {
+        String text = aText.trim().toLowerCase(Locale.ROOT);
+        if (text.startsWith(WWW)) {
+            text = text.substring(WWW.length());
+        }
+        if (text.isEmpty()) {
+            return new ArrayList<>();
+        }
+        synchronized (this) {
+            return mState.mPageTrie.query(text, aLimit);
+        }
+    }
+
+    // HistoryStore.HistoryListener
+
+    @Override
+    public void onHistoryUpdated(@Nullable Set<String> changedUrls) {
+        if (changedUrls == null) {
+            reload();
+            return;
+        }
+        final List<String> urls = new ArrayList<>(changedUrls);
+        mExecutor.execute(() -> {
+            if (mReloadPending) {
+                return;
+            }
+            // New visits are added to the frecency, urls without visits left are removed.
+            CompletableFuture<List<VisitInfo>> visits = mHistoryStore.getDetailedHistorySince(mLastVisitTime + 1);
+            CompletableFuture<List<Boolean>> visited = mHistoryStore.getVisited(urls);
+            visits.thenAcceptBoth(visited, (newVisits, stillVisited) -> mExecutor.execute(() -> {
+                if (mReloadPending) {
+                    return;
+                }
+                ArrayList<String> removed = new ArrayList<>();
+                for (int i = 0; i < urls.size() && i < stillVisited.size(); ++i) {
+                    if (!stillVisited.get(i)) {
+                        removed.add(urls.get(i));
+                    }
+                }
+                synchronized (this) {
+                    if (newVisits != null) {
+                        addVisits(mState, newVisits, System.currentTimeMillis());
+                    }
+                    removeHistory(mState, removed);
+                }
+
+            })).exceptionally(throwable -> {
+                Log.d(LOGTAG, "Error updating the autocomplete history: " + throwable.getLocalizedMessage());
+                return null;
+            });
+        });
+    }
+
+    // BookmarksStore.BookmarkListener
+
+    @Override
+    public void onBookmarksUpdated() {
+        reloadBookmarks();
+    }
+
+    @Override
+    public void onBookmarkAdded() {
+        reloadBookmarks();
+    }
+
+    private void reloadBookmarks() {
+        mBookmarksStore.getTree(BookmarkRoot.Root.getId(), true).thenAcceptAsync(tree -> {
+            if (mReloadPending) {
+                return;
+            }
+            List<BookmarkNode> bookmarks = flattenBookmarks(tree);
+            synchronized (this) {
+                setBookmarks(mState, bookmarks);
+            }
+
+        }, mExecutor).exceptionally(throwable -> {
+            Log.d(LOGTAG, "Error updating the autocomplete bookmarks: " + throwable.getLocalizedMessage());
+            return null;
+        });
+    }
+
+    private void reload() {
+        mExecutor.execute(() -> {
+            if (mReloadPending) {
+                return;
+            }
+            mReloadPending = true;
+            mHistoryStore.getDetailedHistory().thenCombine(
+                    mBookmarksStore.getTree(BookmarkRoot.Root.getId(), true),
+                    (visits, tree) -> {
+                        mExecutor.execute(() -> {
+                            mReloadPending = false;
+                            build(mDomains, visits != null ? visits : new ArrayList<>(), flattenBookmarks(tree));
+                        });
+                        return null;
+
+                    }).exceptionally(throwable -> {
+                        Log.e(LOGTAG, "Error loading the autocomplete index: " + throwable.getLocalizedMessage());
+                        mExecutor.execute(() -> mReloadPending = false);
+                        return null;
+                    });
+        });
+    }
+
+    /**
+     * Builds the whole index from scratch and replaces the current one.
+     */
+    @WorkerThread
+    @VisibleForTesting
+    void build(@NonNull List<String> aDomains, @NonNull List<VisitInfo> aVisits, @NonNull List<BookmarkNode> aBookmarks) {
+        long start = SystemClock.elapsedRealtime();
+        State state = new State();
+        addDomains(state, aDomains);
+        addVisits(state, aVisits, System.currentTimeMillis());
+        setBookmarks(state, aBookmarks);
+        synchronized (this) {
+            mState = state;
+        }
+        mReady = true;
+        Log.d(LOGTAG, "Autocomplete index built in " + (SystemClock.elapsedRealtime() - start) + "ms: " +
+                state.mHosts.size() + " hosts, " + state.mEntries.size() + " pages, " +
+                (state.mHostTrie.getNodeCount() + state.mPageTrie.getNodeCount()) + " nodes");
+    }
+
+    @NonNull
+    private static List<BookmarkNode> flattenBookmarks(@Nullable List<BookmarkNode> aNodes) {
+        ArrayList<BookmarkNode> result = new ArrayList<>();
+        if (aNodes == null) {
+            return result;
+        }
+        for (BookmarkNode node: aNodes) {
+            if (node.getType() == BookmarkNodeType.ITEM && node.getUrl() != null) {
+                result.add(node);
+            } else if (node.getType() == BookmarkNodeType.FOLDER) {
+                result.addAll(flattenBookmarks(node.getChildren()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Index contents. Modified either before being published or while holding the index lock.
+     */
+    private static class State {
+        final PrefixTrie<HostEntry> mHostTrie = new PrefixTrie<>();
+        final PrefixTrie<Entry> mPageTrie = new PrefixTrie<>();
+        final HashMap<String, HostEntry> mHosts = new HashMap<>();
+        final HashMap<String, Entry> mEntries = new HashMap<>();
+    }
+
+    private static void addDomains(@NonNull State aState, @NonNull List<String> aDomains) {
+        int count = aDomains.size();
+        for (int i = 0; i < count; ++i) {
+            String host = stripWww(aDomains.get(i).toLowerCase(Locale.ROOT));
+            int score = Math.max(1, (count - i) * MAX_SHIPPED_SCORE / count);
+            HostEntry entry = aState.mHosts.get(host);
+            if (entry == null) {
+                entry = new HostEntry(host);
+                aState.mHosts.put(host, entry);
+            } else {
+                aState.mHostTrie.remove(host, entry);
+            }
+            entry.mShippedScore = Math.max(entry.mShippedScore, score);
+            aState.mHostTrie.put(host, entry);
+        }
+    }
+
+    private void addVisits(@NonNull State aState, @NonNull List<VisitInfo> aVisits, long aNow) {
+        // Accumulate first so every page is only moved once in the tries.
+        HashMap<String, Integer> weights = new HashMap<>();
+        HashMap<String, String> titles = new HashMap<>();
+        for (VisitInfo visit: aVisits) {
+            mLastVisitTime = Math.max(mLastVisitTime, visit.getVisitTime());
+            Integer weight = weights.get(visit.getUrl());
+            weights.put(visit.getUrl(), (weight != null ? weight : 0) + visitWeight(aNow - visit.getVisitTime(), visit.getVisitType()));
+            String title = visit.getTitle();
+            if (title != null && !title.isEmpty()) {
+                titles.put(visit.getUrl(), title);
+            }
+        }
+        for (Map.Entry<String, Integer> weight: weights.entrySet()) {
+            String url = weight.getKey();
+            Entry entry = getOrCreateEntry(aState, url);
+            if (entry == null) {
+                continue;
+            }
+            String title = titles.get(url);
+            updateEntry(aState, entry, title != null ? title : entry.mTitle, entry.mFrecency + weight.getValue(), entry.mBookmarked);
+        }
+    }
+
+    private static void removeHistory(@NonNull State aState, @NonNull Collection<String> aUrls) {
+        for (String url: aUrls) {
+            Entry entry = aState.mEntries.get(url);
+            if (entry != null) {
+                updateEntry(aState, entry, entry.mTitle, 0, entry.mBookmarked);
+            }
+        }
+    }
+
+    private static void setBookmarks(@NonNull State aState, @NonNull List<BookmarkNode> aBookmarks) {
+        HashMap<String, String> bookmarks = new HashMap<>();
+        for (BookmarkNode bookmark: aBookmarks) {
+            String title = bookmark.getTitle();
+            bookmarks.put(bookmark.getUrl(), title != null ? title : "");
+        }
+        for (Entry entry: new ArrayList<>(aState.mEntries.values())) {
+            if (entry.mBookmarked && !bookmarks.containsKey(entry.mUrl)) {
+                updateEntry(aState, entry, entry.mTitle, entry.mFrecency, false);
+            }
+        }
+        for (Map.Entry<String, String> bookmark: bookmarks.entrySet()) {
+            Entry entry = getOrCreateEntry(aState, bookmark.getKey());
+            if (entry == null) {
+                continue;
+            }
+            // The page title from the history is kept, it's usually more up to date.
+            String title = entry.mTitle.isEmpty() ? bookmark.getValue() : entry.mTitle;
+            updateEntry(aState, entry, title, entry.mFrecency, true);
+        }
+    }
+
+    @Nullable
+    private static Entry getOrCreateEntry(@NonNull State aState, @NonNull String aUrl) {
+        Entry entry = aState.mEntries.get(aUrl);
+        if (entry == null) {
+            String host = getHost(aUrl);
+            if (host == null) {
+                return null;
+            }
+            entry = new Entry(aUrl, host);
+            aState.mEntries.put(aUrl, entry);
+        }
+        return entry;
+    }
+
+    // Moves the page, and its host, to their new position in the tries.
+    private static void updateEntry(@NonNull State aState, @NonNull Entry aEntry, @NonNull String aTitle,
+                                    int aFrecency, boolean aBookmarked) {
+        int previousScore = aEntry.getScore();
+        for (String key: getKeys(aEntry)) {
+            aState.mPageTrie.remove(key, aEntry);
+        }
+        aEntry.mTitle = aTitle;
+        aEntry.mFrecency = aFrecency;
+        aEntry.mBookmarked = aBookmarked;
+        if (aEntry.getScore() > 0) {
+            for (String key: getKeys(aEntry)) {
+                aState.mPageTrie.put(key, aEntry);
+            }
+        } else {
+            aState.mEntries.remove(aEntry.mUrl);
+        }
+
+        int delta = aEntry.getScore() - previousScore;
+        if (delta == 0) {
+            return;
+        }
+        HostEntry host = aState.mHosts.get(aEntry.mHost);
+        if (host == null) {
+            host = new HostEntry(aEntry.mHost);
+            aState.mHosts.put(aEntry.mHost, host);
+        } else {
+            aState.mHostTrie.remove(host.mHost, host);
+        }
+        host.mPageScore += delta;
+        if (host.getScore() > 0) {
+            aState.mHostTrie.put(host.mHost, host);
+        } else {
+            aState.mHosts.remove(host.mHost);
+        }
+    }
+
+    // The host and the title words.
+    @NonNull
+    private static Set<String> getKeys(@NonNull Entry aEntry) {
+        LinkedHashSet<String> keys = new LinkedHashSet<>();
+        keys.add(aEntry.mHost);
+        String title = aEntry.mTitle.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= title.length() && keys.size() <= MAX_TITLE_WORDS; ++i) {
+            boolean letter = i < title.length() && Character.isLetterOrDigit(title.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                if (i - start > 1) {
+                    keys.add(title.substring(start, Math.min(i, start + MAX_WORD_LENGTH)));
+                }
+                start = -1;
+            }
+        }
+        return keys;
+    }
+
+    @Nullable
+    private static String getHost(@NonNull String aUrl) {
+        String host = Uri.parse(aUrl).getHost();
+        if (host == null || host.isEmpty()) {
+            return null;
+        }
+        return stripWww(host.toLowerCase(Locale.ROOT));
+    }
+
+    @NonNull
+    private static String stripWww(@NonNull String aHost) {
+        return aHost.startsWith(WWW) ? aHost.substring(WWW.length()) : aHost;
+    }
+
+    static int visitWeight(long aAgeMs, @NonNull VisitType aType) {
+        long days = aAgeMs / SystemUtils.ONE_DAY_MILLIS;
+        int weight;
+        if (days <= 4) {
+            weight = 100;
+        } else if (days <= 14) {
+            weight = 70;
+        } else if (days <= 31) {
+            weight = 50;
+        } else if (days <= 90) {
+            weight = 30;
+        } else {
+            weight = 10;
+        }
+        return aType == VisitType.TYPED ? weight * 2 : weight;
+    }
+}
@@ -0,0 +1,249 @@
+package org.mozilla.vrbrowser.search.suggestions;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Prefix trie where every node keeps the best scored items below it, so a prefix lookup only
+ * walks the prefix and never the subtree. Children are stored in sorted parallel arrays instead
+ * of maps to keep the nodes small.
+ *
+ * Item scores must not change while the item is in the trie: remove it, update it and put it back.
+ * Not thread safe.
+ */
+class PrefixTrie<T extends PrefixTrie.Item> {
+
+    interface Item {
+        int getScore();
+    }
+
+    static final int TOP_SIZE = 8;
+
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final Item[] NO_ITEMS = new Item[0];
+
+    private static class Node {
+        char[] mLabels = NO_LABELS;
+        Node[] mChildren = NO_CHILDREN;
+        // Items whose key ends in this node.
+        Item[] mItems = NO_ITEMS;
+        // Best items of the subtree sorted by descending score, at most TOP_SIZE.
+        Item[] mTop = NO_ITEMS;
+
+        @Nullable
+        Node getChild(char aLabel) {
+            int index = Arrays.binarySearch(mLabels, aLabel);
+            return index >= 0 ? mChildren[index] : null;
+        }
+
+        @NonNull
+        Node addChild(char aLabel) {
+            int index = -Arrays.binarySearch(mLabels, aLabel) - 1;
+            Node child = new Node();
+            char[] labels = new char[mLabels.length + 1];
+            Node[] children = new Node[mChildren.length + 1];
+            System.arraycopy(mLabels, 0, labels, 0, index);
+            System.arraycopy(mChildren, 0, children, 0, index);
+            labels[index] = aLabel;
+            children[index] = child;
+            System.arraycopy(mLabels, index, labels, index + 1, mLabels.length - index);
+            System.arraycopy(mChildren, index, children, index + 1, mChildren.length - index);
+            mLabels = labels;
+            mChildren = children;
+            return child;
+        }
+
+        void removeChild(char aLabel) {
+            int index = Arrays.binarySearch(mLabels, aLabel);
+            if (index < 0) {
+                return;
+            }
+            char[] labels = new char[mLabels.length - 1];
+            Node[] children = new Node[mChildren.length - 1];
+            System.arraycopy(mLabels, 0, labels, 0, index);
+            System.arraycopy(mChildren, 0, children, 0, index);
+            System.arraycopy(mLabels, index + 1, labels, index, labels.length - index);
+            System.arraycopy(mChildren, index + 1, children, index, children.length - index);
+            mLabels = labels;
+            mChildren = children;
+        }
+
+        boolean isEmpty() {
+            return mItems.length == 0 && mChildren.length == 0;
+        }
+    }
+
+    private final Node mRoot = new Node();
+    private int mNodeCount = 1;
+
+    void put(@NonNull String aKey, @NonNull T aItem) {
+        Node[] path = new Node[aKey.length() + 1];
+        Node node = mRoot;
+        path[0] = node;
+        for (int i = 0; i < aKey.length(); ++i) {
+            Node child = node.getChild(aKey.charAt(i));
+            if (child == null) {
+                child = node.addChild(aKey.charAt(i));
+                mNodeCount++;
+            }
+            node = child;
+            path[i + 1] = node;
+        }
+        if (indexOf(node.mItems, aItem) >= 0) {
+            return;
+        }
+        node.mItems = append(node.mItems, aItem);
+        for (Node pathNode: path) {
+            pathNode.mTop = insertTop(pathNode.mTop, aItem);
+        }
+    }
+
+    void remove(@NonNull String aKey, @NonNull T aItem) {
+        Node[] path = new Node[aKey.length() + 1];
+        Node node = mRoot;
+        path[0] = node;
+        for (int i = 0; i < aKey.length(); ++i) {
+            node = node.getChild(aKey.charAt(i));
+            if (node == null) {
+                return;
+            }
+            path[i + 1] = node;
+        }
+        int index = indexOf(node.mItems, aItem);
+        if (index < 0) {
+            return;
+        }
+        node.mItems = removeAt(node.mItems, index);
+
+        // Bottom-up so every node recomputes its top from the already updated children.
+        for (int i = aKey.length(); i >= 0; --i) {
+            Node pathNode = path[i];
+            if (i > 0 && pathNode.isEmpty()) {
+                path[i - 1].removeChild(aKey.charAt(i - 1));
+                mNodeCount--;
+                continue;
+            }
+            if (indexOf(pathNode.mTop, aItem) >= 0) {
+                pathNode.mTop = computeTop(pathNode);
+            }
+        }
+    }
+
+    /**
+     * @return the best scored items with a key starting with the prefix, at most {@link #TOP_SIZE}.
+     */
+    @SuppressWarnings("unchecked")
+    @NonNull
+    List<T> query(@NonNull String aPrefix, int aLimit) {
+        Node node = mRoot;
+        for (int i = 0; i < aPrefix.length() && node != null; ++i) {
+            node = node.getChild(aPrefix.charAt(i));
+        }
+        if (node == null) {
+            return new ArrayList<>();
+        }
+        int count = Math.min(aLimit, node.mTop.length);
+        ArrayList<T> result = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            result.add((T) node.mTop[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the key of the best scored item among the keys starting with the prefix, or null.
+     */
+    @Nullable
+    String queryBestKey(@NonNull String aPrefix) {
+        Node node = mRoot;
+        StringBuilder key = new StringBuilder(aPrefix);
+        for (int i = 0; i < aPrefix.length() && node != null; ++i) {
+            node = node.getChild(aPrefix.charAt(i));
+        }
+        if (node == null || node.mTop.length == 0) {
+            return null;
+        }
+        // Follow the children whose top contains the best item until the node holding it.
+        Item best = node.mTop[0];
+        while (indexOf(node.mItems, best) < 0) {
+            Node next = null;
+            for (int i = 0; i < node.mChildren.length; ++i) {
+                Node child = node.mChildren[i];
+                if (indexOf(child.mTop, best) >= 0) {
+                    next = child;
+                    key.append(node.mLabels[i]);
+                    break;
+                }
+            }
+            if (next == null) {
+                return null;
+            }
+            node = next;
+        }
+        return key.toString();
+    }
+
+    int getNodeCount() {
+        return mNodeCount;
+    }
+
+    private static Item[] computeTop(@NonNull Node aNode) {
+        Item[] top = NO_ITEMS;
+        for (Item item: aNode.mItems) {
+            top = insertTop(top, item);
+        }
+        for (Node child: aNode.mChildren) {
+            for (Item item: child.mTop) {
+                top = insertTop(top, item);
+            }
+        }
+        return top;
+    }
+
+    // Returns the top with the item inserted at its position, the same array if it doesn't qualify.
+    private static Item[] insertTop(@NonNull Item[] aTop, @NonNull Item aItem) {
+        int score = aItem.getScore();
+        int position = aTop.length;
+        while (position > 0 && aTop[position - 1].getScore() < score) {
+            position--;
+        }
+        if (position >= TOP_SIZE || indexOf(aTop, aItem) >= 0) {
+            return aTop;
+        }
+        Item[] top = new Item[Math.min(aTop.length + 1, TOP_SIZE)];
+        System.arraycopy(aTop, 0, top, 0, position);
+        top[position] = aItem;
+        System.arraycopy(aTop, position, top, position + 1, top.length - position - 1);
+        return top;
+    }
+
+    private static int indexOf(@NonNull Item[] aItems, @NonNull Item aItem) {
+        for (int i = 0; i < aItems.length; ++i) {
+            if (aItems[i] == aItem) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Item[] append(@NonNull Item[] aItems, @NonNull Item aItem) {
+        Item[] items = Arrays.copyOf(aItems, aItems.length + 1);
+        items[aItems.length] = aItem;
+        return items;
+    }
+
+    private static Item[] removeAt(@NonNull Item[] aItems, int aIndex) {
+        if (aItems.length == 1) {
+            return NO_ITEMS;
+        }
+        Item[] items = new Item[aItems.length - 1];
+        System.arraycopy(aItems, 0, items, 0, aIndex);
+        System.arraycopy(aItems, aIndex + 1, items, aIndex, items.length - aIndex);
+        return items;
+    }
+}
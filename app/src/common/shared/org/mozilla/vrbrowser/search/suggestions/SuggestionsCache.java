@@ -0,0 +1,235 @@
+package org.mozilla.vrbrowser.search.suggestions;
+
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache of the search engine suggestions, keyed by engine and normalized query.
+ *
+ * Suggestions of a longer query are served locally when a cached response for one of its prefixes
+ * already contains enough matching completions. The most recently used entries are persisted so
+ * the cache is warm after a restart.
+ */
+public class SuggestionsCache {
+    private static final String LOGTAG = SystemUtils.createLogtag(SuggestionsCache.class);
+
+    static final int MAX_ENTRIES = 200;
+    static final int WARM_SET_SIZE = 30;
+    static final long TTL_MS = 15 * 60 * 1000;
+    // Prefix responses are truncated by the engines, only trust them when they still have this many matches.
+    static final int MIN_PREFIX_MATCHES = 3;
+
+    private static class Entry {
+        String engine;
+        String query;
+        List<String> suggestions;
+        long timestamp;
+    }
+
+    private final AtomicFile mFile;
+    private final Executor mIOExecutor;
+    private final LongSupplier mClock;
+    private final Gson mGson = new Gson();
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private int mHits;
+    private int mPrefixHits;
+    private int mMisses;
+
+    public SuggestionsCache(@NonNull File aFile, @NonNull Executor aIOExecutor) {
+        this(aFile, aIOExecutor, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    SuggestionsCache(@NonNull File aFile, @NonNull Executor aIOExecutor, @NonNull LongSupplier aClock) {
+        mFile = new AtomicFile(aFile);
+        mIOExecutor = aIOExecutor;
+        mClock = aClock;
+    }
+
+    private static String normalize(@NonNull String aQuery) {
+        return aQuery.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String key(@NonNull String aEngine, @NonNull String aQuery) {
+        return aEngine + '\n' + aQuery;
+    }
+
+    /**
+     * @return the cached suggestions for the query, or null if they need to be fetched.
+     */
+    @Nullable
+    public synchronized List<String> get(@NonNull String aEngine, @NonNull String aQuery) {
+        String query = normalize(aQuery);
+        long now = mClock.getAsLong();
+        Entry entry = getEntry(aEngine, query, now);
+        if (entry != null) {
+            mHits++;
+            return entry.suggestions;
+        }
+
+        // Look for the longest cached prefix with enough completions of the query.
+        for (int length = query.length() - 1; length > 0; --length) {
+            entry = getEntry(aEngine, query.substring(0, length), now);
+            if (entry == null) {
+                continue;
+            }
+            ArrayList<String> matches = new ArrayList<>();
+            for (String suggestion: entry.suggestions) {
+                if (suggestion.toLowerCase(Locale.ROOT).startsWith(query)) {
+                    matches.add(suggestion);
+                }
+            }
+            if (matches.size() >= MIN_PREFIX_MATCHES) {
+                mPrefixHits++;
+                return matches;
+            }
+            break;
+        }
+
+        mMisses++;
+        return null;
+    }
+
+    @Nullable
+    private Entry getEntry(@NonNull String aEngine, @NonNull String aQuery, long aNow) {
+        String key = key(aEngine, aQuery);
+        Entry entry = mEntries.get(key);
+        if (entry != null && aNow - entry.timestamp > TTL_MS) {
+            mEntries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    public synchronized void put(@NonNull String aEngine, @NonNull String aQuery, @NonNull List<String> aSuggestions) {
+        Entry entry = new Entry();
+        entry.engine = aEngine;
+        entry.query = normalize(aQuery);
+        entry.suggestions = Collections.unmodifiableList(new ArrayList<>(aSuggestions));
+        entry.timestamp = mClock.getAsLong();
+        mEntries.put(key(aEngine, entry.query), entry);
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * Loads the persisted warm set in the background. Entries cached in the meantime are kept.
+     */
+    public void load() {
+        mIOExecutor.execute(this::loadSync);
+    }
+
+    /**
+     * Persists the most recently used entries in the background.
+     */
+    public void save() {
+        final ArrayList<Entry> warmSet;
+        synchronized (this) {
+            ArrayList<Entry> entries = new ArrayList<>(mEntries.values());
+            // Access order, the most recently used entries are last.
+            warmSet = new ArrayList<>(entries.subList(Math.max(0, entries.size() - WARM_SET_SIZE), entries.size()));
+        }
+        mIOExecutor.execute(() -> saveSync(warmSet));
+    }
+
+    @WorkerThread
+    private void loadSync() {
+        if (!mFile.getBaseFile().exists()) {
+            return;
+        }
+        List<Entry> entries;
+        try (Reader reader = new InputStreamReader(mFile.openRead(), StandardCharsets.UTF_8)) {
+            entries = mGson.fromJson(reader, new TypeToken<List<Entry>>(){}.getType());
+
+        } catch (IOException | JsonParseException e) {
+            Log.e(LOGTAG, "Error loading the suggestions cache: " + e.getMessage());
+            return;
+        }
+        if (entries == null) {
+            return;
+        }
+
+        long now = mClock.getAsLong();
+        synchronized (this) {
+            for (Entry entry: entries) {
+                if (entry.engine == null || entry.query == null || entry.suggestions == null) {
+                    continue;
+                }
+                String key = key(entry.engine, entry.query);
+                if (now - entry.timestamp <= TTL_MS && !mEntries.containsKey(key)) {
+                    entry.suggestions = Collections.unmodifiableList(entry.suggestions);
+                    mEntries.put(key, entry);
+                }
+            }
+        }
+    }
+
+    @WorkerThread
+    private void saveSync(@NonNull List<Entry> aEntries) {
+        FileOutputStream stream = null;
+        try {
+            stream = mFile.startWrite();
+            stream.write(mGson.toJson(aEntries).getBytes(StandardCharsets.UTF_8));
+            mFile.finishWrite(stream);
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Error saving the suggestions cache: " + e.getMessage());
+            if (stream != null) {
+                mFile.failWrite(stream);
+            }
+        }
+    }
+
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    public synchronized int getPrefixHits() {
+        return mPrefixHits;
+    }
+
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * @return the ratio of the lookups answered locally, exact or prefix hits.
+     */
+    public synchronized float getHitRate() {
+        int total = mHits + mPrefixHits + mMisses;
+        return total > 0 ? (float) (mHits + mPrefixHits) / total : 0;
+    }
+}
@@ -1,10 +1,14 @@
 package org.mozilla.vrbrowser.search.suggestions;
 
+import androidx.annotation.NonNull;
+
 import com.loopj.android.http.AsyncHttpClient;
+import com.loopj.android.http.RequestHandle;
 import com.loopj.android.http.TextHttpResponseHandler;
 
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import cz.msebera.android.httpclient.Header;
 import mozilla.components.browser.search.SearchEngine;
@@ -14,9 +18,43 @@ public class SuggestionsClient {
     private static AsyncHttpClient client = new AsyncHttpClient();
 
     public static CompletableFuture<List<String>> getSuggestions(SearchEngine mEngine, String aQuery) {
+        return getSuggestions(aQuery, SuggestionParser.selectResponseParser(mEngine));
+    }
+
+    /**
+     * Returns the cached suggestions when available, otherwise fetches and caches them.
+     * @param aQuery the text typed by the user.
+     * @param aURL the suggestions URL for the query.
+     */
+    public static CompletableFuture<List<String>> getSuggestions(@NonNull SuggestionsCache aCache, @NonNull SearchEngine aEngine,
+                                                                 @NonNull String aQuery, @NonNull String aURL) {
+        return getSuggestions(aCache, aEngine.getIdentifier(), aQuery, aURL, SuggestionParser.selectResponseParser(aEngine));
+    }
+
+    static CompletableFuture<List<String>> getSuggestions(@NonNull SuggestionsCache aCache, @NonNull String aEngine,
+                                                          @NonNull String aQuery, @NonNull String aURL,
+                                                          @NonNull Function<String, List<String>> aParser) {
+        List<String> cached = aCache.get(aEngine, aQuery);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<List<String>> request = getSuggestions(aURL, aParser);
+        CompletableFuture<List<String>> future = request.thenApply(suggestions -> {
+            aCache.put(aEngine, aQuery, suggestions);
+            return suggestions;
+        });
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                request.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    private static CompletableFuture<List<String>> getSuggestions(String aURL, Function<String, List<String>> aParser) {
         final CompletableFuture<List<String>> future = new CompletableFuture<>();
-        client.cancelAllRequests(true);
-        client.get(aQuery, null, new TextHttpResponseHandler("ISO-8859-1") {
+        RequestHandle request = client.get(aURL, null, new TextHttpResponseHandler("ISO-8859-1") {
             @Override
             public void onFailure(int statusCode, Header[] headers, String responseString, Throwable throwable) {
                 future.completeExceptionally(throwable);
@@ -24,7 +62,13 @@ public class SuggestionsClient {
 
             @Override
             public void onSuccess(int statusCode, Header[] headers, String responseString) {
-                future.complete(SuggestionParser.selectResponseParser(mEngine).apply(responseString));
+                future.complete(aParser.apply(responseString));
+            }
+        });
+        // Cancelling the future aborts the request.
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                request.cancel(true);
             }
         });
 
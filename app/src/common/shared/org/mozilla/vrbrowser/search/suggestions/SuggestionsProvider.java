@@ -1,9 +1,15 @@
 package org.mozilla.vrbrowser.search.suggestions;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
 
 import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
@@ -17,12 +23,17 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import mozilla.components.concept.storage.BookmarkNode;
+import mozilla.components.concept.storage.SearchResult;
 
 public class SuggestionsProvider {
 
     private static final String LOGTAG = SuggestionsProvider.class.getSimpleName();
 
-    public class DefaultSuggestionsComparator implements Comparator {
+    public static class DefaultSuggestionsComparator implements Comparator {
 
         public int compare(Object obj1, Object obj2) {
             SuggestionItem suggestion1 = (SuggestionItem)obj1;
@@ -31,7 +42,7 @@ public class SuggestionsProvider {
                 return 0;
 
             } else if (suggestion1.type == suggestion2.type) {
-                if (suggestion1.type == Type.HISTORY) {
+                if (suggestion1.type == Type.HISTORY || suggestion1.type == Type.BOOKMARK) {
                     if (suggestion1.score != suggestion2.score) {
                         return suggestion1.score - suggestion2.score;
                     }
@@ -45,17 +56,38 @@ public class SuggestionsProvider {
         }
     }
 
+    public enum Source {
+        SEARCH_ENGINE,
+        BOOKMARKS,
+        HISTORY,
+        AUTOCOMPLETE_INDEX
+    }
+
+    public static final long[] LATENCY_BUCKETS_MS = { 10, 25, 50, 100, 250, 500, 1000 };
+
+    private final int[][] mLatencyHistogram = new int[Source.values().length][LATENCY_BUCKETS_MS.length + 1];
+    private static final long DEFAULT_DEBOUNCE_MS = 100;
+
     private SearchEngineWrapper mSearchEngineWrapper;
     private String mText;
     private String mFilterText;
     private Comparator mComparator;
     private Executor mUIThreadExecutor;
+    private Handler mHandler;
+    private long mDebounceMs = DEFAULT_DEBOUNCE_MS;
+    // Only written from the UI thread, read from the lookup threads to drop stale results.
+    private volatile int mCurrentGeneration;
+    private QuerySession mSession;
+    private int mDeliveredLookups;
+    private int mWastedLookups;
+    private int mDebouncedQueries;
 
     public SuggestionsProvider(Context context) {
         mSearchEngineWrapper = SearchEngineWrapper.get(context);
         mFilterText = "";
         mComparator = new DefaultSuggestionsComparator();
         mUIThreadExecutor = ((VRBrowserApplication)context.getApplicationContext()).getExecutors().mainThread();
+        mHandler = new Handler(Looper.getMainLooper());
     }
 
     private String getSearchURLOrDomain(String text) {
@@ -77,67 +109,132 @@ public class SuggestionsProvider {
         mComparator = comparator;
     }
 
-    public CompletableFuture<List<SuggestionItem>> getBookmarkSuggestions(@NonNull List<SuggestionItem> items) {
-        CompletableFuture future = new CompletableFuture();
-        SessionStore.get().getBookmarkStore().searchBookmarks(mFilterText, 100).thenAcceptAsync((bookmarks) -> {
-            bookmarks.stream()
+    private CompletableFuture<List<SuggestionItem>> getBookmarkSuggestions(@NonNull QuerySession aSession) {
+        final long start = SystemClock.elapsedRealtime();
+        CompletableFuture<List<BookmarkNode>> lookup = SessionStore.get().getBookmarkStore().searchBookmarks(aSession.mFilterText, 100);
+        aSession.mLookups.add(lookup);
+        return lookup.thenApplyAsync((bookmarks) -> {
+            if (aSession.isStale()) {
+                return new ArrayList<SuggestionItem>();
+            }
+            List<SuggestionItem> items = bookmarks.stream()
                     .filter((b) -> !b.getUrl().startsWith("place:") &&
                             !b.getUrl().startsWith("about:reader"))
-                    .forEach(b -> items.add(SuggestionItem.create(
+                    .map(b -> SuggestionItem.create(
                             b.getTitle(),
                             b.getUrl(),
                             null,
                             Type.BOOKMARK,
                             0
-                    )));
-            if (mComparator != null) {
-                items.sort(mComparator);
-            }
-            future.complete(items);
+                    ))
+                    .collect(Collectors.toList());
+            return sortSourceItems(Source.BOOKMARKS, start, items);
 
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error getting bookmarks suggestions: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            future.complete(items);
-            return null;
+        }).exceptionally(throwable -> {
+            if (!aSession.isStale()) {
+                Log.d(LOGTAG, "Error getting bookmarks suggestions: " + throwable.getLocalizedMessage());
+            }
+            return new ArrayList<>();
         });
-
-        return future;
     }
 
-    public CompletableFuture<List<SuggestionItem>> getHistorySuggestions(@NonNull final List<SuggestionItem> items) {
-        CompletableFuture future = new CompletableFuture();
-        SessionStore.get().getHistoryStore().getSuggestions(mFilterText, 100).thenAcceptAsync((history) -> {
-            history.forEach(h -> items.add(SuggestionItem.create(
+    private CompletableFuture<List<SuggestionItem>> getHistorySuggestions(@NonNull QuerySession aSession) {
+        final long start = SystemClock.elapsedRealtime();
+        CompletableFuture<List<SearchResult>> lookup = SessionStore.get().getHistoryStore().getSuggestions(aSession.mFilterText, 100);
+        aSession.mLookups.add(lookup);
+        return lookup.thenApplyAsync((history) -> {
+            if (aSession.isStale()) {
+                return new ArrayList<SuggestionItem>();
+            }
+            List<SuggestionItem> items = history.stream()
+                    .map(h -> SuggestionItem.create(
                             h.getTitle(),
                             h.getUrl(),
                             null,
                             Type.HISTORY,
                             h.getScore()
-                    )));
-            if (mComparator != null) {
-                items.sort(mComparator);
+                    ))
+                    .collect(Collectors.toList());
+            return sortSourceItems(Source.HISTORY, start, items);
+
+        }).exceptionally(throwable -> {
+            if (!aSession.isStale()) {
+                Log.d(LOGTAG, "Error getting history suggestions: " + throwable.getLocalizedMessage());
             }
-            future.complete(items);
+            return new ArrayList<>();
+        });
+    }
 
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error getting history suggestions: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            future.complete(items);
-            return null;
+    private CompletableFuture<List<SuggestionItem>> getIndexSuggestions(@NonNull QuerySession aSession, @NonNull AutocompleteIndex aIndex) {
+        final long start = SystemClock.elapsedRealtime();
+        return CompletableFuture.supplyAsync(() -> {
+            if (aSession.isStale()) {
+                return new ArrayList<>();
+            }
+            List<AutocompleteIndex.Entry> entries = aIndex.query(aSession.mFilterText, AutocompleteIndex.MAX_RESULTS);
+            return sortSourceItems(Source.AUTOCOMPLETE_INDEX, start, createIndexItems(entries));
         });
+    }
 
-        return future;
+    /**
+     * @return the suggestions of the index entries. The entries come best first and their rank is
+     * used as the score, so the default comparator keeps that order within each type.
+     */
+    @VisibleForTesting
+    @NonNull
+    static List<SuggestionItem> createIndexItems(@NonNull List<AutocompleteIndex.Entry> aEntries) {
+        List<SuggestionItem> items = new ArrayList<>();
+        for (AutocompleteIndex.Entry entry : aEntries) {
+            if (entry.getUrl().startsWith("place:") || entry.getUrl().startsWith("about:reader")) {
+                continue;
+            }
+            items.add(SuggestionItem.create(
+                    entry.getTitle(),
+                    entry.getUrl(),
+                    null,
+                    entry.isBookmarked() ? Type.BOOKMARK : Type.HISTORY,
+                    items.size()
+            ));
+        }
+        return items;
     }
 
-    public CompletableFuture<List<SuggestionItem>> getSearchEngineSuggestions(@NonNull final List<SuggestionItem> items) {
-        CompletableFuture future = new CompletableFuture();
+    private CompletableFuture<List<SuggestionItem>> getSearchEngineSuggestions(@NonNull QuerySession aSession) {
+        final long start = SystemClock.elapsedRealtime();
+        CompletableFuture<List<String>> lookup = mSearchEngineWrapper.getSuggestions(aSession.mFilterText);
+        aSession.mLookups.add(lookup);
+        return lookup.thenApplyAsync((suggestions) -> {
+            if (aSession.isStale()) {
+                return new ArrayList<SuggestionItem>();
+            }
+            List<SuggestionItem> items = suggestions.stream()
+                    .map(s -> SuggestionItem.create(
+                            s,
+                            mSearchEngineWrapper.getSearchURL(s),
+                            null,
+                            Type.SUGGESTION,
+                            0
+                    ))
+                    .collect(Collectors.toList());
+            return sortSourceItems(Source.SEARCH_ENGINE, start, items);
+
+        }).exceptionally(throwable -> {
+            if (!aSession.isStale()) {
+                Log.d(LOGTAG, "Error getting search engine suggestions: " + throwable.getLocalizedMessage());
+            }
+            return new ArrayList<>();
+        });
+    }
+
+    // The completion and the typed text are known right away, they are shown before any source answers.
+    private List<SuggestionItem> getTextSuggestions(@NonNull String aText, @NonNull String aFilterText) {
+        List<SuggestionItem> items = new ArrayList<>();
 
         // Completion from browser-domains
-        if (!mText.equals(mFilterText)) {
+        if (!aText.equals(aFilterText)) {
             items.add(SuggestionItem.create(
-                    mText,
-                    getSearchURLOrDomain(mText),
+                    aText,
+                    getSearchURLOrDomain(aText),
                     null,
                     Type.COMPLETION,
                     0
@@ -146,45 +243,226 @@ public class SuggestionsProvider {
 
         // Original text
         items.add(SuggestionItem.create(
-                mFilterText,
-                getSearchURLOrDomain(mFilterText),
+                aFilterText,
+                getSearchURLOrDomain(aFilterText),
                 null,
                 Type.SUGGESTION,
                 0
         ));
 
-        // Suggestions
-        mSearchEngineWrapper.getSuggestions(mFilterText).thenAcceptAsync((suggestions) -> {
-            suggestions.forEach(s -> {
-                String url = mSearchEngineWrapper.getSearchURL(s);
-                items.add(SuggestionItem.create(
-                        s,
-                        url,
-                        null,
-                        Type.SUGGESTION,
-                        0
-                ));
-            });
-            if (mComparator != null) {
-                items.sort(mComparator);
-            }
-            future.complete(items);
-
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error getting search engine suggestions: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            future.complete(items);
-            return null;
-        });
+        return items;
+    }
 
-        return future;
+    @SuppressWarnings("unchecked")
+    private List<SuggestionItem> sortSourceItems(@NonNull Source aSource, long aStart, @NonNull List<SuggestionItem> aItems) {
+        if (mComparator != null) {
+            aItems.sort(mComparator);
+        }
+        recordLatency(aSource, SystemClock.elapsedRealtime() - aStart);
+        return aItems;
     }
 
+    /**
+     * Starts a new query, cancelling the previous one. The search engine, bookmarks and history are
+     * queried concurrently once the text has not changed for the debounce delay.
+     * @param aListener called on the UI thread with the merged and sorted suggestions, first with the
+     *                  typed text and then every time a source answers. May be null.
+     * @return a future completed with the final suggestions once every source has answered, or
+     * cancelled if another query starts before.
+     */
+    @UiThread
+    public CompletableFuture<List<SuggestionItem>> getSuggestions(@Nullable Consumer<List<SuggestionItem>> aListener) {
+        cancel();
+        mSession = new QuerySession(++mCurrentGeneration, mText, mFilterText, aListener);
+        if (aListener != null) {
+            aListener.accept(mSession.mMerged.mItems);
+        }
+        if (mDebounceMs > 0) {
+            mHandler.postDelayed(mSession, mDebounceMs);
+
+        } else {
+            mSession.run();
+        }
+
+        return mSession.mResult;
+    }
+
+    @UiThread
     public CompletableFuture<List<SuggestionItem>> getSuggestions() {
-        return CompletableFuture.supplyAsync(() -> new ArrayList<SuggestionItem>())
-                .thenComposeAsync(this::getSearchEngineSuggestions)
-                .thenComposeAsync(this::getBookmarkSuggestions)
-                .thenComposeAsync(this::getHistorySuggestions);
+        return getSuggestions(null);
+    }
+
+    /**
+     * Cancels the current query, if any. Its pending lookups are cancelled and their results dropped.
+     */
+    @UiThread
+    public void cancel() {
+        if (mSession != null) {
+            mSession.cancel();
+            mSession = null;
+        }
+    }
+
+    /**
+     * Sets how long the text needs to stay unchanged before the sources are queried.
+     */
+    public void setDebounceDelay(long aDelayMs) {
+        mDebounceMs = aDelayMs;
+    }
+
+    /**
+     * A query for a given text. Stale sessions are detected by their generation, which lets the
+     * background threads drop their results before sorting them.
+     */
+    private class QuerySession implements Runnable {
+        final int mGeneration;
+        final String mFilterText;
+        final Consumer<List<SuggestionItem>> mListener;
+        final MergedSuggestions mMerged;
+        final CompletableFuture<List<SuggestionItem>> mResult = new CompletableFuture<>();
+        // Futures returned by the sources, cancelling them aborts the lookups.
+        final List<CompletableFuture<?>> mLookups = new ArrayList<>();
+        boolean mStarted;
+
+        QuerySession(int aGeneration, @NonNull String aText, @NonNull String aFilterText,
+                     @Nullable Consumer<List<SuggestionItem>> aListener) {
+            mGeneration = aGeneration;
+            mFilterText = aFilterText;
+            mListener = aListener;
+            mMerged = new MergedSuggestions(getTextSuggestions(aText, aFilterText));
+        }
+
+        boolean isStale() {
+            return mGeneration != mCurrentGeneration;
+        }
+
+        @Override
+        public void run() {
+            mStarted = true;
+            List<CompletableFuture<List<SuggestionItem>>> sources = new ArrayList<>();
+            sources.add(getSearchEngineSuggestions(this));
+            AutocompleteIndex index = SessionStore.get().getAutocompleteIndex();
+            if (index != null && index.isReady() && AutocompleteIndex.isSupportedQuery(mFilterText)) {
+                sources.add(getIndexSuggestions(this, index));
+
+            } else {
+                sources.add(getBookmarkSuggestions(this));
+                sources.add(getHistorySuggestions(this));
+            }
+            mMerged.mPending = sources.size();
+            for (CompletableFuture<List<SuggestionItem>> source : sources) {
+                source.thenAcceptAsync(this::onSourceResult, mUIThreadExecutor);
+            }
+        }
+
+        void onSourceResult(@NonNull List<SuggestionItem> aItems) {
+            if (isStale()) {
+                mWastedLookups++;
+                return;
+            }
+            mDeliveredLookups++;
+            mMerged.add(aItems);
+            if (mListener != null) {
+                mListener.accept(mMerged.mItems);
+            }
+            if (mMerged.mPending == 0) {
+                mResult.complete(mMerged.mItems);
+            }
+        }
+
+        void cancel() {
+            if (mGeneration == mCurrentGeneration) {
+                mCurrentGeneration++;
+            }
+            if (!mStarted) {
+                mHandler.removeCallbacks(this);
+                mDebouncedQueries++;
+            }
+            for (CompletableFuture<?> lookup : mLookups) {
+                lookup.cancel(true);
+            }
+            mResult.cancel(false);
+        }
+    }
+
+    /**
+     * @return the number of source lookups whose results were shown.
+     */
+    @UiThread
+    public int getDeliveredLookups() {
+        return mDeliveredLookups;
+    }
+
+    /**
+     * @return the number of source lookups that were cancelled or answered after their query was stale.
+     */
+    @UiThread
+    public int getWastedLookups() {
+        return mWastedLookups;
+    }
+
+    /**
+     * @return the number of queries replaced before their debounce delay expired, so no source was queried.
+     */
+    @UiThread
+    public int getDebouncedQueries() {
+        return mDebouncedQueries;
+    }
+
+    /**
+     * Merged results of a query. Only accessed from the UI thread.
+     */
+    private class MergedSuggestions {
+        List<SuggestionItem> mItems;
+        int mPending;
+
+        MergedSuggestions(@NonNull List<SuggestionItem> aItems) {
+            mItems = aItems;
+        }
+
+        // Both lists are already sorted, so they are merged in a single pass. Items received
+        // earlier go first when the comparator considers them equal.
+        @SuppressWarnings("unchecked")
+        void add(@NonNull List<SuggestionItem> aItems) {
+            mPending--;
+            if (aItems.isEmpty()) {
+                return;
+            }
+            ArrayList<SuggestionItem> result = new ArrayList<>(mItems.size() + aItems.size());
+            int i = 0;
+            int j = 0;
+            while (i < mItems.size() && j < aItems.size()) {
+                if (mComparator == null || mComparator.compare(mItems.get(i), aItems.get(j)) <= 0) {
+                    result.add(mItems.get(i++));
+                } else {
+                    result.add(aItems.get(j++));
+                }
+            }
+            result.addAll(mItems.subList(i, mItems.size()));
+            result.addAll(aItems.subList(j, aItems.size()));
+            mItems = result;
+        }
+    }
+
+    private void recordLatency(@NonNull Source aSource, long aLatencyMs) {
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS_MS.length && aLatencyMs > LATENCY_BUCKETS_MS[bucket]) {
+            bucket++;
+        }
+        synchronized (mLatencyHistogram) {
+            mLatencyHistogram[aSource.ordinal()][bucket]++;
+        }
+    }
+
+    /**
+     * @return the number of lookups of the source by latency bucket. Bucket i counts the lookups
+     * that took up to {@link #LATENCY_BUCKETS_MS}[i] milliseconds, the last bucket the slower ones.
+     */
+    @NonNull
+    public int[] getLatencyHistogram(@NonNull Source aSource) {
+        synchronized (mLatencyHistogram) {
+            return mLatencyHistogram[aSource.ordinal()].clone();
+        }
     }
 
 }
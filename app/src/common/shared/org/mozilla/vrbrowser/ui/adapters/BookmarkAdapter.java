@@ -11,6 +11,7 @@ import android.widget.ImageView;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.databinding.DataBindingUtil;
+import androidx.recyclerview.widget.AsyncListDiffer;
 import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -24,7 +25,9 @@ import org.mozilla.vrbrowser.ui.widgets.WidgetPlacement;
 import org.mozilla.vrbrowser.utils.AnimationHelper;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
 
@@ -38,7 +41,29 @@ public class BookmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
 
     private static final int ICON_ANIMATION_DURATION = 200;
 
+    private static final DiffUtil.ItemCallback<Bookmark> DIFF_CALLBACK = new DiffUtil.ItemCallback<Bookmark>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Bookmark oldItem, @NonNull Bookmark newItem) {
+            return oldItem.getGuid().equals(newItem.getGuid());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Bookmark oldItem, @NonNull Bookmark newItem) {
+            return oldItem.getGuid().equals(newItem.getGuid())
+                    && Objects.equals(oldItem.getTitle(), newItem.getTitle())
+                    && Objects.equals(oldItem.getUrl(), newItem.getUrl())
+                    && oldItem.isExpanded() == newItem.isExpanded();
+        }
+    };
+
+    private final AsyncListDiffer<Bookmark> mDiffer;
+    // Guids are mapped to sequential ids so stable ids never collide.
+    private final HashMap<String, Long> mStableIds = new HashMap<>();
+    private final ArrayList<String> mOpenFolders = new ArrayList<>(Collections.singletonList(BookmarkRoot.Mobile.getId()));
+    // Positions of the displayed bookmarks by guid.
+    private final HashMap<String, Integer> mPositions = new HashMap<>();
     private List<BookmarkNode> mBookmarksList;
+    // Latest submitted list, it may still be diffed in the background.
     private List<Bookmark> mDisplayList;
 
     private int mMinPadding;
@@ -56,7 +81,15 @@ public class BookmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
 
         mIsNarrowLayout = false;
 
-        setHasStableIds(false);
+        mDiffer = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+        mDiffer.addListListener((previousList, currentList) -> {
+            mPositions.clear();
+            for (int position = 0; position < currentList.size(); position++) {
+                mPositions.put(currentList.get(position).getGuid(), position);
+            }
+        });
+
+        setHasStableIds(true);
     }
 
     public void setNarrow(boolean isNarrow) {
@@ -66,84 +99,60 @@ public class BookmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         }
     }
 
+    /**
+     * @param bookmarkList the bookmarks tree. Only the open folders need to have their children loaded.
+     */
     public void setBookmarkList(final List<BookmarkNode> bookmarkList) {
         mBookmarksList = bookmarkList;
 
-        List<Bookmark> newDisplayList;
+        List<Bookmark> newDisplayList = Bookmark.getDisplayListTree(mBookmarksList, mOpenFolders);
         if (mDisplayList == null || mDisplayList.isEmpty()) {
-            newDisplayList = Bookmark.getDisplayListTree(mBookmarksList, Collections.singletonList(BookmarkRoot.Mobile.getId()));
-            mDisplayList = newDisplayList;
-            for (Bookmark node : mDisplayList) {
+            for (Bookmark node : newDisplayList) {
                 if (node.isExpanded()) {
                     if (mBookmarkItemCallback != null) {
                         mBookmarkItemCallback.onFolderOpened(node);
                     }
                 }
             }
-            notifyItemRangeInserted(0, mDisplayList.size());
-
-        } else {
-            List<String> openFoldersGuid = Bookmark.getOpenFoldersGuid(mDisplayList);
-            newDisplayList = Bookmark.getDisplayListTree(mBookmarksList, openFoldersGuid);
-            notifyDiff(newDisplayList);
         }
+        notifyDiff(newDisplayList);
     }
 
-    private void notifyDiff(List<Bookmark> newDisplayList) {
-        DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
-            @Override
-            public int getOldListSize() {
-                return mDisplayList.size();
-            }
-
-            @Override
-            public int getNewListSize() {
-                return newDisplayList.size();
-            }
-
-            @Override
-            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-                return mDisplayList.get(oldItemPosition).getGuid().equals(newDisplayList.get(newItemPosition).getGuid()) &&
-                        mDisplayList.get(oldItemPosition).isExpanded() == newDisplayList.get(newItemPosition).isExpanded();
-            }
-
-            @Override
-            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-                Bookmark newBookmark = newDisplayList.get(newItemPosition);
-                Bookmark oldBookmark = mDisplayList.get(oldItemPosition);
-                return newBookmark.getGuid().equals(oldBookmark.getGuid())
-                        && Objects.equals(newBookmark.getTitle(), oldBookmark.getTitle())
-                        && Objects.equals(newBookmark.getUrl(), oldBookmark.getUrl())
-                        && newBookmark.isExpanded() == oldBookmark.isExpanded();
-            }
-        });
+    /**
+     * @return the guids of the folders whose contents are shown.
+     */
+    public List<String> getOpenFolders() {
+        return new ArrayList<>(mOpenFolders);
+    }
 
+    /**
+     * Lists are diffed on a background thread. Only the latest submitted list is applied.
+     */
+    private void notifyDiff(List<Bookmark> newDisplayList) {
         mDisplayList = newDisplayList;
-        result.dispatchUpdatesTo(this);
+        mDiffer.submitList(newDisplayList);
     }
 
     public void removeItem(Bookmark aBookmark) {
-        int position = mDisplayList.indexOf(aBookmark);
-        if (position >= 0) {
-            mDisplayList.remove(position);
-            notifyItemRemoved(position);
+        if (mDisplayList != null && mDisplayList.contains(aBookmark)) {
+            ArrayList<Bookmark> newDisplayList = new ArrayList<>(mDisplayList);
+            newDisplayList.remove(aBookmark);
+            notifyDiff(newDisplayList);
         }
     }
 
     public int itemCount() {
-        return mDisplayList != null ? mDisplayList.size() : 0;
+        return mDiffer.getCurrentList().size();
     }
 
     public int getItemPosition(String id) {
-        for (int position=0; position<mDisplayList.size(); position++)
-            if (mDisplayList.get(position).getGuid().equalsIgnoreCase(id))
-                return position;
-        return 0;
+        Integer position = mPositions.get(id);
+        return position != null ? position : 0;
     }
 
     @Override
     public int getItemViewType(int position) {
-        switch (mDisplayList.get(position).getType()) {
+        switch (mDiffer.getCurrentList().get(position).getType()) {
             case FOLDER:
                 return BookmarkNodeType.FOLDER.ordinal();
             case ITEM:
@@ -268,7 +277,7 @@ public class BookmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
 
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-        Bookmark item = mDisplayList.get(position);
+        Bookmark item = mDiffer.getCurrentList().get(position);
 
         if (holder instanceof BookmarkViewHolder) {
             BookmarkViewHolder bookmarkHolder = (BookmarkViewHolder) holder;
@@ -288,13 +297,18 @@ public class BookmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
 
     @Override
     public int getItemCount() {
-        return mDisplayList == null ? 0 : mDisplayList.size();
+        return mDiffer.getCurrentList().size();
     }
 
     @Override
     public long getItemId(int position) {
-        Bookmark bookmark = mDisplayList.get(position);
-        return  bookmark.getPosition();
+        String guid = mDiffer.getCurrentList().get(position).getGuid();
+        Long id = mStableIds.get(guid);
+        if (id == null) {
+            id = (long) mStableIds.size();
+            mStableIds.put(guid, id);
+        }
+        return id;
     }
 
     static class BookmarkViewHolder extends RecyclerView.ViewHolder {
@@ -354,23 +368,17 @@ public class BookmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     private BookmarkItemFolderCallback mBookmarkItemFolderCallback = new BookmarkItemFolderCallback() {
         @Override
         public void onClick(View view, Bookmark item) {
-            List<String> openFoldersGuid = Bookmark.getOpenFoldersGuid(mDisplayList);
-
-            for (Bookmark bookmark : mDisplayList) {
-                if (bookmark.getGuid().equals(item.getGuid())) {
-                    if (item.isExpanded()) {
-                        openFoldersGuid.remove(bookmark.getGuid());
-
-                    } else {
-                        openFoldersGuid.add(bookmark.getGuid());
-                    }
-                    break;
+            if (mOpenFolders.remove(item.getGuid())) {
+                // The folder contents are already loaded, just hide them.
+                notifyDiff(Bookmark.getDisplayListTree(mBookmarksList, mOpenFolders));
+
+            } else {
+                mOpenFolders.add(item.getGuid());
+                if (mBookmarkItemCallback != null) {
+                    mBookmarkItemCallback.onFolderExpanded(item);
                 }
             }
 
-            List<Bookmark> newDisplayList = Bookmark.getDisplayListTree(mBookmarksList, openFoldersGuid);
-            notifyDiff(newDisplayList);
-
             if (mBookmarkItemCallback != null) {
                 mBookmarkItemCallback.onFolderOpened(item);
             }
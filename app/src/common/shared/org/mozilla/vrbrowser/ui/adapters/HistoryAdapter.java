@@ -11,6 +11,7 @@ import android.widget.ImageView;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.databinding.DataBindingUtil;
+import androidx.recyclerview.widget.AsyncListDiffer;
 import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -22,6 +23,7 @@ import org.mozilla.vrbrowser.ui.widgets.WidgetPlacement;
 import org.mozilla.vrbrowser.utils.AnimationHelper;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -37,7 +39,23 @@ public class HistoryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 
     private static final int ICON_ANIMATION_DURATION = 200;
 
-    private List<? extends VisitInfo> mHistoryList;
+    static final DiffUtil.ItemCallback<VisitInfo> DIFF_CALLBACK = new DiffUtil.ItemCallback<VisitInfo>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull VisitInfo oldItem, @NonNull VisitInfo newItem) {
+            return oldItem.getVisitTime() == newItem.getVisitTime();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull VisitInfo oldItem, @NonNull VisitInfo newItem) {
+            return oldItem.getVisitTime() == newItem.getVisitTime()
+                    && Objects.equals(oldItem.getTitle(), newItem.getTitle())
+                    && Objects.equals(oldItem.getUrl(), newItem.getUrl());
+        }
+    };
+
+    private final AsyncListDiffer<VisitInfo> mDiffer;
+    // Latest submitted list, it may still be diffed in the background.
+    private List<VisitInfo> mHistoryList;
 
     private int mMinPadding;
     private int mMaxPadding;
@@ -54,6 +72,8 @@ public class HistoryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 
         mIsNarrowLayout = false;
 
+        mDiffer = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+
         setHasStableIds(true);
     }
 
@@ -64,65 +84,48 @@ public class HistoryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
         }
     }
 
-    public void setHistoryList(final List<? extends VisitInfo> historyList) {
-        if (mHistoryList == null) {
-            mHistoryList = historyList;
-            notifyItemRangeInserted(0, historyList.size());
-
-        } else {
-            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
-                @Override
-                public int getOldListSize() {
-                    return mHistoryList.size();
-                }
-
-                @Override
-                public int getNewListSize() {
-                    return historyList.size();
-                }
-
-                @Override
-                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-                    return mHistoryList.get(oldItemPosition).getVisitTime() == historyList.get(newItemPosition).getVisitTime();
-                }
+    public void setHistoryList(final List<VisitInfo> historyList) {
+        setHistoryList(historyList, null);
+    }
 
-                @Override
-                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-                    VisitInfo newHistoryItem = historyList.get(newItemPosition);
-                    VisitInfo oldHistoryItem = mHistoryList.get(oldItemPosition);
-                    return newHistoryItem.getVisitTime() == oldHistoryItem.getVisitTime()
-                            && Objects.equals(newHistoryItem.getTitle(), oldHistoryItem.getTitle())
-                            && Objects.equals(newHistoryItem.getUrl(), oldHistoryItem.getUrl());
-                }
-            });
+    /**
+     * Lists are diffed on a background thread. Only the latest submitted list is applied.
+     * @param aCommitCallback called once the list is applied to the adapter.
+     */
+    public void setHistoryList(final List<VisitInfo> historyList, @Nullable Runnable aCommitCallback) {
+        mHistoryList = historyList;
+        mDiffer.submitList(historyList, aCommitCallback);
+    }
 
-            mHistoryList = historyList;
-            result.dispatchUpdatesTo(this);
+    public void appendHistoryList(final List<VisitInfo> historyList, @Nullable Runnable aCommitCallback) {
+        ArrayList<VisitInfo> newList = new ArrayList<>();
+        if (mHistoryList != null) {
+            newList.addAll(mHistoryList);
         }
+        newList.addAll(historyList);
+        setHistoryList(newList, aCommitCallback);
     }
 
     public void removeItem(VisitInfo historyItem) {
-        int position = mHistoryList.indexOf(historyItem);
-        if (position >= 0) {
-            mHistoryList.remove(position);
-            notifyItemRemoved(position);
+        if (mHistoryList != null && mHistoryList.contains(historyItem)) {
+            ArrayList<VisitInfo> newList = new ArrayList<>(mHistoryList);
+            newList.remove(historyItem);
+            setHistoryList(newList);
         }
     }
 
     public int itemCount() {
-        if (mHistoryList != null) {
-            return mHistoryList.stream().allMatch(item ->
-                    item.getVisitType() == VisitType.NOT_A_VISIT) ?
-                    0 :
-                    mHistoryList.size();
-        }
-
-        return 0;
+        List<VisitInfo> list = mDiffer.getCurrentList();
+        return list.stream().allMatch(item ->
+                item.getVisitType() == VisitType.NOT_A_VISIT) ?
+                0 :
+                list.size();
     }
 
     public int getItemPosition(long id) {
-        for (int position=0; position<mHistoryList.size(); position++)
-            if (mHistoryList.get(position).getVisitTime() == id)
+        List<VisitInfo> list = mDiffer.getCurrentList();
+        for (int position=0; position<list.size(); position++)
+            if (list.get(position).getVisitTime() == id)
                 return position;
         return 0;
     }
@@ -233,23 +236,23 @@ public class HistoryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
         if (holder instanceof HistoryItemViewHolder) {
             HistoryItemViewHolder item = (HistoryItemViewHolder) holder;
-            item.binding.setItem(mHistoryList.get(position));
+            item.binding.setItem(mDiffer.getCurrentList().get(position));
             item.binding.setIsNarrow(mIsNarrowLayout);
 
         } else if (holder instanceof HistoryItemViewHeaderHolder) {
             HistoryItemViewHeaderHolder item = (HistoryItemViewHeaderHolder) holder;
-            item.binding.setTitle(mHistoryList.get(position).getTitle());
+            item.binding.setTitle(mDiffer.getCurrentList().get(position).getTitle());
         }
     }
 
     @Override
     public int getItemCount() {
-        return mHistoryList == null ? 0 : mHistoryList.size();
+        return mDiffer.getCurrentList().size();
     }
 
     @Override
     public long getItemId(int position) {
-        VisitInfo historyItem = mHistoryList.get(position);
+        VisitInfo historyItem = mDiffer.getCurrentList().get(position);
         return  historyItem.getVisitTime();
     }
 
@@ -262,7 +265,7 @@ public class HistoryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
     }
 
     private boolean isPositionHeader(int position) {
-        return mHistoryList.get(position).getVisitType() == VisitType.NOT_A_VISIT;
+        return mDiffer.getCurrentList().get(position).getVisitType() == VisitType.NOT_A_VISIT;
     }
 
     private View.OnHoverListener mIconHoverListener = (view, motionEvent) -> {
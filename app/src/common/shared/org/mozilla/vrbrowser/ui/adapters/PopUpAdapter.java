@@ -10,6 +10,7 @@ import android.widget.ImageView;
 
 import androidx.annotation.NonNull;
 import androidx.databinding.DataBindingUtil;
+import androidx.recyclerview.widget.AsyncListDiffer;
 import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -29,7 +30,19 @@ public class PopUpAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
 
     private static final int ICON_ANIMATION_DURATION = 200;
 
-    private List<PopUpSite> mDisplayList;
+    private static final DiffUtil.ItemCallback<PopUpSite> DIFF_CALLBACK = new DiffUtil.ItemCallback<PopUpSite>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull PopUpSite oldItem, @NonNull PopUpSite newItem) {
+            return oldItem.url.equals(newItem.url);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull PopUpSite oldItem, @NonNull PopUpSite newItem) {
+            return Objects.equals(oldItem.url, newItem.url);
+        }
+    };
+
+    private final AsyncListDiffer<PopUpSite> mDiffer;
 
     private PopUpSiteItemCallback mCallback;
 
@@ -47,44 +60,16 @@ public class PopUpAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
         mIconColorHover = aContext.getResources().getColor(R.color.smoke, aContext.getTheme());
         mIconNormalColor = aContext.getResources().getColor(R.color.concrete, aContext.getTheme());
 
+        mDiffer = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+
         setHasStableIds(true);
     }
 
+    /**
+     * Lists are diffed on a background thread. Only the latest submitted list is applied.
+     */
     public void setSites(@NonNull List<PopUpSite> sites) {
-        if (mDisplayList == null) {
-            mDisplayList = sites;
-            notifyItemRangeChanged(0, sites.size());
-
-        } else {
-            notifyDiff(sites);
-        }
-    }
-
-    private void notifyDiff(List<PopUpSite> newDisplayList) {
-        DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
-            @Override
-            public int getOldListSize() {
-                return mDisplayList.size();
-            }
-
-            @Override
-            public int getNewListSize() {
-                return newDisplayList.size();
-            }
-
-            @Override
-            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-                return mDisplayList.get(oldItemPosition).url.equals(newDisplayList.get(newItemPosition).url);
-            }
-
-            @Override
-            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-                return Objects.equals(newDisplayList.get(newItemPosition).url, mDisplayList.get(oldItemPosition).url);
-            }
-        });
-
-        mDisplayList = newDisplayList;
-        result.dispatchUpdatesTo(this);
+        mDiffer.submitList(sites);
     }
 
     @Override
@@ -117,13 +102,18 @@ public class PopUpAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
         PopUpSiteViewHolder siteHolder = (PopUpSiteViewHolder) holder;
-        PopUpSite site = mDisplayList.get(position);
+        PopUpSite site = mDiffer.getCurrentList().get(position);
         siteHolder.binding.setItem(site);
     }
 
     @Override
     public int getItemCount() {
-        return mDisplayList == null ? 0 : mDisplayList.size();
+        return mDiffer.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mDiffer.getCurrentList().get(position).id;
     }
 
     static class PopUpSiteViewHolder extends RecyclerView.ViewHolder {
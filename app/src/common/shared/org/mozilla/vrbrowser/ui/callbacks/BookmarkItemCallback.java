@@ -11,4 +11,5 @@ public interface BookmarkItemCallback {
     void onDelete(@NonNull View view, @NonNull Bookmark item);
     void onMore(@NonNull View view, @NonNull Bookmark item);
     void onFolderOpened(@NonNull Bookmark item);
+    void onFolderExpanded(@NonNull Bookmark item);
 }
@@ -0,0 +1,222 @@
+package org.mozilla.vrbrowser.ui.keyboards;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import org.mozilla.vrbrowser.ui.keyboards.KeyboardInterface.CandidatesResult;
+import org.mozilla.vrbrowser.ui.keyboards.KeyboardInterface.Words;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the keyboard candidate lookups in a background thread so typing never waits for the
+ * dictionaries. Every request gets a new generation: queued requests that have been superseded
+ * are skipped and results of superseded requests are never delivered.
+ *
+ * All the calls into the keyboards that touch their composing state must go through the engine,
+ * so they run serialized in its thread.
+ */
+public class CandidatesEngine {
+    /**
+     * Max number of candidates delivered for the first page, the rest are only materialized
+     * when requested with {@link #getMoreCandidates(Consumer)}.
+     */
+    public static final int FIRST_PAGE_SIZE = 20;
+    public static final long[] LATENCY_BUCKETS_MS = { 8, 16, 33, 66, 100, 250, 500 };
+
+    private final Executor mExecutor;
+    // The thread created by the engine, stopped on release.
+    @Nullable
+    private final ExecutorService mOwnedExecutor;
+    private final Executor mMainThread;
+    private volatile int mGeneration;
+    // Only accessed from the executor.
+    private Supplier<List<Words>> mMoreWords;
+    private int mMoreWordsGeneration;
+    // Only accessed from the main thread.
+    private final HashMap<Class<?>, int[]> mLatencyHistograms = new HashMap<>();
+    private int mDeliveredRequests;
+    private int mCancelledRequests;
+    private boolean mReleased;
+
+    public CandidatesEngine(@NonNull Executor aMainThread) {
+        this(Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "CandidatesEngine")), aMainThread);
+    }
+
+    private CandidatesEngine(@NonNull ExecutorService aExecutor, @NonNull Executor aMainThread) {
+        mExecutor = aExecutor;
+        mOwnedExecutor = aExecutor;
+        mMainThread = aMainThread;
+    }
+
+    @VisibleForTesting
+    CandidatesEngine(@NonNull Executor aExecutor, @NonNull Executor aMainThread) {
+        mExecutor = aExecutor;
+        mOwnedExecutor = null;
+        mMainThread = aMainThread;
+    }
+
+    /**
+     * Gets the candidates for the text, supersedes any pending request.
+     * @param aCallback called in the main thread with the first page of candidates, only if no
+     *                  other request has been made meanwhile.
+     */
+    @UiThread
+    public void getCandidates(@NonNull KeyboardInterface aKeyboard, String aText, @NonNull Consumer<CandidatesResult> aCallback) {
+        request(aKeyboard, keyboard -> keyboard.getCandidates(aText, FIRST_PAGE_SIZE), aCallback);
+    }
+
+    @UiThread
+    public void getEmojiCandidates(@NonNull KeyboardInterface aKeyboard, String aText, @NonNull Consumer<CandidatesResult> aCallback) {
+        request(aKeyboard, keyboard -> keyboard.getEmojiCandidates(aText), aCallback);
+    }
+
+    /**
+     * Gets the candidates after the first page of the last delivered result.
+     */
+    @UiThread
+    public void getMoreCandidates(@NonNull Consumer<List<Words>> aCallback) {
+        if (mReleased) {
+            return;
+        }
+        final int generation = mGeneration;
+        mExecutor.execute(() -> {
+            Supplier<List<Words>> moreWords = mMoreWords;
+            if (moreWords == null || mMoreWordsGeneration != generation || generation != mGeneration) {
+                return;
+            }
+            mMoreWords = null;
+            List<Words> words = moreWords.get();
+            mMainThread.execute(() -> {
+                if (generation == mGeneration) {
+                    aCallback.accept(words);
+                }
+            });
+        });
+    }
+
+    /**
+     * Cancels the pending requests and clears the keyboard composing state.
+     */
+    @UiThread
+    public void clear(@NonNull KeyboardInterface aKeyboard) {
+        cancel();
+        if (!mReleased) {
+            mExecutor.execute(aKeyboard::clear);
+        }
+    }
+
+    /**
+     * Cancels the pending requests, their results will not be delivered.
+     */
+    @UiThread
+    public void cancel() {
+        mGeneration++;
+    }
+
+    /**
+     * Cancels the pending requests and stops the engine thread, later requests are ignored.
+     */
+    @UiThread
+    public void release() {
+        cancel();
+        mReleased = true;
+        if (mOwnedExecutor != null) {
+            mOwnedExecutor.shutdown();
+        }
+    }
+
+    private void request(@NonNull KeyboardInterface aKeyboard, @NonNull Function<KeyboardInterface, CandidatesResult> aQuery,
+                         @NonNull Consumer<CandidatesResult> aCallback) {
+        if (mReleased) {
+            return;
+        }
+        final int generation = ++mGeneration;
+        final long start = SystemClock.elapsedRealtime();
+        mExecutor.execute(() -> {
+            if (generation != mGeneration) {
+                mMainThread.execute(() -> mCancelledRequests++);
+                return;
+            }
+            mMoreWords = null;
+            CandidatesResult result = aQuery.apply(aKeyboard);
+            if (result != null) {
+                limitFirstPage(result);
+                mMoreWords = result.moreWords;
+                mMoreWordsGeneration = generation;
+            }
+            mMainThread.execute(() -> {
+                if (generation != mGeneration) {
+                    mCancelledRequests++;
+                    return;
+                }
+                mDeliveredRequests++;
+                recordLatency(aKeyboard, SystemClock.elapsedRealtime() - start);
+                aCallback.accept(result);
+            });
+        });
+    }
+
+    // Keyboards that don't limit their results are limited here, so the views are never built
+    // for more than the first page.
+    @WorkerThread
+    private static void limitFirstPage(@NonNull CandidatesResult aResult) {
+        if (aResult.moreWords != null || aResult.words == null || aResult.words.size() <= FIRST_PAGE_SIZE) {
+            return;
+        }
+        final List<Words> moreWords = new ArrayList<>(aResult.words.subList(FIRST_PAGE_SIZE, aResult.words.size()));
+        aResult.words = new ArrayList<>(aResult.words.subList(0, FIRST_PAGE_SIZE));
+        aResult.moreWords = () -> moreWords;
+    }
+
+    private void recordLatency(@NonNull KeyboardInterface aKeyboard, long aLatencyMs) {
+        int[] histogram = mLatencyHistograms.get(aKeyboard.getClass());
+        if (histogram == null) {
+            histogram = new int[LATENCY_BUCKETS_MS.length + 1];
+            mLatencyHistograms.put(aKeyboard.getClass(), histogram);
+        }
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS_MS.length && aLatencyMs > LATENCY_BUCKETS_MS[bucket]) {
+            bucket++;
+        }
+        histogram[bucket]++;
+    }
+
+    /**
+     * @return the histogram of the time from the request to the delivery of the candidates for
+     * a keyboard type. Bucket i counts the requests that took up to {@link #LATENCY_BUCKETS_MS}[i]
+     * milliseconds, the last bucket the slower ones.
+     */
+    @UiThread
+    @NonNull
+    public int[] getLatencyHistogram(@NonNull Class<? extends KeyboardInterface> aKeyboard) {
+        int[] histogram = mLatencyHistograms.get(aKeyboard);
+        return histogram != null ? histogram.clone() : new int[LATENCY_BUCKETS_MS.length + 1];
+    }
+
+    @UiThread
+    public int getDeliveredRequests() {
+        return mDeliveredRequests;
+    }
+
+    /**
+     * @return the number of requests that were skipped or discarded because a newer one was made.
+     */
+    @UiThread
+    public int getCancelledRequests() {
+        return mCancelledRequests;
+    }
+}
@@ -8,10 +8,12 @@ import android.util.Log;
 import com.readystatesoftware.sqliteasset.SQLiteAssetHelper;
 
 import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.input.CustomKeyboard;
 import org.mozilla.vrbrowser.utils.StringUtils;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -25,8 +27,11 @@ import androidx.annotation.Nullable;
 
 public class ChinesePinyinKeyboard extends BaseKeyboard {
     private static final String LOGTAG = SystemUtils.createLogtag(ChinesePinyinKeyboard.class);
+    private static final String DICTIONARY_FILE = "google_pinyin.dict";
     private CustomKeyboard mKeyboard;
     private DBHelper mDB;
+    // Replaces the database lookups once loaded.
+    private volatile PinyinDictionary mDictionary;
     private HashMap<String, KeyMap> mKeymaps = new HashMap<>();
     private HashMap<String, KeyMap> mExtraKeymaps = new HashMap<>();
     private List<Character> mAutocompleteEndings = Arrays.asList(
@@ -63,51 +68,36 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
             return null;
         }
 
-        ArrayList<String> displayList = getDisplayCode(aComposingText);
-        int syllables = 0;
-
-        StringBuilder code = new StringBuilder();
-        if (displayList != null) {
-            syllables = displayList.size();
-            for (String display: displayList) {
-                if (code.length() != 0) {
-                    code.append(' ');
-                }
-                code.append(display);
-            }
+        PinyinDictionary dictionary = mDictionary;
+        if (dictionary != null && mDB != null) {
+            // The database and the keymaps loaded from it are not used anymore.
+            mKeymaps.clear();
+            mDB.close();
+            mDB = null;
         }
-
-        ArrayList<Words> words = new ArrayList<>();
-        StringBuilder candidate = new StringBuilder();
-        String tempKey = aComposingText;
-        String remainKey = "";
+        List<String> segments = dictionary != null ? getSegments(dictionary, aComposingText) : getSegments(aComposingText);
 
         // First candidate
-        while (tempKey.length() > 0) {
-            List<Words> displays = getDisplays(tempKey);
-            if (displays != null && displays.size() > 0){
-                candidate.append(displays.get(0).value);
-                tempKey = remainKey;
-                remainKey = "";
-            } else {
-                remainKey = tempKey.charAt(tempKey.length() - 1) + remainKey;
-                tempKey = tempKey.substring(0, tempKey.length() - 1);
+        StringBuilder code = new StringBuilder();
+        StringBuilder candidate = new StringBuilder();
+        for (String segment: segments) {
+            Words display = getKeyMap(dictionary, segment).displays.get(0);
+            if (code.length() != 0) {
+                code.append(' ');
             }
+            code.append(display.code);
+            candidate.append(display.value);
         }
-        words.add(new Words(syllables, code.toString(), candidate.toString()));
+        ArrayList<Words> words = new ArrayList<>();
+        words.add(new Words(segments.size(), code.toString(), candidate.toString()));
 
         // Extra candidates
-        tempKey = aComposingText;
-        while (tempKey.length() > 0) {
-            List<Words> displays = getDisplays(tempKey);
-            if (displays != null) {
-                words.addAll(displays);
-            }
-            KeyMap map = mKeymaps.get(tempKey);
-            if (map != null && map.candidates.size() > 0) {
+        for (int length = aComposingText.length(); length > 0; --length) {
+            KeyMap map = getKeyMap(dictionary, aComposingText.substring(0, length));
+            if (map != null) {
+                words.addAll(map.displays);
                 words.addAll(map.candidates);
             }
-            tempKey = tempKey.substring(0, tempKey.length() - 1);
         }
         cleanCandidates(words);
 
@@ -123,21 +113,57 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
         return result;
     }
 
-    private ArrayList<String> getDisplayCode(String aKey) {
+    // Splits the text in the longest keys with displays, dropping the rest of the text at the
+    // first position where no key matches.
+    private List<String> getSegments(String aText) {
         ArrayList<String> result = new ArrayList<>();
+        String key = aText;
         String remain = "";
-        while (aKey.length() > 0) {
-            List<Words> displays = getDisplays(aKey);
-            if (displays != null && displays.size() > 0) {
-                result.add(displays.get(0).code);
-                aKey = remain;
+        while (key.length() > 0) {
+            KeyMap map = getKeyMap(null, key);
+            if (map != null && map.displays.size() > 0) {
+                result.add(key);
+                key = remain;
                 remain = "";
             } else {
-                remain = aKey.charAt(aKey.length() - 1) + remain;
-                aKey = aKey.substring(0, aKey.length() - 1);
+                remain = key.charAt(key.length() - 1) + remain;
+                key = key.substring(0, key.length() - 1);
+            }
+        }
+        return result;
+    }
+
+    // Same segmentation as above in a single pass over the text.
+    private List<String> getSegments(@NonNull PinyinDictionary aDictionary, String aText) {
+        ArrayList<String> result = new ArrayList<>();
+        int start = 0;
+        while (start < aText.length()) {
+            int length = 0;
+            if (isLowercase(aText.charAt(start))) {
+                int[] values = aDictionary.getPrefixValues(aText, start);
+                for (int i = values.length - 1; i >= 0 && length == 0; --i) {
+                    if (values[i] >= 0 && (aDictionary.getDisplayCount(values[i]) > 0 ||
+                            mExtraKeymaps.containsKey(aText.substring(start, start + i + 1)))) {
+                        length = i + 1;
+                    }
+                }
+            } else {
+                // Uppercase letters, numbers and symbols complete as they are.
+                while (start + length < aText.length() && !isLowercase(aText.charAt(start + length))) {
+                    length++;
+                }
+            }
+            if (length == 0) {
+                break;
             }
+            result.add(aText.substring(start, start + length));
+            start += length;
         }
-        return result.size() > 0 ? result : null;
+        return result;
+    }
+
+    private static boolean isLowercase(char aChar) {
+        return aChar >= 'a' && aChar <= 'z';
     }
 
     private void cleanCandidates(ArrayList<Words> aCandidates) {
@@ -212,27 +238,60 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
         }
     }
 
-    private List<Words> getDisplays(String aKey) {
+    @Nullable
+    private KeyMap getKeyMap(@Nullable PinyinDictionary aDictionary, String aKey) {
         if (aKey.matches("^[^a-z]+$")) {
             // Allow completion of uppercase letters, numbers and symbols
-            return Collections.singletonList(new Words(1, aKey, aKey));
+            KeyMap map = new KeyMap();
+            map.displays.add(new Words(1, aKey, aKey));
+            return map;
+        }
+        if (aDictionary == null) {
+            loadKeymapIfNotLoaded(aKey);
+            return mKeymaps.get(aKey);
         }
-        loadKeymapIfNotLoaded(aKey);
-        KeyMap map = mKeymaps.get(aKey);
-        return map != null ? map.displays : null;
-    }
 
+        int value = aDictionary.getValue(aKey);
+        if (value < 0) {
+            return null;
+        }
+        KeyMap map = new KeyMap();
+        map.displays.addAll(aDictionary.getDisplays(value));
+        map.candidates.addAll(aDictionary.getCandidates(value));
+        KeyMap extra = mExtraKeymaps.get(aKey);
+        if (extra != null) {
+            map.displays.addAll(extra.displays);
+            map.candidates.addAll(extra.candidates);
+        }
+        return map;
+    }
 
     private void loadDatabase() {
         try {
             mDB = new DBHelper(mContext);
             addExtraKeyMaps();
+            loadDictionary();
         }
         catch (Exception ex) {
             Log.e(LOGTAG, "Error reading pinyin database: " + ex.getMessage());
         }
     }
 
+    private void loadDictionary() {
+        File file = new File(mContext.getFilesDir(), DICTIONARY_FILE);
+        DBHelper db = mDB;
+        VRBrowserApplication application = (VRBrowserApplication)mContext.getApplicationContext();
+        application.getExecutors().diskIO().execute(() -> {
+            try {
+                mDictionary = PinyinDictionary.load(db, DBHelper.DATABASE_VERSION, file);
+
+            } catch (Exception ex) {
+                // Keep using the database
+                Log.e(LOGTAG, "Error loading pinyin dictionary: " + ex.getMessage());
+            }
+        });
+    }
+
     private void addExtraKeyMaps() {
         addExtraKeyMap("a", "a", "a|A");
         addExtraKeyMap("b", "b", "b|B");
@@ -373,15 +432,7 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
     }
 
     private int syllableCount(String aCode) {
-        if (aCode == null) {
-            return 0;
-        }
-        aCode = aCode.trim();
-        if (aCode.isEmpty()) {
-            return 0;
-        }
-
-        return (int)aCode.chars().filter(ch -> ch == ' ').count() + 1;
+        return PinyinDictionary.syllableCount(aCode);
     }
 
     private String getString(Cursor aCursor, int aIndex) {
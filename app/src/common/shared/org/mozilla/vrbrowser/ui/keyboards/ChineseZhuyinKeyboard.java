@@ -4,15 +4,18 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
+import android.util.LruCache;
 import android.inputmethodservice.Keyboard.Key;
 
 import com.readystatesoftware.sqliteasset.SQLiteAssetHelper;
 
 import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.input.CustomKeyboard;
 import org.mozilla.vrbrowser.utils.StringUtils;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -23,14 +26,23 @@ import java.util.regex.Pattern;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 public class ChineseZhuyinKeyboard extends BaseKeyboard {
     private static final String LOGTAG = SystemUtils.createLogtag(ChineseZhuyinKeyboard.class);
     private static final String nonZhuyinReg = "[^ㄅ-ㄩ˙ˊˇˋˉ]";
+    private static final String LEXICON_FILE = "zhuyin.lexicon";
+    private static final int MAX_WORDS = 50;
+    private static final int MAX_CACHED_CODES = 256;
+    private static final int WARM_UP_CODES = 64;
+    private static final String FIRST_TONE_CODE = "44";
     private CustomKeyboard mKeyboard;
     private DBWordHelper mWordDB;
     private DBPhraseHelper mPhraseDB;
-    private HashMap<String, KeyMap> mKeymaps = new HashMap<>();
+    // Replaces the database lookups once loaded.
+    private volatile ZhuyinLexicon mLexicon;
+    // Recently used codes, filled from the candidates thread and the lexicon warm up.
+    private final LruCache<String, KeyMap> mKeymaps = new LruCache<>(MAX_CACHED_CODES);
     private HashMap<String, Words> mKeyCodes = new HashMap<>();
     private final String[] sqliteArgs = new String[2];
     private final String[] roughSqliteArgs = new String[3];
@@ -181,31 +193,103 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
 
     private List<Words> getDisplays(String aKey) {
         // Allow completion of uppercase/lowercase letters numbers, and symbols
-        // aKey.length() > 1 only happens when switching from other keyboard.
-        if (aKey.matches(nonZhuyinReg) ||
-            (aKey.length() > 1 && mKeymaps.size() == 0)) {
+        // An empty code only happens when switching from other keyboard.
+        String code = aKey.replaceAll(nonZhuyinReg, "");
+        if (aKey.matches(nonZhuyinReg) || code.isEmpty()) {
             return Collections.singletonList(new Words(1, aKey, aKey));
         }
 
-        String code = aKey.replaceAll(nonZhuyinReg, "");
         code = GetTransCode(code);
-        loadKeymapIfNotLoaded(code);
-        KeyMap map = mKeymaps.get(code);
-        return map != null ? map.displays : null;
+        return getKeyMap(code).displays;
     }
 
+    @NonNull
+    private KeyMap getKeyMap(String aCode) {
+        if (mLexicon != null && mWordDB != null) {
+            // The databases are not used anymore.
+            mWordDB.close();
+            mPhraseDB.close();
+            mWordDB = null;
+            mPhraseDB = null;
+        }
+        KeyMap map = mKeymaps.get(aCode);
+        if (map == null) {
+            map = loadKeyMap(aCode);
+            mKeymaps.put(aCode, map);
+        }
+        return map;
+    }
+
+    private KeyMap loadKeyMap(String aCode) {
+        final String firstKeyCodeInTones = "4"; // the first keycode of tones[˙, ˊ, ˋ, ˉ].
+        // Finding if the code ends with a tone.
+        boolean exactQuery = aCode.startsWith(firstKeyCodeInTones, aCode.length() - 2);
+        // We didn't store the first tone.
+        StringBuilder transCode = new StringBuilder();
+        for (int i = 0; i + 2 <= aCode.length(); i += 2) {
+            if (!aCode.startsWith(FIRST_TONE_CODE, i)) {
+                transCode.append(aCode, i, i + 2);
+            }
+        }
+
+        KeyMap map = new KeyMap();
+        ZhuyinLexicon lexicon = mLexicon;
+        if (lexicon != null) {
+            map.displays.addAll(lexicon.getWords(transCode.toString(), exactQuery, MAX_WORDS));
+        } else {
+            loadKeymapTable(map, transCode.toString(), exactQuery);
+        }
+        return map;
+    }
 
     private void loadDatabase() {
         try {
             mWordDB = new DBWordHelper(mContext);
             mPhraseDB = new DBPhraseHelper(mContext);
             addExtraKeyMaps();
+            loadLexicon();
         }
         catch (Exception ex) {
             Log.e(LOGTAG, "Error reading zhuyin database: " + ex.getMessage());
         }
     }
 
+    private void loadLexicon() {
+        File file = new File(mContext.getFilesDir(), LEXICON_FILE);
+        DBWordHelper words = mWordDB;
+        DBPhraseHelper phrases = mPhraseDB;
+        VRBrowserApplication application = (VRBrowserApplication)mContext.getApplicationContext();
+        application.getExecutors().diskIO().execute(() -> {
+            try {
+                ZhuyinLexicon lexicon = ZhuyinLexicon.load(words, phrases, DBWordHelper.DATABASE_VERSION, file);
+                mLexicon = lexicon;
+                warmUp(lexicon);
+
+            } catch (Exception ex) {
+                // Keep using the databases
+                Log.e(LOGTAG, "Error loading zhuyin lexicon: " + ex.getMessage());
+            }
+        });
+    }
+
+    // Preloads the codes typed the most: every word starts with a single symbol, which are also
+    // the broadest lookups, followed by the most frequent syllables.
+    @WorkerThread
+    private void warmUp(@NonNull ZhuyinLexicon aLexicon) {
+        List<String> codes = new ArrayList<>();
+        for (Words keyCode: mKeyCodes.values()) {
+            if (!keyCode.code.startsWith("4")) {
+                codes.add(keyCode.code);
+            }
+        }
+        codes.addAll(aLexicon.getFrequentCodes(WARM_UP_CODES));
+        for (String code: codes) {
+            if (mKeymaps.get(code) == null) {
+                mKeymaps.put(code, loadKeyMap(code));
+            }
+        }
+    }
+
     private String findLabelFromKey(int primaryCode) {
         for (Key key : mKeyboard.getKeys()) {
             if (key.codes[0] == primaryCode) {
@@ -267,38 +351,24 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
         addKeyCode("ˉ", "44", "ˉ");
     }
 
-    private void loadKeymapIfNotLoaded(String aKey) {
-        if (mKeymaps.containsKey(aKey)) {
+    private void loadKeymapTable(KeyMap aMap, String aTransCode, boolean aExactQuery) {
+        if (aTransCode.isEmpty()) {
             return;
         }
-        loadKeymapTable(aKey);
-    }
-
-    private void loadKeymapTable(String aKey) {
         SQLiteDatabase reader = mWordDB.getReadableDatabase();
-        String transCode = aKey;
-        int limit = 50;
-        boolean exactQuery = false;
-        final char firstKeyCodeInTones = '4'; // the first keycode of tones[˙, ˊ, ˋ, ˉ].
-
-        // Finding if aKey contains tones.
-        if (transCode.charAt(transCode.length() - 2) == firstKeyCodeInTones) {
-            exactQuery = true;
-        }
-        // We didn't store the first tone in DB.
-        transCode = transCode.replaceAll("44", "");
+        int limit = MAX_WORDS;
 
-        sqliteArgs[0] = transCode;
+        sqliteArgs[0] = aTransCode;
         sqliteArgs[1] = "" + limit;
 
         // Query word exactly
-        try (Cursor cursor = reader.rawQuery("SELECT code, word FROM words_" + transCode.substring(0, 2)
+        try (Cursor cursor = reader.rawQuery("SELECT code, word FROM words_" + aTransCode.substring(0, 2)
                 + " WHERE code = ? GROUP BY word ORDER BY frequency DESC LIMIT ?", sqliteArgs)) {
             if (cursor.moveToFirst()) {
                 do {
                     String key = getString(cursor, 0);
                     String displays = getString(cursor, 1);
-                    addToKeyMap(aKey, key, displays);
+                    addToKeyMap(aMap, key, displays);
                     --limit;
                 } while (limit >= 0 && cursor.moveToNext());
             }
@@ -306,18 +376,18 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
             Log.e(LOGTAG, "Querying Zhuyin db failed");
         }
 
-        if (!exactQuery) {
+        if (!aExactQuery) {
             // Query word roughly
-            roughSqliteArgs[0] = transCode + "%";
-            roughSqliteArgs[1] = "" + transCode;
+            roughSqliteArgs[0] = aTransCode + "%";
+            roughSqliteArgs[1] = "" + aTransCode;
             roughSqliteArgs[2] = "" + limit;
-            try (Cursor cursor = reader.rawQuery("SELECT code, word FROM words_" + transCode.substring(0, 2)
+            try (Cursor cursor = reader.rawQuery("SELECT code, word FROM words_" + aTransCode.substring(0, 2)
                     + " WHERE code like ? and code!= ? GROUP BY word ORDER BY frequency DESC LIMIT ?", roughSqliteArgs)) {
                 if (cursor.moveToFirst()) {
                     do {
                         String key = getString(cursor, 0);
                         String word = getString(cursor, 1);
-                        addToKeyMap(aKey, key, word);
+                        addToKeyMap(aMap, key, word);
                         --limit;
                     } while (limit >= 0 && cursor.moveToNext());
                 }
@@ -332,15 +402,15 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
 
         // Query phrase
         reader = mPhraseDB.getReadableDatabase();
-        sqliteArgs[0] = transCode + '%';
+        sqliteArgs[0] = aTransCode + '%';
         sqliteArgs[1] = "" + limit;
-        try (Cursor cursor = reader.rawQuery("SELECT code, word FROM phrases_" + transCode.substring(0, 2)
+        try (Cursor cursor = reader.rawQuery("SELECT code, word FROM phrases_" + aTransCode.substring(0, 2)
                 + " WHERE code like ? GROUP BY word ORDER BY frequency DESC LIMIT ?", sqliteArgs)) {
             if (cursor.moveToFirst()) {
                 do {
                     String key = getString(cursor, 0);
                     String word = getString(cursor, 1);
-                    addToKeyMap(aKey, key, word);
+                    addToKeyMap(aMap, key, word);
                     --limit;
                 } while (limit >= 0 && cursor.moveToNext());
             }
@@ -349,26 +419,17 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
         }
     }
 
-    private void addToKeyMap(String aKey, String aCode, String aDisplays) {
-        if (aKey == null || aKey.isEmpty()) {
-            Log.e(LOGTAG, "Zhuyin key is null");
-            return;
-        }
+    private void addToKeyMap(KeyMap aKeyMap, String aCode, String aDisplays) {
         if (aCode == null || aCode.isEmpty()) {
             Log.e(LOGTAG, "Zhuyin code is null");
             return;
         }
-        KeyMap keyMap = mKeymaps.get(aKey);
-        if (keyMap == null) {
-            keyMap = new KeyMap();
-            mKeymaps.put(aKey, keyMap);
-        }
 
         if (aDisplays != null && !aDisplays.isEmpty()) {
             String[] displayList = aDisplays.split("\\|");
             if (displayList != null) {
                 for (String display: displayList) {
-                    keyMap.displays.add(new Words(syllableCount(aCode), aCode, display));
+                    aKeyMap.displays.add(new Words(syllableCount(aCode), aCode, display));
                 }
             }
         }
@@ -82,6 +82,12 @@ public class JapaneseKeyboard extends BaseKeyboard {
     @Nullable
     @Override
     public CandidatesResult getCandidates(String aComposingText) {
+        return getCandidates(aComposingText, Integer.MAX_VALUE);
+    }
+
+    @Nullable
+    @Override
+    public CandidatesResult getCandidates(String aComposingText, int aMaxWords) {
         if (StringUtils.isEmpty(aComposingText)) {
             mComposingText.clear();
             return null;
@@ -101,10 +107,7 @@ public class JapaneseKeyboard extends BaseKeyboard {
         List<Words> words = new ArrayList<>();
         int candidates = mConverter.predict(mComposingText, 0, -1);
         if (candidates > 0) {
-            WnnWord word;
-            while ((word = mConverter.getNextCandidate()) != null) {
-                words.add(new Words(1, word.stroke, word.candidate));
-            }
+            words = getNextCandidates(aMaxWords);
         }
 
         CandidatesResult result = new CandidatesResult();
@@ -119,11 +122,24 @@ public class JapaneseKeyboard extends BaseKeyboard {
         } else {
             result.action = CandidatesResult.Action.SHOW_CANDIDATES;
             result.composing = mComposingText.toString(ComposingText.LAYER2);
+            if (words.size() == aMaxWords) {
+                // The converter keeps the position, the rest is only drained if requested.
+                result.moreWords = () -> getNextCandidates(Integer.MAX_VALUE);
+            }
         }
 
         return result;
     }
 
+    private List<Words> getNextCandidates(int aMaxWords) {
+        List<Words> words = new ArrayList<>();
+        WnnWord word;
+        while (words.size() < aMaxWords && (word = mConverter.getNextCandidate()) != null) {
+            words.add(new Words(1, word.stroke, word.candidate));
+        }
+        return words;
+    }
+
     @Override
     public CandidatesResult getEmojiCandidates(String aComposingText) {
         ComposingText text = new ComposingText();
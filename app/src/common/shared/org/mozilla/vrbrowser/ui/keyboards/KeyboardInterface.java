@@ -3,6 +3,7 @@ package org.mozilla.vrbrowser.ui.keyboards;
 import org.mozilla.vrbrowser.input.CustomKeyboard;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.Supplier;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -27,11 +28,15 @@ public interface KeyboardInterface {
         public List<Words> words;
         public Action action = Action.SHOW_CANDIDATES;
         public String composing;
+        // Gets the candidates that follow words when they have been limited to the first ones.
+        // Only valid until the next request to the keyboard, see CandidatesEngine.
+        public Supplier<List<Words>> moreWords;
     }
     @NonNull CustomKeyboard getAlphabeticKeyboard();
     float getAlphabeticKeyboardWidth();
     default @Nullable CustomKeyboard getSymbolsKeyboard() { return null; }
     default @Nullable CandidatesResult getCandidates(String aComposingText) { return null; }
+    default @Nullable CandidatesResult getCandidates(String aComposingText, int aMaxWords) { return getCandidates(aComposingText); }
     default @Nullable String overrideAddText(String aTextBeforeCursor, String aNextText) { return null; }
     default @Nullable String overrideBackspace(String aTextBeforeCursor) { return null; }
     default @Nullable CandidatesResult getEmojiCandidates(String aComposingText) { return null; }
@@ -0,0 +1,408 @@
+package org.mozilla.vrbrowser.ui.keyboards;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import org.mozilla.vrbrowser.ui.keyboards.KeyboardInterface.Words;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pinyin dictionary compiled from the keymaps and autocorrect tables of google_pinyin.db into a
+ * static trie. The compiled file is memory mapped and read in place, so lookups don't allocate
+ * besides the returned words and no SQL runs while typing.
+ *
+ * File layout, all values big endian ints or chars:
+ *  - Header: magic, format version, source version and the size of every section.
+ *  - Nodes in breadth first order, so the children of a node are contiguous and sorted by label:
+ *    label, first child, child count and value, -1 for nodes that don't end a key.
+ *  - Values: first entry and number of displays of every key, candidates follow the displays.
+ *  - Entries: code and text string of every display and candidate.
+ *  - Strings: start offsets and the chars of all the distinct strings.
+ */
+class PinyinDictionary {
+    private static final String LOGTAG = SystemUtils.createLogtag(PinyinDictionary.class);
+    private static final int MAGIC = 0x50594431;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_INTS = 8;
+
+    private final CharBuffer mLabels;
+    private final IntBuffer mFirstChild;
+    private final IntBuffer mChildCount;
+    private final IntBuffer mNodeValue;
+    private final IntBuffer mValueStart;
+    private final IntBuffer mValueDisplays;
+    private final IntBuffer mEntryCode;
+    private final IntBuffer mEntryText;
+    private final IntBuffer mStringStart;
+    private final CharBuffer mChars;
+
+    private PinyinDictionary(@NonNull ByteBuffer aBuffer, int aNodes, int aValues, int aEntries, int aStrings, int aChars) {
+        mLabels = charSection(aBuffer, aNodes);
+        mFirstChild = intSection(aBuffer, aNodes);
+        mChildCount = intSection(aBuffer, aNodes);
+        mNodeValue = intSection(aBuffer, aNodes);
+        mValueStart = intSection(aBuffer, aValues + 1);
+        mValueDisplays = intSection(aBuffer, aValues);
+        mEntryCode = intSection(aBuffer, aEntries);
+        mEntryText = intSection(aBuffer, aEntries);
+        mStringStart = intSection(aBuffer, aStrings + 1);
+        mChars = charSection(aBuffer, aChars);
+    }
+
+    private static IntBuffer intSection(@NonNull ByteBuffer aBuffer, int aCount) {
+        ByteBuffer section = aBuffer.slice();
+        section.limit(aCount * 4);
+        aBuffer.position(aBuffer.position() + aCount * 4);
+        return section.asIntBuffer();
+    }
+
+    private static CharBuffer charSection(@NonNull ByteBuffer aBuffer, int aCount) {
+        ByteBuffer section = aBuffer.slice();
+        section.limit(aCount * 2);
+        aBuffer.position(aBuffer.position() + aCount * 2);
+        return section.asCharBuffer();
+    }
+
+    /**
+     * Maps a compiled dictionary.
+     * @param aSourceVersion version of the database the file must have been compiled from.
+     * @throws IOException if the file can't be read or is outdated.
+     */
+    @WorkerThread
+    @NonNull
+    static PinyinDictionary open(@NonNull File aFile, int aSourceVersion) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(aFile, "r");
+             FileChannel channel = file.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_INTS * 4) {
+                throw new IOException("Invalid pinyin dictionary");
+            }
+            int magic = buffer.getInt();
+            int formatVersion = buffer.getInt();
+            int sourceVersion = buffer.getInt();
+            if (magic != MAGIC || formatVersion != FORMAT_VERSION || sourceVersion != aSourceVersion) {
+                throw new IOException("Outdated pinyin dictionary");
+            }
+            int nodes = buffer.getInt();
+            int values = buffer.getInt();
+            int entries = buffer.getInt();
+            int strings = buffer.getInt();
+            int chars = buffer.getInt();
+            long expected = (long) HEADER_INTS * 4 + nodes * 14L + (values * 2L + 1) * 4 + entries * 8L + (strings + 1) * 4L + chars * 2L;
+            if (expected != channel.size()) {
+                throw new IOException("Truncated pinyin dictionary");
+            }
+            // The mapping stays valid after the channel is closed.
+            return new PinyinDictionary(buffer, nodes, values, entries, strings, chars);
+        }
+    }
+
+    /**
+     * Maps the compiled dictionary, compiling it first if it doesn't exist or is outdated.
+     */
+    @WorkerThread
+    @NonNull
+    static PinyinDictionary load(@NonNull SQLiteOpenHelper aHelper, int aSourceVersion, @NonNull File aFile) throws IOException {
+        try {
+            return open(aFile, aSourceVersion);
+
+        } catch (IOException e) {
+            Log.d(LOGTAG, "Compiling pinyin dictionary: " + e.getMessage());
+        }
+        long start = SystemClock.elapsedRealtime();
+        compile(aHelper.getReadableDatabase(), aSourceVersion, aFile);
+        Log.d(LOGTAG, "Pinyin dictionary compiled in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        return open(aFile, aSourceVersion);
+    }
+
+    private static class CompiledKey {
+        ArrayList<String[]> displays = new ArrayList<>();
+        ArrayList<String[]> candidates = new ArrayList<>();
+    }
+
+    private static class BuildNode {
+        TreeMap<Character, BuildNode> children = new TreeMap<>();
+        int value = -1;
+    }
+
+    /**
+     * Compiles the keymaps and autocorrect tables into a dictionary file.
+     */
+    @WorkerThread
+    static void compile(@NonNull SQLiteDatabase aDatabase, int aSourceVersion, @NonNull File aFile) throws IOException {
+        TreeMap<String, CompiledKey> keys = new TreeMap<>();
+        // Same order as the lookups used to have: keymaps first, then autocorrect, by _id.
+        try (Cursor cursor = aDatabase.rawQuery("SELECT keymap, display, candidates FROM keymaps ORDER BY _id ASC", null)) {
+            while (cursor.moveToNext()) {
+                String key = cursor.getString(0);
+                addWords(keys, key, key, cursor.getString(1), cursor.getString(2));
+            }
+        }
+        try (Cursor cursor = aDatabase.rawQuery("SELECT inputcode, displaycode, display FROM autocorrect ORDER BY _id ASC", null)) {
+            while (cursor.moveToNext()) {
+                addWords(keys, cursor.getString(0), cursor.getString(1), cursor.getString(2), null);
+            }
+        }
+
+        // Values and strings
+        HashMap<String, Integer> stringIds = new HashMap<>();
+        ArrayList<String> strings = new ArrayList<>();
+        int[] valueStart = new int[keys.size() + 1];
+        int[] valueDisplays = new int[keys.size()];
+        ArrayList<Integer> entryCode = new ArrayList<>();
+        ArrayList<Integer> entryText = new ArrayList<>();
+        BuildNode root = new BuildNode();
+        int value = 0;
+        for (Map.Entry<String, CompiledKey> key: keys.entrySet()) {
+            valueStart[value] = entryCode.size();
+            valueDisplays[value] = key.getValue().displays.size();
+            ArrayList<String[]> words = new ArrayList<>(key.getValue().displays);
+            words.addAll(key.getValue().candidates);
+            for (String[] word: words) {
+                entryCode.add(stringId(stringIds, strings, word[0]));
+                entryText.add(stringId(stringIds, strings, word[1]));
+            }
+            BuildNode node = root;
+            for (char c: key.getKey().toCharArray()) {
+                BuildNode child = node.children.get(c);
+                if (child == null) {
+                    child = new BuildNode();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.value = value++;
+        }
+        valueStart[value] = entryCode.size();
+
+        // Nodes in breadth first order, children are added in label order.
+        ArrayList<BuildNode> nodes = new ArrayList<>();
+        ArrayList<Character> labels = new ArrayList<>();
+        ArrayList<Integer> firstChildren = new ArrayList<>();
+        nodes.add(root);
+        labels.add('\0');
+        for (int i = 0; i < nodes.size(); ++i) {
+            firstChildren.add(nodes.size());
+            for (Map.Entry<Character, BuildNode> child: nodes.get(i).children.entrySet()) {
+                nodes.add(child.getValue());
+                labels.add(child.getKey());
+            }
+        }
+
+        int chars = 0;
+        for (String string: strings) {
+            chars += string.length();
+        }
+
+        AtomicFile atomicFile = new AtomicFile(aFile);
+        FileOutputStream stream = atomicFile.startWrite();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(aSourceVersion);
+            out.writeInt(nodes.size());
+            out.writeInt(keys.size());
+            out.writeInt(entryCode.size());
+            out.writeInt(strings.size());
+            out.writeInt(chars);
+            for (char label: labels) {
+                out.writeChar(label);
+            }
+            for (int firstChild: firstChildren) {
+                out.writeInt(firstChild);
+            }
+            for (BuildNode node: nodes) {
+                out.writeInt(node.children.size());
+            }
+            for (BuildNode node: nodes) {
+                out.writeInt(node.value);
+            }
+            for (int start: valueStart) {
+                out.writeInt(start);
+            }
+            for (int count: valueDisplays) {
+                out.writeInt(count);
+            }
+            for (int code: entryCode) {
+                out.writeInt(code);
+            }
+            for (int text: entryText) {
+                out.writeInt(text);
+            }
+            int offset = 0;
+            for (String string: strings) {
+                out.writeInt(offset);
+                offset += string.length();
+            }
+            out.writeInt(offset);
+            for (String string: strings) {
+                out.writeChars(string);
+            }
+            out.flush();
+            atomicFile.finishWrite(stream);
+
+        } catch (IOException e) {
+            atomicFile.failWrite(stream);
+            throw e;
+        }
+    }
+
+    private static void addWords(@NonNull Map<String, CompiledKey> aKeys, String aKey, String aCode,
+                                 String aDisplays, String aCandidates) {
+        if (aKey == null || aKey.isEmpty() || aCode == null || aCode.isEmpty()) {
+            return;
+        }
+        CompiledKey key = aKeys.get(aKey);
+        if (key == null) {
+            key = new CompiledKey();
+            aKeys.put(aKey, key);
+        }
+        if (aDisplays != null && !aDisplays.isEmpty()) {
+            for (String display: aDisplays.split("\\|")) {
+                key.displays.add(new String[] { aCode, display });
+            }
+        }
+        if (aCandidates != null && !aCandidates.isEmpty()) {
+            for (String candidate: aCandidates.split("\\|")) {
+                key.candidates.add(new String[] { aCode, candidate });
+            }
+        }
+    }
+
+    private static int stringId(@NonNull Map<String, Integer> aIds, @NonNull List<String> aStrings, @NonNull String aString) {
+        Integer id = aIds.get(aString);
+        if (id == null) {
+            id = aStrings.size();
+            aIds.put(aString, id);
+            aStrings.add(aString);
+        }
+        return id;
+    }
+
+    private int findChild(int aNode, char aLabel) {
+        int low = mFirstChild.get(aNode);
+        int high = low + mChildCount.get(aNode) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char label = mLabels.get(middle);
+            if (label < aLabel) {
+                low = middle + 1;
+            } else if (label > aLabel) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the value of the key, or -1 if it's not in the dictionary.
+     */
+    int getValue(@NonNull String aKey) {
+        int node = 0;
+        for (int i = 0; i < aKey.length() && node >= 0; ++i) {
+            node = findChild(node, aKey.charAt(i));
+        }
+        return node >= 0 ? mNodeValue.get(node) : -1;
+    }
+
+    /**
+     * Walks the text once from the start.
+     * @return the values of the prefixes of the text, indexed by prefix length - 1. -1 for
+     * prefixes that are not in the dictionary.
+     */
+    @NonNull
+    int[] getPrefixValues(@NonNull String aText, int aStart) {
+        int[] values = new int[aText.length() - aStart];
+        Arrays.fill(values, -1);
+        int node = 0;
+        for (int i = aStart; i < aText.length(); ++i) {
+            node = findChild(node, aText.charAt(i));
+            if (node < 0) {
+                break;
+            }
+            values[i - aStart] = mNodeValue.get(node);
+        }
+        return values;
+    }
+
+    int getDisplayCount(int aValue) {
+        return mValueDisplays.get(aValue);
+    }
+
+    @NonNull
+    List<Words> getDisplays(int aValue) {
+        int start = mValueStart.get(aValue);
+        return getWords(start, start + mValueDisplays.get(aValue));
+    }
+
+    @NonNull
+    List<Words> getCandidates(int aValue) {
+        return getWords(mValueStart.get(aValue) + mValueDisplays.get(aValue), mValueStart.get(aValue + 1));
+    }
+
+    @NonNull
+    private List<Words> getWords(int aStart, int aEnd) {
+        ArrayList<Words> words = new ArrayList<>(aEnd - aStart);
+        for (int i = aStart; i < aEnd; ++i) {
+            String code = getString(mEntryCode.get(i));
+            words.add(new Words(syllableCount(code), code, getString(mEntryText.get(i))));
+        }
+        return words;
+    }
+
+    @NonNull
+    private String getString(int aId) {
+        int start = mStringStart.get(aId);
+        int end = mStringStart.get(aId + 1);
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; ++i) {
+            chars[i] = mChars.get(start + i);
+        }
+        return new String(chars);
+    }
+
+    static int syllableCount(String aCode) {
+        if (aCode == null) {
+            return 0;
+        }
+        aCode = aCode.trim();
+        if (aCode.isEmpty()) {
+            return 0;
+        }
+        int count = 1;
+        for (int i = 0; i < aCode.length(); ++i) {
+            if (aCode.charAt(i) == ' ') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
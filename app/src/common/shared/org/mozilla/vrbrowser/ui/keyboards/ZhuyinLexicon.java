@@ -0,0 +1,470 @@
+package org.mozilla.vrbrowser.ui.keyboards;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import org.mozilla.vrbrowser.ui.keyboards.KeyboardInterface.Words;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Zhuyin words and phrases compiled from the words_* and phrases_* tables of zhuyin_words.db and
+ * zhuyin_phrases.db into a single file sorted by code. The file is memory mapped and code prefix
+ * lookups are binary searches, where the databases had to scan a whole table for every query.
+ *
+ * File layout, all values big endian ints or chars:
+ *  - Header: magic, format version, source version and the size of every section.
+ *  - Words and then phrases, sorted by code and by descending frequency: code string, word
+ *    string and frequency of every entry.
+ *  - Strings: start offsets and the chars of all the distinct strings.
+ */
+class ZhuyinLexicon {
+    private static final String LOGTAG = SystemUtils.createLogtag(ZhuyinLexicon.class);
+    private static final int MAGIC = 0x5A594C31;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_INTS = 7;
+
+    private static class Section {
+        final IntBuffer mCode;
+        final IntBuffer mWord;
+        final IntBuffer mFrequency;
+        final int mSize;
+
+        Section(@NonNull ByteBuffer aBuffer, int aSize) {
+            mCode = intSection(aBuffer, aSize);
+            mWord = intSection(aBuffer, aSize);
+            mFrequency = intSection(aBuffer, aSize);
+            mSize = aSize;
+        }
+    }
+
+    private final Section mWords;
+    private final Section mPhrases;
+    private final IntBuffer mStringStart;
+    private final CharBuffer mChars;
+
+    private ZhuyinLexicon(@NonNull ByteBuffer aBuffer, int aWords, int aPhrases, int aStrings, int aChars) {
+        mWords = new Section(aBuffer, aWords);
+        mPhrases = new Section(aBuffer, aPhrases);
+        mStringStart = intSection(aBuffer, aStrings + 1);
+        ByteBuffer chars = aBuffer.slice();
+        chars.limit(aChars * 2);
+        mChars = chars.asCharBuffer();
+    }
+
+    private static IntBuffer intSection(@NonNull ByteBuffer aBuffer, int aCount) {
+        ByteBuffer section = aBuffer.slice();
+        section.limit(aCount * 4);
+        aBuffer.position(aBuffer.position() + aCount * 4);
+        return section.asIntBuffer();
+    }
+
+    /**
+     * Maps a compiled lexicon.
+     * @param aSourceVersion version of the databases the file must have been compiled from.
+     * @throws IOException if the file can't be read or is outdated.
+     */
+    @WorkerThread
+    @NonNull
+    static ZhuyinLexicon open(@NonNull File aFile, int aSourceVersion) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(aFile, "r");
+             FileChannel channel = file.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_INTS * 4) {
+                throw new IOException("Invalid zhuyin lexicon");
+            }
+            int magic = buffer.getInt();
+            int formatVersion = buffer.getInt();
+            int sourceVersion = buffer.getInt();
+            if (magic != MAGIC || formatVersion != FORMAT_VERSION || sourceVersion != aSourceVersion) {
+                throw new IOException("Outdated zhuyin lexicon");
+            }
+            int words = buffer.getInt();
+            int phrases = buffer.getInt();
+            int strings = buffer.getInt();
+            int chars = buffer.getInt();
+            long expected = (long) HEADER_INTS * 4 + (words + phrases) * 12L + (strings + 1) * 4L + chars * 2L;
+            if (expected != channel.size()) {
+                throw new IOException("Truncated zhuyin lexicon");
+            }
+            // The mapping stays valid after the channel is closed.
+            return new ZhuyinLexicon(buffer, words, phrases, strings, chars);
+        }
+    }
+
+    /**
+     * Maps the compiled lexicon, compiling it first if it doesn't exist or is outdated.
+     */
+    @WorkerThread
+    @NonNull
+    static ZhuyinLexicon load(@NonNull SQLiteOpenHelper aWords, @NonNull SQLiteOpenHelper aPhrases,
+                              int aSourceVersion, @NonNull File aFile) throws IOException {
+        try {
+            return open(aFile, aSourceVersion);
+
+        } catch (IOException e) {
+            Log.d(LOGTAG, "Compiling zhuyin lexicon: " + e.getMessage());
+        }
+        long start = SystemClock.elapsedRealtime();
+        compile(aWords.getReadableDatabase(), aPhrases.getReadableDatabase(), aSourceVersion, aFile);
+        Log.d(LOGTAG, "Zhuyin lexicon compiled in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        return open(aFile, aSourceVersion);
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        String code;
+        String word;
+        int frequency;
+
+        @Override
+        public int compareTo(Entry aOther) {
+            int result = code.compareTo(aOther.code);
+            return result != 0 ? result : Integer.compare(aOther.frequency, frequency);
+        }
+    }
+
+    /**
+     * Compiles the words_* and phrases_* tables into a lexicon file.
+     */
+    @WorkerThread
+    static void compile(@NonNull SQLiteDatabase aWords, @NonNull SQLiteDatabase aPhrases, int aSourceVersion,
+                        @NonNull File aFile) throws IOException {
+        List<Entry> words = readEntries(aWords, "words_");
+        List<Entry> phrases = readEntries(aPhrases, "phrases_");
+
+        HashMap<String, Integer> stringIds = new HashMap<>();
+        ArrayList<String> strings = new ArrayList<>();
+        for (Entry entry: words) {
+            stringId(stringIds, strings, entry.code);
+            stringId(stringIds, strings, entry.word);
+        }
+        for (Entry entry: phrases) {
+            stringId(stringIds, strings, entry.code);
+            stringId(stringIds, strings, entry.word);
+        }
+        int chars = 0;
+        for (String string: strings) {
+            chars += string.length();
+        }
+
+        AtomicFile atomicFile = new AtomicFile(aFile);
+        FileOutputStream stream = atomicFile.startWrite();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(aSourceVersion);
+            out.writeInt(words.size());
+            out.writeInt(phrases.size());
+            out.writeInt(strings.size());
+            out.writeInt(chars);
+            writeEntries(out, words, stringIds);
+            writeEntries(out, phrases, stringIds);
+            int offset = 0;
+            for (String string: strings) {
+                out.writeInt(offset);
+                offset += string.length();
+            }
+            out.writeInt(offset);
+            for (String string: strings) {
+                out.writeChars(string);
+            }
+            out.flush();
+            atomicFile.finishWrite(stream);
+
+        } catch (IOException e) {
+            atomicFile.failWrite(stream);
+            throw e;
+        }
+    }
+
+    @NonNull
+    private static List<Entry> readEntries(@NonNull SQLiteDatabase aDatabase, @NonNull String aTablePrefix) {
+        List<String> tables = new ArrayList<>();
+        try (Cursor cursor = aDatabase.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name LIKE ?",
+                new String[] { aTablePrefix + "%" })) {
+            while (cursor.moveToNext()) {
+                tables.add(cursor.getString(0));
+            }
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (String table: tables) {
+            try (Cursor cursor = aDatabase.rawQuery("SELECT code, word, frequency FROM " + table, null)) {
+                while (cursor.moveToNext()) {
+                    if (cursor.isNull(0) || cursor.isNull(1)) {
+                        continue;
+                    }
+                    Entry entry = new Entry();
+                    entry.code = cursor.getString(0);
+                    entry.word = cursor.getString(1);
+                    entry.frequency = cursor.isNull(2) ? 0 : cursor.getInt(2);
+                    if (!entry.code.isEmpty() && !entry.word.isEmpty()) {
+                        entries.add(entry);
+                    }
+                }
+            }
+        }
+        Collections.sort(entries);
+        return entries;
+    }
+
+    private static void writeEntries(@NonNull DataOutputStream aOut, @NonNull List<Entry> aEntries,
+                                     @NonNull Map<String, Integer> aStringIds) throws IOException {
+        for (Entry entry: aEntries) {
+            aOut.writeInt(aStringIds.get(entry.code));
+        }
+        for (Entry entry: aEntries) {
+            aOut.writeInt(aStringIds.get(entry.word));
+        }
+        for (Entry entry: aEntries) {
+            aOut.writeInt(entry.frequency);
+        }
+    }
+
+    private static void stringId(@NonNull Map<String, Integer> aIds, @NonNull List<String> aStrings, @NonNull String aString) {
+        if (!aIds.containsKey(aString)) {
+            aIds.put(aString, aStrings.size());
+            aStrings.add(aString);
+        }
+    }
+
+    /**
+     * Gets the words for a code without the first tone, the same results the databases give.
+     * Exact words come first, then the words and phrases starting with the code unless the
+     * query is exact, each group by descending frequency.
+     */
+    @NonNull
+    List<Words> getWords(@NonNull String aCode, boolean aExact, int aLimit) {
+        ArrayList<Words> result = new ArrayList<>();
+        if (aCode.isEmpty()) {
+            return result;
+        }
+        HashSet<String> added = new HashSet<>();
+        int start = lowerBound(mWords, aCode);
+        int end = upperBound(mWords, aCode);
+        int exactEnd = start;
+        while (exactEnd < end && getLength(mWords.mCode.get(exactEnd)) == aCode.length()) {
+            exactEnd++;
+        }
+        // Exact entries are already sorted by frequency.
+        addWords(result, added, mWords, start, exactEnd, aLimit);
+        if (!aExact) {
+            addWordsByFrequency(result, added, mWords, exactEnd, end, aLimit);
+        }
+        added.clear();
+        addWordsByFrequency(result, added, mPhrases, lowerBound(mPhrases, aCode), upperBound(mPhrases, aCode), aLimit);
+        return result;
+    }
+
+    /**
+     * @return the most frequent word codes, most frequent first.
+     */
+    @NonNull
+    List<String> getFrequentCodes(int aCount) {
+        HashMap<Integer, Integer> frequencies = new HashMap<>();
+        for (int i = 0; i < mWords.mSize; ++i) {
+            Integer code = mWords.mCode.get(i);
+            Integer frequency = frequencies.get(code);
+            frequencies.put(code, (frequency != null ? frequency : 0) + mWords.mFrequency.get(i));
+        }
+        List<Map.Entry<Integer, Integer>> codes = new ArrayList<>(frequencies.entrySet());
+        Collections.sort(codes, (a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < codes.size() && i < aCount; ++i) {
+            result.add(getString(codes.get(i).getKey()));
+        }
+        return result;
+    }
+
+    private void addWords(@NonNull List<Words> aResult, @NonNull HashSet<String> aAdded, @NonNull Section aSection,
+                          int aStart, int aEnd, int aLimit) {
+        for (int i = aStart; i < aEnd && aResult.size() < aLimit; ++i) {
+            addWord(aResult, aAdded, aSection, i);
+        }
+    }
+
+    /**
+     * Adds the words of a range by descending frequency, entries with the same frequency in file
+     * order. Instead of sorting the whole range, only the entries for the missing words are
+     * selected, and the range is scanned again only if some of them were duplicated words.
+     */
+    private void addWordsByFrequency(@NonNull List<Words> aResult, @NonNull HashSet<String> aAdded,
+                                     @NonNull Section aSection, int aStart, int aEnd, int aLimit) {
+        // Last selected entry, the next selection only considers the entries after it.
+        int last = -1;
+        while (aResult.size() < aLimit) {
+            int count = Math.min(aLimit - aResult.size(), aEnd - aStart);
+            if (count <= 0) {
+                return;
+            }
+            // Min heap of the best entries found, the worst of them at the root.
+            int[] heap = new int[count];
+            int size = 0;
+            for (int i = aStart; i < aEnd; ++i) {
+                if (last >= 0 && !isBefore(aSection, last, i)) {
+                    continue;
+                }
+                if (size < count) {
+                    heap[size] = i;
+                    siftUp(aSection, heap, size++);
+                } else if (isBefore(aSection, i, heap[0])) {
+                    heap[0] = i;
+                    siftDown(aSection, heap, 0, size);
+                }
+            }
+            if (size == 0) {
+                return;
+            }
+            // Sorts the heap in place, best entry first.
+            for (int end = size - 1; end > 0; --end) {
+                int worst = heap[0];
+                heap[0] = heap[end];
+                heap[end] = worst;
+                siftDown(aSection, heap, 0, end);
+            }
+            for (int i = 0; i < size && aResult.size() < aLimit; ++i) {
+                addWord(aResult, aAdded, aSection, heap[i]);
+            }
+            if (size < count) {
+                // The whole range was added.
+                return;
+            }
+            last = heap[size - 1];
+        }
+    }
+
+    // Whether the first entry goes before the second one: higher frequency or same frequency and
+    // lower index.
+    private static boolean isBefore(@NonNull Section aSection, int aFirst, int aSecond) {
+        int first = aSection.mFrequency.get(aFirst);
+        int second = aSection.mFrequency.get(aSecond);
+        return first > second || (first == second && aFirst < aSecond);
+    }
+
+    private static void siftUp(@NonNull Section aSection, @NonNull int[] aHeap, int aIndex) {
+        while (aIndex > 0) {
+            int parent = (aIndex - 1) / 2;
+            if (!isBefore(aSection, aHeap[parent], aHeap[aIndex])) {
+                return;
+            }
+            swap(aHeap, parent, aIndex);
+            aIndex = parent;
+        }
+    }
+
+    private static void siftDown(@NonNull Section aSection, @NonNull int[] aHeap, int aIndex, int aSize) {
+        while (true) {
+            int worst = aIndex;
+            int left = aIndex * 2 + 1;
+            int right = left + 1;
+            if (left < aSize && isBefore(aSection, aHeap[worst], aHeap[left])) {
+                worst = left;
+            }
+            if (right < aSize && isBefore(aSection, aHeap[worst], aHeap[right])) {
+                worst = right;
+            }
+            if (worst == aIndex) {
+                return;
+            }
+            swap(aHeap, worst, aIndex);
+            aIndex = worst;
+        }
+    }
+
+    private static void swap(@NonNull int[] aArray, int aFirst, int aSecond) {
+        int value = aArray[aFirst];
+        aArray[aFirst] = aArray[aSecond];
+        aArray[aSecond] = value;
+    }
+
+    private void addWord(@NonNull List<Words> aResult, @NonNull HashSet<String> aAdded, @NonNull Section aSection, int aEntry) {
+        // Same as GROUP BY word, the most frequent entry of every word is the one added.
+        String word = getString(aSection.mWord.get(aEntry));
+        if (aAdded.add(word)) {
+            String code = getString(aSection.mCode.get(aEntry));
+            aResult.add(new Words(1, code, word));
+        }
+    }
+
+    // First entry whose code is not lower than the prefix.
+    private int lowerBound(@NonNull Section aSection, @NonNull String aPrefix) {
+        int low = 0;
+        int high = aSection.mSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparePrefix(aSection.mCode.get(middle), aPrefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // First entry whose code neither starts with the prefix nor is lower than it.
+    private int upperBound(@NonNull Section aSection, @NonNull String aPrefix) {
+        int low = 0;
+        int high = aSection.mSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparePrefix(aSection.mCode.get(middle), aPrefix) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Compares a string with a prefix, 0 if the string starts with it.
+    private int comparePrefix(int aString, @NonNull String aPrefix) {
+        int start = mStringStart.get(aString);
+        int length = mStringStart.get(aString + 1) - start;
+        int count = Math.min(length, aPrefix.length());
+        for (int i = 0; i < count; ++i) {
+            int result = Character.compare(mChars.get(start + i), aPrefix.charAt(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return length < aPrefix.length() ? -1 : 0;
+    }
+
+    private int getLength(int aString) {
+        return mStringStart.get(aString + 1) - mStringStart.get(aString);
+    }
+
+    @NonNull
+    private String getString(int aString) {
+        int start = mStringStart.get(aString);
+        char[] chars = new char[mStringStart.get(aString + 1) - start];
+        for (int i = 0; i < chars.length; ++i) {
+            chars[i] = mChars.get(start + i);
+        }
+        return new String(chars);
+    }
+}
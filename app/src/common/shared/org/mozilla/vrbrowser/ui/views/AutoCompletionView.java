@@ -39,10 +39,12 @@ public class AutoCompletionView extends FrameLayout {
     private boolean mIsExtended;
     private Delegate mDelegate;
     private List<Words> mItems;
+    private boolean mHasMoreItems;
 
     public interface Delegate {
         void onAutoCompletionItemClick(Words aItem);
         void onAutoCompletionExtendedChanged();
+        default void onAutoCompletionMoreItemsRequested() {}
     }
 
     public AutoCompletionView(Context aContext) {
@@ -134,7 +136,16 @@ public class AutoCompletionView extends FrameLayout {
     }
 
     public void setItems(List<Words> aItems) {
+        setItems(aItems, false);
+    }
+
+    /**
+     * @param aHasMoreItems true if the items are only the first ones, the delegate is asked for
+     *                      the rest when the view is extended.
+     */
+    public void setItems(List<Words> aItems, boolean aHasMoreItems) {
         mItems = aItems;
+        mHasMoreItems = aHasMoreItems;
         if (mLineWidth == 0) {
             mLineWidth = getMeasuredWidth();
         }
@@ -143,6 +154,25 @@ public class AutoCompletionView extends FrameLayout {
         }
     }
 
+    /**
+     * Appends the rest of the items after {@link #setItems(List, boolean)}.
+     */
+    public void addItems(List<Words> aItems) {
+        if (mItems == null || !mHasMoreItems) {
+            return;
+        }
+        ArrayList<Words> items = new ArrayList<>(mItems);
+        items.addAll(aItems);
+        mItems = items;
+        mHasMoreItems = false;
+        if (mLineWidth > 0) {
+            layoutItems();
+            if (mIsExtended) {
+                layoutExtendedItems();
+            }
+        }
+    }
+
     private void layoutItems() {
         mFirstLine.removeAllViews();
         mExtraItems.clear();
@@ -159,6 +189,11 @@ public class AutoCompletionView extends FrameLayout {
         int extendButtonWidth =  mExtendButton.getWidth();
 
         for (Words item : mItems) {
+            if (currentWidth >= (mLineWidth - extendButtonWidth)) {
+                // The first line is full, the buttons for the rest are created when extended.
+                mExtraItems.add(item);
+                continue;
+            }
             UITextButton textBtn = createButton(item, clickHandler);
             if (n == 0) {
                 textBtn.setBackground(getContext().getDrawable(R.drawable.autocompletion_item_background_first));
@@ -175,7 +210,7 @@ public class AutoCompletionView extends FrameLayout {
             n++;
         }
 
-        mExtendButton.setVisibility(currentWidth >= mLineWidth ? View.VISIBLE : View.GONE);
+        mExtendButton.setVisibility(mExtraItems.size() > 0 || mHasMoreItems ? View.VISIBLE : View.GONE);
         mExtendButtonSeparator.setVisibility(mExtendButton.getVisibility());
     }
 
@@ -229,6 +264,9 @@ public class AutoCompletionView extends FrameLayout {
         if (mExtendContent.getChildCount() == 0) {
             layoutExtendedItems();
         }
+        if (mHasMoreItems && mDelegate != null) {
+            mDelegate.onAutoCompletionMoreItemsRequested();
+        }
 
         mExtendButton.setScaleY(-1);
 
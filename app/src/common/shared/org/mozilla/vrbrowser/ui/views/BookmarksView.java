@@ -210,6 +210,11 @@ public class BookmarksView extends FrameLayout implements BookmarksStore.Bookmar
             int position = mBookmarkAdapter.getItemPosition(item.getGuid());
             mLayoutManager.scrollToPositionWithOffset(position, 20);
         }
+
+        @Override
+        public void onFolderExpanded(@NonNull Bookmark item) {
+            updateBookmarks();
+        }
     };
 
     private BookmarksCallback mBookmarksCallback = new BookmarksCallback() {
@@ -331,7 +336,7 @@ public class BookmarksView extends FrameLayout implements BookmarksStore.Bookmar
     };
 
     private void updateBookmarks() {
-        SessionStore.get().getBookmarkStore().getTree(BookmarkRoot.Root.getId(), true).
+        SessionStore.get().getBookmarkStore().getTree(BookmarkRoot.Root.getId(), mBookmarkAdapter.getOpenFolders()).
                 thenAcceptAsync(this::showBookmarks, mUIThreadExecutor).
                 exceptionally(throwable -> {
                     Log.d(LOGTAG, "Error getting bookmarks: " + throwable.getLocalizedMessage());
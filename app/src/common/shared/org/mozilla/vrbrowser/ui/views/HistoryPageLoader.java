@@ -0,0 +1,193 @@
+package org.mozilla.vrbrowser.ui.views;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+
+import org.mozilla.vrbrowser.browser.HistoryStore;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import mozilla.components.concept.storage.VisitInfo;
+import mozilla.components.concept.storage.VisitType;
+
+/**
+ * Loads the history in pages of visits, newest first. Each page is de-duplicated by url and
+ * split in sections on a background executor, so only the new rows reach the UI thread.
+ */
+public class HistoryPageLoader {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(HistoryPageLoader.class);
+
+    public static final int PAGE_SIZE = 100;
+
+    public interface Callback {
+        /**
+         * The history was loaded from the start. Replaces all the previously loaded items.
+         */
+        void onHistoryReset(@NonNull List<VisitInfo> aItems);
+
+        /**
+         * A new page was loaded. The items go after the previously loaded ones.
+         */
+        void onHistoryAppended(@NonNull List<VisitInfo> aItems);
+    }
+
+    private final HistoryStore mHistoryStore;
+    private final Executor mBackgroundExecutor;
+    private final Executor mMainExecutor;
+    private final String[] mSectionTitles;
+    private final Callback mCallback;
+
+    // Everything below is only accessed from the UI thread.
+    private PageState mState;
+    private long mOffset;
+    private boolean mLoading;
+    private boolean mEndReached;
+    private int mGeneration;
+
+    /**
+     * @param aSectionTitles titles of the today, yesterday, last week and older sections.
+     */
+    public HistoryPageLoader(@NonNull HistoryStore aHistoryStore, @NonNull Executor aBackgroundExecutor,
+                             @NonNull Executor aMainExecutor, @NonNull String[] aSectionTitles,
+                             @NonNull Callback aCallback) {
+        mHistoryStore = aHistoryStore;
+        mBackgroundExecutor = aBackgroundExecutor;
+        mMainExecutor = aMainExecutor;
+        mSectionTitles = aSectionTitles;
+        mCallback = aCallback;
+    }
+
+    /**
+     * Loads the history again from the start, at least as many visits as are currently loaded.
+     * Results of loads started before this call are discarded.
+     */
+    @UiThread
+    public void reload() {
+        mGeneration++;
+        long count = Math.max(mOffset, PAGE_SIZE);
+        mOffset = 0;
+        mEndReached = false;
+        load(new PageState(mSectionTitles), 0, count, true);
+    }
+
+    @UiThread
+    public void loadNextPage() {
+        if (mLoading || mEndReached || mState == null) {
+            return;
+        }
+        load(mState, mOffset, PAGE_SIZE, false);
+    }
+
+    @UiThread
+    public boolean isLoading() {
+        return mLoading;
+    }
+
+    @UiThread
+    private void load(@NonNull PageState aState, long aOffset, long aCount, boolean aReset) {
+        final int generation = mGeneration;
+        mLoading = true;
+        mHistoryStore.getVisitsPaginated(aOffset, aCount)
+                .thenApplyAsync(aState::process, mBackgroundExecutor)
+                .thenAcceptAsync(items -> {
+                    if (generation != mGeneration) {
+                        return;
+                    }
+                    mLoading = false;
+                    mState = aState;
+                    mOffset = aOffset + aState.mLastPageSize;
+                    mEndReached = aState.mLastPageSize < aCount;
+                    if (aReset) {
+                        mCallback.onHistoryReset(items);
+
+                    } else if (!items.isEmpty()) {
+                        mCallback.onHistoryAppended(items);
+
+                    } else {
+                        // The whole page was already shown, keep going until there is something new.
+                        loadNextPage();
+                    }
+
+                }, mMainExecutor).exceptionally(throwable -> {
+                    Log.d(LOGTAG, "Error getting history: " + throwable.getLocalizedMessage());
+                    mMainExecutor.execute(() -> {
+                        if (generation == mGeneration) {
+                            mLoading = false;
+                        }
+                    });
+                    return null;
+                });
+    }
+
+    /**
+     * State carried between the pages of a load. Only accessed from the background executor,
+     * which runs the pages one after another.
+     */
+    private static class PageState {
+        private final String[] mSectionTitles;
+        private final long[] mSectionStarts;
+        private final HashSet<String> mSeenUrls = new HashSet<>();
+        private int mSection = -1;
+        private int mLastPageSize;
+
+        PageState(@NonNull String[] aSectionTitles) {
+            mSectionTitles = aSectionTitles;
+
+            Calendar date = new GregorianCalendar();
+            date.set(Calendar.HOUR_OF_DAY, 0);
+            date.set(Calendar.MINUTE, 0);
+            date.set(Calendar.SECOND, 0);
+            date.set(Calendar.MILLISECOND, 0);
+
+            long todayLimit = date.getTimeInMillis();
+            long yesterdayLimit = todayLimit - SystemUtils.ONE_DAY_MILLIS;
+            long oneWeekLimit = todayLimit - SystemUtils.ONE_WEEK_MILLIS;
+            mSectionStarts = new long[] { Long.MAX_VALUE, todayLimit, yesterdayLimit, oneWeekLimit, 0 };
+        }
+
+        @WorkerThread
+        @NonNull
+        List<VisitInfo> process(@Nullable List<VisitInfo> aVisits) {
+            ArrayList<VisitInfo> items = new ArrayList<>();
+            mLastPageSize = aVisits != null ? aVisits.size() : 0;
+            if (aVisits == null) {
+                return items;
+            }
+
+            // Visits come sorted by time, newest first, so sections only move forward.
+            for (VisitInfo visit: aVisits) {
+                if (!mSeenUrls.add(visit.getUrl())) {
+                    continue;
+                }
+                int section = getSection(visit.getVisitTime());
+                if (section > mSection) {
+                    mSection = section;
+                    String title = mSectionTitles[section];
+                    items.add(new VisitInfo(title, title, mSectionStarts[section], VisitType.NOT_A_VISIT));
+                }
+                items.add(visit);
+            }
+
+            return items;
+        }
+
+        private int getSection(long aVisitTime) {
+            int section = 0;
+            while (section < mSectionTitles.length - 1 && aVisitTime <= mSectionStarts[section + 1]) {
+                section++;
+            }
+            return section;
+        }
+    }
+}
@@ -38,20 +38,12 @@ import org.mozilla.vrbrowser.ui.widgets.WidgetManagerDelegate;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Comparator;
-import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
-import java.util.function.Function;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 import mozilla.components.concept.storage.VisitInfo;
-import mozilla.components.concept.storage.VisitType;
 import mozilla.components.concept.sync.AccountObserver;
 import mozilla.components.concept.sync.AuthType;
 import mozilla.components.concept.sync.OAuthAccount;
@@ -65,12 +57,15 @@ public class HistoryView extends FrameLayout implements HistoryStore.HistoryList
     private static final String LOGTAG = SystemUtils.createLogtag(HistoryView.class);
 
     private static final boolean ACCOUNTS_UI_ENABLED = false;
+    // Rows left below the last visible one when the next history page is requested.
+    private static final int PREFETCH_DISTANCE = 20;
 
     private HistoryBinding mBinding;
     private Accounts mAccounts;
     private HistoryAdapter mHistoryAdapter;
     private ArrayList<HistoryCallback> mHistoryViewListeners;
     private Executor mUIThreadExecutor;
+    private HistoryPageLoader mPageLoader;
 
     public HistoryView(Context aContext) {
         super(aContext);
@@ -114,6 +109,18 @@ public class HistoryView extends FrameLayout implements HistoryStore.HistoryList
         mBinding.setCallback(mHistoryCallback);
         mHistoryAdapter = new HistoryAdapter(mHistoryItemCallback, getContext());
         mBinding.historyList.setAdapter(mHistoryAdapter);
+        VRBrowserApplication application = (VRBrowserApplication)getContext().getApplicationContext();
+        mPageLoader = new HistoryPageLoader(
+                SessionStore.get().getHistoryStore(),
+                application.getExecutors().diskIO(),
+                mUIThreadExecutor,
+                new String[] {
+                        getResources().getString(R.string.history_section_today),
+                        getResources().getString(R.string.history_section_yesterday),
+                        getResources().getString(R.string.history_section_last_week),
+                        getResources().getString(R.string.history_section_older)
+                },
+                mPageLoaderCallback);
         mBinding.historyList.addOnScrollListener(mScrollListener);
         mBinding.historyList.setHasFixedSize(true);
         mBinding.historyList.setItemViewCacheSize(20);
@@ -145,6 +152,7 @@ public class HistoryView extends FrameLayout implements HistoryStore.HistoryList
         SessionStore.get().getHistoryStore().removeListener(this);
 
         mBinding.historyList.removeOnScrollListener(mScrollListener);
+        mBinding.historyList.removeCallbacks(mFillListRunnable);
 
         if (ACCOUNTS_UI_ENABLED) {
             mAccounts.removeAccountListener(mAccountListener);
@@ -164,9 +172,29 @@ public class HistoryView extends FrameLayout implements HistoryStore.HistoryList
             if (recyclerView.getScrollState() != RecyclerView.SCROLL_STATE_SETTLING) {
                 recyclerView.requestFocus();
             }
+
+            LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+            if (layoutManager != null && dy > 0 &&
+                    layoutManager.findLastVisibleItemPosition() >= mHistoryAdapter.getItemCount() - PREFETCH_DISTANCE) {
+                mPageLoader.loadNextPage();
+            }
+        }
+    };
+
+    // Pages that don't fill the list can't be scrolled, so the next ones are loaded right away.
+    private final Runnable mFillListRunnable = () -> {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mBinding.historyList.getLayoutManager();
+        if (layoutManager != null &&
+                mHistoryAdapter.getItemCount() < layoutManager.getChildCount() + PREFETCH_DISTANCE) {
+            mPageLoader.loadNextPage();
         }
     };
 
+    private void fillList() {
+        // Wait for the new rows to be laid out.
+        mBinding.historyList.post(mFillListRunnable);
+    }
+
     private final HistoryItemCallback mHistoryItemCallback = new HistoryItemCallback() {
         @Override
         public void onClick(View view, VisitInfo item) {
@@ -327,60 +355,21 @@ public class HistoryView extends FrameLayout implements HistoryStore.HistoryList
         }
     };
 
-    @NonNull
-    public static <T> Predicate<T> distinctByUrl(Function<? super T, ?> keyExtractor) {
-        Set<Object> seen = ConcurrentHashMap.newKeySet();
-        return t -> seen.add(keyExtractor.apply(t));
-    }
-
     private void updateHistory() {
-        Calendar date = new GregorianCalendar();
-        date.set(Calendar.HOUR_OF_DAY, 0);
-        date.set(Calendar.MINUTE, 0);
-        date.set(Calendar.SECOND, 0);
-        date.set(Calendar.MILLISECOND, 0);
-
-        long todayLimit = date.getTimeInMillis();
-        long yesterdayLimit = todayLimit - SystemUtils.ONE_DAY_MILLIS;
-        long oneWeekLimit = todayLimit - SystemUtils.ONE_WEEK_MILLIS;
-
-        SessionStore.get().getHistoryStore().getDetailedHistory().thenAcceptAsync((items) -> {
-            List<VisitInfo> orderedItems = items.stream()
-                    .sorted(Comparator.comparing(VisitInfo::getVisitTime)
-                    .reversed())
-                    .filter(distinctByUrl(VisitInfo::getUrl))
-                    .collect(Collectors.toList());
-
-            addSection(orderedItems, getResources().getString(R.string.history_section_today), Long.MAX_VALUE, todayLimit);
-            addSection(orderedItems, getResources().getString(R.string.history_section_yesterday), todayLimit, yesterdayLimit);
-            addSection(orderedItems, getResources().getString(R.string.history_section_last_week), yesterdayLimit, oneWeekLimit);
-            addSection(orderedItems, getResources().getString(R.string.history_section_older), oneWeekLimit, 0);
-
-            showHistory(orderedItems);
-
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error getting history: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            return null;
-        });
+        mPageLoader.reload();
     }
 
-    private void addSection(final @NonNull List<VisitInfo> items, @NonNull String section, long rangeStart, long rangeEnd) {
-        for (int i=0; i< items.size(); i++) {
-            if (items.get(i).getVisitTime() == rangeStart && items.get(i).getVisitType() == VisitType.NOT_A_VISIT)
-                break;
-
-            if (items.get(i).getVisitTime() < rangeStart && items.get(i).getVisitTime() > rangeEnd) {
-                items.add(i, new VisitInfo(
-                        section,
-                        section,
-                        rangeStart,
-                        VisitType.NOT_A_VISIT
-                ));
-                break;
-            }
+    private HistoryPageLoader.Callback mPageLoaderCallback = new HistoryPageLoader.Callback() {
+        @Override
+        public void onHistoryReset(@NonNull List<VisitInfo> aItems) {
+            showHistory(aItems);
         }
-    }
+
+        @Override
+        public void onHistoryAppended(@NonNull List<VisitInfo> aItems) {
+            mHistoryAdapter.appendHistoryList(aItems, HistoryView.this::fillList);
+        }
+    };
 
     private void showHistory(List<VisitInfo> historyItems) {
         if (historyItems == null || historyItems.size() == 0) {
@@ -390,7 +379,7 @@ public class HistoryView extends FrameLayout implements HistoryStore.HistoryList
         } else {
             mBinding.setIsEmpty(false);
             mBinding.setIsLoading(false);
-            mHistoryAdapter.setHistoryList(historyItems);
+            mHistoryAdapter.setHistoryList(historyItems, this::fillList);
         }
     }
 
@@ -423,7 +412,7 @@ public class HistoryView extends FrameLayout implements HistoryStore.HistoryList
     // HistoryStore.HistoryListener
 
     @Override
-    public void onHistoryUpdated() {
+    public void onHistoryUpdated(@Nullable Set<String> aChangedUrls) {
         updateHistory();
     }
 }
@@ -38,6 +38,7 @@ import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.databinding.NavigationUrlBinding;
 import org.mozilla.vrbrowser.search.SearchEngineWrapper;
+import org.mozilla.vrbrowser.search.suggestions.AutocompleteIndex;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
 import org.mozilla.vrbrowser.telemetry.TelemetryWrapper;
 import org.mozilla.vrbrowser.ui.viewmodel.WindowViewModel;
@@ -77,8 +78,26 @@ public class NavigationURLBar extends FrameLayout {
     private boolean mLongPressed = false;
     private int lastTouchDownOffset = 0;
 
+    private static final String AUTOCOMPLETE_INDEX_SOURCE = "autocomplete-index";
+
     private Unit domainAutocompleteFilter(String text) {
         if (mBinding.urlEditText != null) {
+            AutocompleteIndex index = SessionStore.get().getAutocompleteIndex();
+            if (index != null && index.isReady()) {
+                String completion = index.getInlineCompletion(text);
+                if (completion != null) {
+                    mBinding.urlEditText.applyAutocompleteResult(new InlineAutocompleteEditText.AutocompleteResult(
+                            completion,
+                            AUTOCOMPLETE_INDEX_SOURCE,
+                            1,
+                            null));
+                } else {
+                    mBinding.urlEditText.noAutocompleteResult();
+                }
+                return Unit.INSTANCE;
+            }
+
+            // The shipped domains are used until the index has been built.
             DomainAutocompleteResult result = mAutocompleteProvider.getAutocompleteSuggestion(text);
             if (result != null) {
                 mBinding.urlEditText.applyAutocompleteResult(new InlineAutocompleteEditText.AutocompleteResult(
@@ -22,6 +22,7 @@ import org.mozilla.vrbrowser.utils.BitmapCache;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 
 public class TabView extends RelativeLayout implements GeckoSession.ContentDelegate, Session.BitmapChangedListener {
@@ -49,6 +50,7 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
     protected int mMaxIconPadding;
     protected boolean mPressed;
     protected CompletableFuture<Bitmap> mBitmapFuture;
+    protected BitmapCache mBitmapCache;
     protected boolean mUsingPlaceholder;
     private boolean mIsPrivateMode;
     private static final int ICON_ANIMATION_DURATION = 100;
@@ -146,7 +148,9 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
         mSession.addContentListener(this);
         mSession.addBitmapChangedListener(this);
         mShowAddTab = false;
-        mBitmapFuture = aBitmapCache.getBitmap(mSession.getId());
+        mBitmapCache = aBitmapCache;
+        // Previews of views bound ahead of time by the RecyclerView wait for the visible ones.
+        mBitmapFuture = aBitmapCache.getBitmap(mSession.getId(), isAttachedToWindow() ? BitmapCache.PRIORITY_HIGH : BitmapCache.PRIORITY_LOW);
         mPreview.setImageResource(R.drawable.ic_icon_tabs_placeholder);
         mUsingPlaceholder = true;
         mBitmapFuture.thenAccept(bitmap -> {
@@ -158,6 +162,10 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
             }
 
         }).exceptionally(throwable -> {
+            if (throwable instanceof CancellationException || throwable.getCause() instanceof CancellationException) {
+                // The view has been bound to another session.
+                return null;
+            }
             Log.d(LOGTAG, "Error getting the bitmap: " + throwable.getLocalizedMessage());
             throwable.printStackTrace();
             return null;
@@ -174,6 +182,14 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
         updateState();
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mBitmapFuture != null && mSession != null && mBitmapCache != null) {
+            mBitmapCache.setPriority(mSession.getId(), BitmapCache.PRIORITY_HIGH);
+        }
+    }
+
     public Session getSession() {
         return mSession;
     }
@@ -0,0 +1,88 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.ui.widgets;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Area of a widget invalidated since its last draw, in view coordinates, and its mapping to the
+ * widget texture. Starts and is reset to a full redraw whenever the previous texture content
+ * can't be kept.
+ */
+class DirtyRegion {
+
+    private final Rect mRect = new Rect();
+    private final RectF mTextureRectF = new RectF();
+    private final Rect mTextureRect = new Rect();
+    private boolean mFull = true;
+
+    /**
+     * Adds an invalidated area, in view coordinates.
+     */
+    void add(@NonNull Rect aRect) {
+        if (!mFull) {
+            mRect.union(aRect);
+        }
+    }
+
+    /**
+     * Marks the whole widget as invalidated.
+     */
+    void addAll() {
+        mFull = true;
+        mRect.setEmpty();
+    }
+
+    /**
+     * @return whether the whole widget has to be redrawn.
+     */
+    boolean isFull() {
+        return mFull || mRect.isEmpty();
+    }
+
+    /**
+     * @return the invalidated area in view coordinates, empty if the whole widget is invalidated.
+     */
+    @NonNull
+    Rect getRect() {
+        return mRect;
+    }
+
+    /**
+     * Maps the invalidated area to the texture and resets the region.
+     * @return the area to redraw in texture coordinates, or null to redraw the whole texture. The
+     * rect is reused by the next call.
+     */
+    @Nullable
+    Rect takeTextureRect(int aViewWidth, int aViewHeight, int aTextureWidth, int aTextureHeight) {
+        Rect result = null;
+        if (!isFull() && aViewWidth > 0 && aViewHeight > 0) {
+            // The texture may have a different size than the view.
+            float xScale = aTextureWidth / (float)aViewWidth;
+            float yScale = aTextureHeight / (float)aViewHeight;
+            // The view is drawn with the horizontal scale on both axes, if the aspect ratios
+            // differ the scaled dirty rect wouldn't cover what the view draws.
+            if (Math.abs(xScale * aViewHeight - aTextureHeight) <= 1.0f) {
+                mTextureRectF.set(mRect);
+                mTextureRectF.left *= xScale;
+                mTextureRectF.top *= yScale;
+                mTextureRectF.right *= xScale;
+                mTextureRectF.bottom *= yScale;
+                mTextureRectF.roundOut(mTextureRect);
+                if (mTextureRect.intersect(0, 0, aTextureWidth, aTextureHeight)) {
+                    result = mTextureRect;
+                }
+            }
+        }
+        mFull = false;
+        mRect.setEmpty();
+        return result;
+    }
+}
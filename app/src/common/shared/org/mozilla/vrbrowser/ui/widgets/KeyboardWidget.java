@@ -36,11 +36,13 @@ import androidx.annotation.Nullable;
 
 import org.mozilla.geckoview.GeckoSession;
 import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.input.CustomKeyboard;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
 import org.mozilla.vrbrowser.telemetry.TelemetryWrapper;
+import org.mozilla.vrbrowser.ui.keyboards.CandidatesEngine;
 import org.mozilla.vrbrowser.ui.keyboards.ChinesePinyinKeyboard;
 import org.mozilla.vrbrowser.ui.keyboards.ChineseZhuyinKeyboard;
 import org.mozilla.vrbrowser.ui.keyboards.DanishKeyboard;
@@ -92,6 +94,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
     private EditorInfo mEditorInfo = new EditorInfo();
     private VoiceSearchWidget mVoiceSearchWidget;
     private AutoCompletionView mAutoCompletionView;
+    private CandidatesEngine mCandidatesEngine;
     private KeyboardSelectorView mLanguageSelectorView;
     private KeyboardSelectorView mDomainSelectorView;
 
@@ -183,6 +186,8 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
         mDomainSelectorView = findViewById(R.id.domainSelectorView);
         mDomainSelectorView.setDelegate(this::handleDomainChange);
 
+        mCandidatesEngine = new CandidatesEngine(((VRBrowserApplication)aContext.getApplicationContext()).getExecutors().mainThread());
+
         mKeyboards = new ArrayList<>();
         mKeyboards.add(new EnglishKeyboard(aContext));
         mKeyboards.add(new ChinesePinyinKeyboard(aContext));
@@ -271,6 +276,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
     public void releaseWidget() {
         detachFromWindow();
         mWidgetManager.removeFocusChangeListener(this);
+        mCandidatesEngine.release();
         mAutoCompletionView.setDelegate(null);
         mAttachedWindow = null;
         super.releaseWidget();
@@ -375,7 +381,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
             mWidgetManager.updateWidget(this);
         }
 
-        mCurrentKeyboard.clear();
+        mCandidatesEngine.clear(mCurrentKeyboard);
         updateCandidates();
         updateSpecialKeyLabels();
     }
@@ -702,9 +708,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
     }
 
     private void handleEmojiInput() {
-        final KeyboardInterface.CandidatesResult candidates = mCurrentKeyboard.getEmojiCandidates(mComposingText);
-        setAutoCompletionVisible(candidates != null && candidates.words.size() > 0);
-        mAutoCompletionView.setItems(candidates != null ? candidates.words : null);
+        mCandidatesEngine.getEmojiCandidates(mCurrentKeyboard, mComposingText, this::setCandidates);
     }
 
     private void handleDomain() {
@@ -923,37 +927,46 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
 
     private void updateCandidates() {
         if (mInputConnection == null || !mCurrentKeyboard.supportsAutoCompletion()) {
+            mCandidatesEngine.cancel();
             setAutoCompletionVisible(false);
             updateSpecialKeyLabels();
             return;
         }
 
         if (mCurrentKeyboard.usesComposingText()) {
-            final KeyboardInterface.CandidatesResult candidates = mCurrentKeyboard.getCandidates(mComposingText);
-            setAutoCompletionVisible(candidates != null && candidates.words.size() > 0);
-            mAutoCompletionView.setItems(candidates != null ? candidates.words : null);
-            if (candidates != null && candidates.action == KeyboardInterface.CandidatesResult.Action.AUTO_COMPOSE) {
-                onAutoCompletionItemClick(candidates.words.get(0));
-            } else if (candidates != null) {
-                postInputCommand(() -> displayComposingText(candidates.composing, ComposingAction.DO_NOT_FINISH));
-            } else {
-                mComposingText = "";
+            mCandidatesEngine.getCandidates(mCurrentKeyboard, mComposingText, candidates -> {
+                setCandidates(candidates);
+                if (candidates != null && candidates.action == KeyboardInterface.CandidatesResult.Action.AUTO_COMPOSE) {
+                    onAutoCompletionItemClick(candidates.words.get(0));
+                } else if (candidates != null) {
+                    postInputCommand(() -> displayComposingText(candidates.composing, ComposingAction.DO_NOT_FINISH));
+                } else {
+                    mComposingText = "";
 
-                postInputCommand(() -> {
-                    displayComposingText("", ComposingAction.FINISH);
-                });
-            }
+                    postInputCommand(() -> {
+                        displayComposingText("", ComposingAction.FINISH);
+                    });
+                    updateSpecialKeyLabels();
+                }
+            });
         } else {
             String fullText = mInputConnection.getExtractedText(new ExtractedTextRequest(),0).text.toString();
             String beforeText = mInputConnection.getTextBeforeCursor(fullText.length(),0).toString();
-            final KeyboardInterface.CandidatesResult candidates = mCurrentKeyboard.getCandidates(beforeText);
-            setAutoCompletionVisible(candidates != null && candidates.words.size() > 0);
-            mAutoCompletionView.setItems(candidates != null ? candidates.words : null);
+            mCandidatesEngine.getCandidates(mCurrentKeyboard, beforeText, this::setCandidates);
         }
 
         updateSpecialKeyLabels();
     }
 
+    private void setCandidates(@Nullable KeyboardInterface.CandidatesResult aCandidates) {
+        setAutoCompletionVisible(aCandidates != null && aCandidates.words.size() > 0);
+        if (aCandidates != null) {
+            mAutoCompletionView.setItems(aCandidates.words, aCandidates.moreWords != null);
+        } else {
+            mAutoCompletionView.setItems(null);
+        }
+    }
+
     private void updateSpecialKeyLabels() {
         String enterText = mCurrentKeyboard.getEnterKeyText(mEditorInfo.imeOptions, mComposingText);
         String modeChangeText = mCurrentKeyboard.getModeChangeKeyText();
@@ -1172,6 +1185,11 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
         mKeyboardView.setVisibility(mAutoCompletionView.isExtended() ? View.INVISIBLE : View.VISIBLE);
     }
 
+    @Override
+    public void onAutoCompletionMoreItemsRequested() {
+        mCandidatesEngine.getMoreCandidates(mAutoCompletionView::addItems);
+    }
+
     // TextWatcher
     private String mTextBefore = "";
     @Override
@@ -1193,7 +1211,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
         if (!mInternalDeleteHint && mCurrentKeyboard.usesComposingText() && mComposingText.length() > 0 && mTextBefore.length() > 0 && aEditable.toString().length() == 0) {
             // Text has been cleared externally (e.g. URLBar text clear button)
             mComposingText = "";
-            mCurrentKeyboard.clear();
+            mCandidatesEngine.clear(mCurrentKeyboard);
             updateCandidates();
         }
         mInternalDeleteHint = false;
@@ -53,6 +53,7 @@ import org.mozilla.vrbrowser.utils.AnimationHelper;
 import org.mozilla.vrbrowser.utils.ConnectivityReceiver;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -815,27 +816,31 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
 
         mSuggestionsProvider.setText(text);
         mSuggestionsProvider.setFilterText(originalText);
-        mSuggestionsProvider.getSuggestions()
-                .whenCompleteAsync((items, ex) -> {
-                    if (mBinding.navigationBarNavigation.urlBar.hasFocus()) {
-                        mAwesomeBar.updateItems(items);
-                        mAwesomeBar.setHighlightedText(originalText);
-
-                        if (!mAwesomeBar.isVisible()) {
-                            mAwesomeBar.updatePlacement((int) WidgetPlacement.convertPixelsToDp(getContext(), mBinding.navigationBarNavigation.urlBar.getWidth()));
-                            mAwesomeBar.show(CLEAR_FOCUS);
-                        }
-                    }
-
-                }, mUIThreadExecutor).exceptionally(throwable -> {
-                    Log.d(LOGTAG, "Error getting suggestions: " + throwable.getLocalizedMessage());
-                    throwable.printStackTrace();
-                    return null;
+        // Every source answer refreshes the list.
+        mSuggestionsProvider.getSuggestions(items -> {
+            if (mBinding.navigationBarNavigation.urlBar.hasFocus()) {
+                mAwesomeBar.updateItems(items);
+                mAwesomeBar.setHighlightedText(originalText);
+
+                if (!mAwesomeBar.isVisible()) {
+                    mAwesomeBar.updatePlacement((int) WidgetPlacement.convertPixelsToDp(getContext(), mBinding.navigationBarNavigation.urlBar.getWidth()));
+                    mAwesomeBar.show(CLEAR_FOCUS);
+                }
+            }
+
+        }).exceptionally(throwable -> {
+            // Queries are cancelled when the text changes.
+            if (!(throwable instanceof CancellationException)) {
+                Log.d(LOGTAG, "Error getting suggestions: " + throwable.getLocalizedMessage());
+                throwable.printStackTrace();
+            }
+            return null;
         });
     }
 
     @Override
     public void onHideAwesomeBar() {
+        mSuggestionsProvider.cancel();
         if (mAwesomeBar != null) {
             mAwesomeBar.hide(UIWidget.KEEP_WIDGET);
         }
@@ -0,0 +1,326 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.ui.widgets;
+
+import android.util.SparseArray;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/**
+ * Packs placement updates into direct buffers read by the render thread without any JNI field
+ * access. Only the fields that changed since the last placement sent for a widget are written,
+ * the first update of a widget contains all of them.
+ *
+ * Each update is the widget handle, the mask of the fields written and the fields in the order
+ * of the FIELD_* bits, 4 bytes each in native byte order. The name is written as its UTF-8 length
+ * followed by its bytes padded to 4 bytes. WidgetPlacement.cpp reads the same format.
+ */
+public class PlacementDeltaEncoder {
+
+    static final int FIELD_WIDTH = 1;
+    static final int FIELD_HEIGHT = 1 << 1;
+    static final int FIELD_ANCHOR_X = 1 << 2;
+    static final int FIELD_ANCHOR_Y = 1 << 3;
+    static final int FIELD_TRANSLATION_X = 1 << 4;
+    static final int FIELD_TRANSLATION_Y = 1 << 5;
+    static final int FIELD_TRANSLATION_Z = 1 << 6;
+    static final int FIELD_ROTATION_AXIS_X = 1 << 7;
+    static final int FIELD_ROTATION_AXIS_Y = 1 << 8;
+    static final int FIELD_ROTATION_AXIS_Z = 1 << 9;
+    static final int FIELD_ROTATION = 1 << 10;
+    static final int FIELD_PARENT_HANDLE = 1 << 11;
+    static final int FIELD_PARENT_ANCHOR_X = 1 << 12;
+    static final int FIELD_PARENT_ANCHOR_Y = 1 << 13;
+    static final int FIELD_DENSITY = 1 << 14;
+    static final int FIELD_WORLD_WIDTH = 1 << 15;
+    static final int FIELD_VISIBLE = 1 << 16;
+    static final int FIELD_OPAQUE = 1 << 17;
+    static final int FIELD_SHOW_POINTER = 1 << 18;
+    static final int FIELD_COMPOSITED = 1 << 19;
+    static final int FIELD_LAYER = 1 << 20;
+    static final int FIELD_PROXIFY_LAYER = 1 << 21;
+    static final int FIELD_TEXTURE_SCALE = 1 << 22;
+    static final int FIELD_CYLINDER = 1 << 23;
+    static final int FIELD_CYLINDER_MAP_RADIUS = 1 << 24;
+    static final int FIELD_TINT_COLOR = 1 << 25;
+    static final int FIELD_BORDER_COLOR = 1 << 26;
+    static final int FIELD_NAME = 1 << 27;
+    static final int FIELD_CLEAR_COLOR = 1 << 28;
+    static final int ALL_FIELDS = (1 << 29) - 1;
+
+    private static final int FIELD_COUNT = 29;
+    // Handle, mask, fields and the name length.
+    private static final int MAX_UPDATE_SIZE = (2 + FIELD_COUNT + 1) * 4;
+    private static final int INITIAL_CAPACITY = 8 * MAX_UPDATE_SIZE;
+
+    /**
+     * Updates of several widgets, returned to the encoder once the render thread has read them.
+     */
+    public class Packet {
+        private ByteBuffer mBuffer;
+        private int mCount;
+        private boolean mResync;
+
+        private Packet() {
+            mBuffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY).order(ByteOrder.nativeOrder());
+            mAllocations++;
+        }
+
+        @NonNull
+        public ByteBuffer getBuffer() {
+            return mBuffer;
+        }
+
+        public int getLength() {
+            return mBuffer.position();
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        /**
+         * @return whether the packet is the first one written after forgetting the placements sent
+         * for all the widgets.
+         */
+        public boolean isResync() {
+            return mResync;
+        }
+
+        @AnyThread
+        public void recycle() {
+            synchronized (mPool) {
+                mPool.add(this);
+            }
+        }
+
+        private void ensureCapacity(int aSize) {
+            if (mBuffer.remaining() >= aSize) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(mBuffer.capacity() * 2, mBuffer.position() + aSize));
+            buffer.order(ByteOrder.nativeOrder());
+            mBuffer.flip();
+            buffer.put(mBuffer);
+            mBuffer = buffer;
+            mAllocations++;
+        }
+    }
+
+    private final ArrayDeque<Packet> mPool = new ArrayDeque<>();
+    // Placements last sent to the render thread, only accessed from the UI thread.
+    private final SparseArray<WidgetPlacement> mSent = new SparseArray<>();
+    private Packet mPacket;
+    private ByteBuffer mBuffer;
+    private int mMask;
+    private boolean mFull;
+    private boolean mResync;
+    private long mAllocations;
+    private long mEncodedUpdates;
+    private long mUnchangedUpdates;
+    private long mEncodedFields;
+
+    /**
+     * Forgets the placement sent for a widget, the next update will contain all the fields.
+     */
+    @UiThread
+    public void reset(int aHandle) {
+        mSent.remove(aHandle);
+    }
+
+    /**
+     * Forgets the placements sent for all the widgets, their next updates will contain all the
+     * fields.
+     */
+    @UiThread
+    public void reset() {
+        mSent.clear();
+        mResync = true;
+    }
+
+    /**
+     * Adds the fields of the placement that changed since the last one sent for the widget.
+     */
+    @UiThread
+    public void write(int aHandle, @NonNull WidgetPlacement aPlacement) {
+        WidgetPlacement sent = mSent.get(aHandle);
+        mFull = sent == null;
+        if (mFull) {
+            sent = aPlacement.clone();
+            mSent.put(aHandle, sent);
+            mAllocations++;
+        } else if (!hasChanges(sent, aPlacement)) {
+            mUnchangedUpdates++;
+            return;
+        }
+
+        if (mPacket == null) {
+            mPacket = obtain();
+        }
+        byte[] name = null;
+        int size = MAX_UPDATE_SIZE;
+        if (mFull || !equals(sent.name, aPlacement.name)) {
+            name = aPlacement.name != null ? aPlacement.name.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            size += name.length + 3;
+            mAllocations++;
+        }
+        mPacket.ensureCapacity(size);
+        mBuffer = mPacket.mBuffer;
+
+        mBuffer.putInt(aHandle);
+        int maskPosition = mBuffer.position();
+        mBuffer.putInt(0);
+        mMask = 0;
+        writeInt(FIELD_WIDTH, sent.width, aPlacement.width);
+        writeInt(FIELD_HEIGHT, sent.height, aPlacement.height);
+        writeFloat(FIELD_ANCHOR_X, sent.anchorX, aPlacement.anchorX);
+        writeFloat(FIELD_ANCHOR_Y, sent.anchorY, aPlacement.anchorY);
+        writeFloat(FIELD_TRANSLATION_X, sent.translationX, aPlacement.translationX);
+        writeFloat(FIELD_TRANSLATION_Y, sent.translationY, aPlacement.translationY);
+        writeFloat(FIELD_TRANSLATION_Z, sent.translationZ, aPlacement.translationZ);
+        writeFloat(FIELD_ROTATION_AXIS_X, sent.rotationAxisX, aPlacement.rotationAxisX);
+        writeFloat(FIELD_ROTATION_AXIS_Y, sent.rotationAxisY, aPlacement.rotationAxisY);
+        writeFloat(FIELD_ROTATION_AXIS_Z, sent.rotationAxisZ, aPlacement.rotationAxisZ);
+        writeFloat(FIELD_ROTATION, sent.rotation, aPlacement.rotation);
+        writeInt(FIELD_PARENT_HANDLE, sent.parentHandle, aPlacement.parentHandle);
+        writeFloat(FIELD_PARENT_ANCHOR_X, sent.parentAnchorX, aPlacement.parentAnchorX);
+        writeFloat(FIELD_PARENT_ANCHOR_Y, sent.parentAnchorY, aPlacement.parentAnchorY);
+        writeFloat(FIELD_DENSITY, sent.density, aPlacement.density);
+        writeFloat(FIELD_WORLD_WIDTH, sent.worldWidth, aPlacement.worldWidth);
+        writeBoolean(FIELD_VISIBLE, sent.visible, aPlacement.visible);
+        writeBoolean(FIELD_OPAQUE, sent.opaque, aPlacement.opaque);
+        writeBoolean(FIELD_SHOW_POINTER, sent.showPointer, aPlacement.showPointer);
+        writeBoolean(FIELD_COMPOSITED, sent.composited, aPlacement.composited);
+        writeBoolean(FIELD_LAYER, sent.layer, aPlacement.layer);
+        writeBoolean(FIELD_PROXIFY_LAYER, sent.proxifyLayer, aPlacement.proxifyLayer);
+        writeFloat(FIELD_TEXTURE_SCALE, sent.textureScale, aPlacement.textureScale);
+        writeBoolean(FIELD_CYLINDER, sent.cylinder, aPlacement.cylinder);
+        writeFloat(FIELD_CYLINDER_MAP_RADIUS, sent.cylinderMapRadius, aPlacement.cylinderMapRadius);
+        writeInt(FIELD_TINT_COLOR, sent.tintColor, aPlacement.tintColor);
+        writeInt(FIELD_BORDER_COLOR, sent.borderColor, aPlacement.borderColor);
+        if (name != null) {
+            mMask |= FIELD_NAME;
+            mBuffer.putInt(name.length);
+            mBuffer.put(name);
+            for (int i = name.length; i % 4 != 0; i++) {
+                mBuffer.put((byte)0);
+            }
+            mEncodedFields++;
+        }
+        writeInt(FIELD_CLEAR_COLOR, sent.clearColor, aPlacement.clearColor);
+        mBuffer.putInt(maskPosition, mMask);
+
+        sent.copyFrom(aPlacement);
+        mPacket.mCount++;
+        mEncodedUpdates++;
+        mBuffer = null;
+    }
+
+    /**
+     * @return the updates written since the last call, or null if there are none.
+     */
+    @UiThread
+    @Nullable
+    public Packet take() {
+        Packet packet = mPacket;
+        mPacket = null;
+        if (packet != null) {
+            packet.mResync = mResync;
+        }
+        mResync = false;
+        return packet;
+    }
+
+    private Packet obtain() {
+        Packet packet;
+        synchronized (mPool) {
+            packet = mPool.poll();
+        }
+        if (packet == null) {
+            return new Packet();
+        }
+        packet.mBuffer.clear();
+        packet.mCount = 0;
+        return packet;
+    }
+
+    private static boolean hasChanges(WidgetPlacement a, WidgetPlacement b) {
+        return a.width != b.width || a.height != b.height ||
+                a.anchorX != b.anchorX || a.anchorY != b.anchorY ||
+                a.translationX != b.translationX || a.translationY != b.translationY || a.translationZ != b.translationZ ||
+                a.rotationAxisX != b.rotationAxisX || a.rotationAxisY != b.rotationAxisY || a.rotationAxisZ != b.rotationAxisZ ||
+                a.rotation != b.rotation || a.parentHandle != b.parentHandle ||
+                a.parentAnchorX != b.parentAnchorX || a.parentAnchorY != b.parentAnchorY ||
+                a.density != b.density || a.worldWidth != b.worldWidth ||
+                a.visible != b.visible || a.opaque != b.opaque || a.showPointer != b.showPointer ||
+                a.composited != b.composited || a.layer != b.layer || a.proxifyLayer != b.proxifyLayer ||
+                a.textureScale != b.textureScale || a.cylinder != b.cylinder ||
+                a.cylinderMapRadius != b.cylinderMapRadius || a.tintColor != b.tintColor ||
+                a.borderColor != b.borderColor || !equals(a.name, b.name) || a.clearColor != b.clearColor;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void writeInt(int aField, int aSent, int aValue) {
+        if (mFull || aSent != aValue) {
+            mMask |= aField;
+            mBuffer.putInt(aValue);
+            mEncodedFields++;
+        }
+    }
+
+    private void writeFloat(int aField, float aSent, float aValue) {
+        if (mFull || aSent != aValue) {
+            mMask |= aField;
+            mBuffer.putFloat(aValue);
+            mEncodedFields++;
+        }
+    }
+
+    private void writeBoolean(int aField, boolean aSent, boolean aValue) {
+        if (mFull || aSent != aValue) {
+            mMask |= aField;
+            mBuffer.putInt(aValue ? 1 : 0);
+            mEncodedFields++;
+        }
+    }
+
+    /**
+     * @return the number of buffers, placement copies and names allocated by the encoder.
+     */
+    @UiThread
+    public long getAllocations() {
+        return mAllocations;
+    }
+
+    @UiThread
+    public long getEncodedUpdates() {
+        return mEncodedUpdates;
+    }
+
+    /**
+     * @return the number of updates skipped because nothing changed since the last one sent.
+     */
+    @UiThread
+    public long getUnchangedUpdates() {
+        return mUnchangedUpdates;
+    }
+
+    @UiThread
+    public long getEncodedFields() {
+        return mEncodedFields;
+    }
+}
@@ -9,7 +9,13 @@ import android.view.ViewGroup;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.mozilla.vrbrowser.R;
@@ -24,8 +30,13 @@ import org.mozilla.vrbrowser.utils.BitmapCache;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
 public class TabsWidget extends UIDialog {
+    // Rebinds the tab state (active, selected, selecting) without reattaching the session.
+    private static final Object PAYLOAD_STATE = new Object();
+
     protected BitmapCache mBitmapCache;
     protected RecyclerView mTabsList;
     protected GridLayoutManager mLayoutManager;
@@ -133,14 +144,14 @@ public class TabsWidget extends UIDialog {
         mSelectAllButton = findViewById(R.id.tabsSelectAllButton);
         mSelectAllButton.setOnClickListener(v -> {
             mSelectedTabs = new ArrayList<>(mAdapter.mTabs);
-            mAdapter.notifyDataSetChanged();
+            mAdapter.notifyStateChanged();
             updateSelectionMode();
         });
 
         mUnselectTabs = findViewById(R.id.tabsUnselectButton);
         mUnselectTabs.setOnClickListener(v -> {
             mSelectedTabs.clear();
-            mAdapter.notifyDataSetChanged();
+            mAdapter.notifyStateChanged();
             updateSelectionMode();
         });
     }
@@ -187,7 +198,10 @@ public class TabsWidget extends UIDialog {
     }
 
     public class TabAdapter extends RecyclerView.Adapter<TabAdapter.MyViewHolder> {
+        // Latest submitted list, it may still be diffed in the background.
         private ArrayList<Session> mTabs = new ArrayList<>();
+        private final HashMap<String, Long> mStableIds = new HashMap<>();
+        private final AsyncListDiffer<Session> mDiffer;
 
         class MyViewHolder extends RecyclerView.ViewHolder {
             // each data item is just a string in this case
@@ -199,17 +213,63 @@ public class TabsWidget extends UIDialog {
 
         }
 
-        TabAdapter() {}
+        TabAdapter() {
+            // The first item is the add tab button, so the list updates are shifted by one.
+            ListUpdateCallback updateCallback = new ListUpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    notifyItemRangeInserted(position + 1, count);
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    notifyItemRangeRemoved(position + 1, count);
+                }
+
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                    notifyItemMoved(fromPosition + 1, toPosition + 1);
+                }
+
+                @Override
+                public void onChanged(int position, int count, @Nullable Object payload) {
+                    notifyItemRangeChanged(position + 1, count, payload);
+                }
+            };
+            mDiffer = new AsyncListDiffer<>(updateCallback, new AsyncDifferConfig.Builder<>(new DiffUtil.ItemCallback<Session>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull Session oldItem, @NonNull Session newItem) {
+                    return oldItem.getId().equals(newItem.getId());
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull Session oldItem, @NonNull Session newItem) {
+                    // TabViews listen to their session changes, only a different session needs a rebind.
+                    return oldItem == newItem;
+                }
+            }).build());
+            setHasStableIds(true);
+        }
 
         void updateTabs(ArrayList<Session> aTabs) {
             mTabs = aTabs;
-            notifyDataSetChanged();
+            mDiffer.submitList(new ArrayList<>(aTabs), this::onTabsCommitted);
+        }
+
+        private void onTabsCommitted() {
+            notifyStateChanged();
             updateTabCounter();
         }
 
+        void notifyStateChanged() {
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_STATE);
+        }
+
         void updateTabCounter() {
-            if (mTabs.size() > 1) {
-                mTabsAvailableCounter.setText(getContext().getString(R.string.tabs_counter_plural, String.valueOf(mTabs.size())));
+            // Counts the displayed tabs, the submitted list may still be diffed in the background.
+            int count = mDiffer.getCurrentList().size();
+            if (count > 1) {
+                mTabsAvailableCounter.setText(getContext().getString(R.string.tabs_counter_plural, String.valueOf(count)));
             } else {
                 mTabsAvailableCounter.setText(R.string.tabs_counter_singular);
             }
@@ -224,20 +284,48 @@ public class TabsWidget extends UIDialog {
         }
 
         @Override
-        public void onBindViewHolder(MyViewHolder holder, int position) {
-            if (position > 0) {
-                Session session = mTabs.get(position - 1);
-                holder.tabView.attachToSession(session, mBitmapCache);
-            } else {
-                holder.tabView.setAddTabMode(true);
+        public long getItemId(int position) {
+            if (position == 0) {
+                return 0;
+            }
+            // Session ids are mapped to sequential ids so stable ids never collide.
+            String id = mDiffer.getCurrentList().get(position - 1).getId();
+            Long itemId = mStableIds.get(id);
+            if (itemId == null) {
+                itemId = (long) mStableIds.size() + 1;
+                mStableIds.put(id, itemId);
             }
+            return itemId;
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull MyViewHolder holder, int position, @NonNull List<Object> payloads) {
+            if (payloads.isEmpty() || !payloads.stream().allMatch(payload -> payload == PAYLOAD_STATE)) {
+                onBindViewHolder(holder, position);
+                return;
+            }
+            bindState(holder);
+        }
 
+        private void bindState(MyViewHolder holder) {
             holder.tabView.setSelecting(mSelecting);
             holder.tabView.setSelected(mSelectedTabs.contains(holder.tabView.getSession()));
             holder.tabView.setActive(SessionStore.get().getActiveSession() == holder.tabView.getSession());
             if (holder.tabView.getSession() != null) {
                 holder.tabView.setPrivate(UrlUtils.isPrivateAboutPage(getContext(), holder.tabView.getSession().getCurrentUri()));
             }
+        }
+
+        @Override
+        public void onBindViewHolder(MyViewHolder holder, int position) {
+            if (position > 0) {
+                Session session = mDiffer.getCurrentList().get(position - 1);
+                holder.tabView.attachToSession(session, mBitmapCache);
+            } else {
+                holder.tabView.setAddTabMode(true);
+            }
+
+            bindState(holder);
             holder.tabView.setDelegate(new TabView.Delegate() {
                 @Override
                 public void onClose(TabView aSender) {
@@ -255,9 +343,9 @@ public class TabsWidget extends UIDialog {
                             aSender.attachToSession(latestTabs.get(0), mBitmapCache);
                             return;
                         }
-                        mTabs.remove(holder.getAdapterPosition() - 1);
-                        mAdapter.notifyItemRemoved(holder.getAdapterPosition());
-                        updateTabCounter();
+                        ArrayList<Session> tabs = new ArrayList<>(mTabs);
+                        tabs.remove(aSender.getSession());
+                        updateTabs(tabs);
 
                     } else {
                         onDismiss();
@@ -305,7 +393,7 @@ public class TabsWidget extends UIDialog {
 
         @Override
         public int getItemCount() {
-            return mTabs.size() + 1;
+            return mDiffer.getCurrentList().size() + 1;
         }
     }
 
@@ -318,7 +406,7 @@ public class TabsWidget extends UIDialog {
         mSelecting = true;
         mSelectTabsButton.setVisibility(View.GONE);
         mDoneButton.setVisibility(View.VISIBLE);
-        mAdapter.notifyDataSetChanged();
+        mAdapter.notifyStateChanged();
         updateSelectionMode();
         mWidgetManager.pushBackHandler(mSelectModeBackHandler);
     }
@@ -331,7 +419,7 @@ public class TabsWidget extends UIDialog {
         mSelectTabsButton.setVisibility(View.VISIBLE);
         mDoneButton.setVisibility(View.GONE);
         mSelectedTabs.clear();
-        mAdapter.notifyDataSetChanged();
+        mAdapter.notifyStateChanged();
         updateSelectionMode();
         mWidgetManager.popBackHandler(mSelectModeBackHandler);
     }
@@ -9,6 +9,7 @@ package org.mozilla.vrbrowser.ui.widgets;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.PorterDuff;
+import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.view.Surface;
 
@@ -20,6 +21,9 @@ public class UISurfaceTextureRenderer {
     private SurfaceTexture mSurfaceTexture;
     private Surface mSurface;
     private Canvas mSurfaceCanvas;
+    // Partial redraws rely on the previous content of the surface.
+    private boolean mNeedsFullRedraw = true;
+    private int mDrawnPixels;
     private static boolean sUseHarwareAcceleration;
     private static boolean sRenderActive = true;
 
@@ -27,6 +31,14 @@ public class UISurfaceTextureRenderer {
         sUseHarwareAcceleration = aEnabled;
     }
 
+    /**
+     * @return whether the textures can be redrawn partially. Hardware canvases can only be locked
+     * whole and don't keep the previous content, so only the software canvases use dirty rects.
+     */
+    static boolean canRedrawPartially() {
+        return !sUseHarwareAcceleration;
+    }
+
     public static void setRenderActive(boolean aActive) {
         sRenderActive = aActive;
     }
@@ -51,6 +63,7 @@ public class UISurfaceTextureRenderer {
         }
         mTextureWidth = aWidth;
         mTextureHeight = aHeight;
+        mNeedsFullRedraw = true;
         if (mSurfaceTexture != null) {
             mSurfaceTexture.setDefaultBufferSize(aWidth, aHeight);
         }
@@ -72,21 +85,46 @@ public class UISurfaceTextureRenderer {
 
     @Nullable
     Canvas drawBegin() {
+        return drawBegin(null);
+    }
+
+    /**
+     * Locks the surface for drawing, only the dirty rect if the previous content of the surface
+     * can be kept. The returned canvas is cleared and clipped to the locked area.
+     * @param aDirty area to redraw in texture coordinates, or null to redraw everything. It's
+     *               updated with the area that was actually locked.
+     */
+    @Nullable
+    Canvas drawBegin(@Nullable Rect aDirty) {
         mSurfaceCanvas = null;
+        mDrawnPixels = 0;
         if (!sRenderActive) {
+            mNeedsFullRedraw = true;
             return null;
         }
         if (mSurface != null) {
+            // Hardware canvases can only be locked whole.
+            boolean full = aDirty == null || mNeedsFullRedraw || sUseHarwareAcceleration;
             try {
                 if (sUseHarwareAcceleration) {
                     mSurfaceCanvas = mSurface.lockHardwareCanvas();
                 } else {
-                    mSurfaceCanvas = mSurface.lockCanvas(null);
+                    mSurfaceCanvas = mSurface.lockCanvas(full ? null : aDirty);
                 }
                 mSurfaceCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                if (full) {
+                    mDrawnPixels = mSurfaceCanvas.getWidth() * mSurfaceCanvas.getHeight();
+                    if (aDirty != null) {
+                        aDirty.set(0, 0, mSurfaceCanvas.getWidth(), mSurfaceCanvas.getHeight());
+                    }
+                } else {
+                    mDrawnPixels = aDirty.width() * aDirty.height();
+                }
+                mNeedsFullRedraw = false;
             }
             catch (Exception e){
                 e.printStackTrace();
+                mNeedsFullRedraw = true;
             }
         }
         return mSurfaceCanvas;
@@ -102,6 +140,15 @@ public class UISurfaceTextureRenderer {
     void clearSurface() {
         drawBegin();
         drawEnd();
+        // The content is gone, the next draw can't be partial.
+        mNeedsFullRedraw = true;
+    }
+
+    /**
+     * @return the number of pixels locked by the last {@link #drawBegin(Rect)}.
+     */
+    int drawnPixels() {
+        return mDrawnPixels;
     }
 
     int width() {
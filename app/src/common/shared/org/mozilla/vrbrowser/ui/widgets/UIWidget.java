@@ -9,12 +9,15 @@ import android.content.Context;
 import android.content.res.Configuration;
 import android.graphics.Canvas;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.Surface;
 import android.view.View;
+import android.view.ViewGroup;
 import android.view.ViewParent;
 import android.widget.FrameLayout;
 
@@ -52,6 +55,13 @@ public abstract class UIWidget extends FrameLayout implements Widget {
     private Runnable mFirstDrawCallback;
     protected boolean mResizing = false;
     protected boolean mReleased = false;
+    private final DirtyRegion mDirtyRegion = new DirtyRegion();
+    private final Rect mDirtyViewRect = new Rect();
+    private final RectF mDirtyViewRectF = new RectF();
+    private long mRedrawnPixels;
+    private long mRedrawWindowStart;
+    private long mRedrawnPixelsPerSecond;
+    private final Runnable mRedrawRunnable = this::redraw;
 
     public UIWidget(Context aContext) {
         super(aContext);
@@ -243,10 +253,13 @@ public abstract class UIWidget extends FrameLayout implements Widget {
             super.draw(aCanvas);
             return;
         }
-        draw(aCanvas, mRenderer);
+        long start = System.nanoTime();
+        Rect dirty = mDirtyRegion.takeTextureRect(aCanvas.getWidth(), aCanvas.getHeight(), mRenderer.width(), mRenderer.height());
+        draw(aCanvas, mRenderer, dirty);
         if (mProxyRenderer != null && mWidgetPlacement.proxifyLayer) {
-            draw(aCanvas, mProxyRenderer);
+            draw(aCanvas, mProxyRenderer, null);
         }
+        mWidgetManager.getFrameScheduler().onWidgetDrawn(System.nanoTime() - start);
 
         if (mFirstDrawCallback != null) {
             mFirstDrawCallback.run();
@@ -254,11 +267,12 @@ public abstract class UIWidget extends FrameLayout implements Widget {
         }
     }
 
-    private void draw(Canvas aCanvas, UISurfaceTextureRenderer aRenderer) {
+    private void draw(Canvas aCanvas, UISurfaceTextureRenderer aRenderer, Rect aDirty) {
         if (mResizing) {
+            mDirtyRegion.addAll();
             return;
         }
-        Canvas textureCanvas = aRenderer.drawBegin();
+        Canvas textureCanvas = aRenderer.drawBegin(aDirty);
         if(textureCanvas != null) {
             // set the proper scale
             float xScale = textureCanvas.getWidth() / (float)aCanvas.getWidth();
@@ -267,14 +281,34 @@ public abstract class UIWidget extends FrameLayout implements Widget {
             super.draw(textureCanvas);
         }
         aRenderer.drawEnd();
+        if (aRenderer == mRenderer) {
+            countRedrawnPixels(aRenderer.drawnPixels());
+        }
     }
 
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        mDirtyRegion.addAll();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mDirtyRegion.addAll();
+    }
+
+    // Hardware accelerated hierarchies only report which view has been invalidated.
     @Override
     public void onDescendantInvalidated (View child, View target) {
         super.onDescendantInvalidated(child, target);
         if (mRenderer != null) {
-            // TODO: transform rect and use invalidate(dirty)
-            postInvalidate();
+            if (UISurfaceTextureRenderer.canRedrawPartially()) {
+                addDirtyView(target);
+            } else {
+                mDirtyRegion.addAll();
+            }
+            mWidgetManager.getFrameScheduler().scheduleRedraw(mRedrawRunnable);
         }
     }
 
@@ -284,12 +318,87 @@ public abstract class UIWidget extends FrameLayout implements Widget {
     public ViewParent invalidateChildInParent(int[] aLocation, Rect aDirty) {
         ViewParent parent =  super.invalidateChildInParent(aLocation, aDirty);
         if (parent != null && mRenderer != null) {
-            // TODO: transform rect and use invalidate(dirty)
-            postInvalidate();
+            if (UISurfaceTextureRenderer.canRedrawPartially()) {
+                // The dirty rect has already been transformed to our coordinates.
+                mDirtyRegion.add(aDirty);
+            } else {
+                mDirtyRegion.addAll();
+            }
+            mWidgetManager.getFrameScheduler().scheduleRedraw(mRedrawRunnable);
         }
         return parent;
     }
 
+    // Invalidates the texture once per frame with all the areas dirtied since the last one.
+    @SuppressWarnings("deprecation")
+    private void redraw() {
+        if (mReleased) {
+            return;
+        }
+        if (mDirtyRegion.isFull()) {
+            super.invalidate();
+        } else {
+            Rect dirty = mDirtyRegion.getRect();
+            invalidate(dirty.left, dirty.top, dirty.right, dirty.bottom);
+        }
+    }
+
+    // Marks as dirty the area where the view may have drawn. Properties like the translation may
+    // have changed without reporting the previous bounds, so the whole parent of the view is used,
+    // or the first ancestor that clips its children.
+    private void addDirtyView(View aView) {
+        View view = aView;
+        if (view != this && view.getParent() != this && view.getParent() instanceof View) {
+            view = (View)view.getParent();
+        }
+        while (view != this && view.getParent() instanceof ViewGroup && !((ViewGroup)view.getParent()).getClipChildren()) {
+            view = (View)view.getParent();
+        }
+        if (view == this) {
+            mDirtyRegion.addAll();
+            return;
+        }
+        mDirtyViewRectF.set(0, 0, view.getWidth(), view.getHeight());
+        while (view != this) {
+            ViewParent parent = view.getParent();
+            if (!(parent instanceof View)) {
+                // Not a descendant anymore.
+                mDirtyRegion.addAll();
+                return;
+            }
+            if (!view.getMatrix().isIdentity()) {
+                view.getMatrix().mapRect(mDirtyViewRectF);
+            }
+            mDirtyViewRectF.offset(view.getLeft() - ((View)parent).getScrollX(), view.getTop() - ((View)parent).getScrollY());
+            view = (View)parent;
+        }
+        mDirtyViewRectF.roundOut(mDirtyViewRect);
+        mDirtyRegion.add(mDirtyViewRect);
+    }
+
+    private void countRedrawnPixels(int aPixels) {
+        long now = SystemClock.uptimeMillis();
+        if (mRedrawWindowStart == 0) {
+            mRedrawWindowStart = now;
+        }
+        mRedrawnPixels += aPixels;
+        long elapsed = now - mRedrawWindowStart;
+        if (elapsed >= 1000) {
+            mRedrawnPixelsPerSecond = mRedrawnPixels * 1000 / elapsed;
+            mRedrawnPixels = 0;
+            mRedrawWindowStart = now;
+        }
+    }
+
+    /**
+     * @return the number of texture pixels redrawn by this widget per second, measured over the
+     * last second with draws.
+     */
+    public long getRedrawnPixelsPerSecond() {
+        countRedrawnPixels(0);
+        return mRedrawnPixelsPerSecond;
+    }
+
     public void setDelegate(Delegate aDelegate) {
         mDelegate = aDelegate;
     }
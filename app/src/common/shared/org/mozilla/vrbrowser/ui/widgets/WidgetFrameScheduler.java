@@ -0,0 +1,304 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.ui.widgets;
+
+import android.os.Handler;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Batches the widget work requested on the UI thread and runs it once per headset frame. The
+ * fields that changed in the placements of the updated widgets are packed and sent to the render
+ * thread once per frame, in a single runnable, and each invalidated widget redraws its texture
+ * once per frame with all its dirty areas. Intermediate states requested between two frames are
+ * dropped.
+ *
+ * The render thread calls {@link #onFrame()} at the end of every frame. If it stops rendering,
+ * e.g. while paused, the pending work is flushed after a short delay.
+ *
+ * If the render thread rejects a packet it calls {@link #onPlacementsRejected()}, and the next
+ * packet sends the placements of all the widgets whole. The render thread has to drop the packets
+ * encoded before that one, see {@link PlacementDeltaEncoder.Packet#isResync()}.
+ */
+public class WidgetFrameScheduler {
+
+    private static final long FALLBACK_DELAY = 100;
+
+    public interface Delegate {
+        /**
+         * Sends the placement changes since the last frame to the render thread, the packet must
+         * be recycled once read.
+         */
+        @UiThread
+        void onUpdatePlacements(@Nullable PlacementDeltaEncoder.Packet aPacket, boolean aUpdateVisibleWidgets);
+
+        /**
+         * Schedules the updates of all the widgets again, the render thread rejected a packet.
+         */
+        @UiThread
+        default void onResendPlacements() {}
+    }
+
+    private final Delegate mDelegate;
+    private final Executor mMainThread;
+    private final Handler mHandler;
+    private final Runnable mFrameRunnable = this::flush;
+    private final Runnable mFallbackRunnable = this::flush;
+    private final AtomicBoolean mFlushPosted = new AtomicBoolean();
+    private volatile boolean mWorkPending;
+    private volatile boolean mResyncRequested;
+    // Only accessed from the UI thread.
+    private final LinkedHashMap<Integer, WidgetPlacement> mPendingUpdates = new LinkedHashMap<>();
+    private final PlacementDeltaEncoder mEncoder = new PlacementDeltaEncoder();
+    private final LinkedHashSet<Runnable> mPendingRedraws = new LinkedHashSet<>();
+    private final ArrayList<Runnable> mRedraws = new ArrayList<>();
+    private boolean mUpdateVisibleWidgets;
+    private long mFrames;
+    private long mRequestedUpdates;
+    private long mSentUpdates;
+    private long mRequestedRedraws;
+    private long mFrameUpdates;
+    private long mFrameDraws;
+    private long mFrameDrawTimeNs;
+    private long mLastFrameUpdates;
+    private long mLastFrameDraws;
+    private long mLastFrameDrawTimeNs;
+
+    @UiThread
+    public WidgetFrameScheduler(@NonNull Delegate aDelegate, @NonNull Handler aHandler) {
+        this(aDelegate, aHandler::post, aHandler);
+    }
+
+    @VisibleForTesting
+    WidgetFrameScheduler(@NonNull Delegate aDelegate, @NonNull Executor aMainThread) {
+        this(aDelegate, aMainThread, null);
+    }
+
+    private WidgetFrameScheduler(Delegate aDelegate, Executor aMainThread, @Nullable Handler aHandler) {
+        mDelegate = aDelegate;
+        mMainThread = aMainThread;
+        mHandler = aHandler;
+    }
+
+    /**
+     * Sends the placement to the render thread in the next frame, as it is at that moment.
+     */
+    @UiThread
+    public void scheduleUpdate(int aHandle, @NonNull WidgetPlacement aPlacement) {
+        mRequestedUpdates++;
+        mPendingUpdates.put(aHandle, aPlacement);
+        setWorkPending();
+    }
+
+    @UiThread
+    public void scheduleVisibleWidgetsUpdate() {
+        mUpdateVisibleWidgets = true;
+        setWorkPending();
+    }
+
+    /**
+     * Runs the redraw in the next frame, only once no matter how many times it's scheduled.
+     */
+    @UiThread
+    public void scheduleRedraw(@NonNull Runnable aRedraw) {
+        mRequestedRedraws++;
+        mPendingRedraws.add(aRedraw);
+        setWorkPending();
+    }
+
+    /**
+     * Drops the pending placement update of a widget added to or removed from the render thread,
+     * its next update will be sent whole.
+     */
+    @UiThread
+    public void resetWidget(int aHandle) {
+        mPendingUpdates.remove(aHandle);
+        mEncoder.reset(aHandle);
+    }
+
+    /**
+     * Drops the pending placement updates of all the widgets, e.g. after the render thread
+     * rejected an update, their next updates will be sent whole.
+     */
+    @UiThread
+    public void resetWidgets() {
+        mPendingUpdates.clear();
+        mEncoder.reset();
+    }
+
+    /**
+     * Reports the time a widget took to draw its texture.
+     */
+    @UiThread
+    public void onWidgetDrawn(long aDurationNs) {
+        mFrameDraws++;
+        mFrameDrawTimeNs += aDurationNs;
+        setWorkPending();
+    }
+
+    private void setWorkPending() {
+        if (mWorkPending) {
+            return;
+        }
+        mWorkPending = true;
+        if (mHandler != null) {
+            mHandler.postDelayed(mFallbackRunnable, FALLBACK_DELAY);
+        }
+    }
+
+    /**
+     * Called by the render thread at the end of every frame.
+     */
+    @AnyThread
+    public void onFrame() {
+        if ((mWorkPending || mResyncRequested) && mFlushPosted.compareAndSet(false, true)) {
+            mMainThread.execute(mFrameRunnable);
+        }
+    }
+
+    /**
+     * Called by the render thread when it rejected a packet. No other packet is encoded against
+     * the placements it already counts as sent.
+     */
+    @AnyThread
+    public void onPlacementsRejected() {
+        mResyncRequested = true;
+    }
+
+    /**
+     * Sends the pending placement updates right away, so they reach the render thread before the
+     * work queued next.
+     */
+    @UiThread
+    public void flushUpdates() {
+        if (mResyncRequested) {
+            mResyncRequested = false;
+            resetWidgets();
+            mDelegate.onResendPlacements();
+        }
+        if (mPendingUpdates.isEmpty() && !mUpdateVisibleWidgets) {
+            return;
+        }
+        for (Map.Entry<Integer, WidgetPlacement> entry: mPendingUpdates.entrySet()) {
+            mEncoder.write(entry.getKey(), entry.getValue());
+        }
+        mPendingUpdates.clear();
+        PlacementDeltaEncoder.Packet packet = mEncoder.take();
+        boolean updateVisibleWidgets = mUpdateVisibleWidgets;
+        mUpdateVisibleWidgets = false;
+        if (packet == null && !updateVisibleWidgets) {
+            // Nothing changed.
+            return;
+        }
+        if (packet != null) {
+            mSentUpdates += packet.getCount();
+            mFrameUpdates += packet.getCount();
+        }
+        mDelegate.onUpdatePlacements(packet, updateVisibleWidgets);
+    }
+
+    @VisibleForTesting
+    @UiThread
+    void flush() {
+        mFlushPosted.set(false);
+        mWorkPending = false;
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mFallbackRunnable);
+        }
+        mFrames++;
+        // Textures are drawn after the frame that scheduled them, their statistics come one frame late.
+        mLastFrameDraws = mFrameDraws;
+        mLastFrameDrawTimeNs = mFrameDrawTimeNs;
+        mFrameDraws = 0;
+        mFrameDrawTimeNs = 0;
+
+        flushUpdates();
+        mLastFrameUpdates = mFrameUpdates;
+        mFrameUpdates = 0;
+
+        // Redraws may schedule new ones, those run in the next frame.
+        mRedraws.addAll(mPendingRedraws);
+        mPendingRedraws.clear();
+        for (Runnable redraw: mRedraws) {
+            redraw.run();
+        }
+        mRedraws.clear();
+    }
+
+    /**
+     * @return the number of frames with widget work.
+     */
+    @UiThread
+    public long getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * @return the number of placement updates requested, including the dropped ones.
+     */
+    @UiThread
+    public long getRequestedUpdates() {
+        return mRequestedUpdates;
+    }
+
+    /**
+     * @return the number of placement updates sent to the render thread, updates without changes
+     * are not sent.
+     */
+    @UiThread
+    public long getSentUpdates() {
+        return mSentUpdates;
+    }
+
+    /**
+     * @return the number of texture redraws requested, including the merged ones.
+     */
+    @UiThread
+    public long getRequestedRedraws() {
+        return mRequestedRedraws;
+    }
+
+    /**
+     * @return the number of placement updates sent during the last frame with widget work.
+     */
+    @UiThread
+    public long getLastFrameUpdates() {
+        return mLastFrameUpdates;
+    }
+
+    /**
+     * @return the number of widget textures drawn during the last frame with widget work.
+     */
+    @UiThread
+    public long getLastFrameDraws() {
+        return mLastFrameDraws;
+    }
+
+    /**
+     * @return the time spent drawing widget textures during the last frame with widget work.
+     */
+    @UiThread
+    public long getLastFrameDrawTimeNs() {
+        return mLastFrameDrawTimeNs;
+    }
+
+    @UiThread
+    @NonNull
+    public PlacementDeltaEncoder getPlacementEncoder() {
+        return mEncoder;
+    }
+}
@@ -52,6 +52,7 @@ public interface WidgetManagerDelegate {
     void finishWidgetResize(@NonNull Widget aWidget);
     void startWidgetMove(@NonNull Widget aWidget, @WidgetMoveBehaviourFlags int aMoveBehaviour);
     void finishWidgetMove();
+    WidgetFrameScheduler getFrameScheduler();
     void addUpdateListener(@NonNull UpdateListener aUpdateListener);
     void removeUpdateListener(@NonNull UpdateListener aUpdateListener);
     void pushBackHandler(@NonNull Runnable aRunnable);
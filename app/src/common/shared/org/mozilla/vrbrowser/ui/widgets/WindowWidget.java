@@ -1601,14 +1601,11 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
 
     @Override
     public @Nullable GeckoResult<AllowOrDeny> onLoadRequest(GeckoSession aSession, @NonNull LoadRequest aRequest) {
-        final GeckoResult<AllowOrDeny> result = new GeckoResult<>();
-
-        Uri uri = Uri.parse(aRequest.uri);
-        if (UrlUtils.isAboutPage(uri.toString())) {
-            if(UrlUtils.isBookmarksUrl(uri.toString())) {
+        if (UrlUtils.isAboutPage(aRequest.uri)) {
+            if(UrlUtils.isBookmarksUrl(aRequest.uri)) {
                 showBookmarks();
 
-            } else if (UrlUtils.isHistoryUrl(uri.toString())) {
+            } else if (UrlUtils.isHistoryUrl(aRequest.uri)) {
                 showHistory();
 
             } else {
@@ -1616,8 +1613,9 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
             }
         }
 
-        if ("file".equalsIgnoreCase(uri.getScheme()) &&
+        if (aRequest.uri.regionMatches(true, 0, "file:", 0, 5) &&
                 !mWidgetManager.isPermissionGranted(android.Manifest.permission.READ_EXTERNAL_STORAGE)) {
+            final GeckoResult<AllowOrDeny> result = new GeckoResult<>();
             mWidgetManager.requestPermission(
                     aRequest.uri,
                     android.Manifest.permission.READ_EXTERNAL_STORAGE,
@@ -1635,8 +1633,8 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
             return result;
         }
 
-        result.complete(AllowOrDeny.ALLOW);
-        return result;
+        // Not interested, let the session decide without waiting for this window.
+        return null;
     }
 
     // GeckoSession.HistoryDelegate
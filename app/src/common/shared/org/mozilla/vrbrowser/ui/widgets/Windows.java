@@ -1,13 +1,12 @@
 package org.mozilla.vrbrowser.ui.widgets;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 
 import org.mozilla.geckoview.GeckoSession;
@@ -19,6 +18,7 @@ import org.mozilla.vrbrowser.browser.Services;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionState;
+import org.mozilla.vrbrowser.browser.engine.SessionStatePersister;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
 import org.mozilla.vrbrowser.telemetry.TelemetryWrapper;
@@ -29,15 +29,10 @@ import org.mozilla.vrbrowser.utils.ConnectivityReceiver;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.Reader;
-import java.io.Writer;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -55,6 +50,8 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
     private static final String LOGTAG = SystemUtils.createLogtag(Windows.class);
 
     private static final String WINDOWS_SAVE_FILENAME = "windows_state.json";
+    private static final long SAVE_STATE_DELAY_MS = 2000;
+    private static final long SAVE_STATE_FLUSH_TIMEOUT_MS = 3000;
 
     private static final int TAB_ADDED_NOTIFICATION_ID = 0;
     private static final int TAB_SENT_NOTIFICATION_ID = 1;
@@ -121,6 +118,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
     private Accounts mAccounts;
     private Services mServices;
     private PromptDialogWidget mNoInternetDialog;
+    private SessionStatePersister mPersister;
 
     private enum PanelType {
         NONE,
@@ -168,49 +166,50 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
 
         mWidgetManager.addConnectivityListener(mConnectivityDelegate);
 
+        mPersister = new SessionStatePersister(aContext, WINDOWS_SAVE_FILENAME);
         restoreWindows();
     }
 
     public void saveState() {
-        File file = new File(mContext.getFilesDir(), WINDOWS_SAVE_FILENAME);
-        try (Writer writer = new FileWriter(file)) {
-            WindowsState state = new WindowsState();
-            state.privateMode = mPrivateMode;
-            state.focusedWindowPlacement = mFocusedWindow.isFullScreen() ?  mFocusedWindow.getWindowPlacementBeforeFullscreen() : mFocusedWindow.getWindowPlacement();
-            ArrayList<Session> sessions = SessionStore.get().getSortedSessions(false);
-            state.tabs = sessions.stream().map(Session::getSessionState).collect(Collectors.toCollection(ArrayList::new));
-            for (WindowWidget window : mRegularWindows) {
-                WindowState windowState = new WindowState();
-                windowState.load(window, state, sessions.indexOf(window.getSession()));
-                state.regularWindowsState.add(windowState);
-            }
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            gson.toJson(state, writer);
+        saveState(0);
+    }
 
-            Log.d(LOGTAG, "Windows state saved");
+    /**
+     * Saves the state and waits until it's written, for callers about to end the process.
+     */
+    public void saveStateAndFlush() {
+        saveState(0);
+        mPersister.flush(SAVE_STATE_FLUSH_TIMEOUT_MS);
+    }
 
-        } catch (IOException e) {
-            Log.e(LOGTAG, "Error saving windows state: " + e.getLocalizedMessage());
-            file.delete();
+    private void scheduleSaveState() {
+        saveState(SAVE_STATE_DELAY_MS);
+    }
+
+    private void saveState(long aDelayMs) {
+        if (mFocusedWindow == null) {
+            return;
         }
+        WindowsState state = new WindowsState();
+        state.privateMode = mPrivateMode;
+        state.focusedWindowPlacement = mFocusedWindow.isFullScreen() ?  mFocusedWindow.getWindowPlacementBeforeFullscreen() : mFocusedWindow.getWindowPlacement();
+        ArrayList<Session> sessions = SessionStore.get().getSortedSessions(false);
+        ArrayList<SessionState> sessionStates = sessions.stream().map(Session::getSessionState).collect(Collectors.toCollection(ArrayList::new));
+        state.tabs = sessionStates.stream().map(SessionState::createPersistenceSnapshot).collect(Collectors.toCollection(ArrayList::new));
+        for (WindowWidget window : mRegularWindows) {
+            WindowState windowState = new WindowState();
+            windowState.load(window, state, sessions.indexOf(window.getSession()));
+            state.regularWindowsState.add(windowState);
+        }
+        // Serialization and disk writes happen in the persister I/O thread.
+        mPersister.save(state, sessionStates, aDelayMs);
     }
 
     private WindowsState restoreState() {
-        WindowsState restored = null;
-
-        File file = new File(mContext.getFilesDir(), WINDOWS_SAVE_FILENAME);
-        try (Reader reader = new FileReader(file)) {
-            Gson gson = new GsonBuilder().create();
-            Type type = new TypeToken<WindowsState>() {}.getType();
-            restored = gson.fromJson(reader, type);
-
+        Type type = new TypeToken<WindowsState>() {}.getType();
+        WindowsState restored = mPersister.restoreIndex(type);
+        if (restored != null) {
             Log.d(LOGTAG, "Windows state restored");
-
-        } catch (Exception e) {
-            Log.w(LOGTAG, "Error restoring windows state: " + e.getLocalizedMessage());
-
-        } finally {
-            file.delete();
         }
 
         return restored;
@@ -459,6 +458,8 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
     }
 
     public void onDestroy() {
+        // The state saved on pause may still be pending, the process can be killed at any time now.
+        mPersister.flush(SAVE_STATE_FLUSH_TIMEOUT_MS);
         mDelegate = null;
         for (WindowWidget window: mRegularWindows) {
             window.close();
@@ -642,15 +643,31 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
     }
 
     private void restoreWindows() {
+        long start = SystemClock.elapsedRealtime();
         boolean restoreEnabled = SettingsStore.getInstance(mContext).isRestoreTabsEnabled();
         WindowsState windowsState = restoreState();
         if (restoreEnabled && windowsState != null) {
             ArrayList<Session> restoredSessions = new ArrayList<>();
             if (windowsState.tabs != null) {
-                windowsState.tabs.forEach(state -> {
+                // Only the tabs visible in the restored windows need their history now, the rest
+                // of the tabs load it the first time they are activated.
+                HashSet<Integer> visibleTabs = new HashSet<>();
+                for (WindowState windowState : windowsState.regularWindowsState) {
+                    visibleTabs.add(windowState.tabIndex);
+                }
+                for (int i = 0; i < windowsState.tabs.size(); ++i) {
+                    SessionState state = windowsState.tabs.get(i);
+                    if (state.mSessionState == null && !state.isPrivateMode()) {
+                        final String id = state.mId;
+                        if (visibleTabs.contains(i)) {
+                            state.mSessionState = mPersister.restoreSessionState(id);
+                        } else {
+                            state.setPendingSessionState(() -> mPersister.restoreSessionState(id));
+                        }
+                    }
                     restoredSessions.add(SessionStore.get().createSuspendedSession(state));
                     GleanMetricsService.Tabs.openedCounter(GleanMetricsService.Tabs.TabSource.PRE_EXISTING);
-                });
+                }
             }
             mPrivateMode = false;
             for (WindowState windowState : windowsState.regularWindowsState) {
@@ -683,6 +700,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
         }
         updateMaxWindowScales();
         updateViews();
+        Log.d(LOGTAG, "Windows restored in " + (SystemClock.elapsedRealtime() - start) + "ms");
     }
 
     private void removeWindow(@NonNull WindowWidget aWindow) {
@@ -1154,6 +1172,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
             targetWindow.setSession(aTab);
             SessionStore.get().setActiveSession(aTab);
         }
+        scheduleSaveState();
     }
 
     public void addTab(WindowWidget targetWindow) {
@@ -1172,6 +1191,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
             session.loadUri(aUri);
         }
         SessionStore.get().setActiveSession(session);
+        scheduleSaveState();
     }
 
     public void addBackgroundTab(WindowWidget targetWindow, String aUri) {
@@ -1179,6 +1199,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
         session.updateLastUse();
         mFocusedWindow.getSession().updateLastUse();
         showTabAddedNotification();
+        scheduleSaveState();
     }
 
     @Override
@@ -1245,6 +1266,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
         }
 
         SessionStore.get().setActiveSession(targetWindow.getSession());
+        scheduleSaveState();
     }
 
     @Override
@@ -3,35 +3,67 @@ package org.mozilla.vrbrowser.utils;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.LruCache;
 import android.view.Surface;
 
+import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 import com.jakewharton.disklrucache.DiskLruCache;
 
+import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.VRBrowserApplication;
+import org.mozilla.vrbrowser.ui.widgets.WidgetPlacement;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BitmapCache {
     private Context mContext;
     private LruCache<String, Bitmap> mMemoryCache;
-    private DiskLruCache mDiskCache;
+    private volatile DiskLruCache mDiskCache;
     private Executor mIOExecutor;
     private Executor mMainThreadExecutor;
-    private final Object mLock = new Object();
+    private final Object[] mKeyLocks = new Object[KEY_LOCK_COUNT];
+    private final HashMap<String, PendingLoad> mPendingLoads = new HashMap<>();
+    private final ThreadPoolExecutor mReadExecutor;
     private static final int DISK_CACHE_SIZE = 1024 * 1024 * 100; // 100MB
+    // Version 2: thumbnails are stored downscaled as WebP instead of full size PNG.
+    private static final int DISK_CACHE_VERSION = 2;
+    private static final int DISK_CACHE_QUALITY = 80;
+    private static final int BITMAP_POOL_SIZE = 4;
+    private static final int READ_THREADS = 3;
+    private static final int KEY_LOCK_COUNT = 16;
+
+    @IntDef(value = { PRIORITY_LOW, PRIORITY_HIGH })
+    public @interface LoadPriority {}
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_HIGH = 1;
     private static final String LOGTAG = SystemUtils.createLogtag(BitmapCache.class);
     private SurfaceTexture mCaptureSurfaceTexture;
     private Surface mCaptureSurface;
     private boolean mCapturedAcquired;
+    private int mThumbnailWidth;
+    private int mThumbnailHeight;
+    private final ArrayDeque<Bitmap> mBitmapPool = new ArrayDeque<>();
+    private final Paint mScalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
     public static BitmapCache getInstance(Context aContext) {
         return ((VRBrowserApplication)aContext.getApplicationContext()).getBitmapCache();
@@ -41,9 +73,16 @@ public class BitmapCache {
         mContext = aContext;
         mIOExecutor = aIOExecutor;
         mMainThreadExecutor = aMainThreadExecutor;
+        for (int i = 0; i < mKeyLocks.length; ++i) {
+            mKeyLocks[i] = new Object();
+        }
+        mReadExecutor = new ThreadPoolExecutor(READ_THREADS, READ_THREADS, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>());
+        mReadExecutor.allowCoreThreadTimeOut(true);
     }
 
     public void onCreate() {
+        mThumbnailWidth = WidgetPlacement.pixelDimension(mContext, R.dimen.tab_preview_width);
+        mThumbnailHeight = WidgetPlacement.pixelDimension(mContext, R.dimen.tab_preview_height);
         initMemoryCache();
         initDiskCache();
     }
@@ -67,7 +106,7 @@ public class BitmapCache {
         String path = mContext.getCacheDir() + File.separator + "snapshots";
         mIOExecutor.execute(() -> {
             try {
-                mDiskCache = DiskLruCache.open(new File(path), 1, 1, DISK_CACHE_SIZE);
+                mDiskCache = DiskLruCache.open(new File(path), DISK_CACHE_VERSION, 1, DISK_CACHE_SIZE);
             }
             catch (Exception ex) {
                 Log.e(LOGTAG, "Failed to initialize DiskLruCache:" + ex.getMessage());
@@ -75,69 +114,263 @@ public class BitmapCache {
         });
     }
 
-    public void addBitmap(@NonNull String aKey, @NonNull Bitmap aBitmap) {
-        mMemoryCache.put(aKey, aBitmap);
-        runIO(() -> {
-            DiskLruCache.Editor editor = null;
-            try {
-                editor = mDiskCache.edit(aKey);
-                if (editor != null) {
-                    aBitmap.compress(Bitmap.CompressFormat.PNG, 80, editor.newOutputStream(0));
-                    editor.commit();
-                }
-            }
-            catch (Exception ex) {
-                Log.e(LOGTAG, "Failed to add Bitmap to DiskLruCache:" + ex.getMessage());
-                if (editor != null) {
-                    try {
-                        editor.abort();
+    /**
+     * Stores a tab screenshot. The screenshot is center cropped and downscaled to the size of the
+     * tab preview, converted to RGB_565 and written to disk as WebP.
+     * @return the thumbnail stored in the cache, completed in the main thread.
+     */
+    public @NonNull CompletableFuture<Bitmap> addBitmap(@NonNull String aKey, @NonNull Bitmap aBitmap) {
+        CompletableFuture<Bitmap> result = new CompletableFuture<>();
+        mIOExecutor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            Bitmap thumbnail = createThumbnail(aBitmap);
+            mMainThreadExecutor.execute(() -> {
+                // The previous thumbnail is not pooled, tab views may still be displaying it.
+                mMemoryCache.put(aKey, thumbnail);
+                result.complete(thumbnail);
+            });
+
+            runIO(aKey, () -> {
+                DiskLruCache.Editor editor = null;
+                try {
+                    editor = mDiskCache.edit(aKey);
+                    if (editor != null) {
+                        thumbnail.compress(Bitmap.CompressFormat.WEBP, DISK_CACHE_QUALITY, editor.newOutputStream(0));
+                        editor.commit();
+                        Log.d(LOGTAG, "Thumbnail " + thumbnail.getWidth() + "x" + thumbnail.getHeight() +
+                                " encoded in " + (SystemClock.elapsedRealtime() - start) + "ms. Disk cache size: " + mDiskCache.size());
                     }
-                    catch (Exception e) {
-                        e.printStackTrace();
+                }
+                catch (Exception ex) {
+                    Log.e(LOGTAG, "Failed to add Bitmap to DiskLruCache:" + ex.getMessage());
+                    if (editor != null) {
+                        try {
+                            editor.abort();
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
                     }
                 }
-            }
+            });
         });
+
+        return result;
+    }
+
+    private @NonNull Bitmap createThumbnail(@NonNull Bitmap aBitmap) {
+        int width = aBitmap.getWidth();
+        int height = aBitmap.getHeight();
+        if (width == mThumbnailWidth && height == mThumbnailHeight && aBitmap.getConfig() == Bitmap.Config.RGB_565) {
+            return aBitmap;
+        }
+
+        // Same crop as the centerCrop scale type used by the tab preview.
+        Rect src;
+        if (width * mThumbnailHeight > mThumbnailWidth * height) {
+            int cropWidth = height * mThumbnailWidth / mThumbnailHeight;
+            src = new Rect((width - cropWidth) / 2, 0, (width + cropWidth) / 2, height);
+        } else {
+            int cropHeight = width * mThumbnailHeight / mThumbnailWidth;
+            src = new Rect(0, (height - cropHeight) / 2, width, (height + cropHeight) / 2);
+        }
+
+        Bitmap thumbnail = obtainPooledBitmap();
+        if (thumbnail == null) {
+            thumbnail = Bitmap.createBitmap(mThumbnailWidth, mThumbnailHeight, Bitmap.Config.RGB_565);
+        }
+        Canvas canvas = new Canvas(thumbnail);
+        canvas.drawBitmap(aBitmap, src, new Rect(0, 0, mThumbnailWidth, mThumbnailHeight), mScalePaint);
+        aBitmap.recycle();
+
+        return thumbnail;
+    }
+
+    private @Nullable Bitmap obtainPooledBitmap() {
+        synchronized (mBitmapPool) {
+            return mBitmapPool.poll();
+        }
+    }
+
+    /**
+     * Only bitmaps that were never handed out can be pooled, the pooled memory is overwritten by
+     * the next thumbnail or decode.
+     */
+    private void recycleToPool(@Nullable Bitmap aBitmap) {
+        if (aBitmap == null || aBitmap.isRecycled() || !aBitmap.isMutable() ||
+                aBitmap.getWidth() != mThumbnailWidth || aBitmap.getHeight() != mThumbnailHeight ||
+                aBitmap.getConfig() != Bitmap.Config.RGB_565) {
+            return;
+        }
+        synchronized (mBitmapPool) {
+            if (mBitmapPool.size() < BITMAP_POOL_SIZE) {
+                mBitmapPool.add(aBitmap);
+            }
+        }
     }
 
     public @NonNull CompletableFuture<Bitmap> getBitmap(@NonNull String aKey) {
+        return getBitmap(aKey, PRIORITY_HIGH);
+    }
+
+    /**
+     * Gets the cached bitmap for the provided key. Concurrent requests for the same key share the
+     * same disk read, which is cancelled when all the returned futures have been cancelled.
+     * Must be called from the main thread.
+     */
+    public @NonNull CompletableFuture<Bitmap> getBitmap(@NonNull String aKey, @LoadPriority int aPriority) {
         Bitmap cached = mMemoryCache.get(aKey);
         if (cached != null) {
             return CompletableFuture.completedFuture(cached);
+        }
+
+        PendingLoad load = mPendingLoads.get(aKey);
+        if (load == null) {
+            load = new PendingLoad(aKey, aPriority);
+            mPendingLoads.put(aKey, load);
+            mReadExecutor.execute(load.task);
         } else {
-            CompletableFuture<Bitmap> result = new CompletableFuture<>();
-            runIO(() -> {
-                try (DiskLruCache.Snapshot snapshot = mDiskCache.get(aKey)){
-                    if (snapshot != null) {
-                        Bitmap bitmap = BitmapFactory.decodeStream(snapshot.getInputStream(0));
-                        if (bitmap != null) {
-                            mMainThreadExecutor.execute(() -> {
-                                if (mMemoryCache.get(aKey) == null) {
-                                    // Do not update cache if it already contains a value
-                                    // A tab could have saved a new image while we were loading the cached disk image.
-                                    mMemoryCache.put(aKey, bitmap);
-                                }
-                                result.complete(bitmap);
-                            });
-
-                            return;
-                        }
-                    }
+            setPriority(aKey, aPriority);
+        }
+        load.consumers++;
+
+        final PendingLoad pendingLoad = load;
+        CompletableFuture<Bitmap> result = new CompletableFuture<>();
+        load.result.thenAccept(result::complete);
+        result.whenComplete((bitmap, throwable) -> {
+            if (result.isCancelled()) {
+                releaseConsumer(pendingLoad);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Raises the priority of a pending disk read, e.g. when the view waiting for it becomes visible.
+     * Must be called from the main thread.
+     */
+    public void setPriority(@NonNull String aKey, @LoadPriority int aPriority) {
+        PendingLoad load = mPendingLoads.get(aKey);
+        if (load == null || load.task.priority >= aPriority) {
+            return;
+        }
+        // The priority queue order can only be updated while the task is not queued.
+        if (mReadExecutor.remove(load.task)) {
+            load.task.priority = aPriority;
+            mReadExecutor.execute(load.task);
+        }
+    }
+
+    private void releaseConsumer(@NonNull PendingLoad aLoad) {
+        aLoad.consumers--;
+        if (aLoad.consumers <= 0 && !aLoad.result.isDone()) {
+            if (mPendingLoads.get(aLoad.key) == aLoad) {
+                mPendingLoads.remove(aLoad.key);
+            }
+            aLoad.task.cancel(false);
+            mReadExecutor.remove(aLoad.task);
+        }
+    }
+
+    private void onBitmapLoaded(@NonNull PendingLoad aLoad, @Nullable Bitmap aBitmap) {
+        if (mPendingLoads.get(aLoad.key) == aLoad) {
+            mPendingLoads.remove(aLoad.key);
+        }
+        if (aBitmap == null) {
+            aLoad.result.complete(null);
+            return;
+        }
+        Bitmap cachedBitmap = mMemoryCache.get(aLoad.key);
+        if (cachedBitmap == null) {
+            // Do not update cache if it already contains a value
+            // A tab could have saved a new image while we were loading the cached disk image.
+            mMemoryCache.put(aLoad.key, aBitmap);
+            aLoad.result.complete(aBitmap);
+        } else {
+            aLoad.result.complete(cachedBitmap);
+            // The decoded bitmap was never handed out, so it can be reused.
+            recycleToPool(aBitmap);
+        }
+    }
+
+    @WorkerThread
+    private @Nullable Bitmap loadBitmap(@NonNull String aKey) {
+        DiskLruCache diskCache = mDiskCache;
+        if (diskCache == null) {
+            return null;
+        }
+        synchronized (getKeyLock(aKey)) {
+            try (DiskLruCache.Snapshot snapshot = diskCache.get(aKey)) {
+                if (snapshot == null) {
+                    return null;
                 }
-                catch (Exception ex) {
-                    Log.e(LOGTAG, "Failed to get Bitmap from DiskLruCache:" + ex.getMessage());
+                long start = SystemClock.elapsedRealtime();
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inPreferredConfig = Bitmap.Config.RGB_565;
+                options.inMutable = true;
+                options.inBitmap = obtainPooledBitmap();
+                Bitmap bitmap;
+                try {
+                    bitmap = BitmapFactory.decodeStream(snapshot.getInputStream(0), null, options);
+                } catch (IllegalArgumentException ex) {
+                    // The pooled bitmap can't be reused for this image.
+                    options.inBitmap = null;
+                    try (DiskLruCache.Snapshot retry = diskCache.get(aKey)) {
+                        bitmap = retry != null ? BitmapFactory.decodeStream(retry.getInputStream(0), null, options) : null;
+                    }
                 }
+                Log.d(LOGTAG, "Thumbnail decoded in " + (SystemClock.elapsedRealtime() - start) + "ms");
+                return bitmap;
+            }
+            catch (Exception ex) {
+                Log.e(LOGTAG, "Failed to get Bitmap from DiskLruCache:" + ex.getMessage());
+                return null;
+            }
+        }
+    }
 
-                mMainThreadExecutor.execute(() -> result.complete(null));
+    private @NonNull Object getKeyLock(@NonNull String aKey) {
+        return mKeyLocks[(aKey.hashCode() & 0x7fffffff) % mKeyLocks.length];
+    }
 
-            });
-            return result;
+    private class PendingLoad {
+        final String key;
+        final CompletableFuture<Bitmap> result = new CompletableFuture<>();
+        final LoadTask task;
+        int consumers;
+
+        PendingLoad(@NonNull String aKey, @LoadPriority int aPriority) {
+            key = aKey;
+            task = new LoadTask(() -> {
+                Bitmap bitmap = loadBitmap(aKey);
+                mMainThreadExecutor.execute(() -> onBitmapLoaded(this, bitmap));
+            }, aPriority);
+        }
+    }
+
+    private static class LoadTask extends FutureTask<Void> implements Comparable<LoadTask> {
+        private static final AtomicLong sSequence = new AtomicLong();
+        volatile int priority;
+        final long sequence = sSequence.getAndIncrement();
+
+        LoadTask(@NonNull Runnable aRunnable, @LoadPriority int aPriority) {
+            super(aRunnable, null);
+            priority = aPriority;
+        }
+
+        @Override
+        public int compareTo(LoadTask aOther) {
+            if (priority != aOther.priority) {
+                return priority > aOther.priority ? -1 : 1;
+            }
+            // Same priority requests are served in request order.
+            return Long.compare(sequence, aOther.sequence);
         }
     }
 
     public void removeBitmap(@NonNull String aKey) {
         mMemoryCache.remove(aKey);
-        runIO(() -> {
+        runIO(aKey, () -> {
             try {
                 mDiskCache.remove(aKey);
             } catch (Exception ex) {
@@ -153,7 +386,16 @@ public class BitmapCache {
     private void runIO(Runnable aRunnable) {
         mIOExecutor.execute(() -> {
             if (mDiskCache != null) {
-                synchronized (mLock) {
+                aRunnable.run();
+            }
+        });
+    }
+
+    // Disk writes are serialized in the I/O executor and only block reads of the same key.
+    private void runIO(@NonNull String aKey, Runnable aRunnable) {
+        mIOExecutor.execute(() -> {
+            if (mDiskCache != null) {
+                synchronized (getKeyLock(aKey)) {
                     aRunnable.run();
                 }
             }
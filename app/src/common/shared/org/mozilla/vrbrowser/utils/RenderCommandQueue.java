@@ -0,0 +1,341 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.utils;
+
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single producer, single consumer ring of commands sent from the UI thread to the render thread.
+ * Commands with a primitive or object argument are stored with it in preallocated arrays, so
+ * queueing a command kept in a field doesn't allocate, and the producer never takes a lock: the render
+ * thread is only woken up through the platform queue when the ring goes from idle to busy.
+ *
+ * If the ring is full the commands are kept in an overflow list, which is reported as
+ * backpressure, until the render thread catches up. Commands queued from other threads than the
+ * producer also go through the overflow list. The order of the commands of each thread is kept.
+ *
+ * The commands run in the drain posted to the platform queue when the ring went busy, so they
+ * are not ordered with the runnables posted to the platform queue directly, e.g. the platform
+ * lifecycle events: a command queued after one of those may run before it.
+ *
+ * The platform queue may drop the drain, e.g. while the render thread isn't initialized. It's
+ * posted again on {@link #onResume()}, and by {@link #onFrame()} if commands were left waiting
+ * for a whole frame.
+ */
+public class RenderCommandQueue {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(RenderCommandQueue.class);
+    private static final int DEFAULT_CAPACITY = 256;
+
+    public interface IntCommand {
+        void run(int aValue);
+    }
+
+    public interface LongCommand {
+        void run(long aValue);
+    }
+
+    public interface FloatCommand {
+        void run(float aValue);
+    }
+
+    public interface BooleanCommand {
+        void run(boolean aValue);
+    }
+
+    public interface ObjectCommand<T> {
+        void run(@NonNull T aValue);
+    }
+
+    private static final byte TYPE_RUNNABLE = 0;
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_FLOAT = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_OBJECT = 5;
+
+    // Overflowed command with its argument.
+    private static class Pending {
+        final byte mType;
+        final Object mCommand;
+        final long mLong;
+        final float mFloat;
+        final Object mObject;
+
+        Pending(byte aType, Object aCommand, long aLong, float aFloat, Object aObject) {
+            mType = aType;
+            mCommand = aCommand;
+            mLong = aLong;
+            mFloat = aFloat;
+            mObject = aObject;
+        }
+    }
+
+    private final Executor mWakeUp;
+    private final Thread mProducer;
+    private final Runnable mDrainRunnable = this::drain;
+    private final AtomicBoolean mDrainPosted = new AtomicBoolean();
+    private final int mMask;
+    private final byte[] mTypes;
+    private final Object[] mCommands;
+    private final long[] mLongs;
+    private final float[] mFloats;
+    private final Object[] mObjects;
+    // Written by the producer, read by the consumer.
+    private volatile long mTail;
+    // Written by the consumer, read by the producer.
+    private volatile long mHead;
+    private final Object mOverflowLock = new Object();
+    // Set with mOverflowLock held, the ring isn't written while set.
+    private volatile boolean mOverflowing;
+    // Only accessed with mOverflowLock held.
+    private final ArrayList<Pending> mOverflow = new ArrayList<>();
+    private boolean mFull;
+    private long mBackpressureEvents;
+    private long mOverflowedCommands;
+    // Only accessed from the consumer thread.
+    private final ArrayList<Pending> mDrainedOverflow = new ArrayList<>();
+    private long mExecuted;
+    private long mDrains;
+    private long mDrainsAtLastFrame;
+    private boolean mPendingAtLastFrame;
+    // Only accessed from the producer thread.
+    private long mQueued;
+    private long mHighWaterMark;
+
+    /**
+     * @param aWakeUp runs the given runnable on the render thread, e.g. the platform queue.
+     */
+    public RenderCommandQueue(@NonNull Executor aWakeUp) {
+        this(aWakeUp, DEFAULT_CAPACITY);
+    }
+
+    @VisibleForTesting
+    public RenderCommandQueue(@NonNull Executor aWakeUp, int aCapacity) {
+        if (Integer.bitCount(aCapacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + aCapacity);
+        }
+        mWakeUp = aWakeUp;
+        mProducer = Thread.currentThread();
+        mMask = aCapacity - 1;
+        mTypes = new byte[aCapacity];
+        mCommands = new Object[aCapacity];
+        mLongs = new long[aCapacity];
+        mFloats = new float[aCapacity];
+        mObjects = new Object[aCapacity];
+    }
+
+    @AnyThread
+    public void queue(@NonNull Runnable aCommand) {
+        push(TYPE_RUNNABLE, aCommand, 0, 0, null);
+    }
+
+    @AnyThread
+    public void queue(@NonNull IntCommand aCommand, int aValue) {
+        push(TYPE_INT, aCommand, aValue, 0, null);
+    }
+
+    @AnyThread
+    public void queue(@NonNull LongCommand aCommand, long aValue) {
+        push(TYPE_LONG, aCommand, aValue, 0, null);
+    }
+
+    @AnyThread
+    public void queue(@NonNull FloatCommand aCommand, float aValue) {
+        push(TYPE_FLOAT, aCommand, 0, aValue, null);
+    }
+
+    @AnyThread
+    public void queue(@NonNull BooleanCommand aCommand, boolean aValue) {
+        push(TYPE_BOOLEAN, aCommand, aValue ? 1 : 0, 0, null);
+    }
+
+    @AnyThread
+    public <T> void queue(@NonNull ObjectCommand<T> aCommand, @NonNull T aValue) {
+        push(TYPE_OBJECT, aCommand, 0, 0, aValue);
+    }
+
+    private void push(byte aType, Object aCommand, long aLong, float aFloat, Object aObject) {
+        if (Thread.currentThread() != mProducer) {
+            synchronized (mOverflowLock) {
+                mOverflow.add(new Pending(aType, aCommand, aLong, aFloat, aObject));
+                mOverflowing = true;
+            }
+        } else {
+            long tail = mTail;
+            long pending = tail - mHead;
+            boolean full = pending > mMask;
+            if (!full && !mOverflowing) {
+                int index = (int)(tail & mMask);
+                mTypes[index] = aType;
+                mCommands[index] = aCommand;
+                mLongs[index] = aLong;
+                mFloats[index] = aFloat;
+                mObjects[index] = aObject;
+                // Publishes the slot to the consumer.
+                mTail = tail + 1;
+            } else {
+                synchronized (mOverflowLock) {
+                    if (full && !mFull) {
+                        mFull = true;
+                        mBackpressureEvents++;
+                        Log.w(LOGTAG, "Render command queue full, " + pending + " commands pending");
+                    }
+                    mOverflow.add(new Pending(aType, aCommand, aLong, aFloat, aObject));
+                    mOverflowing = true;
+                    mOverflowedCommands++;
+                }
+            }
+            mQueued++;
+            mHighWaterMark = Math.max(mHighWaterMark, pending + 1);
+        }
+        if (mDrainPosted.compareAndSet(false, true)) {
+            mWakeUp.execute(mDrainRunnable);
+        }
+    }
+
+    /**
+     * Posts the drain again if there are pending commands, a drain posted while paused may have
+     * been dropped. At worst the drain runs twice, the second time without commands.
+     */
+    @UiThread
+    public void onResume() {
+        mDrainPosted.set(false);
+        if (hasPendingCommands() && mDrainPosted.compareAndSet(false, true)) {
+            mWakeUp.execute(mDrainRunnable);
+        }
+    }
+
+    /**
+     * Called by the render thread at the end of every frame. The platform queue runs its
+     * runnables at the start of every frame, so if commands were already pending at the end of
+     * the previous frame and no drain ran since then, the drain was dropped and is posted again.
+     */
+    public void onFrame() {
+        boolean pending = hasPendingCommands();
+        if (pending && mPendingAtLastFrame && mDrains == mDrainsAtLastFrame) {
+            Log.w(LOGTAG, "Render command queue drain lost, posting it again");
+            mDrainPosted.set(true);
+            mWakeUp.execute(mDrainRunnable);
+        }
+        mPendingAtLastFrame = pending;
+        mDrainsAtLastFrame = mDrains;
+    }
+
+    private boolean hasPendingCommands() {
+        return mOverflowing || mTail != mHead;
+    }
+
+    /**
+     * Runs the queued commands, called on the render thread.
+     */
+    @VisibleForTesting
+    public void drain() {
+        mDrainPosted.set(false);
+        mDrains++;
+        long end;
+        synchronized (mOverflowLock) {
+            // Overflowed commands were queued after everything in the ring up to this point, and
+            // the ring isn't written while there are overflowed commands.
+            end = mTail;
+            mDrainedOverflow.addAll(mOverflow);
+            mOverflow.clear();
+            mOverflowing = false;
+            mFull = false;
+        }
+        long head = mHead;
+        while (head < end) {
+            int index = (int)(head & mMask);
+            byte type = mTypes[index];
+            Object command = mCommands[index];
+            long longValue = mLongs[index];
+            float floatValue = mFloats[index];
+            Object objectValue = mObjects[index];
+            mCommands[index] = null;
+            mObjects[index] = null;
+            // Releases the slot to the producer before running the command.
+            mHead = ++head;
+            execute(type, command, longValue, floatValue, objectValue);
+        }
+        for (Pending pending: mDrainedOverflow) {
+            execute(pending.mType, pending.mCommand, pending.mLong, pending.mFloat, pending.mObject);
+        }
+        mDrainedOverflow.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void execute(byte aType, Object aCommand, long aLong, float aFloat, Object aObject) {
+        mExecuted++;
+        switch (aType) {
+            case TYPE_RUNNABLE:
+                ((Runnable)aCommand).run();
+                break;
+            case TYPE_INT:
+                ((IntCommand)aCommand).run((int)aLong);
+                break;
+            case TYPE_LONG:
+                ((LongCommand)aCommand).run(aLong);
+                break;
+            case TYPE_FLOAT:
+                ((FloatCommand)aCommand).run(aFloat);
+                break;
+            case TYPE_BOOLEAN:
+                ((BooleanCommand)aCommand).run(aLong != 0);
+                break;
+            case TYPE_OBJECT:
+                ((ObjectCommand<Object>)aCommand).run(aObject);
+                break;
+        }
+    }
+
+    /**
+     * @return the number of commands queued by the producer thread.
+     */
+    public long getQueuedCommands() {
+        return mQueued;
+    }
+
+    /**
+     * @return the number of commands run by the render thread.
+     */
+    public long getExecutedCommands() {
+        return mExecuted;
+    }
+
+    /**
+     * @return the largest number of commands of the producer waiting for the render thread.
+     */
+    public long getHighWaterMark() {
+        return mHighWaterMark;
+    }
+
+    /**
+     * @return the number of times the ring filled up.
+     */
+    public long getBackpressureEvents() {
+        synchronized (mOverflowLock) {
+            return mBackpressureEvents;
+        }
+    }
+
+    /**
+     * @return the number of commands of the producer queued in the overflow list.
+     */
+    public long getOverflowedCommands() {
+        synchronized (mOverflowLock) {
+            return mOverflowedCommands;
+        }
+    }
+}
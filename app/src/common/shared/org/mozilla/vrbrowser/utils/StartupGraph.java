@@ -0,0 +1,315 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.utils;
+
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the startup components in dependency order. Each component declares the components it
+ * depends on, which must have been added before it, and the thread it has to run on:
+ * independent background components run concurrently in a bounded pool while the main thread
+ * runs the main thread ones.
+ *
+ * {@link #run()} blocks the main thread until all the critical components added so far are
+ * done, so it can be called again to run the components added later. Component names are
+ * unique within a graph, so components that may be added more than once, e.g. the ones of an
+ * activity that can be created again in the same process, belong in a graph of their own.
+ * Deferred components only start after {@link #startDeferred()}, once the first frame has been
+ * rendered, and never block the main thread.
+ */
+public class StartupGraph {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(StartupGraph.class);
+    private static final int MAX_BACKGROUND_THREADS = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+
+    public enum Affinity {
+        MAIN,
+        BACKGROUND
+    }
+
+    public static class Timing {
+        public final String name;
+        public final String thread;
+        public final boolean deferred;
+        // Relative to the creation of the graph.
+        public final long startUs;
+        public final long durationUs;
+
+        Timing(String aName, String aThread, boolean aDeferred, long aStartUs, long aDurationUs) {
+            name = aName;
+            thread = aThread;
+            deferred = aDeferred;
+            startUs = aStartUs;
+            durationUs = aDurationUs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s%s [%s] at %.1fms took %.1fms", name, deferred ? " (deferred)" : "",
+                    thread, startUs / 1000.0f, durationUs / 1000.0f);
+        }
+    }
+
+    private static class Component {
+        final String mName;
+        final Affinity mAffinity;
+        final boolean mDeferred;
+        final Runnable mTask;
+        final List<Component> mDependents = new ArrayList<>();
+        int mPendingDependencies;
+        boolean mEligible;
+        boolean mScheduled;
+        boolean mDone;
+
+        Component(String aName, Affinity aAffinity, boolean aDeferred, Runnable aTask) {
+            mName = aName;
+            mAffinity = aAffinity;
+            mDeferred = aDeferred;
+            mTask = aTask;
+        }
+    }
+
+    // Wakes up the main thread loop when a background component is done.
+    private static final Component WAKE_UP = new Component("", Affinity.MAIN, false, null);
+
+    private final Object mLock = new Object();
+    private final Executor mBackground;
+    private final Executor mMainThread;
+    private final long mCreationTime = System.nanoTime();
+    private final LinkedBlockingQueue<Component> mMainQueue = new LinkedBlockingQueue<>();
+    // Only accessed with mLock held.
+    private final LinkedHashMap<String, Component> mComponents = new LinkedHashMap<>();
+    private final List<Timing> mTimings = new ArrayList<>();
+    private int mRemainingCritical;
+    private boolean mDeferredStarted;
+    private long mDeferredStartUs = -1;
+    private Throwable mError;
+    // Only accessed from the main thread.
+    private int mLoggedTimings;
+
+    public StartupGraph(@NonNull Executor aMainThread) {
+        this(createBackgroundExecutor(), aMainThread);
+    }
+
+    @VisibleForTesting
+    public StartupGraph(@NonNull Executor aBackground, @NonNull Executor aMainThread) {
+        mBackground = aBackground;
+        mMainThread = aMainThread;
+    }
+
+    private static Executor createBackgroundExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_BACKGROUND_THREADS, MAX_BACKGROUND_THREADS,
+                5, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "StartupGraph"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Adds a component that must be done before {@link #run()} returns.
+     */
+    @UiThread
+    @NonNull
+    public StartupGraph add(@NonNull String aName, @NonNull Affinity aAffinity, @NonNull Runnable aTask, String... aDependencies) {
+        return add(aName, aAffinity, false, aTask, aDependencies);
+    }
+
+    /**
+     * Adds a component that is not needed to render the first frame. Deferred components added
+     * after {@link #startDeferred()} start as soon as their dependencies are done.
+     */
+    @UiThread
+    @NonNull
+    public StartupGraph addDeferred(@NonNull String aName, @NonNull Affinity aAffinity, @NonNull Runnable aTask, String... aDependencies) {
+        return add(aName, aAffinity, true, aTask, aDependencies);
+    }
+
+    private StartupGraph add(String aName, Affinity aAffinity, boolean aDeferred, Runnable aTask, String[] aDependencies) {
+        synchronized (mLock) {
+            if (mComponents.containsKey(aName)) {
+                throw new IllegalArgumentException("Startup component already added: " + aName);
+            }
+            Component component = new Component(aName, aAffinity, aDeferred, aTask);
+            for (String name: aDependencies) {
+                Component dependency = mComponents.get(name);
+                if (dependency == null) {
+                    throw new IllegalArgumentException("Startup component " + aName + " depends on unknown component " + name);
+                }
+                if (dependency.mDeferred && !aDeferred) {
+                    throw new IllegalArgumentException("Startup component " + aName + " can't depend on deferred component " + name);
+                }
+                if (!dependency.mDone) {
+                    component.mPendingDependencies++;
+                    dependency.mDependents.add(component);
+                }
+            }
+            mComponents.put(aName, component);
+            if (aDeferred && mDeferredStarted) {
+                makeEligible(component);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Runs all the critical components added so far, returns when they are done.
+     * @throws RuntimeException if any of them failed.
+     */
+    @UiThread
+    public void run() {
+        synchronized (mLock) {
+            for (Component component: mComponents.values()) {
+                if (!component.mDeferred && !component.mEligible) {
+                    mRemainingCritical++;
+                    makeEligible(component);
+                }
+            }
+        }
+        while (true) {
+            synchronized (mLock) {
+                if (mError != null) {
+                    throw new RuntimeException("Startup failed", mError);
+                }
+                if (mRemainingCritical == 0) {
+                    break;
+                }
+            }
+            Component component;
+            try {
+                component = mMainQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Startup interrupted", e);
+            }
+            if (component != WAKE_UP) {
+                execute(component);
+            }
+        }
+        logTimings();
+    }
+
+    /**
+     * Starts the deferred components, only the first call has any effect.
+     */
+    @UiThread
+    public void startDeferred() {
+        synchronized (mLock) {
+            if (mDeferredStarted) {
+                return;
+            }
+            mDeferredStarted = true;
+            mDeferredStartUs = elapsedUs();
+            for (Component component: mComponents.values()) {
+                if (component.mDeferred) {
+                    makeEligible(component);
+                }
+            }
+        }
+    }
+
+    private void makeEligible(Component aComponent) {
+        aComponent.mEligible = true;
+        if (aComponent.mPendingDependencies == 0) {
+            schedule(aComponent);
+        }
+    }
+
+    private void schedule(Component aComponent) {
+        aComponent.mScheduled = true;
+        if (aComponent.mAffinity == Affinity.BACKGROUND) {
+            mBackground.execute(() -> execute(aComponent));
+        } else if (aComponent.mDeferred) {
+            mMainThread.execute(() -> execute(aComponent));
+        } else {
+            mMainQueue.add(aComponent);
+        }
+    }
+
+    private void execute(Component aComponent) {
+        long start = elapsedUs();
+        Throwable error = null;
+        try {
+            aComponent.mTask.run();
+        } catch (Throwable e) {
+            error = e;
+        }
+        long duration = elapsedUs() - start;
+        synchronized (mLock) {
+            mTimings.add(new Timing(aComponent.mName, Thread.currentThread().getName(), aComponent.mDeferred, start, duration));
+            aComponent.mDone = true;
+            if (error != null && mError == null) {
+                mError = error;
+            }
+            if (error == null) {
+                for (Component dependent: aComponent.mDependents) {
+                    dependent.mPendingDependencies--;
+                    if (dependent.mPendingDependencies == 0 && dependent.mEligible && !dependent.mScheduled) {
+                        schedule(dependent);
+                    }
+                }
+            }
+            if (!aComponent.mDeferred) {
+                mRemainingCritical--;
+            }
+        }
+        if (error != null && aComponent.mDeferred) {
+            // Deferred components fail like they would have without the graph.
+            final Throwable failure = error;
+            mMainThread.execute(() -> {
+                throw new RuntimeException("Startup component " + aComponent.mName + " failed", failure);
+            });
+        } else if (aComponent.mAffinity == Affinity.BACKGROUND && !aComponent.mDeferred) {
+            mMainQueue.add(WAKE_UP);
+        }
+    }
+
+    private long elapsedUs() {
+        return (System.nanoTime() - mCreationTime) / 1000;
+    }
+
+    private void logTimings() {
+        List<Timing> timings = getTimings();
+        for (int i = mLoggedTimings; i < timings.size(); i++) {
+            Log.d(LOGTAG, timings.get(i).toString());
+        }
+        mLoggedTimings = timings.size();
+    }
+
+    /**
+     * @return the timings of the components that are done, in completion order.
+     */
+    @AnyThread
+    @NonNull
+    public List<Timing> getTimings() {
+        synchronized (mLock) {
+            return new ArrayList<>(mTimings);
+        }
+    }
+
+    /**
+     * @return the time since the creation of the graph when the deferred components were started,
+     * or -1 if they have not been started yet.
+     */
+    @AnyThread
+    public long getDeferredStartUs() {
+        synchronized (mLock) {
+            return mDeferredStartUs;
+        }
+    }
+}
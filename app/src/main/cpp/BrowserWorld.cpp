@@ -56,6 +56,7 @@
 #include "vrb/Vector.h"
 
 #include <array>
+#include <cstring>
 #include <functional>
 #include <fstream>
 #include <unordered_map>
@@ -187,6 +188,8 @@ struct BrowserWorld::State {
   WidgetMoverPtr movingWidget;
   WidgetResizerPtr widgetResizer;
   std::unordered_map<vrb::Node*, std::pair<Widget*, float>> depthSorting;
+  // Last placements received from Java, placement deltas are applied to them.
+  std::unordered_map<int32_t, WidgetPlacementPtr> javaPlacements;
   std::function<void(device::Eye)> drawHandler;
   std::function<void()> frameEndHandler;
 
@@ -1089,9 +1092,53 @@ BrowserWorld::UpdateWidgetRecursive(int32_t aHandle, const WidgetPlacementPtr& a
   }
 }
 
+bool
+BrowserWorld::UpdateWidgets(const uint8_t* aData, const size_t aLength) {
+  ASSERT_ON_RENDER_THREAD(false);
+  // The whole packet is read before applying any of it, so an invalid one leaves every placement
+  // as it was and the sender can start again from full updates.
+  std::vector<std::pair<int32_t, WidgetPlacementPtr>> updates;
+  size_t offset = 0;
+  while (offset < aLength) {
+    int32_t handle = 0;
+    if (offset + sizeof(handle) > aLength) {
+      VRB_ERROR("Truncated widget placement update");
+      return false;
+    }
+    memcpy(&handle, aData + offset, sizeof(handle));
+    offset += sizeof(handle);
+    WidgetPlacementPtr base;
+    for (auto it = updates.rbegin(); it != updates.rend(); ++it) {
+      if (it->first == handle) {
+        base = it->second;
+        break;
+      }
+    }
+    if (!base) {
+      auto it = m.javaPlacements.find(handle);
+      if (it != m.javaPlacements.end()) {
+        base = it->second;
+      }
+    }
+    WidgetPlacementPtr placement = WidgetPlacement::FromDelta(base, aData, aLength, offset);
+    if (!placement) {
+      VRB_ERROR("Invalid placement update for Widget with handle: %d", handle);
+      return false;
+    }
+    updates.emplace_back(handle, placement);
+  }
+  for (const auto& update: updates) {
+    m.javaPlacements[update.first] = update.second;
+    // The widget may modify its placement while moving, keep the one received intact.
+    UpdateWidgetRecursive(update.first, WidgetPlacement::Create(*update.second));
+  }
+  return true;
+}
+
 void
 BrowserWorld::RemoveWidget(int32_t aHandle) {
   ASSERT_ON_RENDER_THREAD();
+  m.javaPlacements.erase(aHandle);
   WidgetPtr widget = m.GetWidget(aHandle);
   if (widget) {
     widget->ResetFirstDraw();
@@ -1546,12 +1593,13 @@ JNI_METHOD(void, addWidgetNative)
   }
 }
 
-JNI_METHOD(void, updateWidgetNative)
-(JNIEnv* aEnv, jobject, jint aHandle, jobject aPlacement) {
-  crow::WidgetPlacementPtr placement = crow::WidgetPlacement::FromJava(aEnv, aPlacement);
-  if (placement) {
-    crow::BrowserWorld::Instance().UpdateWidgetRecursive(aHandle, placement);
+JNI_METHOD(jboolean, updateWidgetsNative)
+(JNIEnv* aEnv, jobject, jobject aPlacements, jint aLength) {
+  const uint8_t* data = (const uint8_t*)aEnv->GetDirectBufferAddress(aPlacements);
+  if (!data || aLength < 0) {
+    return (jboolean) false;
   }
+  return (jboolean) crow::BrowserWorld::Instance().UpdateWidgets(data, (size_t)aLength);
 }
 
 JNI_METHOD(void, updateVisibleWidgetsNative)
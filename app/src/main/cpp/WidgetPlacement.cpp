@@ -5,6 +5,8 @@
 
 #include "WidgetPlacement.h"
 
+#include <cstring>
+
 namespace crow {
 
 const float WidgetPlacement::kWorldDPIRatio = 2.0f/720.0f;
@@ -78,6 +80,148 @@ WidgetPlacement::FromJava(JNIEnv* aEnv, jobject& aObject) {
   return result;
 }
 
+// Fields of a placement update, in the order they are written. Must match PlacementDeltaEncoder.java.
+enum DeltaField {
+  kWidth,
+  kHeight,
+  kAnchorX,
+  kAnchorY,
+  kTranslationX,
+  kTranslationY,
+  kTranslationZ,
+  kRotationAxisX,
+  kRotationAxisY,
+  kRotationAxisZ,
+  kRotation,
+  kParentHandle,
+  kParentAnchorX,
+  kParentAnchorY,
+  kDensity,
+  kWorldWidth,
+  kVisible,
+  kOpaque,
+  kShowPointer,
+  kComposited,
+  kLayer,
+  kProxifyLayer,
+  kTextureScale,
+  kCylinder,
+  kCylinderMapRadius,
+  kTintColor,
+  kBorderColor,
+  kName,
+  kClearColor,
+  kFieldCount
+};
+
+static const int32_t kAllFields = (1 << kFieldCount) - 1;
+
+WidgetPlacementPtr
+WidgetPlacement::FromDelta(const WidgetPlacementPtr& aBase, const uint8_t* aData, const size_t aLength, size_t& aOffset) {
+  int32_t mask = 0;
+  if (aOffset + sizeof(mask) > aLength) {
+    return nullptr;
+  }
+  memcpy(&mask, aData + aOffset, sizeof(mask));
+  aOffset += sizeof(mask);
+  if (mask & ~kAllFields) {
+    return nullptr;
+  }
+
+  std::shared_ptr<WidgetPlacement> result;
+  if (mask == kAllFields) {
+    result.reset(new WidgetPlacement());
+  } else if (aBase) {
+    result.reset(new WidgetPlacement(*aBase));
+  } else {
+    // Only the first update of a widget can be applied without a base.
+    return nullptr;
+  }
+
+#define READ_INT_FIELD(field, to) \
+  if (mask & (1 << field)) { \
+    if (aOffset + sizeof(int32_t) > aLength) { \
+      return nullptr; \
+    } \
+    int32_t value; \
+    memcpy(&value, aData + aOffset, sizeof(value)); \
+    aOffset += sizeof(value); \
+    result->to = value; \
+  }
+
+#define READ_FLOAT_FIELD(field, to) \
+  if (mask & (1 << field)) { \
+    if (aOffset + sizeof(float) > aLength) { \
+      return nullptr; \
+    } \
+    float value; \
+    memcpy(&value, aData + aOffset, sizeof(value)); \
+    aOffset += sizeof(value); \
+    result->to = value; \
+  }
+
+#define READ_BOOLEAN_FIELD(field, to) \
+  if (mask & (1 << field)) { \
+    if (aOffset + sizeof(int32_t) > aLength) { \
+      return nullptr; \
+    } \
+    int32_t value; \
+    memcpy(&value, aData + aOffset, sizeof(value)); \
+    aOffset += sizeof(value); \
+    result->to = value != 0; \
+  }
+
+  READ_INT_FIELD(kWidth, width);
+  READ_INT_FIELD(kHeight, height);
+  READ_FLOAT_FIELD(kAnchorX, anchor.x());
+  READ_FLOAT_FIELD(kAnchorY, anchor.y());
+  READ_FLOAT_FIELD(kTranslationX, translation.x());
+  READ_FLOAT_FIELD(kTranslationY, translation.y());
+  READ_FLOAT_FIELD(kTranslationZ, translation.z());
+  READ_FLOAT_FIELD(kRotationAxisX, rotationAxis.x());
+  READ_FLOAT_FIELD(kRotationAxisY, rotationAxis.y());
+  READ_FLOAT_FIELD(kRotationAxisZ, rotationAxis.z());
+  READ_FLOAT_FIELD(kRotation, rotation);
+  READ_INT_FIELD(kParentHandle, parentHandle);
+  READ_FLOAT_FIELD(kParentAnchorX, parentAnchor.x());
+  READ_FLOAT_FIELD(kParentAnchorY, parentAnchor.y());
+  READ_FLOAT_FIELD(kDensity, density);
+  READ_FLOAT_FIELD(kWorldWidth, worldWidth);
+  READ_BOOLEAN_FIELD(kVisible, visible);
+  READ_BOOLEAN_FIELD(kOpaque, opaque);
+  READ_BOOLEAN_FIELD(kShowPointer, showPointer);
+  READ_BOOLEAN_FIELD(kComposited, composited);
+  READ_BOOLEAN_FIELD(kLayer, layer);
+  READ_BOOLEAN_FIELD(kProxifyLayer, proxifyLayer);
+  READ_FLOAT_FIELD(kTextureScale, textureScale);
+  READ_BOOLEAN_FIELD(kCylinder, cylinder);
+  READ_FLOAT_FIELD(kCylinderMapRadius, cylinderMapRadius);
+  READ_INT_FIELD(kTintColor, tintColor);
+  READ_INT_FIELD(kBorderColor, borderColor);
+  if (mask & (1 << kName)) {
+    int32_t length = 0;
+    if (aOffset + sizeof(length) > aLength) {
+      return nullptr;
+    }
+    memcpy(&length, aData + aOffset, sizeof(length));
+    aOffset += sizeof(length);
+    // The name is padded to 4 bytes.
+    const size_t padded = ((size_t)length + 3) & ~(size_t)3;
+    if (length < 0 || aOffset + padded > aLength) {
+      return nullptr;
+    }
+    result->name.assign((const char*)(aData + aOffset), (size_t)length);
+    aOffset += padded;
+  }
+  READ_INT_FIELD(kClearColor, clearColor);
+
+#undef READ_INT_FIELD
+#undef READ_FLOAT_FIELD
+#undef READ_BOOLEAN_FIELD
+
+  return result;
+}
+
 WidgetPlacementPtr
 WidgetPlacement::Create(const WidgetPlacement& aPlacement) {
   return WidgetPlacementPtr(new WidgetPlacement(aPlacement));
@@ -48,6 +48,8 @@ struct WidgetPlacement {
 
   static const float kWorldDPIRatio;
   static WidgetPlacementPtr FromJava(JNIEnv* aEnv, jobject& aObject);
+  // Reads an update written by PlacementDeltaEncoder.java, after the widget handle.
+  static WidgetPlacementPtr FromDelta(const WidgetPlacementPtr& aBase, const uint8_t* aData, const size_t aLength, size_t& aOffset);
   static WidgetPlacementPtr Create(const WidgetPlacement& aPlacement);
 private:
   WidgetPlacement() = default;
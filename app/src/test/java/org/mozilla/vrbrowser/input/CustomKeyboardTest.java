@@ -0,0 +1,76 @@
+package org.mozilla.vrbrowser.input;
+
+import android.content.Context;
+import android.inputmethodservice.Keyboard;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.R;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CustomKeyboardTest {
+
+    // Points outside of the keyboard are also tested, the edge keys extend their hit area.
+    private static final int MARGIN = 40;
+    private static final int STEP = 3;
+
+    private static List<CustomKeyboard> getKeyboards() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        List<CustomKeyboard> keyboards = new ArrayList<>();
+        for (Field field: R.xml.class.getFields()) {
+            if (field.getName().startsWith("keyboard_")) {
+                keyboards.add(new CustomKeyboard(context, field.getInt(null)));
+            }
+        }
+        // Popup keyboards are built from the popup characters of a key.
+        keyboards.add(new CustomKeyboard(context, R.xml.keyboard_popup, "àáâãäåæāąăçćč", 10, 0, 0));
+        return keyboards;
+    }
+
+    private static int getKeyIndexLinear(Keyboard aKeyboard, int x, int y) {
+        List<Keyboard.Key> keys = aKeyboard.getKeys();
+        for (int i = 0; i < keys.size(); i++) {
+            if (keys.get(i).isInside(x, y)) {
+                return i;
+            }
+        }
+        return CustomKeyboard.NOT_A_KEY;
+    }
+
+    @Test
+    public void matchesLinearSearch() throws Exception {
+        List<CustomKeyboard> keyboards = getKeyboards();
+        assertFalse(keyboards.isEmpty());
+        for (CustomKeyboard keyboard: keyboards) {
+            int hits = 0;
+            for (int y = -MARGIN; y < keyboard.getHeight() + MARGIN; y += STEP) {
+                for (int x = -MARGIN; x < keyboard.getMinWidth() + MARGIN; x += STEP) {
+                    int expected = getKeyIndexLinear(keyboard, x, y);
+                    assertEquals(x + "," + y, expected, keyboard.getKeyIndexAt(x, y));
+                    int[] nearest = keyboard.getNearestKeys(x, y);
+                    if (expected == CustomKeyboard.NOT_A_KEY) {
+                        assertEquals(0, nearest.length);
+                    } else {
+                        assertEquals(1, nearest.length);
+                        assertEquals(expected, nearest[0]);
+                        hits++;
+                    }
+                }
+            }
+            assertTrue(hits > 0);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.mozilla.vrbrowser.input;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class InputEventQueueTest {
+
+    private final List<String> mEvents = new ArrayList<>();
+    private int mScheduledDrains;
+
+    private final InputEventQueue mQueue = new InputEventQueue(new InputEventQueue.Delegate() {
+        @Override
+        public void onMotionEvent(int aHandle, int aDevice, boolean aPressed, float aX, float aY) {
+            mEvents.add("motion " + aHandle + " " + aDevice + " " + aPressed + " " + (int)aX + "," + (int)aY);
+        }
+
+        @Override
+        public void onScrollEvent(int aHandle, int aDevice, float aX, float aY) {
+            mEvents.add("scroll " + aHandle + " " + aDevice + " " + (int)aX + "," + (int)aY);
+        }
+    }, () -> mScheduledDrains++);
+
+    @Test
+    public void hoverSamplesAreCoalescedPerDevice() {
+        mQueue.pushMotionEvent(1, 0, false, 1, 1);
+        mQueue.pushMotionEvent(1, 1, false, 5, 5);
+        mQueue.pushMotionEvent(1, 0, false, 2, 2);
+        mQueue.pushMotionEvent(1, 0, false, 3, 3);
+        mQueue.pushMotionEvent(1, 1, false, 6, 6);
+        assertEquals(1, mScheduledDrains);
+        mQueue.drain();
+
+        assertEquals(Arrays.asList("motion 1 0 false 3,3", "motion 1 1 false 6,6"), mEvents);
+        assertEquals(5, mQueue.getReceivedSamples());
+        assertEquals(3, mQueue.getCoalescedSamples());
+    }
+
+    @Test
+    public void pressTransitionsAreKept() {
+        mQueue.pushMotionEvent(1, 0, false, 1, 1);
+        mQueue.pushMotionEvent(1, 0, true, 2, 2);
+        mQueue.pushMotionEvent(1, 0, true, 3, 3);
+        mQueue.pushMotionEvent(1, 0, true, 4, 4);
+        mQueue.pushMotionEvent(1, 0, false, 5, 5);
+        mQueue.pushMotionEvent(2, 0, false, 6, 6);
+        mQueue.pushScrollEvent(2, 0, 0, 10);
+        mQueue.pushMotionEvent(2, 0, false, 7, 7);
+        mQueue.drain();
+
+        assertEquals(Arrays.asList(
+                "motion 1 0 false 1,1",
+                "motion 1 0 true 2,2",
+                "motion 1 0 true 4,4",
+                "motion 1 0 false 5,5",
+                "motion 2 0 false 6,6",
+                "scroll 2 0 0,10",
+                "motion 2 0 false 7,7"), mEvents);
+    }
+
+    @Test
+    public void buffersAreReused() {
+        for (int frame = 0; frame < 100; frame++) {
+            for (int i = 0; i < 20; i++) {
+                mQueue.pushMotionEvent(1, i, i % 2 == 0, frame, i);
+            }
+            mQueue.drain();
+        }
+        assertEquals(2000, mEvents.size());
+        assertEquals(100, mScheduledDrains);
+        assertEquals(100, mQueue.getDrainedFrames());
+        assertEquals(0, mQueue.getAllocations());
+
+        for (int i = 0; i < 100; i++) {
+            mQueue.pushScrollEvent(1, 0, 0, i);
+        }
+        mQueue.drain();
+        assertEquals(2100, mEvents.size());
+        assertEquals(2, mQueue.getAllocations());
+    }
+}
@@ -0,0 +1,133 @@
+package org.mozilla.vrbrowser.search.suggestions;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.ui.widgets.SuggestionsWidget.SuggestionItem;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import mozilla.components.concept.storage.BookmarkNode;
+import mozilla.components.concept.storage.BookmarkNodeType;
+import mozilla.components.concept.storage.VisitInfo;
+import mozilla.components.concept.storage.VisitType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class AutocompleteIndexTest {
+
+    private static final String[] WORDS = {
+            "news", "weather", "video", "music", "sports", "maps", "mail", "search", "shopping", "travel",
+            "recipes", "games", "science", "health", "finance", "movies", "books", "photos", "forum", "blog"
+    };
+
+    private static AutocompleteIndex createIndex() {
+        return new AutocompleteIndex(null, null, Runnable::run);
+    }
+
+    private static BookmarkNode bookmark(String aUrl, String aTitle) {
+        return new BookmarkNode(BookmarkNodeType.ITEM, aUrl, "mobile______", 0, aTitle, aUrl, null);
+    }
+
+    @Test
+    public void testRanking() {
+        long now = System.currentTimeMillis();
+        AutocompleteIndex index = createIndex();
+        index.build(
+                Arrays.asList("google.com", "github.com", "wikipedia.org", "gitlab.com"),
+                Arrays.asList(
+                        new VisitInfo("https://www.github.com/mozilla", "Mozilla on GitHub", now, VisitType.LINK),
+                        new VisitInfo("https://www.github.com/mozilla", "Mozilla on GitHub", now, VisitType.TYPED),
+                        new VisitInfo("https://en.wikipedia.org/wiki/Firefox", "Firefox - Wikipedia", now, VisitType.LINK)),
+                Collections.singletonList(bookmark("https://gitlab.com/explore", "Explore GitLab")));
+
+        // The bookmark bonus counts for the host too.
+        assertEquals("gitlab.com", index.getInlineCompletion("gi"));
+        assertEquals("Github.com", index.getInlineCompletion("Gith"));
+        assertEquals("www.github.com", index.getInlineCompletion("www.gith"));
+        assertEquals("google.com", index.getInlineCompletion("go"));
+        assertNull(index.getInlineCompletion("mozilla"));
+
+        List<AutocompleteIndex.Entry> results = index.query("git", AutocompleteIndex.MAX_RESULTS);
+        assertEquals(2, results.size());
+        assertEquals("https://gitlab.com/explore", results.get(0).getUrl());
+        assertTrue(results.get(0).isBookmarked());
+        assertEquals("https://www.github.com/mozilla", results.get(1).getUrl());
+
+        // Title words
+        assertEquals("https://www.github.com/mozilla", index.query("Mozi", 8).get(0).getUrl());
+        assertEquals("https://en.wikipedia.org/wiki/Firefox", index.query("fire", 8).get(0).getUrl());
+        assertTrue(index.query("zzz", 8).isEmpty());
+
+        assertFalse(AutocompleteIndex.isSupportedQuery("github.com/mozilla"));
+        assertFalse(AutocompleteIndex.isSupportedQuery("mozilla github"));
+        assertTrue(AutocompleteIndex.isSupportedQuery("github.co"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBookmarkSuggestionsKeepTheRank() {
+        long now = System.currentTimeMillis();
+        AutocompleteIndex index = createIndex();
+        // The visits rank the zeta bookmark first, the url order would put alpha first.
+        index.build(
+                Collections.emptyList(),
+                Arrays.asList(
+                        new VisitInfo("https://zeta.example.com/", "Zeta news", now, VisitType.TYPED),
+                        new VisitInfo("https://zeta.example.com/", "Zeta news", now, VisitType.TYPED)),
+                Arrays.asList(
+                        bookmark("https://alpha.example.com/", "Alpha news"),
+                        bookmark("https://zeta.example.com/", "Zeta news")));
+
+        List<SuggestionItem> items = SuggestionsProvider.createIndexItems(index.query("news", AutocompleteIndex.MAX_RESULTS));
+        items.sort(new SuggestionsProvider.DefaultSuggestionsComparator());
+        assertEquals(2, items.size());
+        assertEquals(SuggestionItem.Type.BOOKMARK, items.get(0).type);
+        assertEquals("https://zeta.example.com/", items.get(0).url);
+        assertEquals("https://alpha.example.com/", items.get(1).url);
+    }
+
+    @Test
+    public void testLargeHistory() {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+
+        List<String> domains = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            domains.add("domain" + i + ".com");
+        }
+        List<VisitInfo> visits = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            int page = (int) Math.abs(random.nextGaussian() * 5000) % 20000;
+            String title = WORDS[page % WORDS.length] + " " + WORDS[(page / 7) % WORDS.length] + " page " + page;
+            long age = (long) (random.nextDouble() * 180 * 24 * 3600 * 1000L);
+            visits.add(new VisitInfo("https://site" + (page % 3000) + ".example.org/page/" + page, title, now - age, VisitType.LINK));
+        }
+        List<BookmarkNode> bookmarks = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            bookmarks.add(bookmark("https://bookmark" + i + ".net/", "Bookmark " + WORDS[i % WORDS.length]));
+        }
+
+        AutocompleteIndex index = createIndex();
+        index.build(domains, visits, bookmarks);
+
+        for (int i = 0; i < 1000; i++) {
+            String word = i % 2 == 0 ? WORDS[random.nextInt(WORDS.length)] : "site" + random.nextInt(3000);
+            String prefix = word.substring(0, 1 + random.nextInt(word.length()));
+            List<AutocompleteIndex.Entry> results = index.query(prefix, AutocompleteIndex.MAX_RESULTS);
+            assertFalse(prefix, results.isEmpty());
+            assertTrue(prefix, results.size() <= AutocompleteIndex.MAX_RESULTS);
+        }
+        assertEquals("domain1999.com", index.getInlineCompletion("domain1999"));
+    }
+}
@@ -0,0 +1,153 @@
+package org.mozilla.vrbrowser.search.suggestions;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SuggestionsCacheTest {
+
+    private static final String ENGINE = "test-engine";
+    private static final List<String> COMPLETIONS = Arrays.asList(
+            "weather", "weather today", "weather tomorrow", "weather radar", "weatherford", "wear os");
+
+    private static final Function<String, List<String>> PARSER = input -> {
+        List<String> list = new ArrayList<>();
+        try {
+            JSONArray array = new JSONArray(input).getJSONArray(1);
+            for (int i = 0; i < array.length(); i++) {
+                list.add(array.getString(i));
+            }
+
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return list;
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private HttpServer mServer;
+    private AtomicInteger mRequests = new AtomicInteger();
+    // Requests are made from a thread without a looper so the responses are delivered right away.
+    private ExecutorService mRequestThread = Executors.newSingleThreadExecutor();
+    private long mNow = 1000;
+
+    @Before
+    public void setUp() throws Exception {
+        // Local stand-in for the search engine, answers with the completions starting with the query.
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/complete", exchange -> {
+            mRequests.incrementAndGet();
+            String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery().substring(2), "UTF-8");
+            JSONArray matches = new JSONArray();
+            for (String completion: COMPLETIONS) {
+                if (completion.startsWith(query)) {
+                    matches.put(completion);
+                }
+            }
+            byte[] body = new JSONArray().put(query).put(matches).toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        mRequestThread.shutdownNow();
+    }
+
+    private SuggestionsCache createCache(File aFile) {
+        return new SuggestionsCache(aFile, Runnable::run, () -> mNow);
+    }
+
+    private List<String> fetch(SuggestionsCache aCache, String aQuery) throws Exception {
+        String url = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/complete?q=" + aQuery;
+        return CompletableFuture.supplyAsync(
+                () -> SuggestionsClient.getSuggestions(aCache, ENGINE, aQuery, url, PARSER), mRequestThread)
+                .thenCompose(future -> future)
+                .get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void prefixExtensionsAreServedLocally() throws Exception {
+        SuggestionsCache cache = createCache(mFolder.newFile());
+
+        assertEquals(COMPLETIONS, fetch(cache, "wea"));
+        assertEquals(1, mRequests.get());
+
+        assertEquals(COMPLETIONS.subList(0, 5), fetch(cache, "weat"));
+        assertEquals(COMPLETIONS.subList(0, 5), fetch(cache, "WEATH "));
+        assertEquals(COMPLETIONS, fetch(cache, "wea"));
+        assertEquals(1, mRequests.get());
+
+        // Not enough local matches, the engine may know more.
+        assertEquals(Arrays.asList("weather today", "weather tomorrow"), fetch(cache, "weather t"));
+        assertEquals(2, mRequests.get());
+
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getPrefixHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0.6f, cache.getHitRate(), 0.001f);
+    }
+
+    @Test
+    public void entriesExpire() throws Exception {
+        SuggestionsCache cache = createCache(mFolder.newFile());
+        fetch(cache, "wea");
+        mNow += SuggestionsCache.TTL_MS + 1;
+        assertNull(cache.get(ENGINE, "wea"));
+        assertNull(cache.get(ENGINE, "weat"));
+    }
+
+    @Test
+    public void warmSetIsPersisted() throws Exception {
+        File file = new File(mFolder.getRoot(), "suggestions.json");
+        SuggestionsCache cache = createCache(file);
+        for (int i = 0; i < SuggestionsCache.WARM_SET_SIZE + 10; i++) {
+            cache.put(ENGINE, "query " + i, Arrays.asList("result " + i));
+        }
+        fetch(cache, "wea");
+        cache.save();
+
+        SuggestionsCache restored = createCache(file);
+        restored.load();
+        assertEquals(COMPLETIONS.subList(0, 5), fetch(restored, "weath"));
+        assertEquals(1, mRequests.get());
+        assertEquals(Arrays.asList("result 39"), restored.get(ENGINE, "query 39"));
+        // Only the most recently used entries are persisted.
+        assertNull(restored.get(ENGINE, "query 0"));
+    }
+}
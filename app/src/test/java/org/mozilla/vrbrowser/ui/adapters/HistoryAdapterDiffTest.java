@@ -0,0 +1,117 @@
+package org.mozilla.vrbrowser.ui.adapters;
+
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import mozilla.components.concept.storage.VisitInfo;
+import mozilla.components.concept.storage.VisitType;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class HistoryAdapterDiffTest {
+
+    private static class CountingCallback implements ListUpdateCallback {
+        int inserted;
+        int removed;
+        int moved;
+        int changed;
+
+        @Override
+        public void onInserted(int position, int count) {
+            inserted += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            removed += count;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            moved++;
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            changed += count;
+        }
+    }
+
+    private final CountingCallback mCallback = new CountingCallback();
+
+    @Before
+    public void setUp() {
+        // Results posted from the diff thread only run when the test drains the main looper.
+        ShadowLooper.pauseMainLooper();
+    }
+
+    // New visits at the top, the oldest ones dropped and some titles changed.
+    private static List<VisitInfo> createVisits(int aCount, int aNewest) {
+        ArrayList<VisitInfo> visits = new ArrayList<>();
+        for (int i = aNewest; i > aNewest - aCount; --i) {
+            String title = i % 7 == 0 && aNewest > aCount ? "Changed " + i : "Title " + i;
+            visits.add(new VisitInfo("https://example.com/" + i, title, i, VisitType.LINK));
+        }
+        return visits;
+    }
+
+    @Test
+    public void onlyChangedRowsAreDispatched() throws InterruptedException {
+        AsyncListDiffer<VisitInfo> differ = createDiffer();
+        awaitCommit(differ, createVisits(1000, 1000));
+        mCallback.inserted = 0;
+
+        List<VisitInfo> newList = createVisits(1000, 1100);
+        awaitCommit(differ, newList);
+
+        assertEquals(newList, differ.getCurrentList());
+        assertEquals(100, mCallback.inserted);
+        assertEquals(100, mCallback.removed);
+        assertEquals(0, mCallback.moved);
+        // Visits 101 to 1000 whose title changed.
+        assertEquals(128, mCallback.changed);
+    }
+
+    @Test
+    public void staleListsAreDiscarded() throws InterruptedException {
+        AsyncListDiffer<VisitInfo> differ = createDiffer();
+        differ.submitList(createVisits(1000, 1000));
+
+        List<VisitInfo> stale = createVisits(1000, 1100);
+        List<VisitInfo> latest = createVisits(1000, 1200);
+        differ.submitList(stale);
+        awaitCommit(differ, latest);
+
+        assertEquals(latest, differ.getCurrentList());
+    }
+
+    private AsyncListDiffer<VisitInfo> createDiffer() {
+        return new AsyncListDiffer<>(mCallback, new AsyncDifferConfig.Builder<>(HistoryAdapter.DIFF_CALLBACK).build());
+    }
+
+    private void awaitCommit(AsyncListDiffer<VisitInfo> aDiffer, List<VisitInfo> aList) throws InterruptedException {
+        CountDownLatch committed = new CountDownLatch(1);
+        aDiffer.submitList(aList, committed::countDown);
+        while (committed.getCount() > 0) {
+            ShadowLooper.runUiThreadTasks();
+            if (committed.getCount() > 0) {
+                Thread.sleep(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.mozilla.vrbrowser.ui.keyboards;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.input.CustomKeyboard;
+import org.mozilla.vrbrowser.ui.keyboards.KeyboardInterface.CandidatesResult;
+import org.mozilla.vrbrowser.ui.keyboards.KeyboardInterface.Words;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CandidatesEngineTest {
+
+    private static class TestKeyboard implements KeyboardInterface {
+        List<String> mRequests = new ArrayList<>();
+        int mWords = 3;
+
+        @Override
+        public CandidatesResult getCandidates(String aComposingText) {
+            mRequests.add(aComposingText);
+            CandidatesResult result = new CandidatesResult();
+            result.words = new ArrayList<>();
+            for (int i = 0; i < mWords; i++) {
+                result.words.add(new Words(1, aComposingText, aComposingText + i));
+            }
+            result.composing = aComposingText;
+            return result;
+        }
+
+        @NonNull
+        @Override
+        public CustomKeyboard getAlphabeticKeyboard() {
+            return null;
+        }
+
+        @Override
+        public float getAlphabeticKeyboardWidth() {
+            return 0;
+        }
+
+        @Override
+        public String getComposingText(String aComposing, String aCode) {
+            return aComposing;
+        }
+
+        @Override
+        public String getKeyboardTitle() {
+            return "Test";
+        }
+
+        @Override
+        public Locale getLocale() {
+            return Locale.ENGLISH;
+        }
+
+        @Override
+        public String getSpaceKeyText(String aComposingText) {
+            return "";
+        }
+
+        @Override
+        public String getEnterKeyText(int aIMEOptions, String aComposingText) {
+            return "";
+        }
+
+        @Override
+        public String getModeChangeKeyText() {
+            return "";
+        }
+    }
+
+    private final ArrayDeque<Runnable> mWorker = new ArrayDeque<>();
+    private final ArrayDeque<Runnable> mMainThread = new ArrayDeque<>();
+    private final CandidatesEngine mEngine = new CandidatesEngine(mWorker::add, mMainThread::add);
+
+    private static void runAll(ArrayDeque<Runnable> aQueue) {
+        while (!aQueue.isEmpty()) {
+            aQueue.poll().run();
+        }
+    }
+
+    @Test
+    public void supersededRequestsAreSkipped() {
+        TestKeyboard keyboard = new TestKeyboard();
+        List<CandidatesResult> delivered = new ArrayList<>();
+        mEngine.getCandidates(keyboard, "n", delivered::add);
+        mEngine.getCandidates(keyboard, "ni", delivered::add);
+        mEngine.getCandidates(keyboard, "nih", delivered::add);
+        runAll(mWorker);
+        runAll(mMainThread);
+
+        assertEquals(Arrays.asList("nih"), keyboard.mRequests);
+        assertEquals(1, delivered.size());
+        assertEquals("nih", delivered.get(0).composing);
+        assertEquals(1, mEngine.getDeliveredRequests());
+        assertEquals(2, mEngine.getCancelledRequests());
+        assertEquals(1, sum(mEngine.getLatencyHistogram(TestKeyboard.class)));
+        assertEquals(0, sum(mEngine.getLatencyHistogram(JapaneseKeyboard.class)));
+    }
+
+    @Test
+    public void resultsOfSupersededRequestsAreDiscarded() {
+        TestKeyboard keyboard = new TestKeyboard();
+        List<CandidatesResult> delivered = new ArrayList<>();
+        mEngine.getCandidates(keyboard, "n", delivered::add);
+        runAll(mWorker);
+        // Computed, but a new key was typed before the result reached the main thread.
+        mEngine.getCandidates(keyboard, "ni", delivered::add);
+        runAll(mMainThread);
+        assertEquals(0, delivered.size());
+
+        runAll(mWorker);
+        runAll(mMainThread);
+        assertEquals(1, delivered.size());
+        assertEquals("ni", delivered.get(0).composing);
+
+        mEngine.getCandidates(keyboard, "nih", delivered::add);
+        mEngine.cancel();
+        runAll(mWorker);
+        runAll(mMainThread);
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void releasedEngineIgnoresRequests() {
+        TestKeyboard keyboard = new TestKeyboard();
+        List<CandidatesResult> delivered = new ArrayList<>();
+        mEngine.getCandidates(keyboard, "n", delivered::add);
+        mEngine.release();
+        mEngine.getCandidates(keyboard, "ni", delivered::add);
+        mEngine.clear(keyboard);
+        runAll(mWorker);
+        runAll(mMainThread);
+        assertEquals(0, delivered.size());
+        assertTrue(keyboard.mRequests.isEmpty());
+    }
+
+    @Test
+    public void releaseStopsTheEngineThread() throws InterruptedException {
+        CandidatesEngine engine = new CandidatesEngine(mMainThread::add);
+        TestKeyboard keyboard = new TestKeyboard();
+        engine.getCandidates(keyboard, "n", result -> {});
+        engine.release();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (hasEngineThread() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(hasEngineThread());
+    }
+
+    private static boolean hasEngineThread() {
+        for (Thread thread: Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("CandidatesEngine") && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void onlyTheFirstPageIsDelivered() {
+        TestKeyboard keyboard = new TestKeyboard();
+        keyboard.mWords = CandidatesEngine.FIRST_PAGE_SIZE + 30;
+        List<CandidatesResult> delivered = new ArrayList<>();
+        List<List<Words>> more = new ArrayList<>();
+        mEngine.getCandidates(keyboard, "a", delivered::add);
+        runAll(mWorker);
+        runAll(mMainThread);
+        assertEquals(CandidatesEngine.FIRST_PAGE_SIZE, delivered.get(0).words.size());
+        assertNotNull(delivered.get(0).moreWords);
+
+        mEngine.getMoreCandidates(more::add);
+        runAll(mWorker);
+        runAll(mMainThread);
+        assertEquals(1, more.size());
+        assertEquals(30, more.get(0).size());
+        assertEquals("a" + CandidatesEngine.FIRST_PAGE_SIZE, more.get(0).get(0).value);
+
+        // The rest of a superseded result is never delivered.
+        keyboard.mWords = 3;
+        mEngine.getCandidates(keyboard, "ab", delivered::add);
+        runAll(mWorker);
+        runAll(mMainThread);
+        assertNull(delivered.get(1).moreWords);
+        mEngine.getMoreCandidates(more::add);
+        runAll(mWorker);
+        runAll(mMainThread);
+        assertEquals(1, more.size());
+    }
+
+    private static int sum(int[] aHistogram) {
+        int sum = 0;
+        for (int count: aHistogram) {
+            sum += count;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,137 @@
+package org.mozilla.vrbrowser.ui.keyboards;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class PinyinDictionaryTest {
+
+    private static final File DATABASE = new File("src/main/assets/databases/google_pinyin.db");
+    private static final String[] TYPED = {
+            "nihao", "zhongguoren", "women", "xiexieni", "jintiantianqihenhao", "woxiangqubeijing",
+            "dajiahao", "shenmeshihou", "zaijian", "duibuqi"
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private SQLiteDatabase mDatabase;
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        File database = mFolder.newFile("google_pinyin.db");
+        Files.copy(DATABASE.toPath(), database.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        mDatabase = SQLiteDatabase.openDatabase(database.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        mFile = new File(mFolder.getRoot(), "google_pinyin.dict");
+        PinyinDictionary.compile(mDatabase, 1, mFile);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    // The lookups ChinesePinyinKeyboard used to run for every key.
+    private List<String> queryDisplays(String aKey) {
+        List<String> result = new ArrayList<>();
+        String[] args = { aKey };
+        try (Cursor cursor = mDatabase.rawQuery("SELECT keymap, display, candidates FROM keymaps where keymap = ? ORDER BY _id ASC", args)) {
+            while (cursor.moveToNext()) {
+                addSplit(result, cursor.getString(1));
+            }
+        }
+        try (Cursor cursor = mDatabase.rawQuery("SELECT inputcode, displaycode, display FROM autocorrect where inputcode = ? ORDER BY _id ASC", args)) {
+            while (cursor.moveToNext()) {
+                addSplit(result, cursor.getString(2));
+            }
+        }
+        return result;
+    }
+
+    private static void addSplit(List<String> aList, String aValues) {
+        if (aValues != null && !aValues.isEmpty()) {
+            for (String value: aValues.split("\\|")) {
+                aList.add(value);
+            }
+        }
+    }
+
+    private static List<String> values(List<KeyboardInterface.Words> aWords) {
+        List<String> result = new ArrayList<>();
+        for (KeyboardInterface.Words words: aWords) {
+            result.add(words.value);
+        }
+        return result;
+    }
+
+    @Test
+    public void matchesDatabase() throws Exception {
+        PinyinDictionary dictionary = PinyinDictionary.open(mFile, 1);
+        List<String> keys = new ArrayList<>();
+        try (Cursor cursor = mDatabase.rawQuery("SELECT DISTINCT keymap FROM keymaps UNION SELECT DISTINCT inputcode FROM autocorrect", null)) {
+            while (cursor.moveToNext()) {
+                keys.add(cursor.getString(0));
+            }
+        }
+        for (String key: keys) {
+            int value = dictionary.getValue(key);
+            assertTrue(key, value >= 0);
+            assertEquals(key, queryDisplays(key), values(dictionary.getDisplays(value)));
+        }
+        assertEquals(-1, dictionary.getValue("zzzz"));
+
+        int[] prefixes = dictionary.getPrefixValues("nihao", 0);
+        assertEquals(5, prefixes.length);
+        assertEquals(dictionary.getValue("ni"), prefixes[1]);
+        assertEquals(dictionary.getValue("nihao"), prefixes[4]);
+    }
+
+    @Test(expected = IOException.class)
+    public void outdatedDictionaryIsRejected() throws Exception {
+        PinyinDictionary.open(mFile, 2);
+    }
+
+    @Test
+    public void typedPrefixesMatchDatabase() throws Exception {
+        PinyinDictionary dictionary = PinyinDictionary.open(mFile, 1);
+        // Every keystroke looks up all the prefixes of the composing text, like getCandidates().
+        for (String text: TYPED) {
+            for (int i = 1; i <= text.length(); i++) {
+                String composing = text.substring(0, i);
+                int[] values = dictionary.getPrefixValues(composing, 0);
+                assertEquals(composing.length(), values.length);
+                for (int length = 1; length <= composing.length(); length++) {
+                    String prefix = composing.substring(0, length);
+                    int value = values[length - 1];
+                    List<String> expected = queryDisplays(prefix);
+                    if (value < 0) {
+                        assertTrue(prefix, expected.isEmpty());
+                    } else {
+                        assertEquals(prefix, expected, values(dictionary.getDisplays(value)));
+                    }
+                }
+            }
+        }
+    }
+}
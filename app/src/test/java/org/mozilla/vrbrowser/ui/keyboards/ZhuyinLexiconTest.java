@@ -0,0 +1,151 @@
+package org.mozilla.vrbrowser.ui.keyboards;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ZhuyinLexiconTest {
+
+    private static final int LIMIT = 50;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private SQLiteDatabase mWords;
+    private SQLiteDatabase mPhrases;
+    private ZhuyinLexicon mLexicon;
+
+    private SQLiteDatabase openAsset(String aName) throws Exception {
+        File database = mFolder.newFile(aName);
+        Files.copy(new File("src/main/assets/databases/" + aName).toPath(), database.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return SQLiteDatabase.openDatabase(database.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mWords = openAsset("zhuyin_words.db");
+        mPhrases = openAsset("zhuyin_phrases.db");
+        File file = new File(mFolder.getRoot(), "zhuyin.lexicon");
+        ZhuyinLexicon.compile(mWords, mPhrases, 1, file);
+        mLexicon = ZhuyinLexicon.open(file, 1);
+    }
+
+    @After
+    public void tearDown() {
+        mWords.close();
+        mPhrases.close();
+    }
+
+    // Words of a query with their frequency, most frequent first. The lexicon keeps the most
+    // frequent entry of every word.
+    private static LinkedHashMap<String, Integer> queryFrequencies(SQLiteDatabase aDatabase, String aQuery, String... aArgs) {
+        LinkedHashMap<String, Integer> result = new LinkedHashMap<>();
+        try (Cursor cursor = aDatabase.rawQuery(aQuery, aArgs)) {
+            while (cursor.moveToNext()) {
+                result.put(cursor.getString(0), cursor.getInt(1));
+            }
+        }
+        return result;
+    }
+
+    // Checks that the next words of the lookup are the most frequent words of the group. Words
+    // with the same frequency may come in any order, so their frequencies are compared.
+    private static int assertGroup(String aCode, List<String> aActual, int aStart, LinkedHashMap<String, Integer> aGroup) {
+        int count = Math.min(aGroup.size(), LIMIT - aStart);
+        List<Integer> expected = new ArrayList<>(aGroup.values()).subList(0, count);
+        List<Integer> actual = new ArrayList<>();
+        for (String word: aActual.subList(aStart, Math.min(aStart + count, aActual.size()))) {
+            actual.add(aGroup.get(word));
+        }
+        assertEquals(aCode, expected, actual);
+        return aStart + count;
+    }
+
+    private List<String> lookup(String aCode, boolean aExact) {
+        List<String> result = new ArrayList<>();
+        for (KeyboardInterface.Words words: mLexicon.getWords(aCode, aExact, LIMIT)) {
+            result.add(words.value);
+        }
+        return result;
+    }
+
+    private List<String> getCodes() {
+        List<String> codes = new ArrayList<>();
+        try (Cursor cursor = mWords.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name LIKE 'words_%'", null)) {
+            while (cursor.moveToNext()) {
+                String table = cursor.getString(0);
+                try (Cursor codesCursor = mWords.rawQuery("SELECT DISTINCT code FROM " + table, null)) {
+                    while (codesCursor.moveToNext()) {
+                        codes.add(codesCursor.getString(0));
+                    }
+                }
+            }
+        }
+        return codes;
+    }
+
+    @Test
+    public void matchesDatabase() {
+        for (String code: getCodes()) {
+            boolean exact = code.length() > 2 && code.charAt(code.length() - 2) == '4';
+            List<String> actual = lookup(code, exact);
+            assertFalse(code, actual.isEmpty());
+            assertEquals(code, actual.size(), new HashSet<>(actual).size());
+
+            // The exact words, then the other words starting with the code that are not exact
+            // words too, then the phrases starting with the code.
+            String table = code.substring(0, 2);
+            int position = assertGroup(code, actual, 0, queryFrequencies(mWords,
+                    "SELECT word, MAX(frequency) AS f FROM words_" + table + " WHERE code = ? GROUP BY word ORDER BY f DESC",
+                    code));
+            if (!exact) {
+                position = assertGroup(code, actual, position, queryFrequencies(mWords,
+                        "SELECT word, MAX(frequency) AS f FROM words_" + table + " WHERE code LIKE ? AND code != ? AND " +
+                                "word NOT IN (SELECT word FROM words_" + table + " WHERE code = ?) GROUP BY word ORDER BY f DESC",
+                        code + "%", code, code));
+            }
+            if (position < LIMIT) {
+                position = assertGroup(code, actual, position, queryFrequencies(mPhrases,
+                        "SELECT word, MAX(frequency) AS f FROM phrases_" + table + " WHERE code LIKE ? GROUP BY word ORDER BY f DESC",
+                        code + "%"));
+            }
+            assertEquals(code, position, actual.size());
+        }
+        assertTrue(lookup("1K1K1K1K", false).isEmpty());
+        assertEquals(10, mLexicon.getFrequentCodes(10).size());
+    }
+
+    @Test
+    public void smallerLimitsReturnTheFirstWords() {
+        for (String code: getCodes()) {
+            List<String> words = lookup(code, false);
+            List<String> first = new ArrayList<>();
+            for (KeyboardInterface.Words word: mLexicon.getWords(code, false, 5)) {
+                first.add(word.value);
+            }
+            assertEquals(code, words.subList(0, Math.min(5, words.size())), first);
+        }
+    }
+}
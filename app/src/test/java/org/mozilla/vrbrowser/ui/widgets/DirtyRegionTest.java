@@ -0,0 +1,94 @@
+package org.mozilla.vrbrowser.ui.widgets;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DirtyRegionTest {
+
+    private static DirtyRegion createDrawnRegion() {
+        DirtyRegion region = new DirtyRegion();
+        region.takeTextureRect(100, 50, 100, 50);
+        return region;
+    }
+
+    @Test
+    public void startsWithFullRedraw() {
+        DirtyRegion region = new DirtyRegion();
+        region.add(new Rect(0, 0, 10, 10));
+
+        assertTrue(region.isFull());
+        assertNull(region.takeTextureRect(100, 50, 100, 50));
+        assertTrue(region.isFull());
+    }
+
+    @Test
+    public void unitesInvalidatedRects() {
+        DirtyRegion region = createDrawnRegion();
+        region.add(new Rect(10, 5, 20, 15));
+        region.add(new Rect(40, 30, 50, 35));
+
+        assertFalse(region.isFull());
+        assertEquals(new Rect(10, 5, 50, 35), region.getRect());
+        assertEquals(new Rect(10, 5, 50, 35), region.takeTextureRect(100, 50, 100, 50));
+    }
+
+    @Test
+    public void scalesEachAxisToTheTexture() {
+        DirtyRegion region = createDrawnRegion();
+        region.add(new Rect(10, 5, 21, 15));
+
+        // 2x horizontally, 2.02x vertically: within a pixel of the same aspect ratio.
+        assertEquals(new Rect(20, 10, 42, 31), region.takeTextureRect(100, 50, 200, 101));
+    }
+
+    @Test
+    public void redrawsFullyWhenTheAspectRatioDiffers() {
+        DirtyRegion region = createDrawnRegion();
+        region.add(new Rect(10, 5, 20, 15));
+
+        assertNull(region.takeTextureRect(100, 50, 200, 50));
+    }
+
+    @Test
+    public void clampsToTheTexture() {
+        DirtyRegion region = createDrawnRegion();
+        region.add(new Rect(-10, 40, 30, 70));
+        assertEquals(new Rect(0, 80, 60, 100), region.takeTextureRect(100, 50, 200, 100));
+
+        region.add(new Rect(120, 60, 130, 70));
+        assertNull(region.takeTextureRect(100, 50, 200, 100));
+    }
+
+    @Test
+    public void addAllInvalidatesEverything() {
+        DirtyRegion region = createDrawnRegion();
+        region.add(new Rect(10, 5, 20, 15));
+        region.addAll();
+        region.add(new Rect(30, 5, 40, 15));
+
+        assertTrue(region.isFull());
+        assertNull(region.takeTextureRect(100, 50, 100, 50));
+    }
+
+    @Test
+    public void takeResetsTheRegion() {
+        DirtyRegion region = createDrawnRegion();
+        region.add(new Rect(10, 5, 20, 15));
+        region.takeTextureRect(100, 50, 100, 50);
+
+        assertTrue(region.getRect().isEmpty());
+        region.add(new Rect(30, 5, 40, 15));
+        assertEquals(new Rect(30, 5, 40, 15), region.takeTextureRect(100, 50, 100, 50));
+    }
+}
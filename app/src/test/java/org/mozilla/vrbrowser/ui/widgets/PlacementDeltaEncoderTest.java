@@ -0,0 +1,213 @@
+package org.mozilla.vrbrowser.ui.widgets;
+
+import android.util.SparseArray;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class PlacementDeltaEncoderTest {
+
+    private static WidgetPlacement createPlacement() {
+        return new WidgetPlacement(ApplicationProvider.getApplicationContext());
+    }
+
+    // Same format as WidgetPlacement::FromDelta.
+    private static void decode(PlacementDeltaEncoder.Packet aPacket, SparseArray<WidgetPlacement> aPlacements) {
+        ByteBuffer buffer = aPacket.getBuffer().duplicate().order(aPacket.getBuffer().order());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            int handle = buffer.getInt();
+            int mask = buffer.getInt();
+            WidgetPlacement p = aPlacements.get(handle);
+            if (p == null) {
+                assertEquals(PlacementDeltaEncoder.ALL_FIELDS, mask);
+                p = createPlacement();
+                aPlacements.put(handle, p);
+            }
+            if ((mask & PlacementDeltaEncoder.FIELD_WIDTH) != 0) p.width = buffer.getInt();
+            if ((mask & PlacementDeltaEncoder.FIELD_HEIGHT) != 0) p.height = buffer.getInt();
+            if ((mask & PlacementDeltaEncoder.FIELD_ANCHOR_X) != 0) p.anchorX = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_ANCHOR_Y) != 0) p.anchorY = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_TRANSLATION_X) != 0) p.translationX = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_TRANSLATION_Y) != 0) p.translationY = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_TRANSLATION_Z) != 0) p.translationZ = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_ROTATION_AXIS_X) != 0) p.rotationAxisX = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_ROTATION_AXIS_Y) != 0) p.rotationAxisY = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_ROTATION_AXIS_Z) != 0) p.rotationAxisZ = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_ROTATION) != 0) p.rotation = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_PARENT_HANDLE) != 0) p.parentHandle = buffer.getInt();
+            if ((mask & PlacementDeltaEncoder.FIELD_PARENT_ANCHOR_X) != 0) p.parentAnchorX = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_PARENT_ANCHOR_Y) != 0) p.parentAnchorY = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_DENSITY) != 0) p.density = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_WORLD_WIDTH) != 0) p.worldWidth = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_VISIBLE) != 0) p.visible = buffer.getInt() != 0;
+            if ((mask & PlacementDeltaEncoder.FIELD_OPAQUE) != 0) p.opaque = buffer.getInt() != 0;
+            if ((mask & PlacementDeltaEncoder.FIELD_SHOW_POINTER) != 0) p.showPointer = buffer.getInt() != 0;
+            if ((mask & PlacementDeltaEncoder.FIELD_COMPOSITED) != 0) p.composited = buffer.getInt() != 0;
+            if ((mask & PlacementDeltaEncoder.FIELD_LAYER) != 0) p.layer = buffer.getInt() != 0;
+            if ((mask & PlacementDeltaEncoder.FIELD_PROXIFY_LAYER) != 0) p.proxifyLayer = buffer.getInt() != 0;
+            if ((mask & PlacementDeltaEncoder.FIELD_TEXTURE_SCALE) != 0) p.textureScale = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_CYLINDER) != 0) p.cylinder = buffer.getInt() != 0;
+            if ((mask & PlacementDeltaEncoder.FIELD_CYLINDER_MAP_RADIUS) != 0) p.cylinderMapRadius = buffer.getFloat();
+            if ((mask & PlacementDeltaEncoder.FIELD_TINT_COLOR) != 0) p.tintColor = buffer.getInt();
+            if ((mask & PlacementDeltaEncoder.FIELD_BORDER_COLOR) != 0) p.borderColor = buffer.getInt();
+            if ((mask & PlacementDeltaEncoder.FIELD_NAME) != 0) {
+                byte[] name = new byte[buffer.getInt()];
+                buffer.get(name);
+                buffer.position((buffer.position() + 3) & ~3);
+                p.name = new String(name, StandardCharsets.UTF_8);
+            }
+            if ((mask & PlacementDeltaEncoder.FIELD_CLEAR_COLOR) != 0) p.clearColor = buffer.getInt();
+        }
+    }
+
+    private static void assertSamePlacement(WidgetPlacement a, WidgetPlacement b) {
+        assertEquals(a.width, b.width);
+        assertEquals(a.height, b.height);
+        assertEquals(a.translationX, b.translationX, 0);
+        assertEquals(a.translationY, b.translationY, 0);
+        assertEquals(a.rotation, b.rotation, 0);
+        assertEquals(a.parentHandle, b.parentHandle);
+        assertEquals(a.visible, b.visible);
+        assertEquals(a.textureScale, b.textureScale, 0);
+        assertEquals(a.cylinderMapRadius, b.cylinderMapRadius, 0);
+        assertEquals(a.tintColor, b.tintColor);
+        // Null names are sent empty, the native placement has no null names either.
+        assertEquals(a.name != null ? a.name : "", b.name);
+        assertEquals(a.clearColor, b.clearColor);
+    }
+
+    @Test
+    public void decodedPlacementsMatch() {
+        PlacementDeltaEncoder encoder = new PlacementDeltaEncoder();
+        SparseArray<WidgetPlacement> decoded = new SparseArray<>();
+        WidgetPlacement[] placements = new WidgetPlacement[4];
+        for (int i = 0; i < placements.length; i++) {
+            placements[i] = createPlacement();
+            placements[i].name = i % 2 == 0 ? "Widget" + i : null;
+        }
+        Random random = new Random(1);
+        for (int frame = 0; frame < 200; frame++) {
+            for (int i = 0; i < placements.length; i++) {
+                WidgetPlacement p = placements[i];
+                switch (random.nextInt(8)) {
+                    case 0: p.width = random.nextInt(1000); break;
+                    case 1: p.translationX = random.nextFloat(); p.translationY = random.nextFloat(); break;
+                    case 2: p.visible = !p.visible; break;
+                    case 3: p.name = "Wídget" + random.nextInt(100); break;
+                    case 4: p.tintColor = random.nextInt(); p.clearColor = random.nextInt(); break;
+                    case 5: p.rotation = random.nextFloat(); p.parentHandle = random.nextInt(4); break;
+                    default: break;
+                }
+                encoder.write(i, p);
+            }
+            PlacementDeltaEncoder.Packet packet = encoder.take();
+            if (packet != null) {
+                decode(packet, decoded);
+                packet.recycle();
+            }
+            for (int i = 0; i < placements.length; i++) {
+                assertSamePlacement(placements[i], decoded.get(i));
+            }
+        }
+        assertTrue(encoder.getUnchangedUpdates() > 0);
+    }
+
+    @Test
+    public void resetWidgetsAreSentWhole() {
+        PlacementDeltaEncoder encoder = new PlacementDeltaEncoder();
+        WidgetPlacement placement = createPlacement();
+        encoder.write(1, placement);
+        encoder.take().recycle();
+        encoder.write(1, placement);
+        assertNull(encoder.take());
+
+        encoder.reset(1);
+        encoder.write(1, placement);
+        PlacementDeltaEncoder.Packet packet = encoder.take();
+        assertNotNull(packet);
+        assertEquals(PlacementDeltaEncoder.ALL_FIELDS, packet.getBuffer().getInt(4));
+    }
+
+    @Test
+    public void resetEncoderSendsEveryWidgetWhole() {
+        PlacementDeltaEncoder encoder = new PlacementDeltaEncoder();
+        WidgetPlacement placement = createPlacement();
+        encoder.write(1, placement);
+        encoder.write(2, placement);
+        encoder.take().recycle();
+
+        // E.g. after the render thread rejected a packet.
+        encoder.reset();
+        placement.translationX = 1;
+        encoder.write(1, placement);
+        encoder.write(2, placement);
+        PlacementDeltaEncoder.Packet packet = encoder.take();
+        assertNotNull(packet);
+        assertEquals(2, packet.getCount());
+        SparseArray<WidgetPlacement> decoded = new SparseArray<>();
+        decode(packet, decoded);
+        assertSamePlacement(placement, decoded.get(1));
+        assertSamePlacement(placement, decoded.get(2));
+    }
+
+    @Test
+    public void windowDragSendsOnlyChangedFields() {
+        // A window being dragged with its title bar and navigation bar attached, the mover and
+        // the attached widgets update their placements several times per frame.
+        final int frames = 300;
+        final int updatesPerFrame = 4;
+        final int fieldCount = 29;
+        WidgetPlacement window = createPlacement();
+        WidgetPlacement title = createPlacement();
+        WidgetPlacement navigation = createPlacement();
+        title.parentHandle = 1;
+        navigation.parentHandle = 1;
+
+        ArrayDeque<Runnable> mainThread = new ArrayDeque<>();
+        int[] packets = new int[1];
+        WidgetFrameScheduler scheduler = new WidgetFrameScheduler((aPacket, aUpdateVisibleWidgets) -> {
+            if (aPacket != null) {
+                packets[0]++;
+                aPacket.recycle();
+            }
+        }, mainThread::add);
+        for (int frame = 0; frame < frames; frame++) {
+            for (int i = 0; i < updatesPerFrame; i++) {
+                window.translationX = frame + i / (float)updatesPerFrame;
+                scheduler.scheduleUpdate(1, window);
+                scheduler.scheduleUpdate(2, title);
+                scheduler.scheduleUpdate(3, navigation);
+            }
+            scheduler.onFrame();
+            while (!mainThread.isEmpty()) {
+                mainThread.poll().run();
+            }
+        }
+
+        // A packet per frame, the first one has the three widgets whole and the next ones only
+        // the translation of the window.
+        PlacementDeltaEncoder encoder = scheduler.getPlacementEncoder();
+        assertEquals(frames, packets[0]);
+        assertEquals(frames * updatesPerFrame * 3, scheduler.getRequestedUpdates());
+        assertEquals(frames + 2, scheduler.getSentUpdates());
+        assertEquals(3 * fieldCount + frames - 1, encoder.getEncodedFields());
+        assertEquals(2 * (frames - 1), encoder.getUnchangedUpdates());
+    }
+}
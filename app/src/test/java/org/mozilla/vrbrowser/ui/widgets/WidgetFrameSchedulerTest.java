@@ -0,0 +1,172 @@
+package org.mozilla.vrbrowser.ui.widgets;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class WidgetFrameSchedulerTest {
+
+    private final ArrayDeque<Runnable> mMainThread = new ArrayDeque<>();
+    private final List<PlacementDeltaEncoder.Packet> mPackets = new ArrayList<>();
+    private final List<Boolean> mVisibleWidgetsUpdates = new ArrayList<>();
+    private final Map<Integer, WidgetPlacement> mWidgets = new LinkedHashMap<>();
+    private int mResends;
+
+    private final WidgetFrameScheduler mScheduler = new WidgetFrameScheduler(new WidgetFrameScheduler.Delegate() {
+        @Override
+        public void onUpdatePlacements(PlacementDeltaEncoder.Packet aPacket, boolean aUpdateVisibleWidgets) {
+            mPackets.add(aPacket);
+            mVisibleWidgetsUpdates.add(aUpdateVisibleWidgets);
+        }
+
+        @Override
+        public void onResendPlacements() {
+            mResends++;
+            for (Map.Entry<Integer, WidgetPlacement> widget: mWidgets.entrySet()) {
+                mScheduler.scheduleUpdate(widget.getKey(), widget.getValue());
+            }
+        }
+    }, mMainThread::add);
+
+    private static WidgetPlacement createPlacement() {
+        return new WidgetPlacement(ApplicationProvider.getApplicationContext());
+    }
+
+    private void frame() {
+        mScheduler.onFrame();
+        while (!mMainThread.isEmpty()) {
+            mMainThread.poll().run();
+        }
+    }
+
+    @Test
+    public void updatesAreSentOncePerFrame() {
+        WidgetPlacement first = createPlacement();
+        WidgetPlacement second = createPlacement();
+        for (int i = 1; i <= 10; i++) {
+            first.width = i;
+            mScheduler.scheduleUpdate(1, first);
+            mScheduler.scheduleUpdate(2, second);
+        }
+        mScheduler.scheduleVisibleWidgetsUpdate();
+        assertTrue(mPackets.isEmpty());
+
+        mScheduler.onFrame();
+        mScheduler.onFrame();
+        assertEquals(1, mMainThread.size());
+        frame();
+
+        assertEquals(1, mPackets.size());
+        assertEquals(2, mPackets.get(0).getCount());
+        assertTrue(mVisibleWidgetsUpdates.get(0));
+        assertEquals(20, mScheduler.getRequestedUpdates());
+        assertEquals(2, mScheduler.getSentUpdates());
+        assertEquals(2, mScheduler.getLastFrameUpdates());
+
+        // Updates without changes are not sent.
+        mScheduler.scheduleUpdate(2, second);
+        frame();
+        assertEquals(1, mPackets.size());
+
+        // Nothing is posted without pending work.
+        mScheduler.onFrame();
+        assertTrue(mMainThread.isEmpty());
+        assertEquals(2, mScheduler.getFrames());
+    }
+
+    @Test
+    public void flushedAndResetUpdatesAreNotSentAgain() {
+        WidgetPlacement placement = createPlacement();
+        mScheduler.scheduleUpdate(1, placement);
+        mScheduler.flushUpdates();
+        assertEquals(1, mPackets.size());
+        assertFalse(mVisibleWidgetsUpdates.get(0));
+
+        placement.width = 10;
+        mScheduler.scheduleUpdate(2, placement);
+        mScheduler.resetWidget(2);
+        frame();
+        assertEquals(1, mPackets.size());
+        assertEquals(1, mScheduler.getLastFrameUpdates());
+    }
+
+    @Test
+    public void rejectedPlacementsAreResentWholeBeforeTheNextUpdate() {
+        WidgetPlacement first = createPlacement();
+        WidgetPlacement second = createPlacement();
+        mWidgets.put(1, first);
+        mWidgets.put(2, second);
+        mScheduler.scheduleUpdate(1, first);
+        mScheduler.scheduleUpdate(2, second);
+        frame();
+        first.width = 5;
+        mScheduler.scheduleUpdate(1, first);
+        frame();
+        assertEquals(2, mPackets.size());
+        assertEquals(1, mPackets.get(1).getCount());
+        assertFalse(mPackets.get(1).isResync());
+
+        // The render thread rejects the delta, the next frame resends everything.
+        mScheduler.onPlacementsRejected();
+        first.width = 10;
+        mScheduler.scheduleUpdate(1, first);
+        frame();
+        assertEquals(1, mResends);
+        assertEquals(3, mPackets.size());
+        PlacementDeltaEncoder.Packet resync = mPackets.get(2);
+        assertTrue(resync.isResync());
+        assertEquals(2, resync.getCount());
+        assertEquals(mPackets.get(0).getLength(), resync.getLength());
+
+        // Updates after the resync are deltas again.
+        first.width = 15;
+        mScheduler.scheduleUpdate(1, first);
+        frame();
+        assertEquals(1, mResends);
+        assertFalse(mPackets.get(3).isResync());
+        assertEquals(1, mPackets.get(3).getCount());
+    }
+
+    @Test
+    public void redrawsAreMergedPerFrame() {
+        int[] redraws = new int[2];
+        Runnable first = () -> redraws[0]++;
+        Runnable second = () -> {
+            redraws[1]++;
+            // Redraws scheduled while redrawing wait for the next frame.
+            mScheduler.scheduleRedraw(() -> redraws[1]++);
+        };
+        for (int i = 0; i < 5; i++) {
+            mScheduler.scheduleRedraw(first);
+            mScheduler.scheduleRedraw(second);
+        }
+        mScheduler.onFrame();
+        mMainThread.poll().run();
+        assertEquals(1, redraws[0]);
+        assertEquals(1, redraws[1]);
+        assertEquals(11, mScheduler.getRequestedRedraws());
+
+        mScheduler.onWidgetDrawn(1000);
+        mScheduler.onWidgetDrawn(3000);
+        frame();
+        assertEquals(2, redraws[1]);
+        assertEquals(2, mScheduler.getLastFrameDraws());
+        assertEquals(4000, mScheduler.getLastFrameDrawTimeNs());
+        assertEquals(0, mScheduler.getLastFrameUpdates());
+    }
+}
@@ -0,0 +1,200 @@
+package org.mozilla.vrbrowser.utils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class RenderCommandQueueTest {
+
+    private final ArrayDeque<Runnable> mRenderThread = new ArrayDeque<>();
+
+    private void renderFrame() {
+        while (!mRenderThread.isEmpty()) {
+            mRenderThread.poll().run();
+        }
+    }
+
+    @Test
+    public void commandsRunInOrderWithTheirArguments() {
+        RenderCommandQueue queue = new RenderCommandQueue(mRenderThread::add);
+        List<Object> executed = new ArrayList<>();
+        queue.queue(() -> executed.add("runnable"));
+        queue.queue((RenderCommandQueue.IntCommand)executed::add, 42);
+        queue.queue((RenderCommandQueue.LongCommand)executed::add, Long.MAX_VALUE);
+        queue.queue((RenderCommandQueue.FloatCommand)executed::add, 0.5f);
+        queue.queue((RenderCommandQueue.BooleanCommand)executed::add, true);
+        queue.queue((RenderCommandQueue.ObjectCommand<String>)executed::add, "object");
+        // A single wake-up for the whole batch.
+        assertEquals(1, mRenderThread.size());
+        assertTrue(executed.isEmpty());
+
+        renderFrame();
+        assertEquals(6, executed.size());
+        assertEquals("runnable", executed.get(0));
+        assertEquals(42, executed.get(1));
+        assertEquals(Long.MAX_VALUE, executed.get(2));
+        assertEquals(0.5f, executed.get(3));
+        assertEquals(true, executed.get(4));
+        assertEquals("object", executed.get(5));
+        assertEquals(6, queue.getExecutedCommands());
+
+        // Nothing is posted without commands.
+        renderFrame();
+        assertTrue(mRenderThread.isEmpty());
+    }
+
+    @Test
+    public void fullRingReportsBackpressure() {
+        RenderCommandQueue queue = new RenderCommandQueue(mRenderThread::add, 4);
+        List<Integer> executed = new ArrayList<>();
+        RenderCommandQueue.IntCommand command = executed::add;
+        for (int i = 0; i < 10; i++) {
+            queue.queue(command, i);
+        }
+        assertEquals(1, queue.getBackpressureEvents());
+        assertEquals(6, queue.getOverflowedCommands());
+        assertEquals(5, queue.getHighWaterMark());
+
+        renderFrame();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (int)executed.get(i));
+        }
+
+        // The ring is used again once drained.
+        queue.queue(command, 10);
+        renderFrame();
+        assertEquals(11, executed.size());
+        assertEquals(1, queue.getBackpressureEvents());
+        assertEquals(6, queue.getOverflowedCommands());
+    }
+
+    @Test
+    public void commandsFromOtherThreadsAreNotLost() throws InterruptedException {
+        RenderCommandQueue queue = new RenderCommandQueue(mRenderThread::add);
+        List<Integer> executed = new ArrayList<>();
+        RenderCommandQueue.IntCommand command = executed::add;
+        queue.queue(command, 1);
+        Thread other = new Thread(() -> queue.queue(command, 2));
+        other.start();
+        other.join();
+        queue.queue(command, 3);
+
+        renderFrame();
+        assertEquals(3, executed.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, (int)executed.get(i));
+        }
+        assertEquals(0, queue.getBackpressureEvents());
+        assertEquals(2, queue.getQueuedCommands());
+    }
+
+    @Test
+    public void stressFloodWhileRendering() throws InterruptedException {
+        final int commands = 1000000;
+        LinkedBlockingQueue<Runnable> renderThread = new LinkedBlockingQueue<>();
+        RenderCommandQueue queue = new RenderCommandQueue(renderThread::add, 256);
+        long[] expected = new long[1];
+        AtomicBoolean outOfOrder = new AtomicBoolean();
+        RenderCommandQueue.LongCommand command = aValue -> {
+            if (aValue != expected[0]++) {
+                outOfOrder.set(true);
+            }
+        };
+        AtomicBoolean rendering = new AtomicBoolean(true);
+        // Simulated render loop, runs the platform queue and renders a frame.
+        Thread renderLoop = new Thread(() -> {
+            try {
+                while (rendering.get() || !renderThread.isEmpty()) {
+                    Runnable runnable = renderThread.poll(1, TimeUnit.MILLISECONDS);
+                    if (runnable != null) {
+                        runnable.run();
+                    }
+                    queue.onFrame();
+                }
+            } catch (InterruptedException e) {
+                outOfOrder.set(true);
+            }
+        });
+        renderLoop.start();
+
+        for (long i = 0; i < commands; i++) {
+            queue.queue(command, i);
+        }
+        rendering.set(false);
+        renderLoop.join();
+
+        assertFalse(outOfOrder.get());
+        assertEquals(commands, expected[0]);
+        assertEquals(commands, queue.getExecutedCommands());
+        assertEquals(commands, queue.getQueuedCommands());
+        assertTrue(queue.getHighWaterMark() <= commands);
+    }
+
+    @Test
+    public void droppedDrainIsPostedAgain() {
+        List<Integer> executed = new ArrayList<>();
+        RenderCommandQueue.IntCommand command = executed::add;
+        // The platform queue drops the first drain, e.g. before the render thread is initialized.
+        boolean[] drop = { true };
+        RenderCommandQueue queue = new RenderCommandQueue(aRunnable -> {
+            if (!drop[0]) {
+                mRenderThread.add(aRunnable);
+            }
+        });
+        queue.queue(command, 1);
+        drop[0] = false;
+        queue.queue(command, 2);
+        assertTrue(mRenderThread.isEmpty());
+
+        // Waiting for a single frame isn't a lost drain, it may have been posted during it.
+        queue.onFrame();
+        assertTrue(mRenderThread.isEmpty());
+        queue.onFrame();
+        renderFrame();
+        assertEquals(2, executed.size());
+
+        // Once drained the ring wakes up the render thread again.
+        queue.queue(command, 3);
+        assertEquals(1, mRenderThread.size());
+        queue.onFrame();
+        renderFrame();
+        queue.onFrame();
+        assertTrue(mRenderThread.isEmpty());
+        assertEquals(3, executed.size());
+    }
+
+    @Test
+    public void resumePostsPendingDrain() {
+        List<Integer> executed = new ArrayList<>();
+        RenderCommandQueue.IntCommand command = executed::add;
+        boolean[] drop = { true };
+        RenderCommandQueue queue = new RenderCommandQueue(aRunnable -> {
+            if (!drop[0]) {
+                mRenderThread.add(aRunnable);
+            }
+        });
+        queue.queue(command, 1);
+        drop[0] = false;
+        queue.onResume();
+        renderFrame();
+        assertEquals(1, executed.size());
+
+        // Nothing is posted without commands.
+        queue.onResume();
+        assertTrue(mRenderThread.isEmpty());
+    }
+}
@@ -0,0 +1,168 @@
+package org.mozilla.vrbrowser.utils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.utils.StartupGraph.Affinity;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class StartupGraphTest {
+
+    private final ArrayDeque<Runnable> mMainThread = new ArrayDeque<>();
+    private final List<String> mDone = Collections.synchronizedList(new ArrayList<>());
+
+    private Runnable task(String aName, long aDurationMs) {
+        return () -> {
+            try {
+                Thread.sleep(aDurationMs);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            mDone.add(aName);
+        };
+    }
+
+    private void runMainThread() {
+        while (!mMainThread.isEmpty()) {
+            mMainThread.poll().run();
+        }
+    }
+
+    @Test
+    public void dependenciesAreDoneFirst() {
+        StartupGraph graph = new StartupGraph(mMainThread::add);
+        Thread mainThread = Thread.currentThread();
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        graph.add("a", Affinity.BACKGROUND, task("a", 30))
+                .add("b", Affinity.MAIN, task("b", 1))
+                .add("c", Affinity.MAIN, () -> {
+                    threads.add(Thread.currentThread());
+                    assertTrue(mDone.contains("a"));
+                    mDone.add("c");
+                }, "a")
+                .add("d", Affinity.BACKGROUND, () -> {
+                    threads.add(Thread.currentThread());
+                    assertTrue(mDone.contains("c"));
+                    mDone.add("d");
+                }, "b", "c");
+        graph.run();
+
+        assertEquals(4, mDone.size());
+        assertEquals("b", mDone.get(0));
+        assertSame(mainThread, threads.get(0));
+        assertNotSame(mainThread, threads.get(1));
+        assertEquals(4, graph.getTimings().size());
+    }
+
+    @Test
+    public void deferredComponentsWaitForTheFirstFrame() {
+        StartupGraph graph = new StartupGraph(mMainThread::add);
+        graph.add("critical", Affinity.MAIN, task("critical", 0))
+                .addDeferred("deferred", Affinity.MAIN, task("deferred", 0), "critical");
+        graph.run();
+        runMainThread();
+        assertEquals(Collections.singletonList("critical"), mDone);
+        assertEquals(-1, graph.getDeferredStartUs());
+
+        // Components can be added later, e.g. by the activity.
+        graph.add("activity", Affinity.MAIN, task("activity", 0), "critical");
+        graph.run();
+        graph.startDeferred();
+        graph.addDeferred("late", Affinity.MAIN, task("late", 0), "deferred");
+        runMainThread();
+        assertEquals(4, mDone.size());
+        assertEquals("late", mDone.get(3));
+        assertTrue(graph.getDeferredStartUs() >= 0);
+    }
+
+    @Test
+    public void invalidDependenciesAreRejected() {
+        StartupGraph graph = new StartupGraph(mMainThread::add);
+        graph.addDeferred("deferred", Affinity.MAIN, task("deferred", 0));
+        try {
+            graph.add("unknown", Affinity.MAIN, task("unknown", 0), "missing");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected, dependencies must be added first.
+        }
+        try {
+            graph.add("critical", Affinity.MAIN, task("critical", 0), "deferred");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected, critical components can't wait for deferred ones.
+        }
+    }
+
+    @Test
+    public void failuresAreRethrown() {
+        StartupGraph graph = new StartupGraph(mMainThread::add);
+        graph.add("failing", Affinity.BACKGROUND, () -> {
+            throw new IllegalStateException();
+        }).add("dependent", Affinity.MAIN, task("dependent", 0), "failing");
+        try {
+            graph.run();
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertFalse(mDone.contains("dependent"));
+    }
+
+    @Test
+    public void coldStartRunsEveryComponentOnce() {
+        // Rough shape of the application and activity startup.
+        Object[][] components = {
+                { "settings", Affinity.MAIN, new String[0] },
+                { "places", Affinity.BACKGROUND, new String[0] },
+                { "telemetry", Affinity.BACKGROUND, new String[] { "settings" } },
+                { "bitmap-cache", Affinity.MAIN, new String[0] },
+                { "services", Affinity.MAIN, new String[] { "places" } },
+                { "accounts", Affinity.MAIN, new String[] { "services" } },
+                { "gecko-prefs", Affinity.BACKGROUND, new String[0] },
+                { "session-store", Affinity.MAIN, new String[] { "gecko-prefs" } },
+        };
+        Object[][] deferred = {
+                { "glean", Affinity.MAIN, new String[] { "settings" } },
+                { "sync", Affinity.MAIN, new String[] { "accounts" } },
+                { "search-engine", Affinity.MAIN, new String[0] },
+                { "geolocation", Affinity.MAIN, new String[0] },
+        };
+
+        StartupGraph graph = new StartupGraph(mMainThread::add);
+        for (Object[] component: components) {
+            graph.add((String)component[0], (Affinity)component[1], task((String)component[0], 1), (String[])component[2]);
+        }
+        for (Object[] component: deferred) {
+            graph.addDeferred((String)component[0], (Affinity)component[1], task((String)component[0], 1), (String[])component[2]);
+        }
+        graph.run();
+        assertEquals(components.length, mDone.size());
+
+        graph.startDeferred();
+        runMainThread();
+        assertEquals(components.length + deferred.length, mDone.size());
+        assertEquals(mDone.size(), graph.getTimings().size());
+        for (Object[] component: components) {
+            for (String dependency: (String[])component[2]) {
+                assertTrue(mDone.indexOf(dependency) < mDone.indexOf(component[0]));
+            }
+        }
+        for (Object[] component: deferred) {
+            assertTrue(mDone.indexOf(component[0]) >= components.length);
+        }
+    }
+}